@@ -1,12 +1,15 @@
 package com.financelab.bankservice;
 
+import com.financelab.common.event.AssetChangePublisher;
 import io.github.cdimascio.dotenv.Dotenv;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableScheduling
+@Import(AssetChangePublisher.class)
 public class BankServiceApplication {
 
     public static void main(String[] args) {
@@ -104,6 +104,7 @@ public class DataInitializer implements CommandLineRunner {
         product.setEarlyWithdrawalPenalty(penalty);
         product.setDescription(description);
         product.setStatus(InvestmentProduct.ProductStatus.AVAILABLE);
+        product.setNetAssetValue(BigDecimal.ONE);
         product.setCreatedAt(LocalDateTime.now());
         
         investmentProductRepository.save(product);
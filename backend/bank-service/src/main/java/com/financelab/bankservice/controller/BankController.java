@@ -1,13 +1,25 @@
 package com.financelab.bankservice.controller;
 
 import com.financelab.bankservice.dto.*;
+import com.financelab.bankservice.entity.CreditCard;
+import com.financelab.bankservice.scheduler.CreditCardStatementScheduler;
+import com.financelab.bankservice.scheduler.LoanServicingScheduler;
 import com.financelab.bankservice.service.BankService;
+import com.financelab.bankservice.service.InvestmentNavSimulator;
+import com.financelab.bankservice.service.StatementService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -17,6 +29,10 @@ import java.util.List;
 public class BankController {
     
     private final BankService bankService;
+    private final LoanServicingScheduler loanServicingScheduler;
+    private final CreditCardStatementScheduler creditCardStatementScheduler;
+    private final InvestmentNavSimulator investmentNavSimulator;
+    private final StatementService statementService;
     
     // 账户管理API
     
@@ -33,6 +49,17 @@ public class BankController {
         }
     }
     
+    @PostMapping("/accounts/bulk")
+    public ResponseEntity<List<BulkAccountResultDTO>> createAccounts(@RequestBody BulkAccountRequestDTO request) {
+        try {
+            List<BulkAccountResultDTO> createdAccounts = bankService.createAccounts(request.getAccounts());
+            return ResponseEntity.ok(createdAccounts);
+        } catch (Exception e) {
+            log.error("批量创建账户失败: error={}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     @GetMapping("/accounts/{accountNumber}")
     public ResponseEntity<BankAccountDTO> getAccount(@PathVariable String accountNumber) {
         try {
@@ -168,6 +195,32 @@ public class BankController {
         }
     }
     
+    @GetMapping("/loans/calculator")
+    public ResponseEntity<AmortizationScheduleDTO> calculateLoanSchedule(
+            @RequestParam BigDecimal principal,
+            @RequestParam BigDecimal interestRate,
+            @RequestParam int termMonths) {
+        try {
+            AmortizationScheduleDTO schedule = bankService.calculateLoanSchedule(principal, interestRate, termMonths);
+            return ResponseEntity.ok(schedule);
+        } catch (Exception e) {
+            log.error("计算还款计划失败: principal={}, rate={}, term={}, error={}",
+                     principal, interestRate, termMonths, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/loans/{loanId}/schedule")
+    public ResponseEntity<AmortizationScheduleDTO> getLoanSchedule(@PathVariable Long loanId) {
+        try {
+            AmortizationScheduleDTO schedule = bankService.getLoanSchedule(loanId);
+            return ResponseEntity.ok(schedule);
+        } catch (Exception e) {
+            log.error("获取还款计划失败: loanId={}, error={}", loanId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     // 查询API
     
     @GetMapping("/accounts/{accountNumber}/balance")
@@ -193,19 +246,60 @@ public class BankController {
     }
     
     @GetMapping("/accounts/{accountNumber}/transactions")
-    public ResponseEntity<List<TransactionDTO>> getTransactionHistory(
+    public ResponseEntity<StreamingResponseBody> getTransactionHistory(
             @PathVariable String accountNumber,
             @RequestParam(defaultValue = "30") int days) {
+        if (days < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        LocalDateTime to = LocalDateTime.now();
+        LocalDateTime from = to.minusDays(days);
+        // 逐页写出 JSON 数组，响应格式与原来的列表一致
+        StreamingResponseBody body = outputStream -> statementService.writeTransactions(accountNumber, from, to, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+    
+    @GetMapping("/accounts/{accountNumber}/statement")
+    public ResponseEntity<StatementPageDTO> getStatementPage(
+            @PathVariable String accountNumber,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorTime,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "50") int size) {
         try {
-            List<TransactionDTO> transactions = bankService.getTransactionHistory(accountNumber, days);
-            return ResponseEntity.ok(transactions);
+            StatementPageDTO page = statementService.getStatementPage(accountNumber,
+                    from.atStartOfDay(), to.plusDays(1).atStartOfDay(), cursorTime, cursorId, size);
+            return ResponseEntity.ok(page);
         } catch (Exception e) {
-            log.error("获取交易历史失败: accountNumber={}, days={}, error={}", 
-                     accountNumber, days, e.getMessage());
+            log.error("获取对账单失败: accountNumber={}, error={}", accountNumber, e.getMessage());
             return ResponseEntity.badRequest().build();
         }
     }
     
+    @GetMapping("/accounts/{accountNumber}/statement/export")
+    public ResponseEntity<StreamingResponseBody> exportStatement(
+            @PathVariable String accountNumber,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "CSV") StatementService.StatementFormat format) {
+        StreamingResponseBody body = outputStream -> statementService.exportStatement(accountNumber,
+                from.atStartOfDay(), to.plusDays(1).atStartOfDay(), format, outputStream);
+        
+        String extension = format == StatementService.StatementFormat.CSV ? "csv" : "ndjson";
+        MediaType mediaType = format == StatementService.StatementFormat.CSV
+                ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                : new MediaType("application", "x-ndjson", StandardCharsets.UTF_8);
+        
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=statement-" + accountNumber + "-" + from + "-" + to + "." + extension)
+                .contentType(mediaType)
+                .body(body);
+    }
+    
     // 利息计算API（管理员使用）
     
     @PostMapping("/admin/calculate-interest")
@@ -219,6 +313,39 @@ public class BankController {
         }
     }
     
+    @PostMapping("/admin/loan-servicing")
+    public ResponseEntity<Void> runLoanServicing() {
+        try {
+            loanServicingScheduler.runServicing();
+            return ResponseEntity.ok().build();
+        } catch (Exception e) {
+            log.error("贷款批量还款失败: error={}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping("/admin/investment-nav")
+    public ResponseEntity<Void> runInvestmentValuation() {
+        try {
+            investmentNavSimulator.runDailyValuation();
+            return ResponseEntity.ok().build();
+        } catch (Exception e) {
+            log.error("计算理财净值失败: error={}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping("/admin/card-statements")
+    public ResponseEntity<Void> runCardStatements() {
+        try {
+            creditCardStatementScheduler.runStatementCycle();
+            return ResponseEntity.ok().build();
+        } catch (Exception e) {
+            log.error("信用卡账单批处理失败: error={}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     // 信用卡管理API
     
     @PostMapping("/credit-cards")
@@ -259,6 +386,17 @@ public class BankController {
         }
     }
     
+    @GetMapping("/credit-cards/{cardNumber}/statements")
+    public ResponseEntity<List<CreditCardStatementDTO>> getCreditCardStatements(@PathVariable String cardNumber) {
+        try {
+            List<CreditCardStatementDTO> statements = bankService.getCreditCardStatements(cardNumber);
+            return ResponseEntity.ok(statements);
+        } catch (Exception e) {
+            log.error("获取信用卡账单失败: cardNumber={}, error={}", cardNumber, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     @PostMapping("/credit-cards/{cardNumber}/payment")
     public ResponseEntity<TransactionDTO> creditCardPayment(
             @PathVariable String cardNumber,
@@ -285,6 +423,55 @@ public class BankController {
         }
     }
     
+    @PutMapping("/credit-cards/{cardNumber}/status")
+    public ResponseEntity<CreditCardDTO> updateCreditCardStatus(
+            @RequestHeader("X-User-Id") String userId,
+            @PathVariable String cardNumber,
+            @RequestParam CreditCard.CardStatus status) {
+        try {
+            CreditCardDTO card = bankService.updateCreditCardStatus(userId, cardNumber, status);
+            return ResponseEntity.ok(card);
+        } catch (Exception e) {
+            log.error("信用卡状态变更失败: cardNumber={}, status={}, error={}", cardNumber, status, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping("/credit-cards/{cardNumber}/authorizations")
+    public ResponseEntity<CardAuthorizationDTO> authorizeCreditCard(
+            @PathVariable String cardNumber,
+            @RequestParam BigDecimal amount) {
+        try {
+            CardAuthorizationDTO authorization = bankService.authorizeCreditCard(cardNumber, amount);
+            return ResponseEntity.ok(authorization);
+        } catch (Exception e) {
+            log.error("信用卡预授权失败: cardNumber={}, amount={}, error={}", cardNumber, amount, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping("/credit-cards/authorizations/{holdId}/capture")
+    public ResponseEntity<CardAuthorizationDTO> captureAuthorization(@PathVariable String holdId) {
+        try {
+            CardAuthorizationDTO authorization = bankService.captureAuthorization(holdId);
+            return ResponseEntity.ok(authorization);
+        } catch (Exception e) {
+            log.error("预授权扣款失败: holdId={}, error={}", holdId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping("/credit-cards/authorizations/{holdId}/release")
+    public ResponseEntity<CardAuthorizationDTO> releaseAuthorization(@PathVariable String holdId) {
+        try {
+            CardAuthorizationDTO authorization = bankService.releaseAuthorization(holdId);
+            return ResponseEntity.ok(authorization);
+        } catch (Exception e) {
+            log.error("释放预授权失败: holdId={}, error={}", holdId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     // 理财产品管理API
     
     @GetMapping("/investment-products")
@@ -0,0 +1,92 @@
+package com.financelab.bankservice.controller;
+
+import com.financelab.bankservice.dto.BulkDebitRequestDTO;
+import com.financelab.bankservice.dto.PaymentDebitDTO;
+import com.financelab.bankservice.service.PaymentDebitService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * 服务间调用接口：商城支付扣款与退款，房产租金与持有支出的扣款与入账
+ *
+ * 网关拒绝转发 internal 内部路径；调用方还须在 X-Internal-Token 中携带 bank.internal-token。
+ */
+@RestController
+@RequestMapping("/internal/bank/payments")
+@Slf4j
+public class InternalPaymentController {
+
+    private final PaymentDebitService paymentDebitService;
+    private final byte[] internalToken;
+
+    public InternalPaymentController(PaymentDebitService paymentDebitService,
+                                     @Value("${bank.internal-token}") String internalToken) {
+        if (internalToken == null || internalToken.isBlank()) {
+            throw new IllegalStateException("未配置服务间调用凭证 bank.internal-token（INTERNAL_API_TOKEN）");
+        }
+        this.paymentDebitService = paymentDebitService;
+        this.internalToken = internalToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PostMapping("/debits/bulk")
+    public ResponseEntity<List<PaymentDebitDTO>> debitPayments(
+            @RequestHeader(value = "X-Internal-Token", required = false) String token,
+            @RequestBody BulkDebitRequestDTO request) {
+        if (!authorized(token)) {
+            log.warn("拒绝未授权的批量扣款请求");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            List<PaymentDebitDTO> results = paymentDebitService.debitAll(request.getDebits());
+            return ResponseEntity.ok(results);
+        } catch (Exception e) {
+            log.error("批量扣款失败: error={}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @PostMapping("/refunds/bulk")
+    public ResponseEntity<List<PaymentDebitDTO>> refundPayments(
+            @RequestHeader(value = "X-Internal-Token", required = false) String token,
+            @RequestBody BulkDebitRequestDTO request) {
+        if (!authorized(token)) {
+            log.warn("拒绝未授权的批量退款请求");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            List<PaymentDebitDTO> results = paymentDebitService.refundAll(request.getDebits());
+            return ResponseEntity.ok(results);
+        } catch (Exception e) {
+            log.error("批量退款失败: error={}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @PostMapping("/credits/bulk")
+    public ResponseEntity<List<PaymentDebitDTO>> creditPayments(
+            @RequestHeader(value = "X-Internal-Token", required = false) String token,
+            @RequestBody BulkDebitRequestDTO request) {
+        if (!authorized(token)) {
+            log.warn("拒绝未授权的批量入账请求");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            List<PaymentDebitDTO> results = paymentDebitService.creditAll(request.getDebits());
+            return ResponseEntity.ok(results);
+        } catch (Exception e) {
+            log.error("批量入账失败: error={}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private boolean authorized(String token) {
+        return token != null && MessageDigest.isEqual(internalToken, token.getBytes(StandardCharsets.UTF_8));
+    }
+}
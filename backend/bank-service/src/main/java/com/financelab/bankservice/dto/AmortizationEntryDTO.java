@@ -0,0 +1,25 @@
+package com.financelab.bankservice.dto;
+
+import lombok.Data;
+import java.math.BigDecimal;
+
+@Data
+public class AmortizationEntryDTO {
+    
+    private Integer period;
+    private BigDecimal payment;
+    private BigDecimal interest;
+    private BigDecimal principal;
+    private BigDecimal balance;
+    
+    public AmortizationEntryDTO() {}
+    
+    public AmortizationEntryDTO(Integer period, BigDecimal payment, BigDecimal interest,
+                                BigDecimal principal, BigDecimal balance) {
+        this.period = period;
+        this.payment = payment;
+        this.interest = interest;
+        this.principal = principal;
+        this.balance = balance;
+    }
+}
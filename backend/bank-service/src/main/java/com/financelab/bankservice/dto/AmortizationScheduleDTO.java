@@ -0,0 +1,19 @@
+package com.financelab.bankservice.dto;
+
+import lombok.Data;
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+public class AmortizationScheduleDTO {
+    
+    private BigDecimal principal;
+    private BigDecimal annualRate;
+    private Integer termMonths;
+    private BigDecimal monthlyPayment;
+    private BigDecimal totalPayment;
+    private BigDecimal totalInterest;
+    private List<AmortizationEntryDTO> entries;
+    
+    public AmortizationScheduleDTO() {}
+}
@@ -0,0 +1,12 @@
+package com.financelab.bankservice.dto;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class BulkAccountRequestDTO {
+    
+    private List<BankAccountDTO> accounts; // 每项需给出 userId 与 accountType
+    
+    public BulkAccountRequestDTO() {}
+}
@@ -0,0 +1,18 @@
+package com.financelab.bankservice.dto;
+
+import com.financelab.bankservice.entity.BankAccount;
+import lombok.Data;
+
+/**
+ * 批量开户中一项请求的结果：成功时带新账户，失败时带原因
+ */
+@Data
+public class BulkAccountResultDTO {
+    
+    private String userId;
+    private BankAccount.AccountType accountType;
+    private BankAccountDTO account; // 新建的账户，未创建时为空
+    private String failureReason; // 该项未创建的原因
+    
+    public BulkAccountResultDTO() {}
+}
@@ -0,0 +1,12 @@
+package com.financelab.bankservice.dto;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class BulkDebitRequestDTO {
+    
+    private List<PaymentDebitDTO> debits;
+    
+    public BulkDebitRequestDTO() {}
+}
@@ -0,0 +1,25 @@
+package com.financelab.bankservice.dto;
+
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+public class CardAuthorizationDTO {
+    
+    private String holdId;
+    private String cardNumber;
+    private BigDecimal amount;
+    private AuthorizationStatus status;
+    private LocalDateTime expiresAt;
+    private BigDecimal availableLimit;
+    
+    public CardAuthorizationDTO() {}
+    
+    public enum AuthorizationStatus {
+        AUTHORIZED,      // 已预授权
+        CAPTURED,        // 已扣款
+        RELEASED,        // 已释放
+        EXPIRED          // 已过期
+    }
+}
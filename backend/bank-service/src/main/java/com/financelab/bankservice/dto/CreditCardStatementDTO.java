@@ -0,0 +1,40 @@
+package com.financelab.bankservice.dto;
+
+import com.financelab.bankservice.entity.CreditCardStatement;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+public class CreditCardStatementDTO {
+    
+    private Long id;
+    private String cardNumber;
+    private LocalDate cycleStart;
+    private LocalDate cycleEnd;
+    private LocalDate dueDate;
+    private BigDecimal statementBalance;
+    private BigDecimal minimumPayment;
+    private BigDecimal interestCharged;
+    private BigDecimal lateFee;
+    private CreditCardStatement.StatementStatus status;
+    private LocalDateTime createdAt;
+    
+    public CreditCardStatementDTO() {}
+    
+    public CreditCardStatementDTO(CreditCardStatement statement) {
+        this.id = statement.getId();
+        this.cardNumber = statement.getCardNumber();
+        this.cycleStart = statement.getCycleStart();
+        this.cycleEnd = statement.getCycleEnd();
+        this.dueDate = statement.getDueDate();
+        this.statementBalance = statement.getStatementBalance();
+        this.minimumPayment = statement.getMinimumPayment();
+        this.interestCharged = statement.getInterestCharged();
+        this.lateFee = statement.getLateFee();
+        this.status = statement.getStatus();
+        this.createdAt = statement.getCreatedAt();
+    }
+}
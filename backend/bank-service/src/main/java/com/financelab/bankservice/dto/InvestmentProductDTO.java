@@ -4,6 +4,7 @@ import com.financelab.bankservice.entity.InvestmentProduct;
 import lombok.Data;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Data
@@ -21,6 +22,8 @@ public class InvestmentProductDTO {
     private BigDecimal earlyWithdrawalPenalty;
     private String description;
     private InvestmentProduct.ProductStatus status;
+    private BigDecimal netAssetValue;
+    private LocalDate navDate;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     
@@ -39,6 +42,8 @@ public class InvestmentProductDTO {
         this.earlyWithdrawalPenalty = product.getEarlyWithdrawalPenalty();
         this.description = product.getDescription();
         this.status = product.getStatus();
+        this.netAssetValue = product.getNetAssetValue();
+        this.navDate = product.getNavDate();
         this.createdAt = product.getCreatedAt();
         this.updatedAt = product.getUpdatedAt();
     }
@@ -0,0 +1,33 @@
+package com.financelab.bankservice.dto;
+
+import com.financelab.bankservice.entity.PaymentDebit;
+import lombok.Data;
+import java.math.BigDecimal;
+
+@Data
+public class PaymentDebitDTO {
+    
+    private String idempotencyKey;
+    private String userId;
+    private BigDecimal amount;
+    private String description;
+    private String accountNumber;
+    private PaymentDebit.DebitStatus status;
+    private String referenceNumber;
+    private String failureReason;
+    private String refundOf; // 退款请求：原扣款的幂等键
+    private String counterparty; // 对方账户（扣款的收款方、入账的付款方），为空时为商城
+    
+    public PaymentDebitDTO() {}
+    
+    public PaymentDebitDTO(PaymentDebit debit) {
+        this.idempotencyKey = debit.getIdempotencyKey();
+        this.userId = debit.getUserId();
+        this.amount = debit.getAmount();
+        this.accountNumber = debit.getAccountNumber();
+        this.status = debit.getStatus();
+        this.referenceNumber = debit.getReferenceNumber();
+        this.failureReason = debit.getFailureReason();
+        this.refundOf = debit.getRefundOf();
+    }
+}
@@ -0,0 +1,17 @@
+package com.financelab.bankservice.dto;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+public class StatementPageDTO {
+    
+    private String accountNumber;
+    private List<TransactionDTO> entries;
+    private LocalDateTime nextCursorTime;
+    private Long nextCursorId;
+    private Boolean hasMore;
+    
+    public StatementPageDTO() {}
+}
@@ -60,6 +60,15 @@ public class CreditCard {
     @Column(nullable = false, precision = 15, scale = 2)
     private BigDecimal minimumPayment;
     
+    @Column(precision = 15, scale = 2)
+    private BigDecimal statementBalance;    // 上期账单金额
+    
+    @Column(precision = 15, scale = 2)
+    private BigDecimal cyclePayments;       // 上期账单出单后的累计还款
+    
+    @Column
+    private Boolean isLate;
+    
     @Column(nullable = false)
     @Enumerated(EnumType.STRING)
     private CardStatus status;
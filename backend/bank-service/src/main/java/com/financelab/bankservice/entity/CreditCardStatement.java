@@ -0,0 +1,64 @@
+package com.financelab.bankservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "credit_card_statements",
+       uniqueConstraints = @UniqueConstraint(name = "uk_card_cycle", columnNames = {"card_id", "cycle_end"}))
+@Data
+public class CreditCardStatement {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private Long cardId;
+    
+    @Column(nullable = false)
+    private String cardNumber;
+    
+    @Column(nullable = false)
+    private String userId;
+    
+    @Column(nullable = false)
+    private LocalDate cycleStart;
+    
+    @Column(nullable = false)
+    private LocalDate cycleEnd;
+    
+    @Column(nullable = false)
+    private LocalDate dueDate;
+    
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal statementBalance;
+    
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal minimumPayment;
+    
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal interestCharged;
+    
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal lateFee;
+    
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private StatementStatus status;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column
+    private LocalDateTime updatedAt;
+    
+    public enum StatementStatus {
+        OPEN,       // 待还款
+        PAID,       // 已按期还款
+        OVERDUE     // 逾期
+    }
+}
@@ -3,6 +3,7 @@ package com.financelab.bankservice.entity;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
@@ -49,6 +50,12 @@ public class InvestmentProduct {
     @Enumerated(EnumType.STRING)
     private ProductStatus status;
     
+    @Column(precision = 12, scale = 6)
+    private BigDecimal netAssetValue;
+    
+    @Column
+    private LocalDate navDate;
+    
     @Column(nullable = false)
     private LocalDateTime createdAt;
     
@@ -0,0 +1,64 @@
+package com.financelab.bankservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "payment_debits")
+@Data
+public class PaymentDebit {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false, unique = true, length = 64)
+    private String idempotencyKey;
+    
+    @Column(nullable = false)
+    private String userId;
+    
+    @Column
+    private String accountNumber;
+    
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal amount;
+    
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private DebitStatus status;
+    
+    @Column(length = 20)
+    @Enumerated(EnumType.STRING)
+    private DebitType type; // 为空的旧记录均为扣款
+    
+    @Column(length = 64)
+    private String refundOf; // 退款对应的原扣款幂等键
+    
+    @Column
+    private String referenceNumber;
+    
+    @Column
+    private String failureReason;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column
+    private LocalDateTime completedAt;
+    
+    public enum DebitStatus {
+        PROCESSING,     // 处理中（仅在扣款事务内可见）
+        COMPLETED,      // 扣款（退款）成功
+        FAILED,         // 扣款（退款）失败
+        REFUNDED        // 扣款已退款
+    }
+    
+    public enum DebitType {
+        DEBIT,          // 扣款
+        REFUND,         // 退款
+        CREDIT          // 入账
+    }
+}
@@ -56,7 +56,9 @@ public class Transaction {
         LOAN_DISBURSEMENT, // 贷款发放
         LOAN_REPAYMENT,    // 贷款还款
         INTEREST_PAYMENT,  // 利息支付
-        FEE_COLLECTION     // 费用收取
+        FEE_COLLECTION,    // 费用收取
+        PAYMENT,           // 消费支付
+        REFUND             // 消费退款
     }
     
     public enum TransactionStatus {
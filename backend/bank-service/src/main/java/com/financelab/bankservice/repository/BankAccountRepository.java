@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,4 +25,8 @@ public interface BankAccountRepository extends JpaRepository<BankAccount, Long>
     boolean existsByAccountNumber(String accountNumber);
     
     List<BankAccount> findByIsActiveTrue();
-}
\ No newline at end of file
+    
+    List<BankAccount> findByUserIdIn(Collection<String> userIds);
+    
+    List<BankAccount> findByUserIdInAndAccountTypeAndIsActiveTrue(Collection<String> userIds, BankAccount.AccountType accountType);
+}
@@ -1,11 +1,16 @@
 package com.financelab.bankservice.repository;
 
 import com.financelab.bankservice.entity.CreditCard;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,6 +21,21 @@ public interface CreditCardRepository extends JpaRepository<CreditCard, Long> {
     
     Optional<CreditCard> findByCardNumber(String cardNumber);
     
+    // 还款前加行锁，与授权引擎的额度写回互斥
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM CreditCard c WHERE c.cardNumber = :cardNumber")
+    Optional<CreditCard> findByCardNumberForUpdate(@Param("cardNumber") String cardNumber);
+    
+    // 还款按增量写入，不覆盖并发写回的已用额度
+    @Modifying
+    @Query(value = "UPDATE credit_cards SET current_balance = current_balance - :paid, " +
+            "used_limit = GREATEST(used_limit - :paid, 0), available_limit = available_limit + :paid, " +
+            "cycle_payments = COALESCE(cycle_payments, 0) + :amount, " +
+            "minimum_payment = GREATEST(minimum_payment - :amount, 0), updated_at = :now " +
+            "WHERE card_number = :cardNumber", nativeQuery = true)
+    int applyPayment(@Param("cardNumber") String cardNumber, @Param("paid") BigDecimal paid,
+                     @Param("amount") BigDecimal amount, @Param("now") LocalDateTime now);
+    
     @Query("SELECT SUM(c.usedLimit) FROM CreditCard c WHERE c.userId = :userId AND c.status = 'ACTIVE'")
     Optional<Double> getTotalUsedLimitByUserId(@Param("userId") String userId);
     
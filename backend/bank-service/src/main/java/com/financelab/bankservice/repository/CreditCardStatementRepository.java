@@ -0,0 +1,13 @@
+package com.financelab.bankservice.repository;
+
+import com.financelab.bankservice.entity.CreditCardStatement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CreditCardStatementRepository extends JpaRepository<CreditCardStatement, Long> {
+    
+    List<CreditCardStatement> findByCardNumberOrderByCycleEndDesc(String cardNumber);
+}
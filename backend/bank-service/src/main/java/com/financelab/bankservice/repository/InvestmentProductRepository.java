@@ -24,5 +24,8 @@ public interface InvestmentProductRepository extends JpaRepository<InvestmentPro
     @Query("SELECT p FROM InvestmentProduct p WHERE p.riskLevel <= :maxRisk AND p.status = 'AVAILABLE'")
     List<InvestmentProduct> findByRiskLevelLessThanOrEqual(@Param("maxRisk") BigDecimal maxRisk);
     
+    @Query("SELECT p FROM InvestmentProduct p WHERE p.status <> 'TERMINATED'")
+    List<InvestmentProduct> findActiveProducts();
+    
     boolean existsByProductCode(String productCode);
 }
@@ -1,11 +1,14 @@
 package com.financelab.bankservice.repository;
 
 import com.financelab.bankservice.entity.Loan;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -31,4 +34,34 @@ public interface LoanRepository extends JpaRepository<Loan, Long> {
     
     @Query("SELECT l FROM Loan l WHERE l.status = 'DELINQUENT' AND l.overdueDays > 0")
     List<Loan> findDelinquentLoans();
-}
\ No newline at end of file
+    
+    /**
+     * 按 (next_payment_date, id) 游标分批扫描单一状态的到期贷款
+     * （走 idx_status_next_payment，InnoDB 二级索引隐含主键，状态固定时按该顺序扫描无需排序）
+     */
+    @Query("SELECT l FROM Loan l WHERE l.status = :status AND l.nextPaymentDate <= :date " +
+           "AND (l.nextPaymentDate > :lastDate OR (l.nextPaymentDate = :lastDate AND l.id > :lastId)) " +
+           "ORDER BY l.nextPaymentDate, l.id")
+    List<Loan> findDueLoansAfter(@Param("status") Loan.LoanStatus status,
+                                 @Param("date") LocalDateTime date,
+                                 @Param("lastDate") LocalDateTime lastDate,
+                                 @Param("lastId") Long lastId,
+                                 Pageable pageable);
+    
+    @Modifying
+    @Query(value = "UPDATE loans SET status = 'DELINQUENT' " +
+            "WHERE status = 'ACTIVE' AND next_payment_date < :cutoff AND remaining_amount > 0", nativeQuery = true)
+    int markDelinquentLoans(@Param("cutoff") LocalDateTime cutoff);
+    
+    @Modifying
+    @Query(value = "UPDATE loans SET overdue_days = DATEDIFF(:today, next_payment_date), " +
+            "late_fee = ROUND(monthly_payment * :dailyRate * DATEDIFF(:today, next_payment_date), 2) " +
+            "WHERE status = 'DELINQUENT' AND next_payment_date < :today", nativeQuery = true)
+    int refreshOverdueDaysAndLateFees(@Param("today") LocalDateTime today,
+                                      @Param("dailyRate") BigDecimal dailyRate);
+    
+    @Modifying
+    @Query(value = "UPDATE loans SET status = 'DEFAULTED' " +
+            "WHERE status = 'DELINQUENT' AND overdue_days >= :days", nativeQuery = true)
+    int markDefaultedLoans(@Param("days") int days);
+}
@@ -0,0 +1,14 @@
+package com.financelab.bankservice.repository;
+
+import com.financelab.bankservice.entity.PaymentDebit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PaymentDebitRepository extends JpaRepository<PaymentDebit, Long> {
+    
+    List<PaymentDebit> findByIdempotencyKeyIn(Collection<String> idempotencyKeys);
+}
@@ -2,10 +2,13 @@ package com.financelab.bankservice.repository;
 
 import com.financelab.bankservice.entity.UserInvestment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,4 +30,32 @@ public interface UserInvestmentRepository extends JpaRepository<UserInvestment,
     
     @Query("SELECT u FROM UserInvestment u WHERE u.status = 'MATURED'")
     List<UserInvestment> findMaturedInvestments();
+    
+    /**
+     * 按产品批量计提当日收益（以本金加累计收益为基数复利计提）
+     */
+    @Modifying
+    @Query(value = "UPDATE user_investments " +
+            "SET accumulated_return = accumulated_return + ROUND((investment_amount + accumulated_return) * :dailyReturn, 2), " +
+            "updated_at = :now " +
+            "WHERE product_id = :productId AND status = 'ACTIVE'", nativeQuery = true)
+    int accrueDailyReturn(@Param("productId") Long productId,
+                          @Param("dailyReturn") BigDecimal dailyReturn,
+                          @Param("now") LocalDateTime now);
+    
+    /**
+     * 分批将到期持仓置为已到期，由调用方为每批开启单独事务以缩短行锁持有时间
+     */
+    @Modifying
+    @Query(value = "UPDATE user_investments SET status = 'MATURED', updated_at = :now " +
+            "WHERE status = 'ACTIVE' AND maturity_date <= :now LIMIT :batchSize", nativeQuery = true)
+    int markMaturedInvestments(@Param("now") LocalDateTime now, @Param("batchSize") int batchSize);
+    
+    /**
+     * 赎回时将有效或已到期的持仓置为已赎回，返回 0 表示已被赎回
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE UserInvestment u SET u.status = 'WITHDRAWN', u.updatedAt = :now " +
+           "WHERE u.id = :id AND u.status IN ('ACTIVE', 'MATURED')")
+    int markWithdrawn(@Param("id") Long id, @Param("now") LocalDateTime now);
 }
@@ -0,0 +1,113 @@
+package com.financelab.bankservice.scheduler;
+
+import com.financelab.bankservice.service.CardAuthorizationService;
+import com.financelab.bankservice.service.CreditCardStatementService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CreditCardStatementScheduler {
+
+    private final CreditCardStatementService statementService;
+    private final CardAuthorizationService cardAuthorizationService;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Value("${bank.card-statement.partition-size:2000}")
+    private int partitionSize;
+
+    @Value("${bank.card-statement.parallelism:4}")
+    private int parallelism;
+
+    @Value("${bank.card-statement.max-catch-up-cycles:12}")
+    private int maxCatchUpCycles;
+
+    /**
+     * 每晚执行逾期判定与账单生成
+     */
+    @Scheduled(cron = "${bank.card-statement.cron:0 0 3 * * ?}")
+    public void runNightly() {
+        runStatementCycle();
+    }
+
+    /**
+     * 先对已过还款日的账单判定逾期，再为到达账单日的卡生成新账单；
+     * 停机多日后补跑时，同一张卡会按周期逐轮出单，直到账单日晚于今天
+     */
+    public void runStatementCycle() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("信用卡账单任务正在运行，跳过本次触发");
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            long startTime = System.nanoTime();
+            LocalDate today = LocalDate.now();
+            LocalDateTime now = LocalDateTime.now();
+
+            // 授权引擎中尚未落库的消费需计入本期账单
+            cardAuthorizationService.flush();
+
+            int overdue = runPartitions(executor, statementService.planDuePartitions(today, partitionSize),
+                    statementService::assessDueStatements, now);
+
+            int generated = 0;
+            for (int round = 0; round < maxCatchUpCycles; round++) {
+                List<CreditCardStatementService.Partition> partitions =
+                        statementService.planStatementPartitions(today, partitionSize);
+                if (partitions.isEmpty()) {
+                    break;
+                }
+                generated += runPartitions(executor, partitions, statementService::generateStatements, now);
+            }
+
+            log.info("信用卡账单任务完成: 生成账单={}, 逾期={}, 耗时={}ms",
+                    generated, overdue, Duration.ofNanos(System.nanoTime() - startTime).toMillis());
+        } finally {
+            executor.shutdown();
+            running.set(false);
+        }
+    }
+
+    /**
+     * 并行处理各分区，单个分区失败只回滚该分区，其余分区照常提交
+     */
+    private int runPartitions(ExecutorService executor, List<CreditCardStatementService.Partition> partitions,
+                              BiFunction<CreditCardStatementService.Partition, LocalDateTime,
+                                      CreditCardStatementService.PartitionResult> task,
+                              LocalDateTime now) {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(partitions.size());
+        for (CreditCardStatementService.Partition partition : partitions) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    CreditCardStatementService.PartitionResult result = task.apply(partition, now);
+                    // 事务提交后再同步内存额度
+                    for (CreditCardStatementService.Charge charge : result.charges()) {
+                        cardAuthorizationService.chargeLimit(charge.cardNumber(), charge.amount());
+                    }
+                    return result.rows();
+                } catch (Exception e) {
+                    log.error("信用卡账单分区处理失败: {}", partition, e);
+                    return 0;
+                }
+            }, executor));
+        }
+        return futures.stream().mapToInt(CompletableFuture::join).sum();
+    }
+}
@@ -0,0 +1,80 @@
+package com.financelab.bankservice.scheduler;
+
+import com.financelab.bankservice.entity.Loan;
+import com.financelab.bankservice.service.LoanServicingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LoanServicingScheduler {
+
+    private final LoanServicingService loanServicingService;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Value("${bank.loan-servicing.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${bank.loan-servicing.max-window-minutes:120}")
+    private long maxWindowMinutes;
+
+    /**
+     * 每晚执行贷款扣款与逾期处理
+     */
+    @Scheduled(cron = "${bank.loan-servicing.cron:0 30 1 * * ?}")
+    public void runNightly() {
+        runServicing();
+    }
+
+    /**
+     * 按块扫描到期贷款并自动扣款，超过时间窗口时停止，剩余贷款在下次运行时继续
+     */
+    public void runServicing() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("贷款批量还款任务正在运行，跳过本次触发");
+            return;
+        }
+
+        try {
+            long startTime = System.nanoTime();
+            long deadline = startTime + Duration.ofMinutes(maxWindowMinutes).toNanos();
+            LocalDateTime dueBefore = LocalDate.now().plusDays(1).atStartOfDay();
+
+            int scanned = 0;
+            int debited = 0;
+            scan:
+            for (Loan.LoanStatus status : LoanServicingService.SERVICED_STATUSES) {
+                LoanServicingService.DueCursor cursor = LoanServicingService.DueCursor.START;
+                LoanServicingService.ChunkResult chunk;
+                do {
+                    chunk = loanServicingService.processDueChunk(status, cursor, dueBefore, chunkSize);
+                    cursor = chunk.cursor();
+                    scanned += chunk.scanned();
+                    debited += chunk.debited();
+                    if (System.nanoTime() > deadline) {
+                        log.warn("贷款批量还款超出时间窗口，停止于 status={}, loanId={}", status, cursor.id());
+                        break scan;
+                    }
+                } while (chunk.scanned() == chunkSize);
+            }
+
+            LoanServicingService.DelinquencyResult delinquency =
+                    loanServicingService.refreshDelinquency(LocalDate.now().atStartOfDay());
+
+            log.info("贷款批量还款完成: 扫描={}, 扣款成功={}, 新增逾期={}, 刷新逾期={}, 违约={}, 耗时={}ms",
+                    scanned, debited, delinquency.newlyDelinquent(), delinquency.refreshed(),
+                    delinquency.defaulted(), Duration.ofNanos(System.nanoTime() - startTime).toMillis());
+        } finally {
+            running.set(false);
+        }
+    }
+}
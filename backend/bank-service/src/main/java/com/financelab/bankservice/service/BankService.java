@@ -1,6 +1,8 @@
 package com.financelab.bankservice.service;
 
 import com.financelab.bankservice.dto.*;
+import com.financelab.bankservice.entity.BankAccount;
+import com.financelab.bankservice.entity.CreditCard;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -9,6 +11,7 @@ public interface BankService {
     
     // 账户管理
     BankAccountDTO createAccount(String userId, BankAccountDTO accountDTO);
+    List<BulkAccountResultDTO> createAccounts(List<BankAccountDTO> requests);
     BankAccountDTO getAccount(String accountNumber);
     List<BankAccountDTO> getUserAccounts(String userId);
     void closeAccount(String accountNumber);
@@ -25,13 +28,20 @@ public interface BankService {
     LoanDTO getLoan(Long loanId);
     List<LoanDTO> getUserLoans(String userId);
     TransactionDTO repayLoan(Long loanId, BigDecimal amount);
+    AmortizationScheduleDTO calculateLoanSchedule(BigDecimal principal, BigDecimal annualRate, int termMonths);
+    AmortizationScheduleDTO getLoanSchedule(Long loanId);
     
     // 信用卡管理
     CreditCardDTO applyForCreditCard(String userId, String cardHolder);
     CreditCardDTO getCreditCard(String cardNumber);
     List<CreditCardDTO> getUserCreditCards(String userId);
+    List<CreditCardStatementDTO> getCreditCardStatements(String cardNumber);
     TransactionDTO creditCardPayment(String cardNumber, BigDecimal amount);
     CreditCardDTO useCreditCard(String cardNumber, BigDecimal amount);
+    CreditCardDTO updateCreditCardStatus(String userId, String cardNumber, CreditCard.CardStatus status);
+    CardAuthorizationDTO authorizeCreditCard(String cardNumber, BigDecimal amount);
+    CardAuthorizationDTO captureAuthorization(String holdId);
+    CardAuthorizationDTO releaseAuthorization(String holdId);
     
     // 理财产品管理
     List<InvestmentProductDTO> getAvailableProducts();
@@ -52,5 +62,4 @@ public interface BankService {
     BigDecimal getTotalAssets(String userId);
     
     // 交易历史
-    List<TransactionDTO> getTransactionHistory(String accountNumber, int days);
 }
\ No newline at end of file
@@ -0,0 +1,334 @@
+package com.financelab.bankservice.service;
+
+import com.financelab.bankservice.dto.CardAuthorizationDTO;
+import com.financelab.bankservice.entity.CreditCard;
+import com.financelab.bankservice.repository.CreditCardRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 信用卡授权引擎
+ *
+ * 每张卡的可用额度（分）保存在内存 AtomicLong 中，预授权通过 CAS 扣减，额度不足时直接拒绝，
+ * 因此并发下不会透支；扣款（capture）后的已用额度增量由后台任务批量写回 credit_cards。
+ * 内存额度为单实例视图，多实例部署时需按卡号路由到同一实例。
+ *
+ * 每次预授权都检查内存中的卡片状态；卡片状态或额度变更后调用 refresh 立即同步，
+ * 另有定时任务从 credit_cards 同步已缓存卡片的状态与额度，覆盖直接修改数据库等其他写入路径。
+ */
+@Service
+@Slf4j
+public class CardAuthorizationService {
+
+    private static final int SYNC_CHUNK_SIZE = 500;
+
+    private static final String FLUSH_SQL =
+            "UPDATE credit_cards SET used_limit = used_limit + ?, current_balance = current_balance + ?, " +
+            "available_limit = available_limit - ?, updated_at = ? WHERE card_number = ?";
+
+    private final CreditCardRepository creditCardRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final IdGenerator idGenerator;
+    private final TransactionTemplate requiresNew;
+    private final long holdTtlSeconds;
+
+    private final Map<String, CardCell> cells = new ConcurrentHashMap<>();
+    private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+    private final Set<String> dirtyCards = ConcurrentHashMap.newKeySet();
+
+    public CardAuthorizationService(CreditCardRepository creditCardRepository,
+                                    JdbcTemplate jdbcTemplate,
+                                    IdGenerator idGenerator,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${bank.card-authorization.hold-ttl-seconds:900}") long holdTtlSeconds) {
+        this.creditCardRepository = creditCardRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.idGenerator = idGenerator;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.holdTtlSeconds = holdTtlSeconds;
+    }
+
+    /**
+     * 预授权：冻结额度并返回授权号
+     */
+    public CardAuthorizationDTO authorize(String cardNumber, BigDecimal amount) {
+        long cents = toCents(amount);
+        if (cents <= 0) {
+            throw new RuntimeException("消费金额必须大于零");
+        }
+
+        CardCell cell = cells.computeIfAbsent(cardNumber, this::loadCell);
+        if (cell.status != CreditCard.CardStatus.ACTIVE) {
+            throw new RuntimeException("信用卡状态无效");
+        }
+        long available;
+        do {
+            available = cell.availableCents.get();
+            if (available < cents) {
+                throw new RuntimeException("信用额度不足");
+            }
+        } while (!cell.availableCents.compareAndSet(available, available - cents));
+
+        Hold hold = new Hold(idGenerator.nextReferenceNumber(), cardNumber, cents,
+                LocalDateTime.now().plusSeconds(holdTtlSeconds));
+        holds.put(hold.holdId, hold);
+        return toDTO(hold, CardAuthorizationDTO.AuthorizationStatus.AUTHORIZED, available - cents);
+    }
+
+    /**
+     * 扣款：确认预授权金额，已用额度异步写回数据库
+     */
+    public CardAuthorizationDTO capture(String holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold == null) {
+            throw new RuntimeException("预授权不存在或已失效");
+        }
+
+        CardCell cell = cells.get(hold.cardNumber);
+        cell.unflushedCents.addAndGet(hold.cents);
+        dirtyCards.add(hold.cardNumber);
+        return toDTO(hold, CardAuthorizationDTO.AuthorizationStatus.CAPTURED, cell.availableCents.get());
+    }
+
+    /**
+     * 释放预授权，额度立即恢复
+     */
+    public CardAuthorizationDTO release(String holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold == null) {
+            throw new RuntimeException("预授权不存在或已失效");
+        }
+
+        long available = cells.get(hold.cardNumber).availableCents.addAndGet(hold.cents);
+        return toDTO(hold, CardAuthorizationDTO.AuthorizationStatus.RELEASED, available);
+    }
+
+    /**
+     * 还款后恢复内存中的可用额度；处于事务中时在提交后恢复，回滚不会多出额度
+     */
+    public void restoreLimit(String cardNumber, BigDecimal amount) {
+        if (amount.signum() <= 0) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addLimit(cardNumber, amount);
+                }
+            });
+        } else {
+            addLimit(cardNumber, amount);
+        }
+    }
+
+    /**
+     * 卡片状态或信用额度变更后同步内存中的卡片；处于事务中时在提交后同步
+     */
+    public void refresh(String cardNumber) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reload(cardNumber);
+                }
+            });
+        } else {
+            reload(cardNumber);
+        }
+    }
+
+    /**
+     * 定时从数据库同步已缓存卡片的状态与信用额度
+     */
+    @Scheduled(fixedDelayString = "${bank.card-authorization.sync-interval-ms:10000}")
+    public void syncCards() {
+        List<String> cardNumbers = new ArrayList<>(cells.keySet());
+        for (int from = 0; from < cardNumbers.size(); from += SYNC_CHUNK_SIZE) {
+            List<String> chunk = cardNumbers.subList(from, Math.min(cardNumbers.size(), from + SYNC_CHUNK_SIZE));
+            jdbcTemplate.query("SELECT card_number, status, credit_limit FROM credit_cards WHERE card_number IN (" +
+                            String.join(",", Collections.nCopies(chunk.size(), "?")) + ")",
+                    rs -> {
+                        CardCell cell = cells.get(rs.getString(1));
+                        if (cell != null) {
+                            cell.apply(CreditCard.CardStatus.valueOf(rs.getString(2)), toCents(rs.getBigDecimal(3)));
+                        }
+                    },
+                    chunk.toArray());
+        }
+    }
+
+    private void reload(String cardNumber) {
+        CardCell cell = cells.get(cardNumber);
+        if (cell == null) {
+            return; // 尚未缓存，下次预授权时从数据库加载
+        }
+        creditCardRepository.findByCardNumber(cardNumber).ifPresentOrElse(
+                card -> cell.apply(card.getStatus(), toCents(card.getCreditLimit())),
+                () -> cell.apply(CreditCard.CardStatus.CANCELLED, cell.creditLimitCents));
+    }
+
+    private void addLimit(String cardNumber, BigDecimal amount) {
+        CardCell cell = cells.get(cardNumber);
+        if (cell != null) {
+            cell.availableCents.addAndGet(toCents(amount));
+        }
+    }
+
+    /**
+     * 批处理计入利息、滞纳金后同步扣减内存中的可用额度
+     */
+    public void chargeLimit(String cardNumber, BigDecimal amount) {
+        CardCell cell = cells.get(cardNumber);
+        if (cell != null && amount.signum() > 0) {
+            cell.availableCents.addAndGet(-toCents(amount));
+        }
+    }
+
+    /**
+     * 释放已过期的预授权
+     */
+    @Scheduled(fixedDelayString = "${bank.card-authorization.expiry-interval-ms:5000}")
+    public void expireHolds() {
+        LocalDateTime now = LocalDateTime.now();
+        int expired = 0;
+        for (Hold hold : holds.values()) {
+            // remove(key, value) 保证与 capture/release 竞争时只有一方生效
+            if (hold.expiresAt.isBefore(now) && holds.remove(hold.holdId, hold)) {
+                cells.get(hold.cardNumber).availableCents.addAndGet(hold.cents);
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            log.info("释放过期预授权: {} 笔", expired);
+        }
+    }
+
+    /**
+     * 批量写回已扣款额度（独立事务提交，不受调用方事务回滚影响）
+     */
+    @Scheduled(fixedDelayString = "${bank.card-authorization.flush-interval-ms:1000}")
+    public void flush() {
+        if (dirtyCards.isEmpty()) {
+            return;
+        }
+
+        List<String> cardNumbers = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (String cardNumber : dirtyCards) {
+            dirtyCards.remove(cardNumber);
+            long delta = cells.get(cardNumber).unflushedCents.getAndSet(0);
+            if (delta == 0) {
+                continue;
+            }
+            BigDecimal amount = BigDecimal.valueOf(delta, 2);
+            cardNumbers.add(cardNumber);
+            deltas.add(delta);
+            batch.add(new Object[] { amount, amount, amount, now, cardNumber });
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            requiresNew.executeWithoutResult(status -> jdbcTemplate.batchUpdate(FLUSH_SQL, batch));
+            log.debug("信用卡额度写回: {} 张卡", batch.size());
+        } catch (Exception e) {
+            // 写回失败时把增量放回，等待下次重试
+            for (int i = 0; i < cardNumbers.size(); i++) {
+                cells.get(cardNumbers.get(i)).unflushedCents.addAndGet(deltas.get(i));
+                dirtyCards.add(cardNumbers.get(i));
+            }
+            log.error("信用卡额度写回失败，将在下次重试: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private CardCell loadCell(String cardNumber) {
+        CreditCard card = creditCardRepository.findByCardNumber(cardNumber)
+                .orElseThrow(() -> new RuntimeException("信用卡不存在"));
+        return new CardCell(toCents(card.getAvailableLimit()), toCents(card.getCreditLimit()), card.getStatus());
+    }
+
+    private CardAuthorizationDTO toDTO(Hold hold, CardAuthorizationDTO.AuthorizationStatus status, long availableCents) {
+        CardAuthorizationDTO dto = new CardAuthorizationDTO();
+        dto.setHoldId(hold.holdId);
+        dto.setCardNumber(hold.cardNumber);
+        dto.setAmount(BigDecimal.valueOf(hold.cents, 2));
+        dto.setStatus(status);
+        dto.setExpiresAt(hold.expiresAt);
+        dto.setAvailableLimit(BigDecimal.valueOf(availableCents, 2));
+        return dto;
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static final class CardCell {
+        private final AtomicLong availableCents;
+        private final AtomicLong unflushedCents = new AtomicLong();
+        private volatile CreditCard.CardStatus status;
+        private long creditLimitCents;
+
+        private CardCell(long availableCents, long creditLimitCents, CreditCard.CardStatus status) {
+            this.availableCents = new AtomicLong(availableCents);
+            this.creditLimitCents = creditLimitCents;
+            this.status = status;
+        }
+
+        /**
+         * 更新状态；信用额度变化的差额计入可用额度，已冻结与已扣款的额度保持不变
+         */
+        private synchronized void apply(CreditCard.CardStatus newStatus, long newCreditLimitCents) {
+            long delta = newCreditLimitCents - creditLimitCents;
+            if (delta != 0) {
+                creditLimitCents = newCreditLimitCents;
+                availableCents.addAndGet(delta);
+            }
+            status = newStatus;
+        }
+    }
+
+    private static final class Hold {
+        private final String holdId;
+        private final String cardNumber;
+        private final long cents;
+        private final LocalDateTime expiresAt;
+
+        private Hold(String holdId, String cardNumber, long cents, LocalDateTime expiresAt) {
+            this.holdId = holdId;
+            this.cardNumber = cardNumber;
+            this.cents = cents;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.financelab.bankservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 信用卡账单批处理：按账单日/还款日分区，以集合 SQL 生成账单、计息并标记逾期
+ *
+ * 每个分区是同一日期下一段连续的卡 id（或账单 id），借助 (status, 日期) 索引隐含的主键列做范围扫描，
+ * 因此各分区锁定的行互不重叠，可以并行提交；每日开销只与当天到期的卡数相关。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CreditCardStatementService {
+
+    private static final String CYCLE_DATES_SQL =
+            "SELECT DISTINCT billing_cycle_end FROM credit_cards " +
+            "WHERE status = 'ACTIVE' AND billing_cycle_end <= ? ORDER BY billing_cycle_end";
+
+    private static final String CYCLE_CARD_IDS_SQL =
+            "SELECT id FROM credit_cards WHERE status = 'ACTIVE' AND billing_cycle_end = ? ORDER BY id";
+
+    // 上期账单未在本期全额还清的部分按月利率计息
+    private static final String GENERATE_SQL =
+            "INSERT IGNORE INTO credit_card_statements (card_id, card_number, user_id, cycle_start, cycle_end, due_date, " +
+            "statement_balance, minimum_payment, interest_charged, late_fee, status, created_at) " +
+            "SELECT c.id, c.card_number, c.user_id, c.billing_cycle_start, c.billing_cycle_end, " +
+            "DATE_ADD(c.billing_cycle_end, INTERVAL ? DAY), c.current_balance + c.interest, " +
+            "ROUND((c.current_balance + c.interest) * ?, 2), c.interest, 0, 'OPEN', ? " +
+            "FROM (SELECT id, card_number, user_id, billing_cycle_start, billing_cycle_end, current_balance, " +
+            "ROUND(GREATEST(LEAST(COALESCE(statement_balance, 0) - COALESCE(cycle_payments, 0), current_balance), 0) " +
+            "* interest_rate / 1200, 2) AS interest " +
+            "FROM credit_cards WHERE status = 'ACTIVE' AND billing_cycle_end = ? AND id BETWEEN ? AND ?) c";
+
+    private static final String ROLL_CYCLE_SQL =
+            "UPDATE credit_cards c JOIN credit_card_statements s ON s.card_id = c.id AND s.cycle_end = c.billing_cycle_end " +
+            "SET c.current_balance = c.current_balance + s.interest_charged, " +
+            "c.used_limit = c.used_limit + s.interest_charged, " +
+            "c.available_limit = c.available_limit - s.interest_charged, " +
+            "c.statement_balance = s.statement_balance, c.minimum_payment = s.minimum_payment, c.cycle_payments = 0, " +
+            "c.billing_cycle_start = s.cycle_end, c.billing_cycle_end = DATE_ADD(s.cycle_end, INTERVAL ? DAY), " +
+            "c.payment_due_date = s.due_date, c.updated_at = ? " +
+            "WHERE c.status = 'ACTIVE' AND c.billing_cycle_end = ? AND c.id BETWEEN ? AND ?";
+
+    private static final String INTEREST_CHARGES_SQL =
+            "SELECT card_number, interest_charged FROM credit_card_statements " +
+            "WHERE cycle_end = ? AND card_id BETWEEN ? AND ? AND created_at = ? AND interest_charged > 0";
+
+    private static final String DUE_DATES_SQL =
+            "SELECT DISTINCT due_date FROM credit_card_statements WHERE status = 'OPEN' AND due_date < ? ORDER BY due_date";
+
+    private static final String DUE_STATEMENT_IDS_SQL =
+            "SELECT id FROM credit_card_statements WHERE status = 'OPEN' AND due_date = ? ORDER BY id";
+
+    private static final String LATE_CHARGES_SQL =
+            "SELECT s.card_number, c.late_payment_fee FROM credit_card_statements s JOIN credit_cards c ON c.id = s.card_id " +
+            "WHERE s.status = 'OPEN' AND s.due_date = ? AND s.id BETWEEN ? AND ? " +
+            "AND COALESCE(c.cycle_payments, 0) < s.minimum_payment FOR UPDATE";
+
+    private static final String MARK_OVERDUE_SQL =
+            "UPDATE credit_card_statements s JOIN credit_cards c ON c.id = s.card_id " +
+            "SET s.status = 'OVERDUE', s.late_fee = c.late_payment_fee, s.updated_at = ?, " +
+            "c.current_balance = c.current_balance + c.late_payment_fee, " +
+            "c.used_limit = c.used_limit + c.late_payment_fee, " +
+            "c.available_limit = c.available_limit - c.late_payment_fee, c.is_late = TRUE, c.updated_at = ? " +
+            "WHERE s.status = 'OPEN' AND s.due_date = ? AND s.id BETWEEN ? AND ? " +
+            "AND COALESCE(c.cycle_payments, 0) < s.minimum_payment";
+
+    private static final String MARK_PAID_SQL =
+            "UPDATE credit_card_statements s JOIN credit_cards c ON c.id = s.card_id " +
+            "SET s.status = 'PAID', s.updated_at = ?, c.is_late = FALSE " +
+            "WHERE s.status = 'OPEN' AND s.due_date = ? AND s.id BETWEEN ? AND ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${bank.card-statement.cycle-days:30}")
+    private int cycleDays;
+
+    @Value("${bank.card-statement.grace-days:15}")
+    private int graceDays;
+
+    @Value("${bank.card-statement.minimum-payment-rate:0.05}")
+    private BigDecimal minimumPaymentRate;
+
+    /**
+     * 将账单日不晚于 today 的卡按账单日分组，每组再按连续 id 切分为分区
+     */
+    public List<Partition> planStatementPartitions(LocalDate today, int partitionSize) {
+        List<Partition> partitions = new ArrayList<>();
+        for (LocalDate cycleEnd : jdbcTemplate.queryForList(CYCLE_DATES_SQL, LocalDate.class, Date.valueOf(today))) {
+            List<Long> ids = jdbcTemplate.queryForList(CYCLE_CARD_IDS_SQL, Long.class, Date.valueOf(cycleEnd));
+            split(cycleEnd, ids, partitionSize, partitions);
+        }
+        return partitions;
+    }
+
+    /**
+     * 将还款日早于 today 且仍未结清的账单按还款日分组并切分为分区
+     */
+    public List<Partition> planDuePartitions(LocalDate today, int partitionSize) {
+        List<Partition> partitions = new ArrayList<>();
+        for (LocalDate dueDate : jdbcTemplate.queryForList(DUE_DATES_SQL, LocalDate.class, Date.valueOf(today))) {
+            List<Long> ids = jdbcTemplate.queryForList(DUE_STATEMENT_IDS_SQL, Long.class, Date.valueOf(dueDate));
+            split(dueDate, ids, partitionSize, partitions);
+        }
+        return partitions;
+    }
+
+    /**
+     * 为一个分区生成账单、计入利息并滚动到下一账单周期
+     *
+     * @return 本分区计入的利息（用于同步授权引擎中的可用额度）
+     */
+    @Transactional
+    public PartitionResult generateStatements(Partition partition, LocalDateTime now) {
+        // DATETIME 列只保留到秒，截断后才能按 created_at 精确取回本次生成的账单
+        Timestamp nowTs = Timestamp.valueOf(now.truncatedTo(ChronoUnit.SECONDS));
+        Date cycleEnd = Date.valueOf(partition.date());
+
+        int generated = jdbcTemplate.update(GENERATE_SQL, graceDays, minimumPaymentRate, nowTs,
+                cycleEnd, partition.fromId(), partition.toId());
+        List<Charge> charges = jdbcTemplate.query(INTEREST_CHARGES_SQL,
+                (rs, rowNum) -> new Charge(rs.getString(1), rs.getBigDecimal(2)),
+                cycleEnd, partition.fromId(), partition.toId(), nowTs);
+        jdbcTemplate.update(ROLL_CYCLE_SQL, cycleDays, nowTs, cycleEnd, partition.fromId(), partition.toId());
+        return new PartitionResult(generated, charges);
+    }
+
+    /**
+     * 对一个分区的到期账单判定是否按期还款，未还足最低还款额的收取滞纳金并标记逾期
+     *
+     * @return 本分区收取的滞纳金（用于同步授权引擎中的可用额度）
+     */
+    @Transactional
+    public PartitionResult assessDueStatements(Partition partition, LocalDateTime now) {
+        Timestamp nowTs = Timestamp.valueOf(now);
+        Date dueDate = Date.valueOf(partition.date());
+
+        List<Charge> charges = jdbcTemplate.query(LATE_CHARGES_SQL,
+                (rs, rowNum) -> new Charge(rs.getString(1), rs.getBigDecimal(2)),
+                dueDate, partition.fromId(), partition.toId());
+        int overdue = jdbcTemplate.update(MARK_OVERDUE_SQL, nowTs, nowTs, dueDate, partition.fromId(), partition.toId());
+        jdbcTemplate.update(MARK_PAID_SQL, nowTs, dueDate, partition.fromId(), partition.toId());
+        return new PartitionResult(overdue, charges);
+    }
+
+    private static void split(LocalDate date, List<Long> ids, int partitionSize, List<Partition> partitions) {
+        for (int from = 0; from < ids.size(); from += partitionSize) {
+            int to = Math.min(from + partitionSize, ids.size()) - 1;
+            partitions.add(new Partition(date, ids.get(from), ids.get(to)));
+        }
+    }
+
+    public record Partition(LocalDate date, long fromId, long toId) {}
+
+    public record Charge(String cardNumber, BigDecimal amount) {}
+
+    public record PartitionResult(int rows, List<Charge> charges) {}
+}
@@ -0,0 +1,140 @@
+package com.financelab.bankservice.service;
+
+import com.financelab.bankservice.repository.IdSequenceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 账户号、卡号与交易流水号生成器
+ *
+ * 每个序列从 id_sequences 表中按块预留号段（独立事务提交），号段内通过 CAS 无锁分配，
+ * 多实例部署时各实例持有互不重叠的号段，因此不会产生重复号码。
+ */
+@Component
+@Slf4j
+public class IdGenerator {
+
+    private static final String ACCOUNT_SEQUENCE = "account_number";
+    private static final String CARD_SEQUENCE = "card_number";
+    private static final String REFERENCE_SEQUENCE = "reference_number";
+
+    private final IdSequenceRepository sequenceRepository;
+    private final TransactionTemplate requiresNew;
+    private final BlockSequence accountSequence;
+    private final BlockSequence cardSequence;
+    private final BlockSequence referenceSequence;
+
+    public IdGenerator(IdSequenceRepository sequenceRepository,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${bank.id-generator.block-size:1000}") long blockSize,
+                       @Value("${bank.id-generator.reference-block-size:10000}") long referenceBlockSize) {
+        this.sequenceRepository = sequenceRepository;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.accountSequence = new BlockSequence(ACCOUNT_SEQUENCE, blockSize);
+        this.cardSequence = new BlockSequence(CARD_SEQUENCE, blockSize);
+        this.referenceSequence = new BlockSequence(REFERENCE_SEQUENCE, referenceBlockSize);
+    }
+
+    /**
+     * 生成账户号：62 + 12位序号 + Luhn 校验位（共15位，与旧的12位账户号不重叠）
+     */
+    public String nextAccountNumber() {
+        return withLuhnDigit("62" + String.format("%012d", accountSequence.next()));
+    }
+
+    /**
+     * 生成信用卡号：4 + 14位序号 + Luhn 校验位（共16位）
+     */
+    public String nextCardNumber() {
+        return withLuhnDigit("4" + String.format("%014d", cardSequence.next()));
+    }
+
+    /**
+     * 生成交易流水号（16位）
+     */
+    public String nextReferenceNumber() {
+        return String.format("%016d", referenceSequence.next());
+    }
+
+    /**
+     * 计算 Luhn 校验位并追加到号码末尾
+     */
+    public static String withLuhnDigit(String payload) {
+        int sum = 0;
+        boolean doubleDigit = true; // 从右往左，校验位左侧第一位开始加倍
+        for (int i = payload.length() - 1; i >= 0; i--) {
+            int digit = payload.charAt(i) - '0';
+            if (doubleDigit) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubleDigit = !doubleDigit;
+        }
+        return payload + (10 - sum % 10) % 10;
+    }
+
+    /**
+     * 从数据库预留 [start, end) 号段
+     */
+    private Block reserve(String name, long blockSize) {
+        Long end = requiresNew.execute(status -> {
+            sequenceRepository.insertIfAbsent(name, 1L);
+            sequenceRepository.advance(name, blockSize);
+            return sequenceRepository.currentValue(name);
+        });
+        if (end == null) {
+            throw new IllegalStateException("号段分配失败: " + name);
+        }
+        log.debug("预留号段: sequence={}, range=[{}, {})", name, end - blockSize, end);
+        return new Block(end - blockSize, end);
+    }
+
+    private static final class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+
+    private final class BlockSequence {
+        private final String name;
+        private final long blockSize;
+        private final AtomicReference<Block> current = new AtomicReference<>(new Block(0, 0));
+
+        private BlockSequence(String name, long blockSize) {
+            this.name = name;
+            this.blockSize = blockSize;
+        }
+
+        private long next() {
+            while (true) {
+                Block block = current.get();
+                long value = block.next.getAndIncrement();
+                if (value < block.end) {
+                    return value;
+                }
+                refill(block);
+            }
+        }
+
+        private synchronized void refill(Block exhausted) {
+            if (current.get() == exhausted) {
+                current.set(reserve(name, blockSize));
+            }
+        }
+    }
+}
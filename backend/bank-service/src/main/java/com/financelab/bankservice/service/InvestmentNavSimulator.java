@@ -0,0 +1,118 @@
+package com.financelab.bankservice.service;
+
+import com.financelab.bankservice.entity.InvestmentProduct;
+import com.financelab.bankservice.repository.InvestmentProductRepository;
+import com.financelab.bankservice.repository.UserInvestmentRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 理财产品净值模拟：按产品生成日收益率，并以集合更新方式计提持仓收益
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InvestmentNavSimulator {
+
+    private final InvestmentProductRepository productRepository;
+    private final UserInvestmentRepository userInvestmentRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Random random = new Random();
+
+    @Value("${bank.investment-nav.maturity-batch-size:1000}")
+    private int maturityBatchSize;
+
+    /**
+     * 每日凌晨计算产品净值并计提收益
+     */
+    @Scheduled(cron = "${bank.investment-nav.cron:0 0 2 * * ?}")
+    public void runDailyValuation() {
+        log.info("开始计算理财产品净值...");
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate today = now.toLocalDate();
+
+        // 先处理到期持仓，到期后的持仓不再计提收益
+        int matured = matureInvestments(now);
+
+        // 已终止的产品不再计提收益
+        List<InvestmentProduct> products = productRepository.findActiveProducts();
+        int valued = 0;
+        long accrued = 0;
+        for (InvestmentProduct product : products) {
+            if (today.equals(product.getNavDate())) {
+                continue; // 当日已计提，避免重复运行导致重复计息
+            }
+            try {
+                accrued += valueProduct(product, now);
+                valued++;
+            } catch (Exception e) {
+                log.error("计算产品净值失败，产品: {}", product.getProductCode(), e);
+            }
+        }
+
+        log.info("理财产品净值计算完成: 产品={}, 计提持仓={}, 到期持仓={}", valued, accrued, matured);
+    }
+
+    /**
+     * 分批将到期持仓置为已到期，每批单独提交以缩短行锁持有时间；到期持仓由用户赎回到账
+     */
+    public int matureInvestments(LocalDateTime now) {
+        int total = 0;
+        int updated;
+        do {
+            Integer rows = transactionTemplate.execute(status ->
+                    userInvestmentRepository.markMaturedInvestments(now, maturityBatchSize));
+            updated = rows != null ? rows : 0;
+            total += updated;
+        } while (updated == maturityBatchSize);
+        return total;
+    }
+
+    /**
+     * 计提单个产品的日收益，持仓更新与净值更新在同一事务中提交
+     */
+    private int valueProduct(InvestmentProduct product, LocalDateTime now) {
+        BigDecimal dailyReturn = BigDecimal.valueOf(simulateDailyReturn(product)).setScale(8, RoundingMode.HALF_UP);
+        BigDecimal nav = product.getNetAssetValue() != null ? product.getNetAssetValue() : BigDecimal.ONE;
+
+        Integer updated = transactionTemplate.execute(status -> {
+            int rows = userInvestmentRepository.accrueDailyReturn(product.getId(), dailyReturn, now);
+            product.setNetAssetValue(nav.multiply(BigDecimal.ONE.add(dailyReturn)).setScale(6, RoundingMode.HALF_UP));
+            product.setNavDate(now.toLocalDate());
+            product.setUpdatedAt(now);
+            productRepository.save(product);
+            return rows;
+        });
+        return updated != null ? updated : 0;
+    }
+
+    /**
+     * 根据预期年化收益率与风险等级生成日收益率
+     */
+    private double simulateDailyReturn(InvestmentProduct product) {
+        double drift = product.getExpectedReturnRate().doubleValue() / 100.0 / 365.0;
+        if (product.getProductType() == InvestmentProduct.ProductType.FIXED_INCOME) {
+            return drift; // 固定收益产品无波动
+        }
+
+        // 风险等级每级对应约2%的年化波动率
+        double dailyVolatility = product.getRiskLevel().doubleValue() * 0.02 / Math.sqrt(365.0);
+        double dailyReturn = drift + dailyVolatility * random.nextGaussian();
+
+        if (product.getProductType() == InvestmentProduct.ProductType.STRUCTURED) {
+            return Math.max(0, dailyReturn); // 保本型结构性产品不计负收益
+        }
+        return dailyReturn;
+    }
+}
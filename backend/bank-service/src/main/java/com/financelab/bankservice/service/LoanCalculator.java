@@ -0,0 +1,158 @@
+package com.financelab.bankservice.service;
+
+import com.financelab.bankservice.dto.AmortizationEntryDTO;
+import com.financelab.bankservice.dto.AmortizationScheduleDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 贷款计算器：等额本息月供与完整还款计划
+ *
+ * 计算在 long（分）与 double（月利率）上进行，末期吸收舍入误差，
+ * 保证各期本金之和与贷款本金按分精确相等；结果按（本金, 利率, 期数）做 LRU 缓存。
+ * 缓存中只保存不对外暴露的按分计算结果，每次调用都生成新的 DTO，调用方修改返回值不会影响缓存。
+ * 期数限制在 1 到 bank.loan-calculator.max-term-months 之间，超出范围的请求在计算与缓存之前拒绝。
+ */
+@Component
+public class LoanCalculator {
+
+    private final Map<ScheduleKey, Schedule> cache;
+    private final int maxTermMonths;
+
+    public LoanCalculator(@Value("${bank.loan-calculator.cache-size:1024}") int cacheSize,
+                          @Value("${bank.loan-calculator.max-term-months:480}") int maxTermMonths) {
+        this.maxTermMonths = maxTermMonths;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ScheduleKey, Schedule> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * 校验贷款期数
+     */
+    public void validateTerm(int months) {
+        if (months < 1 || months > maxTermMonths) {
+            throw new IllegalArgumentException("贷款期限须在 1 到 " + maxTermMonths + " 个月之间");
+        }
+    }
+
+    /**
+     * 计算月供
+     */
+    public BigDecimal calculateMonthlyPayment(BigDecimal principal, BigDecimal annualRate, int months) {
+        if (months <= 0) {
+            return BigDecimal.ZERO;
+        }
+        return BigDecimal.valueOf(paymentCents(toCents(principal), annualRate.doubleValue() / 1200.0, months), 2);
+    }
+
+    /**
+     * 获取完整还款计划，相同参数的计划直接从缓存返回
+     */
+    public AmortizationScheduleDTO getSchedule(BigDecimal principal, BigDecimal annualRate, int months) {
+        validateTerm(months);
+        if (principal.signum() <= 0 || annualRate.signum() < 0) {
+            throw new IllegalArgumentException("贷款参数无效");
+        }
+
+        ScheduleKey key = new ScheduleKey(toCents(principal),
+                annualRate.setScale(4, RoundingMode.HALF_UP).unscaledValue().longValueExact(), months);
+        Schedule schedule;
+        synchronized (cache) {
+            schedule = cache.get(key);
+        }
+        if (schedule == null) {
+            schedule = computeSchedule(key);
+            synchronized (cache) {
+                cache.put(key, schedule);
+            }
+        }
+        return toDTO(key, schedule);
+    }
+
+    private Schedule computeSchedule(ScheduleKey key) {
+        int n = key.termMonths();
+        double monthlyRate = key.rateScaled() / 10000.0 / 1200.0;
+        long payment = paymentCents(key.principalCents(), monthlyRate, n);
+
+        long[] interest = new long[n];
+        long[] principalPart = new long[n];
+        long[] balance = new long[n];
+
+        long remaining = key.principalCents();
+        for (int i = 0; i < n; i++) {
+            long periodInterest = Math.round(remaining * monthlyRate);
+            long periodPrincipal = (i == n - 1)
+                    ? remaining // 末期结清剩余本金，吸收舍入误差
+                    : Math.min(payment - periodInterest, remaining);
+            remaining -= periodPrincipal;
+            interest[i] = periodInterest;
+            principalPart[i] = periodPrincipal;
+            balance[i] = remaining;
+        }
+        return new Schedule(payment, interest, principalPart, balance);
+    }
+
+    private static AmortizationScheduleDTO toDTO(ScheduleKey key, Schedule schedule) {
+        int n = key.termMonths();
+        List<AmortizationEntryDTO> entries = new ArrayList<>(n);
+        long totalInterest = 0;
+        for (int i = 0; i < n; i++) {
+            totalInterest += schedule.interest[i];
+            entries.add(new AmortizationEntryDTO(i + 1,
+                    BigDecimal.valueOf(schedule.interest[i] + schedule.principal[i], 2),
+                    BigDecimal.valueOf(schedule.interest[i], 2),
+                    BigDecimal.valueOf(schedule.principal[i], 2),
+                    BigDecimal.valueOf(schedule.balance[i], 2)));
+        }
+
+        AmortizationScheduleDTO dto = new AmortizationScheduleDTO();
+        dto.setPrincipal(BigDecimal.valueOf(key.principalCents(), 2));
+        dto.setAnnualRate(BigDecimal.valueOf(key.rateScaled(), 4));
+        dto.setTermMonths(n);
+        dto.setMonthlyPayment(BigDecimal.valueOf(schedule.payment, 2));
+        dto.setTotalInterest(BigDecimal.valueOf(totalInterest, 2));
+        dto.setTotalPayment(BigDecimal.valueOf(key.principalCents() + totalInterest, 2));
+        dto.setEntries(entries);
+        return dto;
+    }
+
+    private static long paymentCents(long principalCents, double monthlyRate, int months) {
+        if (monthlyRate == 0) {
+            return Math.round((double) principalCents / months);
+        }
+        return Math.round(principalCents * monthlyRate / (1 - Math.pow(1 + monthlyRate, -months)));
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /** 本金以分计，年利率按4位小数缩放为整数，避免 BigDecimal 标度不同导致缓存未命中 */
+    private record ScheduleKey(long principalCents, long rateScaled, int termMonths) {}
+
+    /** 各期金额（分）；数组创建后只读，不离开本类 */
+    private static final class Schedule {
+        private final long payment;
+        private final long[] interest;
+        private final long[] principal;
+        private final long[] balance;
+
+        private Schedule(long payment, long[] interest, long[] principal, long[] balance) {
+            this.payment = payment;
+            this.interest = interest;
+            this.principal = principal;
+            this.balance = balance;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.financelab.bankservice.service;
+
+import com.financelab.bankservice.entity.BankAccount;
+import com.financelab.bankservice.entity.Loan;
+import com.financelab.bankservice.entity.Transaction;
+import com.financelab.bankservice.repository.BankAccountRepository;
+import com.financelab.bankservice.repository.LoanRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 贷款批量还款服务：按块扣款、拆分本息、批量更新逾期状态
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LoanServicingService {
+
+    /**
+     * 自动扣款的贷款状态（违约贷款同样继续催收，扣款后按还款进度恢复状态）
+     */
+    public static final List<Loan.LoanStatus> SERVICED_STATUSES =
+            List.of(Loan.LoanStatus.ACTIVE, Loan.LoanStatus.DELINQUENT, Loan.LoanStatus.DEFAULTED);
+
+    private static final String DEBIT_SQL =
+            "UPDATE bank_accounts SET balance = balance - ?, available_balance = available_balance - ?, updated_at = ? " +
+            "WHERE id = ? AND is_active = TRUE AND available_balance >= ?";
+
+    private static final String LOAN_UPDATE_SQL =
+            "UPDATE loans SET remaining_amount = ?, remaining_months = ?, total_interest_paid = ?, next_payment_date = ?, " +
+            "status = ?, completed_at = ?, late_fee = ?, overdue_days = ? WHERE id = ?";
+
+    private static final String LEDGER_INSERT_SQL =
+            "INSERT INTO transactions (from_account_number, to_account_number, type, amount, fee, balance_after, " +
+            "transaction_time, description, reference_number, status) VALUES (?, 'BANK', ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final LoanRepository loanRepository;
+    private final BankAccountRepository accountRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final IdGenerator idGenerator;
+
+    @Value("${bank.loan-servicing.grace-days:3}")
+    private int graceDays;
+
+    @Value("${bank.loan-servicing.default-days:90}")
+    private int defaultDays;
+
+    @Value("${bank.loan-servicing.daily-late-fee-rate:0.0005}")
+    private BigDecimal dailyLateFeeRate;
+
+    /**
+     * 处理一块到期贷款：从储蓄账户自动扣款并更新贷款余额
+     *
+     * 扣款后 next_payment_date 只会后移，仍未超过到期上限的贷款会在同一次扫描中再次读到并补扣下一期，
+     * 游标单调递增，扫描必然结束
+     *
+     * @param status 本次扫描的贷款状态
+     * @param cursor 上一块最后一笔贷款的 (next_payment_date, id) 游标
+     * @param dueBefore 到期时间上限
+     * @param chunkSize 每块贷款数量
+     */
+    @Transactional
+    public ChunkResult processDueChunk(Loan.LoanStatus status, DueCursor cursor, LocalDateTime dueBefore, int chunkSize) {
+        List<Loan> loans = loanRepository.findDueLoansAfter(
+                status, dueBefore, cursor.nextPaymentDate(), cursor.id(), PageRequest.of(0, chunkSize));
+        if (loans.isEmpty()) {
+            return new ChunkResult(0, 0, cursor);
+        }
+
+        Map<String, BankAccount> savingsByUser = loadSavingsAccounts(loans);
+        Map<Long, BigDecimal> runningBalances = new HashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        List<Installment> installments = new ArrayList<>(loans.size());
+        for (Loan loan : loans) {
+            BankAccount account = savingsByUser.get(loan.getUserId());
+            if (account == null) {
+                continue;
+            }
+
+            Installment installment = computeInstallment(loan, account);
+            BigDecimal available = runningBalances.getOrDefault(account.getId(), account.getAvailableBalance());
+            if (available.compareTo(installment.total()) < 0) {
+                continue; // 余额不足，留给逾期处理
+            }
+            runningBalances.put(account.getId(), available.subtract(installment.total()));
+            installment.balanceAfter = available.subtract(installment.total());
+            installments.add(installment);
+        }
+
+        Loan last = loans.get(loans.size() - 1);
+        int debited = applyInstallments(installments, now);
+        return new ChunkResult(loans.size(), debited, new DueCursor(last.getNextPaymentDate(), last.getId()));
+    }
+
+    /**
+     * 以集合更新方式刷新逾期天数、滞纳金与贷款状态
+     */
+    @Transactional
+    public DelinquencyResult refreshDelinquency(LocalDateTime today) {
+        int delinquent = loanRepository.markDelinquentLoans(today.minusDays(graceDays));
+        int refreshed = loanRepository.refreshOverdueDaysAndLateFees(today, dailyLateFeeRate);
+        int defaulted = loanRepository.markDefaultedLoans(defaultDays);
+        return new DelinquencyResult(delinquent, refreshed, defaulted);
+    }
+
+    /**
+     * 按等额本息拆分当期应还利息与本金
+     */
+    public static BigDecimal[] splitPayment(BigDecimal remaining, BigDecimal annualRate,
+                                            BigDecimal monthlyPayment, int remainingMonths) {
+        BigDecimal interest = remaining.multiply(annualRate)
+                .divide(new BigDecimal("1200"), 2, RoundingMode.HALF_UP);
+        BigDecimal payment = monthlyPayment;
+        if (remainingMonths <= 1 || remaining.add(interest).compareTo(monthlyPayment) <= 0) {
+            payment = remaining.add(interest); // 末期结清
+        }
+        BigDecimal principal = payment.subtract(interest).max(BigDecimal.ZERO);
+        return new BigDecimal[] { interest, principal };
+    }
+
+    private Map<String, BankAccount> loadSavingsAccounts(List<Loan> loans) {
+        List<String> userIds = loans.stream().map(Loan::getUserId).distinct().toList();
+        Map<String, BankAccount> savingsByUser = new HashMap<>();
+        for (BankAccount account : accountRepository.findByUserIdInAndAccountTypeAndIsActiveTrue(
+                userIds, BankAccount.AccountType.SAVINGS)) {
+            savingsByUser.putIfAbsent(account.getUserId(), account);
+        }
+        return savingsByUser;
+    }
+
+    private Installment computeInstallment(Loan loan, BankAccount account) {
+        BigDecimal[] split = splitPayment(loan.getRemainingAmount(), loan.getInterestRate(),
+                loan.getMonthlyPayment(), loan.getRemainingMonths());
+        BigDecimal lateFee = loan.getLateFee() != null ? loan.getLateFee() : BigDecimal.ZERO;
+        return new Installment(loan, account, split[0], split[1], lateFee);
+    }
+
+    private int applyInstallments(List<Installment> installments, LocalDateTime now) {
+        if (installments.isEmpty()) {
+            return 0;
+        }
+        Timestamp nowTs = Timestamp.valueOf(now);
+
+        // 条件扣款：余额在并发下被其他操作占用时该行更新数为0，对应贷款本次跳过
+        List<Object[]> debits = new ArrayList<>(installments.size());
+        for (Installment i : installments) {
+            debits.add(new Object[] { i.total(), i.total(), nowTs, i.account.getId(), i.total() });
+        }
+        int[] debitCounts = jdbcTemplate.batchUpdate(DEBIT_SQL, debits);
+
+        List<Object[]> loanUpdates = new ArrayList<>();
+        List<Object[]> ledger = new ArrayList<>();
+        for (int idx = 0; idx < installments.size(); idx++) {
+            if (debitCounts[idx] == 0 || debitCounts[idx] == Statement.EXECUTE_FAILED) {
+                continue;
+            }
+            Installment i = installments.get(idx);
+            Loan loan = i.loan;
+
+            BigDecimal remaining = loan.getRemainingAmount().subtract(i.principal).max(BigDecimal.ZERO);
+            int remainingMonths = Math.max(0, loan.getRemainingMonths() - 1);
+            BigDecimal totalInterest = (loan.getTotalInterestPaid() != null ? loan.getTotalInterestPaid() : BigDecimal.ZERO)
+                    .add(i.interest);
+            LocalDateTime nextPaymentDate = loan.getNextPaymentDate().plusMonths(1);
+
+            Loan.LoanStatus status;
+            Timestamp completedAt = null;
+            if (remaining.compareTo(BigDecimal.ZERO) <= 0) {
+                status = Loan.LoanStatus.PAID_OFF;
+                completedAt = nowTs;
+            } else if (nextPaymentDate.isAfter(now)) {
+                status = Loan.LoanStatus.ACTIVE;
+            } else {
+                status = Loan.LoanStatus.DELINQUENT; // 仍有更早期数未还
+            }
+
+            loanUpdates.add(new Object[] { remaining, remainingMonths, totalInterest, Timestamp.valueOf(nextPaymentDate),
+                    status.name(), completedAt, BigDecimal.ZERO, 0, loan.getId() });
+            ledger.add(new Object[] { i.account.getAccountNumber(), Transaction.TransactionType.LOAN_REPAYMENT.name(),
+                    i.interest.add(i.principal), i.lateFee, i.balanceAfter, nowTs,
+                    "贷款自动还款: loanId=" + loan.getId(), idGenerator.nextReferenceNumber(),
+                    Transaction.TransactionStatus.COMPLETED.name() });
+        }
+
+        jdbcTemplate.batchUpdate(LOAN_UPDATE_SQL, loanUpdates);
+        jdbcTemplate.batchUpdate(LEDGER_INSERT_SQL, ledger);
+        return loanUpdates.size();
+    }
+
+    private static final class Installment {
+        private final Loan loan;
+        private final BankAccount account;
+        private final BigDecimal interest;
+        private final BigDecimal principal;
+        private final BigDecimal lateFee;
+        private BigDecimal balanceAfter;
+
+        private Installment(Loan loan, BankAccount account, BigDecimal interest, BigDecimal principal, BigDecimal lateFee) {
+            this.loan = loan;
+            this.account = account;
+            this.interest = interest;
+            this.principal = principal;
+            this.lateFee = lateFee;
+        }
+
+        private BigDecimal total() {
+            return interest.add(principal).add(lateFee);
+        }
+    }
+
+    public record ChunkResult(int scanned, int debited, DueCursor cursor) {}
+
+    /**
+     * 到期贷款扫描游标，START 位于所有贷款之前
+     */
+    public record DueCursor(LocalDateTime nextPaymentDate, long id) {
+        public static final DueCursor START = new DueCursor(LocalDateTime.of(1970, 1, 1, 0, 0), 0);
+    }
+
+    public record DelinquencyResult(int newlyDelinquent, int refreshed, int defaulted) {}
+}
@@ -0,0 +1,451 @@
+package com.financelab.bankservice.service;
+
+import com.financelab.bankservice.dto.PaymentDebitDTO;
+import com.financelab.bankservice.entity.BankAccount;
+import com.financelab.bankservice.entity.PaymentDebit;
+import com.financelab.bankservice.entity.Transaction;
+import com.financelab.bankservice.repository.BankAccountRepository;
+import com.financelab.bankservice.repository.PaymentDebitRepository;
+import com.financelab.common.event.AssetChangePublisher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 服务间批量扣款、退款与入账（商城支付、房产租金与持有支出）
+ *
+ * 每笔扣款带调用方生成的幂等键：先以 INSERT IGNORE 在 payment_debits 中占用幂等键，
+ * 已存在的键直接返回首次处理的结果（重复投递不会重复扣款）；新键在同一事务中按用户的活期账户
+ * （没有则储蓄账户）条件扣款、写交易流水并落定结果。余额不足的扣款记为失败，同样按幂等键固定下来。
+ * 金额不大于零的请求直接返回失败，不占用幂等键。
+ *
+ * 退款同样按幂等键处理，并指明原扣款的幂等键：原扣款以条件 UPDATE 从 COMPLETED 置为 REFUNDED，
+ * 每笔扣款只能退款一次，退款金额不超过原扣款，款项退回原扣款账户；单笔退款失败只记为该笔失败，不影响同批其他请求。
+ *
+ * 入账同样按幂等键处理，款项记入用户的活期账户（没有则储蓄账户）。扣款与入账的对方账户由调用方指明，未指明时为商城。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentDebitService {
+
+    private static final String MERCHANT_ACCOUNT = "MALL";
+
+    private static final String CLAIM_SQL =
+            "INSERT IGNORE INTO payment_debits (idempotency_key, user_id, amount, status, type, refund_of, created_at) " +
+            "VALUES (?, ?, ?, 'PROCESSING', ?, ?, ?)";
+
+    private static final String MARK_REFUNDED_SQL =
+            "UPDATE payment_debits SET status = 'REFUNDED' WHERE idempotency_key = ? AND user_id = ? " +
+            "AND status = 'COMPLETED' AND (type IS NULL OR type = 'DEBIT') AND amount >= ?";
+
+    private static final String UNMARK_REFUNDED_SQL =
+            "UPDATE payment_debits SET status = 'COMPLETED' WHERE idempotency_key = ? AND status = 'REFUNDED'";
+
+    private static final String CREDIT_SQL =
+            "UPDATE bank_accounts SET balance = balance + ?, available_balance = available_balance + ?, updated_at = ? " +
+            "WHERE account_number = ?";
+
+    private static final String DEBIT_SQL =
+            "UPDATE bank_accounts SET balance = balance - ?, available_balance = available_balance - ?, updated_at = ? " +
+            "WHERE id = ? AND is_active = TRUE AND available_balance >= ?";
+
+    private static final String LEDGER_INSERT_SQL =
+            "INSERT INTO transactions (from_account_number, to_account_number, type, amount, fee, balance_after, " +
+            "transaction_time, description, reference_number, status) VALUES (?, ?, ?, ?, 0, ?, ?, ?, ?, ?)";
+
+    private static final String COMPLETE_SQL =
+            "UPDATE payment_debits SET status = ?, account_number = ?, reference_number = ?, failure_reason = ?, " +
+            "completed_at = ? WHERE idempotency_key = ?";
+
+    private final PaymentDebitRepository paymentDebitRepository;
+    private final BankAccountRepository accountRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final IdGenerator idGenerator;
+    private final AssetChangePublisher assetChangePublisher;
+
+    /**
+     * 批量扣款，按请求顺序返回每笔的结果；同一批内重复的幂等键只处理一次
+     */
+    @Transactional
+    public List<PaymentDebitDTO> debitAll(List<PaymentDebitDTO> requests) {
+        Map<String, PaymentDebitDTO> results = new HashMap<>();
+        List<PaymentDebitDTO> unique = validate(requests, results, false);
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp nowTs = Timestamp.valueOf(now);
+
+        List<PaymentDebitDTO> claimed = claim(unique, PaymentDebit.DebitType.DEBIT, results, nowTs);
+        debitClaimed(claimed, results, now, nowTs);
+
+        log.info("批量扣款: 请求 {} 笔, 新处理 {} 笔, 重复 {} 笔", requests.size(), claimed.size(), unique.size() - claimed.size());
+        return ordered(requests, results);
+    }
+
+    /**
+     * 批量退款，按请求顺序返回每笔的结果；每项的 refundOf 为原扣款的幂等键
+     */
+    @Transactional
+    public List<PaymentDebitDTO> refundAll(List<PaymentDebitDTO> requests) {
+        Map<String, PaymentDebitDTO> results = new HashMap<>();
+        List<PaymentDebitDTO> unique = validate(requests, results, true);
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp nowTs = Timestamp.valueOf(now);
+
+        List<PaymentDebitDTO> claimed = claim(unique, PaymentDebit.DebitType.REFUND, results, nowTs);
+        if (!claimed.isEmpty()) {
+            Map<String, PaymentDebit> originals = new HashMap<>();
+            for (PaymentDebit debit : paymentDebitRepository.findByIdempotencyKeyIn(
+                    claimed.stream().map(PaymentDebitDTO::getRefundOf).toList())) {
+                originals.put(debit.getIdempotencyKey(), debit);
+            }
+            List<Object[]> completions = new ArrayList<>(claimed.size());
+            for (PaymentDebitDTO request : claimed) {
+                PaymentDebitDTO result = refund(request, originals.get(request.getRefundOf()), nowTs);
+                results.put(request.getIdempotencyKey(), result);
+                completions.add(new Object[] { result.getStatus().name(), result.getAccountNumber(),
+                        result.getReferenceNumber(), result.getFailureReason(), nowTs, result.getIdempotencyKey() });
+            }
+            jdbcTemplate.batchUpdate(COMPLETE_SQL, completions);
+        }
+
+        log.info("批量退款: 请求 {} 笔, 新处理 {} 笔, 重复 {} 笔", requests.size(), claimed.size(), unique.size() - claimed.size());
+        return ordered(requests, results);
+    }
+
+    /**
+     * 批量入账，按请求顺序返回每笔的结果
+     */
+    @Transactional
+    public List<PaymentDebitDTO> creditAll(List<PaymentDebitDTO> requests) {
+        Map<String, PaymentDebitDTO> results = new HashMap<>();
+        List<PaymentDebitDTO> unique = validate(requests, results, false);
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp nowTs = Timestamp.valueOf(now);
+
+        List<PaymentDebitDTO> claimed = claim(unique, PaymentDebit.DebitType.CREDIT, results, nowTs);
+        creditClaimed(claimed, results, nowTs);
+
+        log.info("批量入账: 请求 {} 笔, 新处理 {} 笔, 重复 {} 笔", requests.size(), claimed.size(), unique.size() - claimed.size());
+        return ordered(requests, results);
+    }
+
+    /**
+     * 校验请求并按幂等键去重；金额不大于零的请求直接记为失败，不占用幂等键
+     */
+    private static List<PaymentDebitDTO> validate(List<PaymentDebitDTO> requests, Map<String, PaymentDebitDTO> results,
+                                                  boolean refund) {
+        if (requests == null || requests.isEmpty()) {
+            throw new RuntimeException("请求列表不能为空");
+        }
+        Map<String, PaymentDebitDTO> byKey = new LinkedHashMap<>();
+        for (PaymentDebitDTO request : requests) {
+            if (request.getIdempotencyKey() == null || request.getIdempotencyKey().isBlank()) {
+                throw new RuntimeException("幂等键不能为空");
+            }
+            if (request.getUserId() == null) {
+                throw new RuntimeException("用户ID不能为空");
+            }
+            if (refund && (request.getRefundOf() == null || request.getRefundOf().isBlank())) {
+                throw new RuntimeException("原扣款幂等键不能为空");
+            }
+            if (request.getAmount() == null || request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+                PaymentDebitDTO result = newResult(request);
+                fail(result, refund ? "退款金额必须大于零" : "扣款金额必须大于零");
+                results.putIfAbsent(request.getIdempotencyKey(), result);
+                continue;
+            }
+            byKey.putIfAbsent(request.getIdempotencyKey(), request);
+        }
+        return new ArrayList<>(byKey.values());
+    }
+
+    /**
+     * 占用幂等键；键已存在（或正被另一事务处理）时插入数为0，等待其提交后读取结果
+     *
+     * @return 本次新占用的请求
+     */
+    private List<PaymentDebitDTO> claim(List<PaymentDebitDTO> unique, PaymentDebit.DebitType type,
+                                        Map<String, PaymentDebitDTO> results, Timestamp nowTs) {
+        if (unique.isEmpty()) {
+            return unique;
+        }
+        List<Object[]> claims = new ArrayList<>(unique.size());
+        for (PaymentDebitDTO request : unique) {
+            claims.add(new Object[] { request.getIdempotencyKey(), request.getUserId(), request.getAmount(),
+                    type.name(), request.getRefundOf(), nowTs });
+        }
+        int[] claimCounts = jdbcTemplate.batchUpdate(CLAIM_SQL, claims);
+
+        List<PaymentDebitDTO> claimed = new ArrayList<>();
+        List<String> replayKeys = new ArrayList<>();
+        for (int i = 0; i < unique.size(); i++) {
+            if (claimCounts[i] == 0) {
+                replayKeys.add(unique.get(i).getIdempotencyKey());
+            } else {
+                claimed.add(unique.get(i));
+            }
+        }
+        if (!replayKeys.isEmpty()) {
+            for (PaymentDebit debit : paymentDebitRepository.findByIdempotencyKeyIn(replayKeys)) {
+                results.put(debit.getIdempotencyKey(), new PaymentDebitDTO(debit));
+            }
+        }
+        return claimed;
+    }
+
+    private static List<PaymentDebitDTO> ordered(List<PaymentDebitDTO> requests, Map<String, PaymentDebitDTO> results) {
+        List<PaymentDebitDTO> ordered = new ArrayList<>(requests.size());
+        for (PaymentDebitDTO request : requests) {
+            ordered.add(results.get(request.getIdempotencyKey()));
+        }
+        return ordered;
+    }
+
+    /**
+     * 退回一笔扣款：原扣款条件置为已退款，款项退回原扣款账户
+     */
+    private PaymentDebitDTO refund(PaymentDebitDTO request, PaymentDebit original, Timestamp nowTs) {
+        PaymentDebitDTO result = newResult(request);
+        if (original == null || !original.getUserId().equals(request.getUserId())
+                || original.getType() == PaymentDebit.DebitType.REFUND) {
+            fail(result, "原扣款不存在");
+            return result;
+        }
+        if (jdbcTemplate.update(MARK_REFUNDED_SQL, original.getIdempotencyKey(), request.getUserId(), request.getAmount()) == 0) {
+            fail(result, "原扣款未成功、已退款或退款金额超过原扣款");
+            return result;
+        }
+        if (jdbcTemplate.update(CREDIT_SQL, request.getAmount(), request.getAmount(), nowTs, original.getAccountNumber()) == 0) {
+            // 只让这一笔失败，不影响同批其他退款
+            jdbcTemplate.update(UNMARK_REFUNDED_SQL, original.getIdempotencyKey());
+            log.warn("退款账户不存在: key={}, account={}", request.getIdempotencyKey(), original.getAccountNumber());
+            fail(result, "退款账户不存在");
+            return result;
+        }
+        BigDecimal balanceAfter = jdbcTemplate.queryForObject(
+                "SELECT balance FROM bank_accounts WHERE account_number = ?", BigDecimal.class, original.getAccountNumber());
+
+        result.setStatus(PaymentDebit.DebitStatus.COMPLETED);
+        result.setAccountNumber(original.getAccountNumber());
+        result.setReferenceNumber(idGenerator.nextReferenceNumber());
+        jdbcTemplate.update(LEDGER_INSERT_SQL, counterparty(request), original.getAccountNumber(),
+                Transaction.TransactionType.REFUND.name(), request.getAmount(), balanceAfter, nowTs,
+                request.getDescription() != null ? request.getDescription() : "商城订单退款",
+                result.getReferenceNumber(), Transaction.TransactionStatus.COMPLETED.name());
+        assetChangePublisher.publish(request.getUserId());
+        return result;
+    }
+
+    private void debitClaimed(List<PaymentDebitDTO> claimed, Map<String, PaymentDebitDTO> results,
+                              LocalDateTime now, Timestamp nowTs) {
+        if (claimed.isEmpty()) {
+            return;
+        }
+        Map<String, BankAccount> accounts = loadPaymentAccounts(claimed);
+        Map<Long, BigDecimal> runningBalances = new HashMap<>();
+
+        List<PaymentDebitDTO> candidates = new ArrayList<>();
+        List<BankAccount> candidateAccounts = new ArrayList<>();
+        for (PaymentDebitDTO request : claimed) {
+            PaymentDebitDTO result = newResult(request);
+            results.put(request.getIdempotencyKey(), result);
+
+            BigDecimal amount = request.getAmount();
+            if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+                fail(result, "扣款金额必须大于零");
+                continue;
+            }
+            BankAccount account = accounts.get(request.getUserId());
+            if (account == null) {
+                fail(result, "账户不存在");
+                continue;
+            }
+            BigDecimal available = runningBalances.getOrDefault(account.getId(), account.getAvailableBalance());
+            if (available.compareTo(amount) < 0) {
+                fail(result, "余额不足");
+                continue;
+            }
+            runningBalances.put(account.getId(), available.subtract(amount));
+            result.setAccountNumber(account.getAccountNumber());
+            candidates.add(result);
+            candidateAccounts.add(account);
+        }
+
+        // 条件扣款：余额在并发下被其他操作占用时该行更新数为0，对应扣款记为失败
+        List<Object[]> debits = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            BigDecimal amount = candidates.get(i).getAmount();
+            debits.add(new Object[] { amount, amount, nowTs, candidateAccounts.get(i).getId(), amount });
+        }
+        int[] debitCounts = debits.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(DEBIT_SQL, debits);
+
+        // 扣款后的余额以数据库为准（扣款已持有行锁），加回本批之后各笔扣款得到每笔扣款后的余额
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (debitCounts[i] == 0 || debitCounts[i] == Statement.EXECUTE_FAILED) {
+                candidates.get(i).setAccountNumber(null);
+                fail(candidates.get(i), "余额不足");
+            } else {
+                balances.merge(candidateAccounts.get(i).getId(), candidates.get(i).getAmount(), BigDecimal::add);
+            }
+        }
+        if (!balances.isEmpty()) {
+            List<Long> accountIds = new ArrayList<>(balances.keySet());
+            jdbcTemplate.query("SELECT id, balance FROM bank_accounts WHERE id IN (" +
+                            String.join(",", Collections.nCopies(accountIds.size(), "?")) + ")",
+                    rs -> {
+                        balances.merge(rs.getLong(1), rs.getBigDecimal(2), BigDecimal::add);
+                    },
+                    accountIds.toArray());
+        }
+
+        List<Object[]> ledger = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            PaymentDebitDTO result = candidates.get(i);
+            if (result.getStatus() == PaymentDebit.DebitStatus.FAILED) {
+                continue;
+            }
+            BankAccount account = candidateAccounts.get(i);
+            BigDecimal balanceAfter = balances.get(account.getId()).subtract(result.getAmount());
+            balances.put(account.getId(), balanceAfter);
+
+            result.setStatus(PaymentDebit.DebitStatus.COMPLETED);
+            result.setReferenceNumber(idGenerator.nextReferenceNumber());
+            ledger.add(new Object[] { account.getAccountNumber(), counterparty(result), Transaction.TransactionType.PAYMENT.name(),
+                    result.getAmount(), balanceAfter, nowTs,
+                    result.getDescription() != null ? result.getDescription() : "商城消费支付",
+                    result.getReferenceNumber(), Transaction.TransactionStatus.COMPLETED.name() });
+            assetChangePublisher.publish(account.getUserId());
+        }
+        if (!ledger.isEmpty()) {
+            jdbcTemplate.batchUpdate(LEDGER_INSERT_SQL, ledger);
+        }
+
+        List<Object[]> completions = new ArrayList<>(claimed.size());
+        for (PaymentDebitDTO request : claimed) {
+            PaymentDebitDTO result = results.get(request.getIdempotencyKey());
+            completions.add(new Object[] { result.getStatus().name(), result.getAccountNumber(),
+                    result.getReferenceNumber(), result.getFailureReason(), Timestamp.valueOf(now),
+                    result.getIdempotencyKey() });
+        }
+        jdbcTemplate.batchUpdate(COMPLETE_SQL, completions);
+    }
+
+    private void creditClaimed(List<PaymentDebitDTO> claimed, Map<String, PaymentDebitDTO> results, Timestamp nowTs) {
+        if (claimed.isEmpty()) {
+            return;
+        }
+        Map<String, BankAccount> accounts = loadPaymentAccounts(claimed);
+
+        List<PaymentDebitDTO> credited = new ArrayList<>();
+        List<Object[]> credits = new ArrayList<>();
+        for (PaymentDebitDTO request : claimed) {
+            PaymentDebitDTO result = newResult(request);
+            results.put(request.getIdempotencyKey(), result);
+            BankAccount account = accounts.get(request.getUserId());
+            if (account == null) {
+                fail(result, "账户不存在");
+                continue;
+            }
+            result.setAccountNumber(account.getAccountNumber());
+            credited.add(result);
+            credits.add(new Object[] { result.getAmount(), result.getAmount(), nowTs, account.getAccountNumber() });
+        }
+        if (!credits.isEmpty()) {
+            jdbcTemplate.batchUpdate(CREDIT_SQL, credits);
+        }
+
+        // 入账后的余额以数据库为准（入账已持有行锁），减去本批之后各笔入账得到每笔入账后的余额
+        Map<String, BigDecimal> balances = new HashMap<>();
+        for (PaymentDebitDTO result : credited) {
+            balances.merge(result.getAccountNumber(), result.getAmount().negate(), BigDecimal::add);
+        }
+        if (!balances.isEmpty()) {
+            List<String> accountNumbers = new ArrayList<>(balances.keySet());
+            jdbcTemplate.query("SELECT account_number, balance FROM bank_accounts WHERE account_number IN (" +
+                            String.join(",", Collections.nCopies(accountNumbers.size(), "?")) + ")",
+                    rs -> {
+                        balances.merge(rs.getString(1), rs.getBigDecimal(2), BigDecimal::add);
+                    },
+                    accountNumbers.toArray());
+        }
+
+        List<Object[]> ledger = new ArrayList<>(credited.size());
+        for (PaymentDebitDTO result : credited) {
+            BigDecimal balanceAfter = balances.get(result.getAccountNumber()).add(result.getAmount());
+            balances.put(result.getAccountNumber(), balanceAfter);
+
+            result.setStatus(PaymentDebit.DebitStatus.COMPLETED);
+            result.setReferenceNumber(idGenerator.nextReferenceNumber());
+            ledger.add(new Object[] { counterparty(result), result.getAccountNumber(), Transaction.TransactionType.DEPOSIT.name(),
+                    result.getAmount(), balanceAfter, nowTs,
+                    result.getDescription() != null ? result.getDescription() : "服务入账",
+                    result.getReferenceNumber(), Transaction.TransactionStatus.COMPLETED.name() });
+            assetChangePublisher.publish(result.getUserId());
+        }
+        if (!ledger.isEmpty()) {
+            jdbcTemplate.batchUpdate(LEDGER_INSERT_SQL, ledger);
+        }
+
+        List<Object[]> completions = new ArrayList<>(claimed.size());
+        for (PaymentDebitDTO request : claimed) {
+            PaymentDebitDTO result = results.get(request.getIdempotencyKey());
+            completions.add(new Object[] { result.getStatus().name(), result.getAccountNumber(),
+                    result.getReferenceNumber(), result.getFailureReason(), nowTs, result.getIdempotencyKey() });
+        }
+        jdbcTemplate.batchUpdate(COMPLETE_SQL, completions);
+    }
+
+    private static String counterparty(PaymentDebitDTO request) {
+        return request.getCounterparty() != null && !request.getCounterparty().isBlank()
+                ? request.getCounterparty() : MERCHANT_ACCOUNT;
+    }
+
+    /**
+     * 每个用户取活期账户，没有活期账户时取储蓄账户
+     */
+    private Map<String, BankAccount> loadPaymentAccounts(List<PaymentDebitDTO> requests) {
+        List<String> userIds = requests.stream().map(PaymentDebitDTO::getUserId).distinct().toList();
+        Map<String, BankAccount> accounts = new HashMap<>();
+        for (BankAccount account : accountRepository.findByUserIdInAndAccountTypeAndIsActiveTrue(
+                userIds, BankAccount.AccountType.CURRENT)) {
+            accounts.putIfAbsent(account.getUserId(), account);
+        }
+        if (accounts.size() < userIds.size()) {
+            for (BankAccount account : accountRepository.findByUserIdInAndAccountTypeAndIsActiveTrue(
+                    userIds, BankAccount.AccountType.SAVINGS)) {
+                accounts.putIfAbsent(account.getUserId(), account);
+            }
+        }
+        return accounts;
+    }
+
+    private static PaymentDebitDTO newResult(PaymentDebitDTO request) {
+        PaymentDebitDTO result = new PaymentDebitDTO();
+        result.setIdempotencyKey(request.getIdempotencyKey());
+        result.setUserId(request.getUserId());
+        result.setAmount(request.getAmount());
+        result.setDescription(request.getDescription());
+        result.setRefundOf(request.getRefundOf());
+        result.setCounterparty(request.getCounterparty());
+        return result;
+    }
+
+    private static void fail(PaymentDebitDTO result, String reason) {
+        result.setStatus(PaymentDebit.DebitStatus.FAILED);
+        result.setFailureReason(reason);
+    }
+}
@@ -0,0 +1,227 @@
+package com.financelab.bankservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.financelab.bankservice.dto.StatementPageDTO;
+import com.financelab.bankservice.dto.TransactionDTO;
+import com.financelab.bankservice.entity.Transaction;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 账户对账单：按 (transaction_time, id) 游标分页读取交易，并以恒定内存流式导出；
+ * 交易历史接口同样逐页写出 JSON 数组，不把整个时间范围读入内存
+ *
+ * 转出与转入分别走 (from_account_number, transaction_time, id) 与
+ * (to_account_number, transaction_time, id) 两个索引的范围扫描后 UNION ALL 合并，
+ * 代替 OR 条件导致的全索引合并/全表扫描；时间范围条件同时用于分区裁剪。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StatementService {
+
+    private static final int EXPORT_PAGE_SIZE = 1000;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String COLUMNS = "id, from_account_number, to_account_number, type, amount, fee, balance_after, " +
+            "transaction_time, description, reference_number, status";
+
+    private static final String KEYSET = "transaction_time >= ? AND transaction_time < ? " +
+            "AND (transaction_time > ? OR (transaction_time = ? AND id > ?))";
+
+    private static final String PAGE_SQL =
+            "SELECT " + COLUMNS + " FROM (" +
+            "(SELECT " + COLUMNS + " FROM transactions WHERE from_account_number = ? AND " + KEYSET +
+            " ORDER BY transaction_time, id LIMIT ?) " +
+            "UNION ALL " +
+            "(SELECT " + COLUMNS + " FROM transactions WHERE to_account_number = ? AND from_account_number <> ? AND " + KEYSET +
+            " ORDER BY transaction_time, id LIMIT ?)" +
+            ") t ORDER BY transaction_time, id LIMIT ?";
+
+    private static final RowMapper<TransactionDTO> ROW_MAPPER = (rs, rowNum) -> {
+        TransactionDTO dto = new TransactionDTO();
+        dto.setId(rs.getLong("id"));
+        dto.setFromAccountNumber(rs.getString("from_account_number"));
+        dto.setToAccountNumber(rs.getString("to_account_number"));
+        dto.setType(Transaction.TransactionType.valueOf(rs.getString("type")));
+        dto.setAmount(rs.getBigDecimal("amount"));
+        dto.setFee(rs.getBigDecimal("fee"));
+        dto.setBalanceAfter(rs.getBigDecimal("balance_after"));
+        dto.setTransactionTime(rs.getTimestamp("transaction_time").toLocalDateTime());
+        dto.setDescription(rs.getString("description"));
+        dto.setReferenceNumber(rs.getString("reference_number"));
+        dto.setStatus(Transaction.TransactionStatus.valueOf(rs.getString("status")));
+        return dto;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 读取一页对账单
+     *
+     * @param cursorTime 上一页最后一条记录的交易时间，首页传 null
+     * @param cursorId 上一页最后一条记录的 id，首页传 null
+     */
+    public StatementPageDTO getStatementPage(String accountNumber, LocalDateTime from, LocalDateTime to,
+                                             LocalDateTime cursorTime, Long cursorId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        LocalDateTime afterTime = cursorTime != null ? cursorTime : from;
+        long afterId = cursorId != null ? cursorId : 0L;
+
+        // 多取一条用于判断是否还有下一页
+        List<TransactionDTO> rows = fetchPage(accountNumber, from, to, afterTime, afterId, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        List<TransactionDTO> entries = hasMore ? new ArrayList<>(rows.subList(0, pageSize)) : rows;
+
+        StatementPageDTO page = new StatementPageDTO();
+        page.setAccountNumber(accountNumber);
+        page.setEntries(entries);
+        page.setHasMore(hasMore);
+        if (!entries.isEmpty()) {
+            TransactionDTO last = entries.get(entries.size() - 1);
+            page.setNextCursorTime(last.getTransactionTime());
+            page.setNextCursorId(last.getId());
+        }
+        return page;
+    }
+
+    /**
+     * 以 JSON 数组流式写出时间范围内的交易，每页写出后即释放
+     */
+    public void writeTransactions(String accountNumber, LocalDateTime from, LocalDateTime to,
+                                  OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write('[');
+        boolean[] first = { true };
+        forEachPage(accountNumber, from, to, page -> {
+            for (TransactionDTO row : page) {
+                if (!first[0]) {
+                    writer.write(',');
+                }
+                first[0] = false;
+                writer.write(objectMapper.writeValueAsString(row));
+            }
+        });
+        writer.write(']');
+        writer.flush();
+    }
+
+    /**
+     * 流式导出对账单，每页写出后即释放，内存占用与时间跨度无关
+     */
+    public void exportStatement(String accountNumber, LocalDateTime from, LocalDateTime to,
+                                StatementFormat format, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        if (format == StatementFormat.CSV) {
+            writer.write("id,transactionTime,type,fromAccountNumber,toAccountNumber,amount,fee,balanceAfter,status,referenceNumber,description\n");
+        }
+
+        long exported = forEachPage(accountNumber, from, to, page -> {
+            for (TransactionDTO row : page) {
+                if (format == StatementFormat.CSV) {
+                    writeCsvRow(writer, row);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(row));
+                    writer.write('\n');
+                }
+            }
+            writer.flush();
+        });
+
+        log.info("导出对账单: accountNumber={}, format={}, rows={}", accountNumber, format, exported);
+    }
+
+    /**
+     * 沿游标依次处理时间范围内的每一页，返回总行数
+     */
+    private long forEachPage(String accountNumber, LocalDateTime from, LocalDateTime to,
+                             PageHandler handler) throws IOException {
+        LocalDateTime afterTime = from;
+        long afterId = 0L;
+        long rows = 0;
+        List<TransactionDTO> page;
+        do {
+            page = fetchPage(accountNumber, from, to, afterTime, afterId, EXPORT_PAGE_SIZE);
+            handler.handle(page);
+            rows += page.size();
+
+            if (!page.isEmpty()) {
+                TransactionDTO last = page.get(page.size() - 1);
+                afterTime = last.getTransactionTime();
+                afterId = last.getId();
+            }
+        } while (page.size() == EXPORT_PAGE_SIZE);
+        return rows;
+    }
+
+    private List<TransactionDTO> fetchPage(String accountNumber, LocalDateTime from, LocalDateTime to,
+                                           LocalDateTime afterTime, long afterId, int limit) {
+        Timestamp fromTs = Timestamp.valueOf(from);
+        Timestamp toTs = Timestamp.valueOf(to);
+        Timestamp afterTs = Timestamp.valueOf(afterTime);
+        return jdbcTemplate.query(PAGE_SQL, ROW_MAPPER,
+                accountNumber, fromTs, toTs, afterTs, afterTs, afterId, limit,
+                accountNumber, accountNumber, fromTs, toTs, afterTs, afterTs, afterId, limit,
+                limit);
+    }
+
+    private void writeCsvRow(Writer writer, TransactionDTO row) throws IOException {
+        writer.write(String.valueOf(row.getId()));
+        writer.write(',');
+        writer.write(row.getTransactionTime().toString());
+        writer.write(',');
+        writer.write(row.getType().name());
+        writer.write(',');
+        writer.write(csv(row.getFromAccountNumber()));
+        writer.write(',');
+        writer.write(csv(row.getToAccountNumber()));
+        writer.write(',');
+        writer.write(row.getAmount().toPlainString());
+        writer.write(',');
+        writer.write(row.getFee() != null ? row.getFee().toPlainString() : "");
+        writer.write(',');
+        writer.write(row.getBalanceAfter().toPlainString());
+        writer.write(',');
+        writer.write(row.getStatus().name());
+        writer.write(',');
+        writer.write(csv(row.getReferenceNumber()));
+        writer.write(',');
+        writer.write(csv(row.getDescription()));
+        writer.write('\n');
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    @FunctionalInterface
+    private interface PageHandler {
+        void handle(List<TransactionDTO> page) throws IOException;
+    }
+
+    public enum StatementFormat {
+        CSV,
+        NDJSON
+    }
+}
@@ -4,6 +4,11 @@ import com.financelab.bankservice.dto.*;
 import com.financelab.bankservice.entity.*;
 import com.financelab.bankservice.repository.*;
 import com.financelab.bankservice.service.BankService;
+import com.financelab.bankservice.service.CardAuthorizationService;
+import com.financelab.bankservice.service.IdGenerator;
+import com.financelab.bankservice.service.LoanCalculator;
+import com.financelab.bankservice.service.LoanServicingService;
+import com.financelab.common.event.AssetChangePublisher;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -12,9 +17,11 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -27,12 +34,22 @@ public class BankServiceImpl implements BankService {
     private final LoanRepository loanRepository;
     private final CreditScoreRepository creditScoreRepository;
     private final CreditCardRepository creditCardRepository;
+    private final CreditCardStatementRepository creditCardStatementRepository;
     private final InvestmentProductRepository investmentProductRepository;
     private final UserInvestmentRepository userInvestmentRepository;
+    private final LoanCalculator loanCalculator;
+    private final IdGenerator idGenerator;
+    private final CardAuthorizationService cardAuthorizationService;
+    private final AssetChangePublisher assetChangePublisher;
     
     @Override
     @Transactional
     public BankAccountDTO createAccount(String userId, BankAccountDTO accountDTO) {
+        // 每个用户每种类型只有一个账户，按类型查找账户依赖这一点
+        if (accountRepository.findByUserIdAndAccountType(userId, accountDTO.getAccountType()).isPresent()) {
+            throw new RuntimeException("该类型的账户已存在");
+        }
+        
         // 生成唯一账户号码
         String accountNumber = generateAccountNumber();
         
@@ -52,6 +69,81 @@ public class BankServiceImpl implements BankService {
         return new BankAccountDTO(savedAccount);
     }
     
+    /**
+     * 批量开户，按请求顺序返回每项结果；无效、重复或用户已有同类型账户的项带失败原因返回，不影响其余项。
+     * 用户已有的账户一次查出，有效项在一个事务中批量保存。
+     */
+    @Override
+    @Transactional
+    public List<BulkAccountResultDTO> createAccounts(List<BankAccountDTO> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new RuntimeException("开户列表不能为空");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        
+        // 每个用户每种类型只有一个账户，按类型查找账户依赖这一点
+        Set<String> seen = new HashSet<>();
+        List<String> userIds = requests.stream()
+                .filter(r -> r != null && r.getUserId() != null && !r.getUserId().isBlank())
+                .map(BankAccountDTO::getUserId)
+                .distinct()
+                .toList();
+        if (!userIds.isEmpty()) {
+            for (BankAccount existing : accountRepository.findByUserIdIn(userIds)) {
+                seen.add(existing.getUserId() + ":" + existing.getAccountType());
+            }
+        }
+        
+        List<BulkAccountResultDTO> results = new ArrayList<>(requests.size());
+        List<BankAccount> accounts = new ArrayList<>();
+        List<BulkAccountResultDTO> created = new ArrayList<>();
+        Set<String> batch = new HashSet<>();
+        for (BankAccountDTO request : requests) {
+            BulkAccountResultDTO result = new BulkAccountResultDTO();
+            results.add(result);
+            if (request == null || request.getUserId() == null || request.getUserId().isBlank()) {
+                result.setFailureReason("用户ID不能为空");
+                continue;
+            }
+            result.setUserId(request.getUserId());
+            result.setAccountType(request.getAccountType());
+            if (request.getAccountType() == null) {
+                result.setFailureReason("账户类型不能为空");
+                continue;
+            }
+            String key = request.getUserId() + ":" + request.getAccountType();
+            if (seen.contains(key)) {
+                result.setFailureReason("该类型的账户已存在");
+                continue;
+            }
+            if (!batch.add(key)) {
+                result.setFailureReason("同一批次中重复的开户请求");
+                continue;
+            }
+            
+            BankAccount account = new BankAccount();
+            account.setUserId(request.getUserId());
+            account.setAccountNumber(generateAccountNumber());
+            account.setAccountType(request.getAccountType());
+            account.setBalance(BigDecimal.ZERO);
+            account.setAvailableBalance(BigDecimal.ZERO);
+            account.setInterestRate(getDefaultInterestRate(request.getAccountType()));
+            account.setCreatedAt(now);
+            account.setIsActive(true);
+            accounts.add(account);
+            created.add(result);
+        }
+        
+        if (!accounts.isEmpty()) {
+            List<BankAccount> savedAccounts = accountRepository.saveAll(accounts);
+            for (int i = 0; i < savedAccounts.size(); i++) {
+                created.get(i).setAccount(new BankAccountDTO(savedAccounts.get(i)));
+            }
+        }
+        log.info("批量创建银行账户: 请求 {} 项, 创建 {} 个", requests.size(), accounts.size());
+        return results;
+    }
+    
     @Override
     public BankAccountDTO getAccount(String accountNumber) {
         Optional<BankAccount> account = accountRepository.findByAccountNumber(accountNumber);
@@ -105,6 +197,7 @@ public class BankServiceImpl implements BankService {
         account.setAvailableBalance(newBalance);
         account.setUpdatedAt(LocalDateTime.now());
         accountRepository.save(account);
+        assetChangePublisher.publish(account.getUserId());
         
         // 创建交易记录
         Transaction transaction = new Transaction();
@@ -156,6 +249,7 @@ public class BankServiceImpl implements BankService {
         account.setAvailableBalance(newBalance);
         account.setUpdatedAt(LocalDateTime.now());
         accountRepository.save(account);
+        assetChangePublisher.publish(account.getUserId());
         
         // 创建交易记录
         Transaction transaction = new Transaction();
@@ -222,7 +316,9 @@ public class BankServiceImpl implements BankService {
         to.setUpdatedAt(LocalDateTime.now());
         
         accountRepository.save(from);
+        assetChangePublisher.publish(from.getUserId());
         accountRepository.save(to);
+        assetChangePublisher.publish(to.getUserId());
         
         // 创建交易记录
         Transaction transaction = new Transaction();
@@ -246,6 +342,8 @@ public class BankServiceImpl implements BankService {
     @Override
     @Transactional
     public LoanDTO applyForLoan(LoanApplicationDTO application) {
+        loanCalculator.validateTerm(application.getTermMonths() != null ? application.getTermMonths() : 0);
+        
         // 获取用户信用评分
         CreditScore creditScore = getOrCreateCreditScore(application.getUserId());
         
@@ -257,7 +355,7 @@ public class BankServiceImpl implements BankService {
         }
         
         // 计算月供
-        BigDecimal monthlyPayment = calculateMonthlyPayment(
+        BigDecimal monthlyPayment = loanCalculator.calculateMonthlyPayment(
             application.getAmount(), 
             application.getInterestRate(), 
             application.getTermMonths()
@@ -301,6 +399,22 @@ public class BankServiceImpl implements BankService {
                 .collect(Collectors.toList());
     }
     
+    @Override
+    public AmortizationScheduleDTO calculateLoanSchedule(BigDecimal principal, BigDecimal annualRate, int termMonths) {
+        return loanCalculator.getSchedule(principal, annualRate, termMonths);
+    }
+    
+    @Override
+    public AmortizationScheduleDTO getLoanSchedule(Long loanId) {
+        Optional<Loan> loanOpt = loanRepository.findById(loanId);
+        if (loanOpt.isEmpty()) {
+            throw new RuntimeException("贷款不存在");
+        }
+        
+        Loan loan = loanOpt.get();
+        return loanCalculator.getSchedule(loan.getPrincipalAmount(), loan.getInterestRate(), loan.getTermMonths());
+    }
+    
     @Override
     @Transactional
     public TransactionDTO repayLoan(Long loanId, BigDecimal amount) {
@@ -310,7 +424,7 @@ public class BankServiceImpl implements BankService {
         }
         
         Loan loan = loanOpt.get();
-        if (loan.getStatus() != Loan.LoanStatus.ACTIVE) {
+        if (loan.getStatus() != Loan.LoanStatus.ACTIVE && loan.getStatus() != Loan.LoanStatus.DELINQUENT) {
             throw new RuntimeException("贷款状态无效");
         }
         
@@ -328,16 +442,34 @@ public class BankServiceImpl implements BankService {
             throw new RuntimeException("账户余额不足");
         }
         
-        // 更新贷款信息
-        BigDecimal remainingAfterPayment = loan.getRemainingAmount().subtract(amount);
+        // 先还滞纳金，再还当期利息，剩余部分冲减本金
+        BigDecimal lateFee = loan.getLateFee() != null ? loan.getLateFee() : BigDecimal.ZERO;
+        BigDecimal lateFeePaid = lateFee.min(amount);
+        BigDecimal payment = amount.subtract(lateFeePaid);
+        loan.setLateFee(lateFee.subtract(lateFeePaid));
+        
+        BigDecimal interest = LoanServicingService.splitPayment(loan.getRemainingAmount(), loan.getInterestRate(),
+            loan.getMonthlyPayment(), loan.getRemainingMonths())[0].min(payment);
+        BigDecimal remainingAfterPayment = loan.getRemainingAmount().subtract(payment.subtract(interest));
         loan.setRemainingAmount(remainingAfterPayment);
+        loan.setTotalInterestPaid(loan.getTotalInterestPaid().add(interest));
         
         if (remainingAfterPayment.compareTo(BigDecimal.ZERO) <= 0) {
             loan.setStatus(Loan.LoanStatus.PAID_OFF);
             loan.setCompletedAt(LocalDateTime.now());
+            loan.setLateFee(BigDecimal.ZERO);
+            loan.setOverdueDays(0);
         } else {
-            loan.setRemainingMonths(loan.getRemainingMonths() - 1);
-            loan.setNextPaymentDate(loan.getNextPaymentDate().plusMonths(1));
+            if (payment.compareTo(BigDecimal.ZERO) > 0) {
+                loan.setRemainingMonths(loan.getRemainingMonths() - 1);
+                loan.setNextPaymentDate(loan.getNextPaymentDate().plusMonths(1));
+            }
+            // 滞纳金已还清且没有更早的未还期数时恢复正常
+            if (loan.getStatus() == Loan.LoanStatus.DELINQUENT && loan.getLateFee().compareTo(BigDecimal.ZERO) == 0
+                    && loan.getNextPaymentDate().isAfter(LocalDateTime.now())) {
+                loan.setStatus(Loan.LoanStatus.ACTIVE);
+                loan.setOverdueDays(0);
+            }
         }
         
         loanRepository.save(loan);
@@ -347,6 +479,7 @@ public class BankServiceImpl implements BankService {
         account.setBalance(newBalance);
         account.setAvailableBalance(newBalance);
         accountRepository.save(account);
+        assetChangePublisher.publish(account.getUserId());
         
         // 创建还款记录
         Transaction transaction = new Transaction();
@@ -419,25 +552,13 @@ public class BankServiceImpl implements BankService {
         return BigDecimal.valueOf(totalBalance.orElse(0.0));
     }
     
-    @Override
-    public List<TransactionDTO> getTransactionHistory(String accountNumber, int days) {
-        LocalDateTime startDate = LocalDateTime.now().minusDays(days);
-        List<Transaction> transactions = transactionRepository.findByAccountNumberAndDateRange(
-            accountNumber, startDate, LocalDateTime.now()
-        );
-        
-        return transactions.stream()
-                .map(TransactionDTO::new)
-                .collect(Collectors.toList());
-    }
-    
     // 辅助方法
     private String generateAccountNumber() {
-        return "62" + String.format("%010d", System.currentTimeMillis() % 10000000000L);
+        return idGenerator.nextAccountNumber();
     }
     
     private String generateReferenceNumber() {
-        return UUID.randomUUID().toString().replace("-", "").substring(0, 16).toUpperCase();
+        return idGenerator.nextReferenceNumber();
     }
     
     private BigDecimal getDefaultInterestRate(BankAccount.AccountType accountType) {
@@ -499,20 +620,6 @@ public class BankServiceImpl implements BankService {
         return loan;
     }
     
-    private BigDecimal calculateMonthlyPayment(BigDecimal principal, BigDecimal annualRate, int months) {
-        if (months <= 0) {
-            return BigDecimal.ZERO;
-        }
-        
-        BigDecimal monthlyRate = annualRate.divide(new BigDecimal("1200"), 10, RoundingMode.HALF_UP);
-        BigDecimal numerator = monthlyRate.multiply(principal);
-        BigDecimal denominator = BigDecimal.ONE.subtract(
-            BigDecimal.ONE.add(monthlyRate).pow(-months, new java.math.MathContext(10))
-        );
-        
-        return numerator.divide(denominator, 2, RoundingMode.HALF_UP);
-    }
-    
     // 信用卡管理方法
     
     @Override
@@ -546,6 +653,9 @@ public class BankServiceImpl implements BankService {
         creditCard.setPaymentDueDate(java.time.LocalDate.now().plusDays(45));
         creditCard.setCurrentBalance(BigDecimal.ZERO);
         creditCard.setMinimumPayment(BigDecimal.ZERO);
+        creditCard.setStatementBalance(BigDecimal.ZERO);
+        creditCard.setCyclePayments(BigDecimal.ZERO);
+        creditCard.setIsLate(false);
         creditCard.setStatus(CreditCard.CardStatus.ACTIVE);
         creditCard.setCreatedAt(LocalDateTime.now());
         
@@ -569,6 +679,13 @@ public class BankServiceImpl implements BankService {
                 .collect(Collectors.toList());
     }
     
+    @Override
+    public List<CreditCardStatementDTO> getCreditCardStatements(String cardNumber) {
+        return creditCardStatementRepository.findByCardNumberOrderByCycleEndDesc(cardNumber).stream()
+                .map(CreditCardStatementDTO::new)
+                .collect(Collectors.toList());
+    }
+    
     @Override
     @Transactional
     public TransactionDTO creditCardPayment(String cardNumber, BigDecimal amount) {
@@ -576,7 +693,11 @@ public class BankServiceImpl implements BankService {
             throw new RuntimeException("还款金额必须大于零");
         }
         
-        Optional<CreditCard> cardOpt = creditCardRepository.findByCardNumber(cardNumber);
+        // 先写回授权引擎中尚未落库的已用额度，避免还款基于过期余额计算
+        cardAuthorizationService.flush();
+        
+        // 锁定卡片行：仍在进行中的写回要么已提交可见，要么等本事务提交后在其结果上累加
+        Optional<CreditCard> cardOpt = creditCardRepository.findByCardNumberForUpdate(cardNumber);
         if (cardOpt.isEmpty()) {
             throw new RuntimeException("信用卡不存在");
         }
@@ -605,20 +726,13 @@ public class BankServiceImpl implements BankService {
         account.setBalance(newBalance);
         account.setAvailableBalance(newBalance);
         accountRepository.save(account);
+        assetChangePublisher.publish(account.getUserId());
         
-        // 更新信用卡余额
-        BigDecimal cardBalance = card.getCurrentBalance().subtract(amount);
-        if (cardBalance.compareTo(BigDecimal.ZERO) < 0) {
-            cardBalance = BigDecimal.ZERO;
-        }
-        card.setCurrentBalance(cardBalance);
-        card.setUsedLimit(cardBalance);
-        card.setAvailableLimit(card.getCreditLimit().subtract(cardBalance));
-        
-        // 计算最低还款额（当期余额的5%）
-        card.setMinimumPayment(card.getCurrentBalance().multiply(new BigDecimal("0.05")).setScale(2, RoundingMode.HALF_UP));
-        card.setUpdatedAt(LocalDateTime.now());
-        creditCardRepository.save(card);
+        // 更新信用卡余额（按增量写入，超出欠款的部分不恢复额度）；
+        // 最低还款额由账单批处理生成，还款后只扣减剩余应还部分
+        BigDecimal restoredLimit = amount.min(card.getCurrentBalance().max(BigDecimal.ZERO));
+        creditCardRepository.applyPayment(cardNumber, restoredLimit, amount, LocalDateTime.now());
+        cardAuthorizationService.restoreLimit(cardNumber, restoredLimit);
         
         // 创建交易记录
         Transaction transaction = new Transaction();
@@ -640,40 +754,90 @@ public class BankServiceImpl implements BankService {
     }
     
     @Override
-    @Transactional
     public CreditCardDTO useCreditCard(String cardNumber, BigDecimal amount) {
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new RuntimeException("消费金额必须大于零");
         }
         
-        Optional<CreditCard> cardOpt = creditCardRepository.findByCardNumber(cardNumber);
-        if (cardOpt.isEmpty()) {
-            throw new RuntimeException("信用卡不存在");
-        }
+        // 通过授权引擎原子扣减额度（预授权后立即扣款）
+        CardAuthorizationDTO authorization = cardAuthorizationService.authorize(cardNumber, amount);
+        cardAuthorizationService.capture(authorization.getHoldId());
+        log.info("信用卡消费: cardNumber={}, amount={}", cardNumber, amount);
         
-        CreditCard card = cardOpt.get();
-        if (card.getStatus() != CreditCard.CardStatus.ACTIVE) {
-            throw new RuntimeException("信用卡状态无效");
+        // 已用额度异步写回，返回授权引擎中的实时额度
+        CreditCard card = creditCardRepository.findByCardNumber(cardNumber)
+            .orElseThrow(() -> new RuntimeException("信用卡不存在"));
+        recordCardPurchase(card, authorization);
+        CreditCardDTO cardDTO = new CreditCardDTO(card);
+        BigDecimal usedLimit = card.getCreditLimit().subtract(authorization.getAvailableLimit());
+        cardDTO.setAvailableLimit(authorization.getAvailableLimit());
+        cardDTO.setUsedLimit(usedLimit);
+        cardDTO.setCurrentBalance(usedLimit);
+        return cardDTO;
+    }
+    
+    @Override
+    public CardAuthorizationDTO authorizeCreditCard(String cardNumber, BigDecimal amount) {
+        return cardAuthorizationService.authorize(cardNumber, amount);
+    }
+    
+    @Override
+    public CardAuthorizationDTO captureAuthorization(String holdId) {
+        CardAuthorizationDTO authorization = cardAuthorizationService.capture(holdId);
+        creditCardRepository.findByCardNumber(authorization.getCardNumber())
+            .ifPresent(card -> recordCardPurchase(card, authorization));
+        return authorization;
+    }
+    
+    @Override
+    public CardAuthorizationDTO releaseAuthorization(String holdId) {
+        return cardAuthorizationService.release(holdId);
+    }
+    
+    @Override
+    @Transactional
+    public CreditCardDTO updateCreditCardStatus(String userId, String cardNumber, CreditCard.CardStatus status) {
+        CreditCard card = creditCardRepository.findByCardNumberForUpdate(cardNumber)
+            .orElseThrow(() -> new RuntimeException("信用卡不存在"));
+        if (!card.getUserId().equals(userId)) {
+            throw new RuntimeException("无权操作该信用卡");
         }
-        
-        if (card.getAvailableLimit().compareTo(amount) < 0) {
-            throw new RuntimeException("信用额度不足");
+        // 持卡人可冻结、解冻或注销；封锁由银行处理，已注销的卡不能恢复
+        boolean allowed = switch (status) {
+            case FROZEN -> card.getStatus() == CreditCard.CardStatus.ACTIVE;
+            case ACTIVE -> card.getStatus() == CreditCard.CardStatus.FROZEN;
+            case CANCELLED -> card.getStatus() == CreditCard.CardStatus.ACTIVE
+                || card.getStatus() == CreditCard.CardStatus.FROZEN;
+            default -> false;
+        };
+        if (!allowed) {
+            throw new RuntimeException("信用卡状态无法变更为 " + status);
         }
         
-        // 更新信用卡余额
-        BigDecimal newUsedLimit = card.getUsedLimit().add(amount);
-        card.setUsedLimit(newUsedLimit);
-        card.setAvailableLimit(card.getCreditLimit().subtract(newUsedLimit));
-        card.setCurrentBalance(newUsedLimit);
-        card.setMinimumPayment(newUsedLimit.multiply(new BigDecimal("0.05")).setScale(2, RoundingMode.HALF_UP));
+        card.setStatus(status);
         card.setUpdatedAt(LocalDateTime.now());
-        
         CreditCard savedCard = creditCardRepository.save(card);
-        log.info("信用卡消费: cardNumber={}, amount={}", cardNumber, amount);
-        
+        cardAuthorizationService.refresh(cardNumber);
+        log.info("信用卡状态变更: cardNumber={}, status={}", cardNumber, status);
         return new CreditCardDTO(savedCard);
     }
     
+    // 辅助方法：信用卡扣款后记消费流水，余额为扣款后的卡片欠款，参考号为授权号
+    private void recordCardPurchase(CreditCard card, CardAuthorizationDTO authorization) {
+        Transaction transaction = new Transaction();
+        transaction.setFromAccountNumber(card.getCardNumber());
+        transaction.setToAccountNumber("MERCHANT");
+        transaction.setType(Transaction.TransactionType.PAYMENT);
+        transaction.setAmount(authorization.getAmount());
+        transaction.setFee(BigDecimal.ZERO);
+        transaction.setBalanceAfter(card.getCreditLimit().subtract(authorization.getAvailableLimit()));
+        transaction.setTransactionTime(LocalDateTime.now());
+        transaction.setDescription("信用卡消费");
+        transaction.setReferenceNumber(authorization.getHoldId());
+        transaction.setStatus(Transaction.TransactionStatus.COMPLETED);
+        transactionRepository.save(transaction);
+    }
+    
     // 理财产品管理方法
     
     @Override
@@ -734,6 +898,7 @@ public class BankServiceImpl implements BankService {
         account.setBalance(newBalance);
         account.setAvailableBalance(newBalance);
         accountRepository.save(account);
+        assetChangePublisher.publish(account.getUserId());
         
         // 创建投资记录
         UserInvestment investment = new UserInvestment();
@@ -785,7 +950,14 @@ public class BankServiceImpl implements BankService {
         }
         
         UserInvestment investment = investmentOpt.get();
-        if (investment.getStatus() != UserInvestment.InvestmentStatus.ACTIVE) {
+        // 有效持仓可提前赎回，已到期持仓由到期任务置为 MATURED 后赎回到账
+        if (investment.getStatus() != UserInvestment.InvestmentStatus.ACTIVE
+                && investment.getStatus() != UserInvestment.InvestmentStatus.MATURED) {
+            throw new RuntimeException("投资状态无效");
+        }
+        
+        // 先置为已赎回，防止并发赎回重复到账
+        if (userInvestmentRepository.markWithdrawn(investmentId, LocalDateTime.now()) == 0) {
             throw new RuntimeException("投资状态无效");
         }
         
@@ -808,11 +980,10 @@ public class BankServiceImpl implements BankService {
         account.setBalance(newBalance);
         account.setAvailableBalance(newBalance);
         accountRepository.save(account);
+        assetChangePublisher.publish(account.getUserId());
         
-        // 更新投资状态
         investment.setStatus(UserInvestment.InvestmentStatus.WITHDRAWN);
         investment.setUpdatedAt(LocalDateTime.now());
-        userInvestmentRepository.save(investment);
         
         // 创建交易记录
         Transaction transaction = new Transaction();
@@ -879,7 +1050,7 @@ public class BankServiceImpl implements BankService {
     // 辅助方法
     
     private String generateCardNumber() {
-        return "4" + String.format("%015d", (long)(Math.random() * 1000000000000000L));
+        return idGenerator.nextCardNumber();
     }
     
     private Integer generateCVV() {
@@ -0,0 +1,51 @@
+package com.financelab.common.event;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 资产变动事件发布：用户的账户余额或持仓变化后通知 user-service 使其净资产缓存失效并刷新排行榜
+ *
+ * 公共模块不在各服务的组件扫描范围内，发布资产变动的服务在启动类上 {@code @Import} 本类。
+ */
+@Component
+@Slf4j
+public class AssetChangePublisher {
+
+    public static final String ASSET_CHANGED_TOPIC = "financelab:asset-changed";
+
+    private final RedissonClient redissonClient;
+
+    public AssetChangePublisher(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    /**
+     * 发布资产变动事件；处于事务中时在提交后发布，避免读到未提交的数据
+     */
+    public void publish(String userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(userId);
+                }
+            });
+        } else {
+            send(userId);
+        }
+    }
+
+    private void send(String userId) {
+        try {
+            redissonClient.getTopic(ASSET_CHANGED_TOPIC, StringCodec.INSTANCE).publish(userId);
+        } catch (Exception e) {
+            // 事件丢失只会让缓存等到 TTL 过期，不影响业务
+            log.warn("发布资产变动事件失败: userId={}, error={}", userId, e.getMessage());
+        }
+    }
+}
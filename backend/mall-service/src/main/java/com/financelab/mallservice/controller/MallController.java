@@ -3,16 +3,21 @@ package com.financelab.mallservice.controller;
 import com.financelab.mallservice.dto.*;
 import com.financelab.mallservice.entity.Product;
 import com.financelab.mallservice.entity.Order;
+import com.financelab.mallservice.service.FlashSaleService;
 import com.financelab.mallservice.service.MallService;
+import com.financelab.mallservice.service.RecommendationService;
+import com.financelab.mallservice.service.SalesAnalyticsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -22,6 +27,9 @@ import java.util.List;
 public class MallController {
     
     private final MallService mallService;
+    private final FlashSaleService flashSaleService;
+    private final RecommendationService recommendationService;
+    private final SalesAnalyticsService salesAnalyticsService;
     
     // 商品API
     
@@ -82,6 +90,40 @@ public class MallController {
         }
     }
     
+    @GetMapping("/products/search/faceted")
+    public ResponseEntity<ProductSearchResultDTO> searchProductsFaceted(
+            @RequestParam String keyword,
+            @RequestParam(required = false) Product.ProductCategory category,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            ProductSearchResultDTO result = mallService.searchProducts(keyword, category, minPrice, maxPrice, page, size);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            log.error("搜索商品失败: keyword={}, error={}", keyword, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/products/filter")
+    public ResponseEntity<Page<ProductDTO>> filterProducts(
+            @RequestParam(required = false) Product.ProductCategory category,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            Pageable pageable = PageRequest.of(page, size);
+            Page<ProductDTO> products = mallService.filterProducts(category, minPrice, maxPrice, pageable);
+            return ResponseEntity.ok(products);
+        } catch (Exception e) {
+            log.error("筛选商品失败: category={}, minPrice={}, maxPrice={}, error={}", category, minPrice, maxPrice, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     @GetMapping("/products/top-selling")
     public ResponseEntity<List<ProductDTO>> getTopSellingProducts(@RequestParam(defaultValue = "10") int limit) {
         try {
@@ -119,6 +161,32 @@ public class MallController {
         }
     }
     
+    @GetMapping("/products/{productId}/bought-together")
+    public ResponseEntity<List<ProductDTO>> getBoughtTogether(
+            @PathVariable Long productId,
+            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            List<ProductDTO> products = recommendationService.getBoughtTogether(productId, limit);
+            return ResponseEntity.ok(products);
+        } catch (Exception e) {
+            log.error("获取共购商品失败: productId={}, error={}", productId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/recommendations")
+    public ResponseEntity<RecommendationDTO> getRecommendations(
+            @RequestHeader("X-User-Id") String userId,
+            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            RecommendationDTO recommendations = recommendationService.getRecommendations(userId, limit);
+            return ResponseEntity.ok(recommendations);
+        } catch (Exception e) {
+            log.error("获取推荐商品失败: userId={}, error={}", userId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     // 购物车API
     
     @PostMapping("/cart")
@@ -184,6 +252,17 @@ public class MallController {
         }
     }
     
+    @GetMapping("/cart/summary")
+    public ResponseEntity<CartDTO> getCart(@RequestHeader("X-User-Id") String userId) {
+        try {
+            CartDTO cart = mallService.getCart(userId);
+            return ResponseEntity.ok(cart);
+        } catch (Exception e) {
+            log.error("获取购物车失败: userId={}, error={}", userId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     @GetMapping("/cart/total")
     public ResponseEntity<BigDecimal> getCartTotal(@RequestHeader("X-User-Id") String userId) {
         try {
@@ -316,6 +395,57 @@ public class MallController {
         }
     }
     
+    // 秒杀API
+    
+    @PostMapping("/flash-sales")
+    public ResponseEntity<FlashSaleDTO> createFlashSale(@RequestBody FlashSaleDTO saleDTO) {
+        try {
+            FlashSaleDTO sale = flashSaleService.createSale(saleDTO);
+            return ResponseEntity.ok(sale);
+        } catch (Exception e) {
+            log.error("创建秒杀活动失败: productId={}, error={}", saleDTO.getProductId(), e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/flash-sales")
+    public ResponseEntity<List<FlashSaleDTO>> getFlashSales() {
+        try {
+            List<FlashSaleDTO> sales = flashSaleService.getOpenSales();
+            return ResponseEntity.ok(sales);
+        } catch (Exception e) {
+            log.error("获取秒杀活动失败: error={}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping("/flash-sales/{saleId}/enter")
+    public ResponseEntity<FlashSaleResultDTO> enterFlashSale(
+            @RequestHeader("X-User-Id") String userId,
+            @PathVariable Long saleId,
+            @RequestBody OrderDTO contact) {
+        try {
+            FlashSaleResultDTO result = flashSaleService.enter(saleId, userId, contact);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            log.error("秒杀抢购失败: userId={}, saleId={}, error={}", userId, saleId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/flash-sales/{saleId}/result")
+    public ResponseEntity<FlashSaleResultDTO> getFlashSaleResult(
+            @RequestHeader("X-User-Id") String userId,
+            @PathVariable Long saleId) {
+        try {
+            FlashSaleResultDTO result = flashSaleService.getResult(saleId, userId);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            log.error("获取秒杀结果失败: userId={}, saleId={}, error={}", userId, saleId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     // 统计API
     
     @GetMapping("/stats/total-spent")
@@ -339,4 +469,36 @@ public class MallController {
             return ResponseEntity.badRequest().build();
         }
     }
+    
+    @GetMapping("/stats/order-summary")
+    public ResponseEntity<UserOrderSummaryDTO> getOrderSummary(@RequestHeader("X-User-Id") String userId) {
+        try {
+            UserOrderSummaryDTO summary = mallService.getOrderSummary(userId);
+            return ResponseEntity.ok(summary);
+        } catch (Exception e) {
+            log.error("获取订单汇总失败: userId={}, error={}", userId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    // 销售统计API
+    
+    @GetMapping("/analytics/sales")
+    public ResponseEntity<List<SalesStatDTO>> getSalesStats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Long schoolId,
+            @RequestParam(required = false) Long classId,
+            @RequestParam(required = false) Product.ProductCategory category,
+            @RequestParam(defaultValue = "DAY") SalesAnalyticsService.GroupBy groupBy) {
+        try {
+            LocalDate end = to != null ? to : LocalDate.now();
+            LocalDate start = from != null ? from : end.minusDays(29);
+            List<SalesStatDTO> stats = salesAnalyticsService.getSales(start, end, schoolId, classId, category, groupBy);
+            return ResponseEntity.ok(stats);
+        } catch (Exception e) {
+            log.error("获取销售统计失败: schoolId={}, classId={}, error={}", schoolId, classId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
 }
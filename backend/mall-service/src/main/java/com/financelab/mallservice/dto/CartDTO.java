@@ -0,0 +1,14 @@
+package com.financelab.mallservice.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+public class CartDTO {
+    
+    private List<CartItemDTO> items;
+    private BigDecimal totalAmount;
+    private long itemCount;
+}
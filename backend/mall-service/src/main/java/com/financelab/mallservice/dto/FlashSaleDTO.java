@@ -0,0 +1,34 @@
+package com.financelab.mallservice.dto;
+
+import com.financelab.mallservice.entity.FlashSale;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+public class FlashSaleDTO {
+    
+    private Long id;
+    private Long productId;
+    private BigDecimal salePrice;
+    private Integer totalQuantity;
+    private Integer soldQuantity;
+    private Integer remainingQuantity;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    private FlashSale.FlashSaleStatus status;
+    
+    public FlashSaleDTO() {}
+    
+    public FlashSaleDTO(FlashSale sale) {
+        this.id = sale.getId();
+        this.productId = sale.getProductId();
+        this.salePrice = sale.getSalePrice();
+        this.totalQuantity = sale.getTotalQuantity();
+        this.soldQuantity = sale.getSoldQuantity();
+        this.startTime = sale.getStartTime();
+        this.endTime = sale.getEndTime();
+        this.status = sale.getStatus();
+    }
+}
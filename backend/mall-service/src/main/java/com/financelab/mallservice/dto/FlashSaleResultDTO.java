@@ -0,0 +1,31 @@
+package com.financelab.mallservice.dto;
+
+import lombok.Data;
+
+@Data
+public class FlashSaleResultDTO {
+    
+    private Long saleId;
+    private String userId;
+    private ResultStatus status;
+    private Long orderId;
+    private String orderNumber;
+    private String message;
+    
+    public FlashSaleResultDTO() {}
+    
+    public FlashSaleResultDTO(Long saleId, String userId, ResultStatus status, String message) {
+        this.saleId = saleId;
+        this.userId = userId;
+        this.status = status;
+        this.message = message;
+    }
+    
+    public enum ResultStatus {
+        QUEUED,         // 已抢到名额，订单创建中
+        SUCCESS,        // 订单已创建，待支付
+        FAILED,         // 订单创建失败
+        SOLD_OUT,       // 已售罄
+        NOT_FOUND       // 未参与
+    }
+}
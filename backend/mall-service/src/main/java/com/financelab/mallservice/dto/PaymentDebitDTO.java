@@ -0,0 +1,22 @@
+package com.financelab.mallservice.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * bank-service 批量扣款 / 退款接口的请求/结果行
+ */
+@Data
+public class PaymentDebitDTO {
+    
+    private String idempotencyKey;
+    private String userId;
+    private BigDecimal amount;
+    private String description;
+    private String accountNumber;
+    private String status;          // COMPLETED / FAILED
+    private String referenceNumber;
+    private String failureReason;
+    private String refundOf;        // 退款请求：原扣款的幂等键
+}
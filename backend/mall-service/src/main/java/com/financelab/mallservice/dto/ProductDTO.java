@@ -1,34 +1,35 @@
 package com.financelab.mallservice.dto;
 
 import com.financelab.mallservice.entity.Product;
-import lombok.Data;
+import lombok.Value;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
-@Data
+/**
+ * 商品只读视图，商品目录缓存在多个索引与请求间共享同一实例，因此不可变
+ */
+@Value
 public class ProductDTO {
     
-    private Long id;
-    private String productCode;
-    private String productName;
-    private Product.ProductCategory category;
-    private String description;
-    private BigDecimal price;
-    private Integer stock;
-    private String imageUrl;
-    private Product.ProductStatus status;
-    private BigDecimal discount;
-    private BigDecimal taxRate;
-    private String brand;
-    private String specifications;
-    private Integer salesCount;
-    private Integer rating;
-    private Integer reviewCount;
-    private LocalDateTime createdAt;
-    private LocalDateTime updatedAt;
-    
-    public ProductDTO() {}
+    Long id;
+    String productCode;
+    String productName;
+    Product.ProductCategory category;
+    String description;
+    BigDecimal price;
+    Integer stock;
+    String imageUrl;
+    Product.ProductStatus status;
+    BigDecimal discount;
+    BigDecimal taxRate;
+    String brand;
+    String specifications;
+    Integer salesCount;
+    Integer rating;
+    Integer reviewCount;
+    LocalDateTime createdAt;
+    LocalDateTime updatedAt;
     
     public ProductDTO(Product product) {
         this.id = product.getId();
@@ -0,0 +1,36 @@
+package com.financelab.mallservice.dto;
+
+import com.financelab.mallservice.entity.Product;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class ProductSearchResultDTO {
+    
+    private String keyword;
+    private long totalHits;
+    private int page;
+    private int size;
+    private List<ProductDTO> items;
+    private Map<Product.ProductCategory, Integer> categoryFacets;
+    private List<PriceBucket> priceFacets;
+    private long tookMicros;
+    
+    @Data
+    public static class PriceBucket {
+        private BigDecimal minPrice;    // 含
+        private BigDecimal maxPrice;    // 不含，最后一档为 null
+        private int count;
+        
+        public PriceBucket() {}
+        
+        public PriceBucket(BigDecimal minPrice, BigDecimal maxPrice, int count) {
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.financelab.mallservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecommendationDTO {
+    
+    private String userId;
+    
+    // 与用户买过的商品经常一起购买
+    private List<ProductDTO> boughtTogether;
+    
+    // 同班同学买过而用户没买过
+    private List<ProductDTO> classmatesBought;
+}
@@ -0,0 +1,19 @@
+package com.financelab.mallservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesStatDTO {
+    
+    // 分组维度的取值：日期、商品分类、学校ID或班级ID
+    private String key;
+    private BigDecimal revenue;
+    private long quantity;
+    private long orderCount;
+}
@@ -0,0 +1,35 @@
+package com.financelab.mallservice.dto;
+
+import com.financelab.mallservice.entity.Order;
+import com.financelab.mallservice.entity.UserOrderSummary;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+public class UserOrderSummaryDTO {
+    
+    private String userId;
+    private long orderCount;
+    private BigDecimal totalSpent;
+    private Map<Order.OrderStatus, Long> statusCounts;
+    
+    public UserOrderSummaryDTO(UserOrderSummary summary) {
+        this.userId = summary.getUserId();
+        this.orderCount = summary.getOrderCount();
+        this.totalSpent = summary.getTotalSpent();
+        this.statusCounts = new EnumMap<>(Order.OrderStatus.class);
+        statusCounts.put(Order.OrderStatus.PENDING, summary.getPendingCount());
+        statusCounts.put(Order.OrderStatus.PAID, summary.getPaidCount());
+        statusCounts.put(Order.OrderStatus.PROCESSING, summary.getProcessingCount());
+        statusCounts.put(Order.OrderStatus.SHIPPED, summary.getShippedCount());
+        statusCounts.put(Order.OrderStatus.DELIVERED, summary.getDeliveredCount());
+        statusCounts.put(Order.OrderStatus.COMPLETED, summary.getCompletedCount());
+        statusCounts.put(Order.OrderStatus.CANCELLED, summary.getCancelledCount());
+        statusCounts.put(Order.OrderStatus.REFUNDED, summary.getRefundedCount());
+    }
+}
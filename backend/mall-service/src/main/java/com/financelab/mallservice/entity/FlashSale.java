@@ -0,0 +1,50 @@
+package com.financelab.mallservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "flash_sales")
+@Data
+public class FlashSale {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private Long productId;
+    
+    @Column(nullable = false, precision = 10, scale = 2)
+    private BigDecimal salePrice;
+    
+    @Column(nullable = false)
+    private Integer totalQuantity;
+    
+    @Column(nullable = false)
+    private Integer soldQuantity;
+    
+    @Column(nullable = false)
+    private LocalDateTime startTime;
+    
+    @Column(nullable = false)
+    private LocalDateTime endTime;
+    
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private FlashSaleStatus status;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column
+    private LocalDateTime updatedAt;
+    
+    public enum FlashSaleStatus {
+        SCHEDULED,      // 未开始
+        ACTIVE,         // 进行中（库存已预载）
+        ENDED           // 已结束
+    }
+}
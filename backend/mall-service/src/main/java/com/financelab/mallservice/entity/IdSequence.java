@@ -0,0 +1,17 @@
+package com.financelab.mallservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+@Entity
+@Table(name = "id_sequences")
+@Data
+public class IdSequence {
+    
+    @Id
+    @Column(length = 50)
+    private String name;
+    
+    @Column(nullable = false)
+    private Long nextValue;
+}
@@ -0,0 +1,71 @@
+package com.financelab.mallservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "payment_outbox", indexes = {
+    @Index(name = "idx_status_next_attempt", columnList = "status, nextAttemptAt")
+})
+@Data
+public class PaymentOutbox {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private Long orderId;
+    
+    @Column(nullable = false, length = 50)
+    private String orderNumber;
+    
+    @Column(nullable = false, length = 50)
+    private String userId;
+    
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal amount;
+    
+    @Column(nullable = false, unique = true, length = 64)
+    private String idempotencyKey;
+    
+    @Column(length = 20)
+    @Enumerated(EnumType.STRING)
+    private OutboxType type; // 为空的旧记录均为支付
+
+    
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private OutboxStatus status;
+    
+    @Column(nullable = false)
+    private Integer attempts;
+    
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+    
+    @Column
+    private String referenceNumber;
+    
+    @Column
+    private String lastError;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column
+    private LocalDateTime updatedAt;
+    
+    public enum OutboxStatus {
+        PENDING,        // 待投递（或等待重试）
+        COMPLETED,      // 扣款（退款）成功
+        FAILED          // 扣款（退款）失败
+    }
+    
+    public enum OutboxType {
+        PAYMENT,        // 支付扣款
+        REFUND          // 取消退款
+    }
+}
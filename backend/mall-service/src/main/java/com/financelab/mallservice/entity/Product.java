@@ -67,6 +67,11 @@ public class Product {
     @Column
     private LocalDateTime updatedAt;
     
+    @PreUpdate
+    public void onUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+    
     public enum ProductCategory {
         ELECTRONICS,     // 电子产品
         CLOTHING,        // 服装
@@ -0,0 +1,33 @@
+package com.financelab.mallservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "sales_events")
+@Data
+public class SalesEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private Long orderId;
+    
+    @Column(nullable = false, length = 50)
+    private String userId;
+    
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private EventType eventType;
+    
+    @Column(nullable = false)
+    private LocalDateTime occurredAt;
+    
+    public enum EventType {
+        PAID,           // 支付成功，计入销售额
+        REFUNDED        // 已退款，冲减销售额
+    }
+}
@@ -0,0 +1,47 @@
+package com.financelab.mallservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "sales_rollups", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_rollup_cell", columnNames = {"saleDate", "category", "schoolId", "classId"})
+}, indexes = {
+    @Index(name = "idx_school_class_date", columnList = "schoolId, classId, saleDate")
+})
+@Data
+public class SalesRollup {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private LocalDate saleDate;
+    
+    @Column(nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private Product.ProductCategory category;
+    
+    // 0 表示用户未归属学校/班级
+    @Column(nullable = false)
+    private Long schoolId;
+    
+    @Column(nullable = false)
+    private Long classId;
+    
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal revenue;
+    
+    @Column(nullable = false)
+    private Long quantity;
+    
+    @Column(nullable = false)
+    private Long orderCount;
+    
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,49 @@
+package com.financelab.mallservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "user_order_summaries")
+@Data
+public class UserOrderSummary {
+    
+    @Id
+    @Column(length = 50)
+    private String userId;
+    
+    @Column(nullable = false)
+    private Long orderCount;
+    
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalSpent;
+    
+    @Column(nullable = false)
+    private Long pendingCount;
+    
+    @Column(nullable = false)
+    private Long paidCount;
+    
+    @Column(nullable = false)
+    private Long processingCount;
+    
+    @Column(nullable = false)
+    private Long shippedCount;
+    
+    @Column(nullable = false)
+    private Long deliveredCount;
+    
+    @Column(nullable = false)
+    private Long completedCount;
+    
+    @Column(nullable = false)
+    private Long cancelledCount;
+    
+    @Column(nullable = false)
+    private Long refundedCount;
+    
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
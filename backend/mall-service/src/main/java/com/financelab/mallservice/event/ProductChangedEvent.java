@@ -0,0 +1,8 @@
+package com.financelab.mallservice.event;
+
+import java.util.Collection;
+
+/**
+ * 商品数据变更事件（库存、销量等写入提交后发布）
+ */
+public record ProductChangedEvent(Collection<Long> productIds) {}
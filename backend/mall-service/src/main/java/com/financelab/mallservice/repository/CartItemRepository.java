@@ -2,6 +2,7 @@ package com.financelab.mallservice.repository;
 
 import com.financelab.mallservice.entity.CartItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -23,7 +24,9 @@ public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     @Query("SELECT COUNT(c) FROM CartItem c WHERE c.userId = :userId")
     long countByUserId(@Param("userId") String userId);
     
-    void deleteByUserId(String userId);
+    @Modifying
+    @Query("DELETE FROM CartItem c WHERE c.userId = :userId")
+    void deleteByUserId(@Param("userId") String userId);
     
     void deleteByUserIdAndProductId(String userId, Long productId);
 }
@@ -0,0 +1,34 @@
+package com.financelab.mallservice.repository;
+
+import com.financelab.mallservice.entity.FlashSale;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface FlashSaleRepository extends JpaRepository<FlashSale, Long> {
+    
+    List<FlashSale> findByStatusInOrderByStartTime(List<FlashSale.FlashSaleStatus> statuses);
+    
+    List<FlashSale> findByStatusAndStartTimeBefore(FlashSale.FlashSaleStatus status, LocalDateTime before);
+    
+    /**
+     * 条件更新状态，多实例同时预载时只有一个实例更新成功
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE flash_sales SET status = :to, updated_at = :now WHERE id = :id AND status = :from", nativeQuery = true)
+    int compareAndSetStatus(@Param("id") Long id, @Param("from") String from, @Param("to") String to,
+                            @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE flash_sales SET sold_quantity = sold_quantity + :count, updated_at = :now WHERE id = :id", nativeQuery = true)
+    int addSoldQuantity(@Param("id") Long id, @Param("count") int count, @Param("now") LocalDateTime now);
+}
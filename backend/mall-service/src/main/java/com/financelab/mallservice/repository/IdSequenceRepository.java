@@ -0,0 +1,23 @@
+package com.financelab.mallservice.repository;
+
+import com.financelab.mallservice.entity.IdSequence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface IdSequenceRepository extends JpaRepository<IdSequence, String> {
+    
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO id_sequences (name, next_value) VALUES (:name, :initialValue)", nativeQuery = true)
+    int insertIfAbsent(@Param("name") String name, @Param("initialValue") long initialValue);
+    
+    @Modifying
+    @Query(value = "UPDATE id_sequences SET next_value = next_value + :blockSize WHERE name = :name", nativeQuery = true)
+    int advance(@Param("name") String name, @Param("blockSize") long blockSize);
+    
+    @Query(value = "SELECT next_value FROM id_sequences WHERE name = :name", nativeQuery = true)
+    long currentValue(@Param("name") String name);
+}
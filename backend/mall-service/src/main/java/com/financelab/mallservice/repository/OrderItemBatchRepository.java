@@ -0,0 +1,61 @@
+package com.financelab.mallservice.repository;
+
+import com.financelab.mallservice.entity.OrderItem;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * 订单详情批量写入
+ *
+ * OrderItem 使用 IDENTITY 主键，Hibernate 对其禁用 JDBC 批处理（每行一条 INSERT 并立即回读主键），
+ * 这里直接以 JDBC 批处理写入，配合连接参数 rewriteBatchedStatements=true 合并为一条多行 INSERT，
+ * 并按顺序回填自增主键。须在调用方事务中执行。
+ */
+@Repository
+@RequiredArgsConstructor
+public class OrderItemBatchRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO order_items (order_id, product_id, product_name, product_code, image_url, unit_price, " +
+            "quantity, total_price, specifications, category) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void insertAll(List<OrderItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (OrderItem item : items) {
+                    ps.setLong(1, item.getOrderId());
+                    ps.setLong(2, item.getProductId());
+                    ps.setString(3, item.getProductName());
+                    ps.setString(4, item.getProductCode());
+                    ps.setString(5, item.getImageUrl());
+                    ps.setBigDecimal(6, item.getUnitPrice());
+                    ps.setInt(7, item.getQuantity());
+                    ps.setBigDecimal(8, item.getTotalPrice());
+                    ps.setString(9, item.getSpecifications());
+                    ps.setString(10, item.getCategory().name());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    int index = 0;
+                    while (keys.next() && index < items.size()) {
+                        items.get(index++).setId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+}
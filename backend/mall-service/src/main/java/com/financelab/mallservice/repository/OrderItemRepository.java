@@ -4,6 +4,7 @@ import com.financelab.mallservice.entity.OrderItem;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -11,5 +12,7 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     
     List<OrderItem> findByOrderId(Long orderId);
     
+    List<OrderItem> findByOrderIdIn(Collection<Long> orderIds);
+    
     void deleteByOrderId(Long orderId);
 }
@@ -0,0 +1,9 @@
+package com.financelab.mallservice.repository;
+
+import com.financelab.mallservice.entity.PaymentOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PaymentOutboxRepository extends JpaRepository<PaymentOutbox, Long> {
+}
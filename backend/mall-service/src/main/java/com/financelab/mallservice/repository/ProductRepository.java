@@ -9,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,5 +39,14 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     @Query("SELECT p FROM Product p WHERE p.status = 'AVAILABLE' AND p.discount > 0 ORDER BY p.discount DESC")
     List<Product> findDiscountedProducts(Pageable pageable);
     
+    @Query("SELECT p FROM Product p WHERE p.status = 'AVAILABLE' AND p.category = :category AND p.price BETWEEN :minPrice AND :maxPrice")
+    Page<Product> findByCategoryAndPriceRange(@Param("category") Product.ProductCategory category,
+                                              @Param("minPrice") BigDecimal minPrice,
+                                              @Param("maxPrice") BigDecimal maxPrice,
+                                              Pageable pageable);
+    
+    @Query("SELECT p FROM Product p WHERE p.updatedAt >= :since OR p.createdAt >= :since")
+    List<Product> findChangedSince(@Param("since") LocalDateTime since);
+    
     boolean existsByProductCode(String productCode);
 }
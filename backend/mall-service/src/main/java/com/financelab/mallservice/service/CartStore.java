@@ -0,0 +1,423 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.dto.CartItemDTO;
+import com.financelab.mallservice.entity.CartItem;
+import com.financelab.mallservice.repository.CartItemRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.client.protocol.ScoredEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 购物车存储
+ *
+ * 每个用户的购物车是一个 Redis 哈希：item:{商品ID} -> "数量,单价(分),创建时间,更新时间,商品名"，
+ * 另有 _total（总金额，分）与 _count（商品行数）两个字段随每次修改在 Lua 脚本中增量维护，
+ * 因此增删改与合计查询都只需一次 Redis 往返。购物车不在 Redis 中时从 cart_items 加载。
+ * 键按用户打 hash tag（{cart:用户ID}），Redis Cluster 下购物车分散到各槽位，脚本只涉及本用户的键。
+ *
+ * 每次修改递增哈希中的 _dirty 版本号，并在脚本执行前把用户记入 cart:dirty 有序集合（分数为最后修改时间），
+ * 空闲超过阈值后由后台任务整车写回 cart_items；版本号未变时才清除脏标记。
+ * 写回时购物车哈希已不存在（过期或被淘汰）则跳过，不会把数据库中的购物车当作空车删除。
+ * 下单时只移除已下单的商品行，其余商品仍按空闲写回。
+ */
+@Service
+@Slf4j
+public class CartStore {
+
+    private static final String CART_KEY = "{cart:%s}:items";
+    private static final String DIRTY_KEY = "cart:dirty";
+    private static final String ITEM_PREFIX = "item:";
+    private static final String TOTAL_FIELD = "_total";
+    private static final String COUNT_FIELD = "_count";
+    private static final String CLEAN = "";
+
+    private static final long NOT_LOADED = -2;
+    private static final long OVER_LIMIT = -1;
+    private static final long NOT_IN_CART = -3;
+
+    // KEYS: 购物车哈希  ARGV: 商品ID, 模式(add/set), 数量, 单价(分), 商品名, 当前时间, 数量上限, TTL秒
+    private static final String UPSERT_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then return {-2} end " +
+            "local field = 'item:' .. ARGV[1] " +
+            "local cur = redis.call('hget', KEYS[1], field) " +
+            "local qty = tonumber(ARGV[3]) " +
+            "local unit = tonumber(ARGV[4]) " +
+            "local created = ARGV[6] " +
+            "local name = ARGV[5] " +
+            "local oldQty = 0 " +
+            "if cur then " +
+            "  local q, u, c, _, n = string.match(cur, '^(%d+),(%d+),(%d+),(%d+),(.*)$') " +
+            "  oldQty = tonumber(q) unit = tonumber(u) created = c name = n " +
+            "  if ARGV[2] == 'add' then qty = oldQty + qty end " +
+            "elseif ARGV[2] == 'set' then return {-3} end " +
+            "if qty > tonumber(ARGV[7]) then return {-1} end " +
+            "local value = qty .. ',' .. unit .. ',' .. created .. ',' .. ARGV[6] .. ',' .. name " +
+            "redis.call('hset', KEYS[1], field, value) " +
+            "redis.call('hincrby', KEYS[1], '_total', (qty - oldQty) * unit) " +
+            "if not cur then redis.call('hincrby', KEYS[1], '_count', 1) end " +
+            "redis.call('hincrby', KEYS[1], '_dirty', 1) " +
+            "redis.call('expire', KEYS[1], ARGV[8]) " +
+            "return {1, value}";
+
+    // KEYS: 购物车哈希  ARGV: 商品ID, TTL秒
+    private static final String REMOVE_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then return -2 end " +
+            "local field = 'item:' .. ARGV[1] " +
+            "local cur = redis.call('hget', KEYS[1], field) " +
+            "if not cur then return 0 end " +
+            "local q, u = string.match(cur, '^(%d+),(%d+),') " +
+            "redis.call('hdel', KEYS[1], field) " +
+            "redis.call('hincrby', KEYS[1], '_total', -tonumber(q) * tonumber(u)) " +
+            "redis.call('hincrby', KEYS[1], '_count', -1) " +
+            "redis.call('hincrby', KEYS[1], '_dirty', 1) " +
+            "redis.call('expire', KEYS[1], ARGV[2]) " +
+            "return 1";
+
+    // KEYS: 购物车哈希  ARGV: TTL秒
+    private static final String CLEAR_SCRIPT =
+            "local version = tonumber(redis.call('hget', KEYS[1], '_dirty') or '0') + 1 " +
+            "redis.call('del', KEYS[1]) " +
+            "redis.call('hset', KEYS[1], '_total', 0, '_count', 0, '_dirty', version) " +
+            "redis.call('expire', KEYS[1], ARGV[1]) " +
+            "return 1";
+
+    // 从数据库加载，已被其他请求加载时不覆盖
+    // KEYS: 购物车哈希  ARGV: TTL秒, 总金额, 行数, 字段, 值, ...
+    private static final String LOAD_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+            "redis.call('hset', KEYS[1], '_total', ARGV[2], '_count', ARGV[3]) " +
+            "for i = 4, #ARGV, 2 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('expire', KEYS[1], ARGV[1]) " +
+            "return 1";
+
+    // 下单后移除已下单且未被再次修改的商品行，购物车为空时不再需要写回
+    // KEYS: 购物车哈希  ARGV: 字段, 值, ...
+    private static final String CHECKOUT_SCRIPT =
+            "for i = 1, #ARGV, 2 do " +
+            "  if redis.call('hget', KEYS[1], ARGV[i]) == ARGV[i + 1] then " +
+            "    local q, u = string.match(ARGV[i + 1], '^(%d+),(%d+),') " +
+            "    redis.call('hdel', KEYS[1], ARGV[i]) " +
+            "    redis.call('hincrby', KEYS[1], '_total', -tonumber(q) * tonumber(u)) " +
+            "    redis.call('hincrby', KEYS[1], '_count', -1) " +
+            "  end " +
+            "end " +
+            "if tonumber(redis.call('hget', KEYS[1], '_count') or '0') == 0 then redis.call('hdel', KEYS[1], '_dirty') end " +
+            "return 1";
+
+    // 写回前取快照：哈希不存在时返回空列表，无需写回时返回 [""]，否则返回 [版本号, 字段, 值, ...]
+    // KEYS: 购物车哈希
+    private static final String SNAPSHOT_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then return {} end " +
+            "local version = redis.call('hget', KEYS[1], '_dirty') " +
+            "if not version then return {''} end " +
+            "local result = {version} " +
+            "local items = redis.call('hgetall', KEYS[1]) " +
+            "for i = 1, #items do result[#result + 1] = items[i] end " +
+            "return result";
+
+    // 写回后清除购物车的脏版本号，期间又被修改（版本号变化）时保留
+    // KEYS: 购物车哈希  ARGV: 版本号
+    private static final String MARK_CLEAN_SCRIPT =
+            "if redis.call('hget', KEYS[1], '_dirty') == ARGV[1] then redis.call('hdel', KEYS[1], '_dirty') return 1 end " +
+            "return 0";
+
+    // 从脏集合移除用户，期间又被修改（分数变化）时保留
+    // KEYS: 脏集合  ARGV: 用户ID, 分数
+    private static final String UNMARK_DIRTY_SCRIPT =
+            "if tonumber(redis.call('zscore', KEYS[1], ARGV[1]) or '-1') == tonumber(ARGV[2]) then " +
+            "  redis.call('zrem', KEYS[1], ARGV[1]) return 1 end " +
+            "return 0";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO cart_items (user_id, product_id, product_name, unit_price, quantity, total_price, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final RedissonClient redissonClient;
+    private final CartItemRepository cartItemRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long ttlSeconds;
+    private final long idleFlushMillis;
+    private final int flushBatchSize;
+
+    public CartStore(RedissonClient redissonClient,
+                     CartItemRepository cartItemRepository,
+                     JdbcTemplate jdbcTemplate,
+                     TransactionTemplate transactionTemplate,
+                     @Value("${mall.cart.ttl-days:7}") long ttlDays,
+                     @Value("${mall.cart.idle-flush-seconds:300}") long idleFlushSeconds,
+                     @Value("${mall.cart.flush-batch-size:200}") int flushBatchSize) {
+        this.redissonClient = redissonClient;
+        this.cartItemRepository = cartItemRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.ttlSeconds = ttlDays * 86400;
+        this.idleFlushMillis = idleFlushSeconds * 1000;
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    /**
+     * 加入购物车，已有该商品时累加数量（沿用首次加入时的单价）
+     *
+     * @param maxQuantity 累加后允许的最大数量
+     */
+    public CartItemDTO add(String userId, Long productId, String productName, BigDecimal unitPrice,
+                           int quantity, int maxQuantity) {
+        return upsert(userId, productId, productName, unitPrice, "add", quantity, maxQuantity);
+    }
+
+    /**
+     * 修改购物车中商品的数量
+     */
+    public CartItemDTO update(String userId, Long productId, int quantity, int maxQuantity) {
+        return upsert(userId, productId, "", BigDecimal.ZERO, "set", quantity, maxQuantity);
+    }
+
+    public void remove(String userId, Long productId) {
+        markDirty(userId);
+        Long result = eval(REMOVE_SCRIPT, RScript.ReturnType.INTEGER, List.of(cartKey(userId)),
+                String.valueOf(productId), String.valueOf(ttlSeconds));
+        if (result != null && result == NOT_LOADED) {
+            load(userId);
+            remove(userId, productId);
+        }
+    }
+
+    public void clear(String userId) {
+        markDirty(userId);
+        eval(CLEAR_SCRIPT, RScript.ReturnType.INTEGER, List.of(cartKey(userId)), String.valueOf(ttlSeconds));
+    }
+
+    public List<CartItemDTO> getItems(String userId) {
+        List<CartItemDTO> items = new ArrayList<>();
+        List<Object> fields = hgetall(userId);
+        for (int i = 0; i + 1 < fields.size(); i += 2) {
+            String field = fields.get(i).toString();
+            if (field.startsWith(ITEM_PREFIX)) {
+                items.add(decode(userId, Long.valueOf(field.substring(ITEM_PREFIX.length())), fields.get(i + 1).toString()));
+            }
+        }
+        items.sort(Comparator.comparing(CartItemDTO::getCreatedAt).thenComparing(CartItemDTO::getProductId));
+        return items;
+    }
+
+    public BigDecimal getTotal(String userId) {
+        return BigDecimal.valueOf(Long.parseLong(getField(userId, TOTAL_FIELD)), 2);
+    }
+
+    public long getCount(String userId) {
+        return Long.parseLong(getField(userId, COUNT_FIELD));
+    }
+
+    /**
+     * 下单：在当前事务中删除 cart_items，提交后从 Redis 移除已下单的商品行
+     */
+    public void checkout(String userId, Collection<CartItemDTO> orderedItems) {
+        cartItemRepository.deleteByUserId(userId);
+
+        List<Object> args = new ArrayList<>(orderedItems.size() * 2);
+        for (CartItemDTO item : orderedItems) {
+            args.add(ITEM_PREFIX + item.getProductId());
+            args.add(encode(item));
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                eval(CHECKOUT_SCRIPT, RScript.ReturnType.INTEGER, List.of(cartKey(userId)), args.toArray());
+            }
+        });
+    }
+
+    /**
+     * 空闲购物车写回 cart_items
+     */
+    @Scheduled(fixedDelayString = "${mall.cart.flush-interval-ms:10000}")
+    public void flushIdleCarts() {
+        Collection<ScoredEntry<String>> idle = redissonClient.<String>getScoredSortedSet(DIRTY_KEY, StringCodec.INSTANCE)
+                .entryRange(Double.NEGATIVE_INFINITY, true, System.currentTimeMillis() - idleFlushMillis, true,
+                        0, flushBatchSize);
+        int flushed = 0;
+        for (ScoredEntry<String> entry : idle) {
+            String userId = entry.getValue();
+            try {
+                if (flush(userId)) {
+                    flushed++;
+                }
+                // 写回期间又被修改时分数已更新，保留在脏集合中等待下次写回
+                eval(UNMARK_DIRTY_SCRIPT, RScript.ReturnType.INTEGER, List.of(DIRTY_KEY),
+                        userId, String.valueOf(entry.getScore().longValue()));
+            } catch (Exception e) {
+                log.error("购物车写回失败: userId={}", userId, e);
+            }
+        }
+        if (flushed > 0) {
+            log.info("购物车写回: {} 个用户", flushed);
+        }
+    }
+
+    /**
+     * 整车写回；购物车哈希已不存在或没有未写回的修改时跳过
+     */
+    private boolean flush(String userId) {
+        List<Object> snapshot = eval(SNAPSHOT_SCRIPT, RScript.ReturnType.MULTI, List.of(cartKey(userId)));
+        if (snapshot == null || snapshot.isEmpty()) {
+            log.warn("购物车写回跳过，缓存已不存在: userId={}", userId);
+            return false;
+        }
+        String version = snapshot.get(0).toString();
+        if (CLEAN.equals(version)) {
+            return false;
+        }
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i + 1 < snapshot.size(); i += 2) {
+            String field = snapshot.get(i).toString();
+            if (!field.startsWith(ITEM_PREFIX)) {
+                continue;
+            }
+            CartItemDTO item = decode(userId, Long.valueOf(field.substring(ITEM_PREFIX.length())), snapshot.get(i + 1).toString());
+            rows.add(new Object[] { userId, item.getProductId(), item.getProductName(), item.getUnitPrice(),
+                    item.getQuantity(), item.getTotalPrice(), Timestamp.valueOf(item.getCreatedAt()),
+                    Timestamp.valueOf(item.getUpdatedAt()) });
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            cartItemRepository.deleteByUserId(userId);
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            }
+        });
+        eval(MARK_CLEAN_SCRIPT, RScript.ReturnType.INTEGER, List.of(cartKey(userId)), version);
+        return true;
+    }
+
+    private CartItemDTO upsert(String userId, Long productId, String productName, BigDecimal unitPrice,
+                               String mode, int quantity, int maxQuantity) {
+        markDirty(userId);
+        List<Object> result = eval(UPSERT_SCRIPT, RScript.ReturnType.MULTI, List.of(cartKey(userId)),
+                String.valueOf(productId), mode, String.valueOf(quantity), String.valueOf(toCents(unitPrice)),
+                productName, String.valueOf(System.currentTimeMillis()), String.valueOf(maxQuantity),
+                String.valueOf(ttlSeconds));
+        long code = ((Number) result.get(0)).longValue();
+        if (code == NOT_LOADED) {
+            load(userId);
+            return upsert(userId, productId, productName, unitPrice, mode, quantity, maxQuantity);
+        }
+        if (code == OVER_LIMIT) {
+            throw new RuntimeException("库存不足");
+        }
+        if (code == NOT_IN_CART) {
+            throw new RuntimeException("购物车中没有该商品");
+        }
+        return decode(userId, productId, result.get(1).toString());
+    }
+
+    /**
+     * 修改前记入脏集合；先于购物车修改执行，中途失败只会多一次无需写回的检查，不会漏写回
+     */
+    private void markDirty(String userId) {
+        redissonClient.<String>getScoredSortedSet(DIRTY_KEY, StringCodec.INSTANCE)
+                .add(System.currentTimeMillis(), userId);
+    }
+
+    private List<Object> hgetall(String userId) {
+        List<Object> fields = eval("return redis.call('hgetall', KEYS[1])", RScript.ReturnType.MULTI,
+                List.of(cartKey(userId)));
+        if (fields == null || fields.isEmpty()) {
+            load(userId);
+            fields = eval("return redis.call('hgetall', KEYS[1])", RScript.ReturnType.MULTI, List.of(cartKey(userId)));
+        }
+        return fields;
+    }
+
+    private String getField(String userId, String field) {
+        String value = redissonClient.<String, String>getMap(cartKey(userId), StringCodec.INSTANCE).get(field);
+        if (value == null) {
+            load(userId);
+            value = redissonClient.<String, String>getMap(cartKey(userId), StringCodec.INSTANCE).get(field);
+        }
+        return value != null ? value : "0";
+    }
+
+    /**
+     * 从 cart_items 加载购物车到 Redis
+     */
+    private void load(String userId) {
+        List<CartItem> rows = cartItemRepository.findByUserId(userId);
+        List<Object> args = new ArrayList<>(rows.size() * 2 + 3);
+        long total = 0;
+        args.add(String.valueOf(ttlSeconds));
+        args.add(null);
+        args.add(String.valueOf(rows.size()));
+        for (CartItem row : rows) {
+            CartItemDTO item = new CartItemDTO(row);
+            if (item.getUpdatedAt() == null) {
+                item.setUpdatedAt(item.getCreatedAt());
+            }
+            args.add(ITEM_PREFIX + row.getProductId());
+            args.add(encode(item));
+            total += toCents(row.getUnitPrice()) * row.getQuantity();
+        }
+        args.set(1, String.valueOf(total));
+        eval(LOAD_SCRIPT, RScript.ReturnType.INTEGER, List.of(cartKey(userId)), args.toArray());
+    }
+
+    private static String encode(CartItemDTO item) {
+        return item.getQuantity() + "," + toCents(item.getUnitPrice()) + "," + toMillis(item.getCreatedAt()) + ","
+                + toMillis(item.getUpdatedAt()) + "," + item.getProductName();
+    }
+
+    private static CartItemDTO decode(String userId, Long productId, String value) {
+        String[] parts = value.split(",", 5);
+        CartItemDTO item = new CartItemDTO();
+        item.setUserId(userId);
+        item.setProductId(productId);
+        item.setQuantity(Integer.valueOf(parts[0]));
+        item.setUnitPrice(BigDecimal.valueOf(Long.parseLong(parts[1]), 2));
+        item.setTotalPrice(item.getUnitPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        item.setCreatedAt(toDateTime(Long.parseLong(parts[2])));
+        item.setUpdatedAt(toDateTime(Long.parseLong(parts[3])));
+        item.setProductName(parts[4]);
+        return item;
+    }
+
+    private <R> R eval(String script, RScript.ReturnType returnType, List<Object> keys, Object... args) {
+        return redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, script, returnType, keys, args);
+    }
+
+    private static String cartKey(String userId) {
+        return String.format(CART_KEY, userId);
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,241 @@
+package com.financelab.mallservice.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 商品共购矩阵：增量累计“同一订单中一起购买”的次数，并预计算每个商品的前 K 个近邻
+ *
+ * 以商品 id（int）为下标的稀疏行：每行是开放寻址的 int -> int 哈希表（近邻 id -> 共购次数），
+ * 行的条目数有上限，满了之后按 Space-Saving 方式替换计数最小的条目（新条目计数 = 最小计数 + 1），
+ * 因此高频近邻不会被挤出，内存上限约为 商品数 × maxNeighbors × 8 字节 / 0.75。
+ * 近邻按余弦相似度 共购次数 / sqrt(freq(a) × freq(b)) 排序，变更的行由 refresh 批量重算前 K 名，
+ * 读取只取预先算好的数组，为 O(K)。
+ *
+ * 写入与重算在同一把锁内完成；读取 topNeighbors 无锁。
+ */
+public final class CoPurchaseMatrix {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int maxNeighbors;
+    private final int topK;
+    private final int maxBasketSize;
+
+    private Row[] rows = new Row[1024];
+    private int[] frequencies = new int[1024];
+    private final BitSet dirty = new BitSet();
+    private volatile AtomicReferenceArray<int[]> top = new AtomicReferenceArray<>(1024);
+
+    public CoPurchaseMatrix(int maxNeighbors, int topK, int maxBasketSize) {
+        this.maxNeighbors = maxNeighbors;
+        this.topK = topK;
+        this.maxBasketSize = maxBasketSize;
+    }
+
+    /**
+     * 累计一个订单中的商品（id 须为正且互不重复）；超过 maxBasketSize 的部分只计频次不计共购
+     */
+    public synchronized void addBasket(int[] productIds) {
+        if (productIds.length == 0) {
+            return;
+        }
+        ensureCapacity(Arrays.stream(productIds).max().getAsInt());
+        for (int productId : productIds) {
+            frequencies[productId]++;
+            dirty.set(productId);
+        }
+        int pairs = Math.min(productIds.length, maxBasketSize);
+        for (int i = 0; i < pairs; i++) {
+            int a = productIds[i];
+            Row row = rows[a];
+            if (row == null) {
+                row = rows[a] = new Row();
+            }
+            for (int j = 0; j < pairs; j++) {
+                if (i != j) {
+                    row.increment(productIds[j], maxNeighbors);
+                }
+            }
+        }
+    }
+
+    /**
+     * 重算变更商品的前 K 个近邻
+     *
+     * @return 重算的商品数
+     */
+    public synchronized int refresh() {
+        AtomicReferenceArray<int[]> current = top;
+        int refreshed = 0;
+        for (int productId = dirty.nextSetBit(0); productId >= 0; productId = dirty.nextSetBit(productId + 1)) {
+            current.set(productId, computeTop(productId));
+            refreshed++;
+        }
+        dirty.clear();
+        return refreshed;
+    }
+
+    /**
+     * 预计算的近邻（按相似度降序），没有时返回空数组；返回的数组为共享对象，调用方不得修改
+     */
+    public int[] topNeighbors(int productId) {
+        AtomicReferenceArray<int[]> current = top;
+        if (productId <= 0 || productId >= current.length()) {
+            return EMPTY;
+        }
+        int[] neighbors = current.get(productId);
+        return neighbors != null ? neighbors : EMPTY;
+    }
+
+    public synchronized long entryCount() {
+        long count = 0;
+        for (Row row : rows) {
+            if (row != null) {
+                count += row.size;
+            }
+        }
+        return count;
+    }
+
+    private int[] computeTop(int productId) {
+        Row row = rows[productId];
+        if (row == null || row.size == 0) {
+            return EMPTY;
+        }
+        int n = row.size;
+        int[] ids = new int[n];
+        double[] scores = new double[n];
+        int m = 0;
+        double selfFrequency = frequencies[productId];
+        for (int i = 0; i < row.keys.length; i++) {
+            int neighbor = row.keys[i];
+            if (neighbor != 0) {
+                ids[m] = neighbor;
+                scores[m] = row.counts[i] / Math.sqrt(selfFrequency * Math.max(1, frequencies[neighbor]));
+                m++;
+            }
+        }
+        Integer[] order = new Integer[m];
+        for (int i = 0; i < m; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> scores[x] != scores[y] ? Double.compare(scores[y], scores[x]) : Integer.compare(ids[x], ids[y]));
+        int k = Math.min(topK, m);
+        int[] result = new int[k];
+        for (int i = 0; i < k; i++) {
+            result[i] = ids[order[i]];
+        }
+        return result;
+    }
+
+    private void ensureCapacity(int maxId) {
+        if (maxId < rows.length) {
+            return;
+        }
+        int size = rows.length;
+        while (size <= maxId) {
+            size <<= 1;
+        }
+        rows = Arrays.copyOf(rows, size);
+        frequencies = Arrays.copyOf(frequencies, size);
+        AtomicReferenceArray<int[]> current = top;
+        AtomicReferenceArray<int[]> grown = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        top = grown;
+    }
+
+    /**
+     * 开放寻址（线性探测）int -> int 计数表，键 0 表示空位
+     */
+    private static final class Row {
+        private int[] keys = new int[4];
+        private int[] counts = new int[4];
+        private int size;
+
+        private void increment(int key, int maxSize) {
+            int index = indexOf(key);
+            if (index >= 0) {
+                counts[index]++;
+                return;
+            }
+            if (size >= maxSize) {
+                // Space-Saving：替换计数最小的近邻
+                int minIndex = -1;
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != 0 && (minIndex < 0 || counts[i] < counts[minIndex])) {
+                        minIndex = i;
+                    }
+                }
+                int minCount = counts[minIndex];
+                removeAt(minIndex);
+                insert(key, minCount + 1);
+                return;
+            }
+            if ((size + 1) * 4 > keys.length * 3) {
+                rehash(keys.length << 1);
+            }
+            insert(key, 1);
+        }
+
+        private int indexOf(int key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(int key, int count) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            counts[i] = count;
+            size++;
+        }
+
+        // 反向移位删除，保持探测链连续
+        private void removeAt(int hole) {
+            int mask = keys.length - 1;
+            int i = (hole + 1) & mask;
+            while (keys[i] != 0) {
+                int home = hash(keys[i]) & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    counts[hole] = counts[i];
+                    hole = i;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[hole] = 0;
+            counts[hole] = 0;
+            size--;
+        }
+
+        private void rehash(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[capacity];
+            counts = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    insert(oldKeys[i], oldCounts[i]);
+                }
+            }
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.dto.FlashSaleDTO;
+import com.financelab.mallservice.dto.FlashSaleResultDTO;
+import com.financelab.mallservice.dto.OrderDTO;
+import com.financelab.mallservice.entity.FlashSale;
+import com.financelab.mallservice.entity.Order;
+import com.financelab.mallservice.entity.OrderItem;
+import com.financelab.mallservice.entity.Product;
+import com.financelab.mallservice.repository.FlashSaleRepository;
+import com.financelab.mallservice.repository.OrderItemBatchRepository;
+import com.financelab.mallservice.repository.OrderRepository;
+import com.financelab.mallservice.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 秒杀服务
+ *
+ * 活动开始前把活动库存整体预占为库存池（预占ID flash-sale:{id}），抢购请求只在内存中做准入：
+ * 每个活动一个令牌计数器（CAS 扣减，不会小于零），拿到令牌的请求进入 FIFO 队列后立即返回，
+ * 令牌耗尽后的请求直接返回已售罄，不触达数据库。队列由每个活动一个虚拟线程按顺序取出，
+ * 以全局信号量限制并发下单数，从库存池拆出 1 件转为订单预占后创建待支付订单，
+ * 之后的支付、超时与取消流程与普通订单一致。
+ *
+ * 令牌计数器为单实例视图，多实例部署时各实例可能多放行，最终以 Redis 库存池为准，
+ * 拆分失败的请求返回已售罄。用户通过轮询结果接口获取下单结果。
+ */
+@Service
+@Slf4j
+public class FlashSaleService {
+
+    private static final String POOL_PREFIX = "flash-sale:";
+
+    private final FlashSaleRepository flashSaleRepository;
+    private final ProductRepository productRepository;
+    private final OrderRepository orderRepository;
+    private final OrderItemBatchRepository orderItemBatchRepository;
+    private final InventoryService inventoryService;
+    private final OrderSummaryService orderSummaryService;
+    private final OrderTimeoutService orderTimeoutService;
+    private final RecommendationService recommendationService;
+    private final OrderNumberGenerator orderNumberGenerator;
+    private final TransactionTemplate transactionTemplate;
+    private final long preloadSeconds;
+    private final long poolGraceMinutes;
+    private final long resultRetentionMinutes;
+    private final Semaphore orderPermits;
+
+    private final Map<Long, SaleState> sales = new ConcurrentHashMap<>();
+    private final ExecutorService orderExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public FlashSaleService(FlashSaleRepository flashSaleRepository,
+                            ProductRepository productRepository,
+                            OrderRepository orderRepository,
+                            OrderItemBatchRepository orderItemBatchRepository,
+                            InventoryService inventoryService,
+                            OrderSummaryService orderSummaryService,
+                            OrderTimeoutService orderTimeoutService,
+                            RecommendationService recommendationService,
+                            OrderNumberGenerator orderNumberGenerator,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${mall.flash-sale.preload-seconds:60}") long preloadSeconds,
+                            @Value("${mall.flash-sale.pool-grace-minutes:30}") long poolGraceMinutes,
+                            @Value("${mall.flash-sale.result-retention-minutes:60}") long resultRetentionMinutes,
+                            @Value("${mall.flash-sale.order-concurrency:32}") int orderConcurrency) {
+        this.flashSaleRepository = flashSaleRepository;
+        this.productRepository = productRepository;
+        this.orderRepository = orderRepository;
+        this.orderItemBatchRepository = orderItemBatchRepository;
+        this.inventoryService = inventoryService;
+        this.orderSummaryService = orderSummaryService;
+        this.orderTimeoutService = orderTimeoutService;
+        this.recommendationService = recommendationService;
+        this.orderNumberGenerator = orderNumberGenerator;
+        this.transactionTemplate = transactionTemplate;
+        this.preloadSeconds = preloadSeconds;
+        this.poolGraceMinutes = poolGraceMinutes;
+        this.resultRetentionMinutes = resultRetentionMinutes;
+        this.orderPermits = new Semaphore(orderConcurrency);
+    }
+
+    /**
+     * 创建秒杀活动
+     */
+    public FlashSaleDTO createSale(FlashSaleDTO saleDTO) {
+        Product product = productRepository.findById(saleDTO.getProductId())
+                .orElseThrow(() -> new RuntimeException("商品不存在"));
+        if (product.getStatus() != Product.ProductStatus.AVAILABLE) {
+            throw new RuntimeException("商品不可售");
+        }
+        if (saleDTO.getTotalQuantity() == null || saleDTO.getTotalQuantity() <= 0) {
+            throw new RuntimeException("秒杀数量必须大于零");
+        }
+        if (saleDTO.getSalePrice() == null || saleDTO.getSalePrice().signum() <= 0) {
+            throw new RuntimeException("秒杀价格必须大于零");
+        }
+        if (saleDTO.getStartTime() == null || saleDTO.getEndTime() == null
+                || !saleDTO.getEndTime().isAfter(saleDTO.getStartTime())) {
+            throw new RuntimeException("秒杀时间无效");
+        }
+
+        FlashSale sale = new FlashSale();
+        sale.setProductId(product.getId());
+        sale.setSalePrice(saleDTO.getSalePrice());
+        sale.setTotalQuantity(saleDTO.getTotalQuantity());
+        sale.setSoldQuantity(0);
+        sale.setStartTime(saleDTO.getStartTime());
+        sale.setEndTime(saleDTO.getEndTime());
+        sale.setStatus(FlashSale.FlashSaleStatus.SCHEDULED);
+        sale.setCreatedAt(LocalDateTime.now());
+
+        FlashSale saved = flashSaleRepository.save(sale);
+        log.info("创建秒杀活动: saleId={}, productId={}, quantity={}", saved.getId(), product.getId(), saved.getTotalQuantity());
+        return new FlashSaleDTO(saved);
+    }
+
+    /**
+     * 查询未结束的秒杀活动
+     */
+    public List<FlashSaleDTO> getOpenSales() {
+        return flashSaleRepository.findByStatusInOrderByStartTime(
+                        List.of(FlashSale.FlashSaleStatus.SCHEDULED, FlashSale.FlashSaleStatus.ACTIVE)).stream()
+                .map(sale -> {
+                    FlashSaleDTO dto = new FlashSaleDTO(sale);
+                    SaleState state = sales.get(sale.getId());
+                    dto.setRemainingQuantity(state != null ? state.tokens.get() : sale.getTotalQuantity());
+                    return dto;
+                })
+                .toList();
+    }
+
+    /**
+     * 抢购：只做内存准入，下单结果通过 getResult 轮询
+     */
+    public FlashSaleResultDTO enter(Long saleId, String userId, OrderDTO contact) {
+        SaleState state = sales.get(saleId);
+        LocalDateTime now = LocalDateTime.now();
+        if (state == null || state.closing || now.isBefore(state.sale.getStartTime())
+                || !now.isBefore(state.sale.getEndTime())) {
+            throw new RuntimeException("秒杀活动未开始或已结束");
+        }
+        if (contact.getShippingAddress() == null || contact.getContactPhone() == null
+                || contact.getContactName() == null || contact.getPaymentMethod() == null) {
+            throw new RuntimeException("收货信息不完整");
+        }
+
+        // 每个用户限购一件，重复请求返回已有结果；下单失败的用户可以重新抢购
+        FlashSaleResultDTO existing = state.results.get(userId);
+        if (existing != null && existing.getStatus() != FlashSaleResultDTO.ResultStatus.FAILED) {
+            return existing;
+        }
+        if (!state.tryAcquireToken()) {
+            return new FlashSaleResultDTO(saleId, userId, FlashSaleResultDTO.ResultStatus.SOLD_OUT, "已售罄");
+        }
+
+        FlashSaleResultDTO queued = new FlashSaleResultDTO(saleId, userId, FlashSaleResultDTO.ResultStatus.QUEUED, "排队中");
+        boolean admitted = existing != null
+                ? state.results.replace(userId, existing, queued)
+                : state.results.putIfAbsent(userId, queued) == null;
+        if (!admitted) {
+            state.tokens.incrementAndGet(); // 同一用户并发请求，只保留一个
+            return state.results.get(userId);
+        }
+        state.queue.add(new Entry(userId, contact));
+        return queued;
+    }
+
+    /**
+     * 查询抢购结果
+     */
+    public FlashSaleResultDTO getResult(Long saleId, String userId) {
+        SaleState state = sales.get(saleId);
+        FlashSaleResultDTO result = state != null ? state.results.get(userId) : null;
+        if (result == null) {
+            return new FlashSaleResultDTO(saleId, userId, FlashSaleResultDTO.ResultStatus.NOT_FOUND, "未参与该秒杀活动");
+        }
+        return result;
+    }
+
+    /**
+     * 预载即将开始的活动库存、加载进行中的活动、结束到期的活动
+     */
+    @Scheduled(fixedDelayString = "${mall.flash-sale.refresh-interval-ms:1000}")
+    public void refreshSales() {
+        LocalDateTime now = LocalDateTime.now();
+
+        for (FlashSale sale : flashSaleRepository.findByStatusAndStartTimeBefore(
+                FlashSale.FlashSaleStatus.SCHEDULED, now.plusSeconds(preloadSeconds))) {
+            try {
+                if (!sale.getEndTime().isAfter(now)) {
+                    flashSaleRepository.compareAndSetStatus(sale.getId(), FlashSale.FlashSaleStatus.SCHEDULED.name(),
+                            FlashSale.FlashSaleStatus.ENDED.name(), now);
+                } else {
+                    preload(sale, now);
+                }
+            } catch (Exception e) {
+                log.error("预载秒杀活动失败: saleId={}", sale.getId(), e);
+            }
+        }
+
+        for (FlashSale sale : flashSaleRepository.findByStatusInOrderByStartTime(List.of(FlashSale.FlashSaleStatus.ACTIVE))) {
+            SaleState state = sales.get(sale.getId());
+            if (state == null) {
+                state = attach(sale); // 其他实例预载或本实例重启
+            }
+            if (state != null && !sale.getEndTime().isAfter(now)) {
+                state.closing = true; // 队列取空后由活动线程收尾
+            }
+        }
+
+        sales.values().removeIf(state -> state.closedAt != null
+                && state.closedAt.plusMinutes(resultRetentionMinutes).isBefore(now));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        orderExecutor.shutdown();
+    }
+
+    private void preload(FlashSale sale, LocalDateTime now) {
+        Product product = productRepository.findById(sale.getProductId())
+                .orElseThrow(() -> new RuntimeException("商品不存在"));
+        // 条件更新保证多实例下只有一个实例预占库存池
+        if (flashSaleRepository.compareAndSetStatus(sale.getId(), FlashSale.FlashSaleStatus.SCHEDULED.name(),
+                FlashSale.FlashSaleStatus.ACTIVE.name(), now) == 0) {
+            return;
+        }
+
+        long ttlMillis = Duration.between(now, sale.getEndTime().plusMinutes(poolGraceMinutes)).toMillis();
+        Long shortProductId = inventoryService.reserve(poolId(sale.getId()),
+                Map.of(product.getId(), sale.getTotalQuantity()), Map.of(product.getId(), product.getStock()), ttlMillis);
+        if (shortProductId != null) {
+            flashSaleRepository.compareAndSetStatus(sale.getId(), FlashSale.FlashSaleStatus.ACTIVE.name(),
+                    FlashSale.FlashSaleStatus.ENDED.name(), now);
+            log.warn("秒杀活动库存不足，活动取消: saleId={}, productId={}", sale.getId(), product.getId());
+            return;
+        }
+
+        sale.setStatus(FlashSale.FlashSaleStatus.ACTIVE);
+        attach(sale);
+        log.info("秒杀活动库存已预载: saleId={}, quantity={}", sale.getId(), sale.getTotalQuantity());
+    }
+
+    private SaleState attach(FlashSale sale) {
+        Product product = productRepository.findById(sale.getProductId()).orElse(null);
+        if (product == null) {
+            return null;
+        }
+        int remaining = inventoryService.getReserved(poolId(sale.getId()), product.getId());
+        SaleState state = new SaleState(sale, product, remaining);
+        if (sales.putIfAbsent(sale.getId(), state) != null) {
+            return sales.get(sale.getId());
+        }
+        Thread.ofVirtual().name("flash-sale-" + sale.getId()).start(() -> drain(state));
+        return state;
+    }
+
+    /**
+     * 按 FIFO 顺序取出已准入的请求并下单，活动结束且队列取空后等待在途下单完成再收尾
+     */
+    private void drain(SaleState state) {
+        state.inFlight.register();
+        try {
+            while (!state.closing || !state.queue.isEmpty()) {
+                Entry entry = state.queue.poll(200, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    continue;
+                }
+                orderPermits.acquire();
+                state.inFlight.register();
+                orderExecutor.submit(() -> {
+                    try {
+                        placeOrder(state, entry);
+                    } finally {
+                        state.inFlight.arriveAndDeregister();
+                        orderPermits.release();
+                    }
+                });
+            }
+            state.inFlight.awaitAdvanceInterruptibly(state.inFlight.arrive());
+            close(state);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("秒杀活动处理异常: saleId={}", state.sale.getId(), e);
+        }
+    }
+
+    private void placeOrder(SaleState state, Entry entry) {
+        FlashSale sale = state.sale;
+        String orderNumber = orderNumberGenerator.nextOrderNumber();
+
+        if (!inventoryService.transfer(poolId(sale.getId()), orderNumber, sale.getProductId(), 1)) {
+            state.tokens.set(0); // 库存池已空（多实例共享库存池）
+            state.results.put(entry.userId,
+                    new FlashSaleResultDTO(sale.getId(), entry.userId, FlashSaleResultDTO.ResultStatus.SOLD_OUT, "已售罄"));
+            return;
+        }
+
+        try {
+            Order order = transactionTemplate.execute(status -> saveOrder(state, entry, orderNumber));
+            FlashSaleResultDTO result = new FlashSaleResultDTO(sale.getId(), entry.userId,
+                    FlashSaleResultDTO.ResultStatus.SUCCESS, "抢购成功，请在订单超时前完成支付");
+            result.setOrderId(order.getId());
+            result.setOrderNumber(orderNumber);
+            state.results.put(entry.userId, result);
+            state.sold.incrementAndGet();
+        } catch (Exception e) {
+            // 订单未创建，把这一件放回库存池并归还令牌
+            long poolExpireAt = sale.getEndTime().plusMinutes(poolGraceMinutes)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            if (!inventoryService.transfer(orderNumber, poolId(sale.getId()), sale.getProductId(), 1, poolExpireAt)) {
+                inventoryService.release(orderNumber);
+            }
+            state.tokens.incrementAndGet();
+            state.results.put(entry.userId,
+                    new FlashSaleResultDTO(sale.getId(), entry.userId, FlashSaleResultDTO.ResultStatus.FAILED, "下单失败，请重试"));
+            log.error("秒杀下单失败: saleId={}, userId={}, error={}", sale.getId(), entry.userId, e.getMessage());
+        }
+    }
+
+    private Order saveOrder(SaleState state, Entry entry, String orderNumber) {
+        FlashSale sale = state.sale;
+        Product product = state.product;
+        OrderDTO contact = entry.contact;
+
+        BigDecimal totalAmount = sale.getSalePrice();
+        BigDecimal discountAmount = BigDecimal.ZERO;
+        BigDecimal taxAmount = totalAmount.multiply(new BigDecimal("0.08")).setScale(2, RoundingMode.HALF_UP);
+        BigDecimal shippingAmount = totalAmount.compareTo(new BigDecimal("100")) >= 0 ? BigDecimal.ZERO : new BigDecimal("10.00");
+        BigDecimal finalAmount = totalAmount.add(taxAmount).add(shippingAmount).subtract(discountAmount);
+
+        Order order = new Order();
+        order.setUserId(entry.userId);
+        order.setOrderNumber(orderNumber);
+        order.setStatus(Order.OrderStatus.PENDING);
+        order.setTotalAmount(totalAmount);
+        order.setDiscountAmount(discountAmount);
+        order.setTaxAmount(taxAmount);
+        order.setShippingAmount(shippingAmount);
+        order.setFinalAmount(finalAmount);
+        order.setShippingAddress(contact.getShippingAddress());
+        order.setContactPhone(contact.getContactPhone());
+        order.setContactName(contact.getContactName());
+        order.setPaymentMethod(contact.getPaymentMethod());
+        order.setPaymentStatus(Order.PaymentStatus.UNPAID);
+        order.setCreatedAt(LocalDateTime.now());
+        order.setRemark("秒杀活动: " + sale.getId());
+        orderSummaryService.recordCreated(entry.userId, order.getStatus(), finalAmount);
+        Order savedOrder = orderRepository.save(order);
+        orderTimeoutService.schedule(savedOrder.getId(), savedOrder.getCreatedAt());
+
+        OrderItem orderItem = new OrderItem();
+        orderItem.setOrderId(savedOrder.getId());
+        orderItem.setProductId(product.getId());
+        orderItem.setProductName(product.getProductName());
+        orderItem.setProductCode(product.getProductCode());
+        orderItem.setImageUrl(product.getImageUrl());
+        orderItem.setUnitPrice(sale.getSalePrice());
+        orderItem.setQuantity(1);
+        orderItem.setTotalPrice(sale.getSalePrice());
+        orderItem.setSpecifications(product.getSpecifications());
+        orderItem.setCategory(product.getCategory());
+        orderItemBatchRepository.insertAll(List.of(orderItem));
+        recommendationService.recordOrder(savedOrder.getId(), entry.userId, List.of(product.getId()));
+
+        return savedOrder;
+    }
+
+    /**
+     * 活动收尾：未售出的库存池释放回普通库存，记录本实例售出数量
+     */
+    private void close(SaleState state) {
+        FlashSale sale = state.sale;
+        LocalDateTime now = LocalDateTime.now();
+        inventoryService.release(poolId(sale.getId()));
+        if (state.sold.get() > 0) {
+            flashSaleRepository.addSoldQuantity(sale.getId(), state.sold.get(), now);
+        }
+        flashSaleRepository.compareAndSetStatus(sale.getId(), FlashSale.FlashSaleStatus.ACTIVE.name(),
+                FlashSale.FlashSaleStatus.ENDED.name(), now);
+        state.closedAt = now;
+        log.info("秒杀活动结束: saleId={}, sold={}", sale.getId(), state.sold.get());
+    }
+
+    private static String poolId(Long saleId) {
+        return POOL_PREFIX + saleId;
+    }
+
+    private static final class SaleState {
+        private final FlashSale sale;
+        private final Product product;
+        private final AtomicInteger tokens;
+        private final AtomicInteger sold = new AtomicInteger();
+        private final Phaser inFlight = new Phaser(); // 在途下单任务，drain 线程本身也是一方
+        private final Map<String, FlashSaleResultDTO> results = new ConcurrentHashMap<>();
+        private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+        private volatile boolean closing;
+        private volatile LocalDateTime closedAt;
+
+        private SaleState(FlashSale sale, Product product, int tokens) {
+            this.sale = sale;
+            this.product = product;
+            this.tokens = new AtomicInteger(tokens);
+        }
+
+        private boolean tryAcquireToken() {
+            int current;
+            do {
+                current = tokens.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!tokens.compareAndSet(current, current - 1));
+            return true;
+        }
+    }
+
+    private record Entry(String userId, OrderDTO contact) {}
+}
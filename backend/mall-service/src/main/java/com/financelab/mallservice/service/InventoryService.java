@@ -0,0 +1,486 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.event.ProductChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 库存预占服务
+ *
+ * 每个商品的可售数量保存在 Redis 计数器中（可售 = products.stock - 未确认的预占），
+ * 预占/释放通过 Lua 脚本原子完成，多实例部署下也不会超卖。预占在支付时确认，
+ * 以一条多行条件 UPDATE（stock >= 数量）扣减 products.stock。
+ * 各商品未确认的预占总量另记在一个哈希中，定时任务据此把计数器校准为 products.stock - 预占总量，
+ * 修正绕过本服务直接修改库存造成的偏差。
+ *
+ * 未支付订单的超时取消以 OrderTimeoutService 的时间轮为准，取消后由它释放预占；
+ * 这里的过期任务只兜底释放时间轮未处理的孤儿预占（有效期 = 支付超时 + 宽限期），不取消订单。
+ * 所有键使用同一 hash tag，Redis Cluster 下脚本涉及的键落在同一槽位。
+ */
+@Service
+@Slf4j
+public class InventoryService {
+
+    private static final String STOCK_KEY = "{inventory}:stock:";
+    private static final String RESERVATION_KEY = "{inventory}:reservation:";
+    private static final String EXPIRY_KEY = "{inventory}:expiry";
+    private static final String RESERVED_KEY = "{inventory}:reserved";
+    private static final int MAX_RELEASE_ATTEMPTS = 3;
+
+    // KEYS: 各商品计数器..., 预占哈希, 过期集合, 预占总量哈希
+    // ARGV: 各商品数量..., 各商品ID..., 各商品数据库库存（计数器不存在时初始化）..., 过期时间, 预占ID
+    private static final String RESERVE_SCRIPT =
+            "local n = #KEYS - 3 " +
+            "for i = 1, n do " +
+            "  if redis.call('exists', KEYS[i]) == 0 then " +
+            "    local held = tonumber(redis.call('hget', KEYS[n + 3], ARGV[n + i]) or '0') " +
+            "    redis.call('set', KEYS[i], tonumber(ARGV[2 * n + i]) - held) " +
+            "  end " +
+            "  if tonumber(redis.call('get', KEYS[i])) < tonumber(ARGV[i]) then return i end " +
+            "end " +
+            "for i = 1, n do " +
+            "  redis.call('decrby', KEYS[i], ARGV[i]) " +
+            "  redis.call('hincrby', KEYS[n + 1], ARGV[n + i], ARGV[i]) " +
+            "  redis.call('hincrby', KEYS[n + 3], ARGV[n + i], ARGV[i]) " +
+            "end " +
+            "redis.call('zadd', KEYS[n + 2], ARGV[3 * n + 1], ARGV[3 * n + 2]) " +
+            "return 0";
+
+    // 从一个预占中拆出指定数量转入另一个预占
+    // KEYS: 源预占哈希, 目标预占哈希, 过期集合  ARGV: 商品ID, 数量, 目标过期时间, 目标预占ID
+    private static final String TRANSFER_SCRIPT =
+            "local have = tonumber(redis.call('hget', KEYS[1], ARGV[1]) or '0') " +
+            "local qty = tonumber(ARGV[2]) " +
+            "if have < qty then return 0 end " +
+            "if have == qty then redis.call('hdel', KEYS[1], ARGV[1]) else redis.call('hincrby', KEYS[1], ARGV[1], -qty) end " +
+            "redis.call('hincrby', KEYS[2], ARGV[1], qty) " +
+            "redis.call('zadd', KEYS[3], ARGV[3], ARGV[4]) " +
+            "return 1";
+
+    // 取出并删除预占，返回 [商品ID, 数量, ...]
+    // KEYS: 预占哈希, 过期集合, 预占总量哈希  ARGV: 预占ID
+    private static final String CLAIM_SCRIPT =
+            "local items = redis.call('hgetall', KEYS[1]) " +
+            "for j = 1, #items, 2 do " +
+            "  if redis.call('hincrby', KEYS[3], items[j], -tonumber(items[j + 1])) <= 0 then redis.call('hdel', KEYS[3], items[j]) end " +
+            "end " +
+            "redis.call('del', KEYS[1]) " +
+            "redis.call('zrem', KEYS[2], ARGV[1]) " +
+            "return items";
+
+    // 批量释放：删除各预占并把数量加回计数器，返回释放的预占数
+    // KEYS: 各预占哈希..., 过期集合, 预占总量哈希, 各商品计数器...  ARGV: 预占数, 各预占ID..., 各计数器对应的商品ID...
+    // 计数器由调用方预先读出预占中的商品后传入；预占中出现未传入的商品（读取后又并入）时不做改动并返回 -1
+    private static final String RELEASE_ALL_SCRIPT =
+            "local m = tonumber(ARGV[1]) " +
+            "local counters = {} " +
+            "for i = m + 3, #KEYS do counters[ARGV[i - 1]] = KEYS[i] end " +
+            "for i = 1, m do " +
+            "  local items = redis.call('hgetall', KEYS[i]) " +
+            "  for j = 1, #items, 2 do if not counters[items[j]] then return -1 end end " +
+            "end " +
+            "local released = 0 " +
+            "for i = 1, m do " +
+            "  redis.call('zrem', KEYS[m + 1], ARGV[i + 1]) " +
+            "  local items = redis.call('hgetall', KEYS[i]) " +
+            "  if #items > 0 then " +
+            "    for j = 1, #items, 2 do " +
+            "      redis.call('incrby', counters[items[j]], items[j + 1]) " +
+            "      if redis.call('hincrby', KEYS[m + 2], items[j], -tonumber(items[j + 1])) <= 0 then redis.call('hdel', KEYS[m + 2], items[j]) end " +
+            "    end " +
+            "    redis.call('del', KEYS[i]) " +
+            "    released = released + 1 " +
+            "  end " +
+            "end " +
+            "return released";
+
+    private static final String RESTORE_SCRIPT =
+            "for i = 1, #KEYS do " +
+            "  if redis.call('exists', KEYS[i]) == 1 then redis.call('incrby', KEYS[i], ARGV[i]) end " +
+            "end " +
+            "return 0";
+
+    // 校准计数器为数据库库存 - 预占总量，计数器不存在时跳过（由下次预占初始化），返回修正的计数器数
+    // KEYS: 各商品计数器..., 预占总量哈希  ARGV: 各商品ID..., 各商品数据库库存...
+    private static final String RECONCILE_SCRIPT =
+            "local n = #KEYS - 1 " +
+            "local fixed = 0 " +
+            "for i = 1, n do " +
+            "  local current = redis.call('get', KEYS[i]) " +
+            "  if current then " +
+            "    local expected = tonumber(ARGV[n + i]) - tonumber(redis.call('hget', KEYS[n + 1], ARGV[i]) or '0') " +
+            "    if tonumber(current) ~= expected then redis.call('set', KEYS[i], expected) fixed = fixed + 1 end " +
+            "  end " +
+            "end " +
+            "return fixed";
+
+    // 多行条件扣减：派生表逐行给出 (商品ID, 数量)，库存不足的行不会被更新
+    private static final String CONFIRM_SQL_PREFIX =
+            "UPDATE products p JOIN (";
+    private static final String CONFIRM_SQL_SUFFIX =
+            ") d ON p.id = d.id SET p.stock = p.stock - d.qty, p.sales_count = p.sales_count + d.qty, p.updated_at = ? " +
+            "WHERE p.stock >= d.qty";
+
+    private static final String RESTOCK_SQL =
+            "UPDATE products SET stock = stock + ?, sales_count = GREATEST(sales_count - ?, 0), updated_at = ? " +
+            "WHERE id = ?";
+
+    private final RedissonClient redissonClient;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long reservationTtlMillis;
+    private final int expiryBatchSize;
+    private final int reconcilePageSize;
+    private final long reconcileSettleMillis;
+
+    public InventoryService(RedissonClient redissonClient,
+                            JdbcTemplate jdbcTemplate,
+                            ApplicationEventPublisher eventPublisher,
+                            @Value("${mall.order.payment-timeout-minutes:30}") long paymentTimeoutMinutes,
+                            @Value("${mall.inventory.orphan-grace-minutes:10}") long orphanGraceMinutes,
+                            @Value("${mall.inventory.expiry-batch-size:500}") int expiryBatchSize,
+                            @Value("${mall.inventory.reconcile-page-size:500}") int reconcilePageSize,
+                            @Value("${mall.inventory.reconcile-settle-ms:30000}") long reconcileSettleMillis) {
+        this.redissonClient = redissonClient;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.reservationTtlMillis = (paymentTimeoutMinutes + orphanGraceMinutes) * 60_000L;
+        this.expiryBatchSize = expiryBatchSize;
+        this.reconcilePageSize = reconcilePageSize;
+        this.reconcileSettleMillis = reconcileSettleMillis;
+    }
+
+    /**
+     * 原子预占一组商品，任一商品不足时全部不预占
+     *
+     * @param reservationId 预占ID（订单号）
+     * @param quantities 商品ID -> 数量
+     * @param dbStocks 商品ID -> products.stock，用于计数器首次初始化
+     * @return 不足的商品ID，全部预占成功时返回 null
+     */
+    public Long reserve(String reservationId, Map<Long, Integer> quantities, Map<Long, Integer> dbStocks) {
+        return reserve(reservationId, quantities, dbStocks, reservationTtlMillis);
+    }
+
+    /**
+     * 以指定有效期原子预占一组商品
+     */
+    public Long reserve(String reservationId, Map<Long, Integer> quantities, Map<Long, Integer> dbStocks,
+                        long ttlMillis) {
+        List<Long> productIds = new ArrayList<>(quantities.keySet());
+        List<Object> keys = new ArrayList<>(productIds.size() + 3);
+        List<Object> args = new ArrayList<>(productIds.size() * 3 + 2);
+        for (Long productId : productIds) {
+            keys.add(STOCK_KEY + productId);
+            args.add(String.valueOf(quantities.get(productId)));
+        }
+        for (Long productId : productIds) {
+            args.add(String.valueOf(productId));
+        }
+        for (Long productId : productIds) {
+            args.add(String.valueOf(dbStocks.getOrDefault(productId, 0)));
+        }
+        keys.add(RESERVATION_KEY + reservationId);
+        keys.add(EXPIRY_KEY);
+        keys.add(RESERVED_KEY);
+        args.add(String.valueOf(System.currentTimeMillis() + ttlMillis));
+        args.add(reservationId);
+
+        Long result = script().eval(RScript.Mode.READ_WRITE, RESERVE_SCRIPT, RScript.ReturnType.INTEGER,
+                keys, args.toArray());
+        if (result == null || result == 0) {
+            return null;
+        }
+        return productIds.get(result.intValue() - 1);
+    }
+
+    /**
+     * 从源预占（如秒杀活动库存池）拆出数量转为订单预占，订单预占使用默认有效期
+     *
+     * @return 源预占剩余数量不足时返回 false
+     */
+    public boolean transfer(String fromReservationId, String toReservationId, Long productId, int quantity) {
+        return transfer(fromReservationId, toReservationId, productId, quantity,
+                System.currentTimeMillis() + reservationTtlMillis);
+    }
+
+    /**
+     * 从源预占拆出数量转入目标预占，并把目标预占的过期时间设为 expireAtMillis
+     */
+    public boolean transfer(String fromReservationId, String toReservationId, Long productId, int quantity,
+                            long expireAtMillis) {
+        Long moved = script().eval(RScript.Mode.READ_WRITE, TRANSFER_SCRIPT, RScript.ReturnType.INTEGER,
+                List.of(RESERVATION_KEY + fromReservationId, RESERVATION_KEY + toReservationId, EXPIRY_KEY),
+                String.valueOf(productId), String.valueOf(quantity),
+                String.valueOf(expireAtMillis), toReservationId);
+        return moved != null && moved == 1;
+    }
+
+    /**
+     * 查询某个预占中指定商品的剩余数量
+     */
+    public int getReserved(String reservationId, Long productId) {
+        String value = redissonClient.<String, String>getMap(RESERVATION_KEY + reservationId, StringCodec.INSTANCE)
+                .get(String.valueOf(productId));
+        return value != null ? Integer.parseInt(value) : 0;
+    }
+
+    /**
+     * 确认预占：以一条多行条件 UPDATE 扣减 products.stock 并累加销量
+     *
+     * 必须在事务中调用；事务回滚时预占数量会加回计数器。
+     *
+     * @return 预占不存在（已超时释放或已确认）时返回 false
+     */
+    public boolean confirm(String reservationId) {
+        List<Object> items = script().eval(RScript.Mode.READ_WRITE, CLAIM_SCRIPT, RScript.ReturnType.MULTI,
+                List.of(RESERVATION_KEY + reservationId, EXPIRY_KEY, RESERVED_KEY), reservationId);
+        if (items == null || items.isEmpty()) {
+            return false;
+        }
+        Map<Long, Integer> quantities = toQuantities(items);
+
+        // 回滚时恢复计数器，避免已取出的预占数量丢失
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    restoreCounters(quantities);
+                } else {
+                    eventPublisher.publishEvent(new ProductChangedEvent(quantities.keySet()));
+                }
+            }
+        });
+
+        StringBuilder sql = new StringBuilder(CONFIRM_SQL_PREFIX);
+        List<Object> args = new ArrayList<>(quantities.size() * 2 + 1);
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            sql.append(args.isEmpty() ? "SELECT ? AS id, ? AS qty" : " UNION ALL SELECT ?, ?");
+            args.add(entry.getKey());
+            args.add(entry.getValue());
+        }
+        sql.append(CONFIRM_SQL_SUFFIX);
+        args.add(Timestamp.valueOf(LocalDateTime.now()));
+
+        int updated = jdbcTemplate.update(sql.toString(), args.toArray());
+        if (updated != quantities.size()) {
+            // 计数器与数据库不一致（如库存被直接修改），拒绝本次确认
+            throw new RuntimeException("商品库存不足");
+        }
+        return true;
+    }
+
+    /**
+     * 释放预占（取消未支付订单）
+     *
+     * @return 预占不存在时返回 false
+     */
+    public boolean release(String reservationId) {
+        return releaseAll(List.of(reservationId)) == 1;
+    }
+
+    /**
+     * 一次脚本调用释放一批预占（批量取消超时订单），已不存在的预占被跳过
+     *
+     * 脚本涉及的键全部经 KEYS 传入：先读出各预占中的商品以确定计数器键，再执行脚本；
+     * 两步之间预占被并入新商品时脚本不做改动，重新读取后重试。
+     *
+     * @return 实际释放的预占数
+     */
+    public int releaseAll(Collection<String> reservationIds) {
+        if (reservationIds.isEmpty()) {
+            return 0;
+        }
+        for (int attempt = 1; ; attempt++) {
+            Set<String> productIds = reservedProductIds(reservationIds);
+            List<Object> keys = new ArrayList<>(reservationIds.size() + 2 + productIds.size());
+            List<Object> args = new ArrayList<>(reservationIds.size() + 1 + productIds.size());
+            args.add(String.valueOf(reservationIds.size()));
+            for (String reservationId : reservationIds) {
+                keys.add(RESERVATION_KEY + reservationId);
+                args.add(reservationId);
+            }
+            keys.add(EXPIRY_KEY);
+            keys.add(RESERVED_KEY);
+            for (String productId : productIds) {
+                keys.add(STOCK_KEY + productId);
+                args.add(productId);
+            }
+            Long released = script().eval(RScript.Mode.READ_WRITE, RELEASE_ALL_SCRIPT, RScript.ReturnType.INTEGER,
+                    keys, args.toArray());
+            if (released == null || released >= 0) {
+                return released != null ? released.intValue() : 0;
+            }
+            if (attempt >= MAX_RELEASE_ATTEMPTS) {
+                throw new RuntimeException("释放库存预占失败，请重试");
+            }
+        }
+    }
+
+    /**
+     * 已确认的订单退货/取消时归还库存：数据库库存与计数器同时增加
+     */
+    public void restock(Map<Long, Integer> quantities) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> batch = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            batch.add(new Object[] { entry.getValue(), entry.getValue(), now, entry.getKey() });
+        }
+        jdbcTemplate.batchUpdate(RESTOCK_SQL, batch);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    restoreCounters(quantities);
+                    eventPublisher.publishEvent(new ProductChangedEvent(quantities.keySet()));
+                }
+            });
+        } else {
+            restoreCounters(quantities);
+            eventPublisher.publishEvent(new ProductChangedEvent(quantities.keySet()));
+        }
+    }
+
+    /**
+     * 查询可售数量；计数器未初始化时返回 null，调用方回退到 products.stock
+     */
+    public Integer getAvailable(Long productId) {
+        String value = redissonClient.<String>getBucket(STOCK_KEY + productId, StringCodec.INSTANCE).get();
+        return value != null ? Integer.valueOf(value) : null;
+    }
+
+    /**
+     * 兜底释放孤儿预占：订单超时由时间轮取消并释放预占，这里只处理超过支付超时 + 宽限期仍未释放的预占
+     * （如取消后释放失败），不改动订单状态
+     */
+    @Scheduled(fixedDelayString = "${mall.inventory.expiry-interval-ms:10000}")
+    public void expireReservations() {
+        Collection<String> expired = redissonClient.<String>getScoredSortedSet(EXPIRY_KEY, StringCodec.INSTANCE)
+                .valueRange(Double.NEGATIVE_INFINITY, true, System.currentTimeMillis(), true, 0, expiryBatchSize);
+        if (expired.isEmpty()) {
+            return;
+        }
+        try {
+            // 与 confirm 竞争时由脚本保证只有一方取到预占
+            int released = releaseAll(expired);
+            if (released > 0) {
+                log.warn("释放孤儿库存预占: {} 笔", released);
+            }
+        } catch (Exception e) {
+            log.error("释放孤儿库存预占失败: {} 笔", expired.size(), e);
+        }
+    }
+
+    /**
+     * 按主键分页把计数器校准为 products.stock - 预占总量
+     *
+     * 确认/退货等写入路径本身同步维护计数器，校准只修正绕过本服务直接修改库存造成的偏差；
+     * 最近 reconcile-settle-ms 内更新过的商品跳过，避免与提交中的确认交错时读到旧库存。
+     */
+    @Scheduled(fixedDelayString = "${mall.inventory.reconcile-interval-ms:60000}")
+    public void reconcileCounters() {
+        Timestamp settledBefore = new Timestamp(System.currentTimeMillis() - reconcileSettleMillis);
+        long lastId = 0;
+        int fixed = 0;
+        try {
+            while (true) {
+                List<long[]> page = jdbcTemplate.query(
+                        "SELECT id, stock FROM products WHERE id > ? AND (updated_at IS NULL OR updated_at < ?) ORDER BY id LIMIT ?",
+                        (rs, rowNum) -> new long[] { rs.getLong(1), rs.getLong(2) },
+                        lastId, settledBefore, reconcilePageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                List<Object> keys = new ArrayList<>(page.size() + 1);
+                List<Object> args = new ArrayList<>(page.size() * 2);
+                for (long[] row : page) {
+                    keys.add(STOCK_KEY + row[0]);
+                    args.add(String.valueOf(row[0]));
+                }
+                for (long[] row : page) {
+                    args.add(String.valueOf(row[1]));
+                }
+                keys.add(RESERVED_KEY);
+                Long count = script().eval(RScript.Mode.READ_WRITE, RECONCILE_SCRIPT, RScript.ReturnType.INTEGER,
+                        keys, args.toArray());
+                fixed += count != null ? count.intValue() : 0;
+                lastId = page.get(page.size() - 1)[0];
+                if (page.size() < reconcilePageSize) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("校准库存计数器失败: lastId={}", lastId, e);
+        }
+        if (fixed > 0) {
+            log.warn("校准库存计数器: {} 个商品与数据库库存不一致", fixed);
+        }
+    }
+
+    private void restoreCounters(Map<Long, Integer> quantities) {
+        List<Object> keys = new ArrayList<>(quantities.size());
+        List<Object> args = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            keys.add(STOCK_KEY + entry.getKey());
+            args.add(String.valueOf(entry.getValue()));
+        }
+        try {
+            script().eval(RScript.Mode.READ_WRITE, RESTORE_SCRIPT, RScript.ReturnType.INTEGER, keys, args.toArray());
+        } catch (Exception e) {
+            log.error("恢复库存计数器失败: {}", quantities, e);
+        }
+    }
+
+    private static Map<Long, Integer> toQuantities(List<Object> items) {
+        Map<Long, Integer> quantities = new TreeMap<>(); // 按商品ID顺序加行锁，避免并发确认时死锁
+        for (int i = 0; i + 1 < items.size(); i += 2) {
+            quantities.put(Long.valueOf(items.get(i).toString()), Integer.valueOf(items.get(i + 1).toString()));
+        }
+        return quantities;
+    }
+
+    /**
+     * 一次批量读取各预占中的商品ID
+     */
+    private Set<String> reservedProductIds(Collection<String> reservationIds) {
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+        List<RFuture<Set<String>>> futures = new ArrayList<>(reservationIds.size());
+        for (String reservationId : reservationIds) {
+            futures.add(batch.<String, String>getMap(RESERVATION_KEY + reservationId, StringCodec.INSTANCE)
+                    .readAllKeySetAsync());
+        }
+        batch.execute();
+        Set<String> productIds = new TreeSet<>();
+        for (RFuture<Set<String>> future : futures) {
+            productIds.addAll(future.toCompletableFuture().join());
+        }
+        return productIds;
+    }
+
+    private RScript script() {
+        return redissonClient.getScript(StringCodec.INSTANCE);
+    }
+}
@@ -20,6 +20,7 @@ public interface MallService {
     List<ProductDTO> getTopSellingProducts(int limit);
     List<ProductDTO> getTopRatedProducts(int limit);
     Page<ProductDTO> searchProducts(String keyword, Pageable pageable);
+    ProductSearchResultDTO searchProducts(String keyword, Product.ProductCategory category, BigDecimal minPrice, BigDecimal maxPrice, int page, int size);
     Page<ProductDTO> filterProducts(Product.ProductCategory category, BigDecimal minPrice, BigDecimal maxPrice, Pageable pageable);
     
     // 购物车管理
@@ -30,6 +31,7 @@ public interface MallService {
     void clearCart(String userId);
     BigDecimal getCartTotal(String userId);
     long getCartItemCount(String userId);
+    CartDTO getCart(String userId);
     
     // 订单管理
     OrderDTO createOrder(String userId, OrderDTO orderDTO);
@@ -44,4 +46,5 @@ public interface MallService {
     // 数据统计
     BigDecimal getTotalSpent(String userId);
     long getOrderCount(String userId);
+    UserOrderSummaryDTO getOrderSummary(String userId);
 }
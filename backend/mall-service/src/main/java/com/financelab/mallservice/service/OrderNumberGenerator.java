@@ -0,0 +1,87 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.repository.IdSequenceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 订单号生成器
+ *
+ * 从 id_sequences 表中按块预留号段（独立事务提交），号段内通过 CAS 无锁分配，
+ * 多实例部署时各实例持有互不重叠的号段，订单号不会重复。
+ * 订单号为 ORD + 18位序号（共21位），与旧的 ORD + 时间戳 + 随机数（共20位）不重叠。
+ */
+@Component
+@Slf4j
+public class OrderNumberGenerator {
+
+    private static final String ORDER_SEQUENCE = "order_number";
+
+    private final IdSequenceRepository sequenceRepository;
+    private final TransactionTemplate requiresNew;
+    private final long blockSize;
+    private final AtomicReference<Block> current = new AtomicReference<>(new Block(0, 0));
+
+    public OrderNumberGenerator(IdSequenceRepository sequenceRepository,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${mall.order.number-block-size:1000}") long blockSize) {
+        this.sequenceRepository = sequenceRepository;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = blockSize;
+    }
+
+    public String nextOrderNumber() {
+        return "ORD" + String.format("%018d", next());
+    }
+
+    private long next() {
+        while (true) {
+            Block block = current.get();
+            long value = block.next.getAndIncrement();
+            if (value < block.end) {
+                return value;
+            }
+            refill(block);
+        }
+    }
+
+    private synchronized void refill(Block exhausted) {
+        if (current.get() == exhausted) {
+            current.set(reserve());
+        }
+    }
+
+    /**
+     * 从数据库预留 [start, end) 号段
+     */
+    private Block reserve() {
+        Long end = requiresNew.execute(status -> {
+            sequenceRepository.insertIfAbsent(ORDER_SEQUENCE, 1L);
+            sequenceRepository.advance(ORDER_SEQUENCE, blockSize);
+            return sequenceRepository.currentValue(ORDER_SEQUENCE);
+        });
+        if (end == null) {
+            throw new IllegalStateException("号段分配失败: " + ORDER_SEQUENCE);
+        }
+        log.debug("预留订单号段: [{}, {})", end - blockSize, end);
+        return new Block(end - blockSize, end);
+    }
+
+    private static final class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.dto.UserOrderSummaryDTO;
+import com.financelab.mallservice.entity.Order;
+import com.financelab.mallservice.entity.UserOrderSummary;
+import com.financelab.mallservice.repository.UserOrderSummaryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户订单汇总
+ *
+ * 每个用户一行 user_order_summaries，记录订单数、累计消费（不含已取消/已退款订单）和各状态订单数。
+ * 下单与订单状态变更时在同一事务中增量更新，读取时只查主键一行，不再对 orders 做聚合。
+ *
+ * 用户首次被记录时以 INSERT IGNORE ... SELECT 从 orders 回填汇总行，因此 record* 方法须在
+ * 订单写入（或状态变更落库）之前调用，避免回填与增量重复计算同一订单。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OrderSummaryService {
+
+    private static final String BACKFILL_SQL =
+            "INSERT IGNORE INTO user_order_summaries (user_id, order_count, total_spent, pending_count, paid_count, " +
+            "processing_count, shipped_count, delivered_count, completed_count, cancelled_count, refunded_count, updated_at) " +
+            "SELECT ?, COUNT(*), " +
+            "COALESCE(SUM(CASE WHEN status != 'CANCELLED' AND status != 'REFUNDED' THEN final_amount ELSE 0 END), 0), " +
+            "COALESCE(SUM(status = 'PENDING'), 0), COALESCE(SUM(status = 'PAID'), 0), " +
+            "COALESCE(SUM(status = 'PROCESSING'), 0), COALESCE(SUM(status = 'SHIPPED'), 0), " +
+            "COALESCE(SUM(status = 'DELIVERED'), 0), COALESCE(SUM(status = 'COMPLETED'), 0), " +
+            "COALESCE(SUM(status = 'CANCELLED'), 0), COALESCE(SUM(status = 'REFUNDED'), 0), NOW() " +
+            "FROM orders WHERE user_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserOrderSummaryRepository summaryRepository;
+
+    // 本实例已确认存在汇总行的用户，避免每次下单都执行回填语句
+    private final Set<String> initializedUsers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 记录新订单，须在订单写入之前、同一事务中调用
+     */
+    public void recordCreated(String userId, Order.OrderStatus status, BigDecimal finalAmount) {
+        ensureSummary(userId);
+        BigDecimal spent = countsAsSpent(status) ? finalAmount : BigDecimal.ZERO;
+        jdbcTemplate.update(
+                "UPDATE user_order_summaries SET order_count = order_count + 1, total_spent = total_spent + ?, " +
+                column(status) + " = " + column(status) + " + 1, updated_at = NOW() WHERE user_id = ?",
+                spent, userId);
+    }
+
+    /**
+     * 记录订单状态变更，须在新状态落库之前、同一事务中调用
+     */
+    public void recordTransition(String userId, Order.OrderStatus from, Order.OrderStatus to, BigDecimal finalAmount) {
+        recordTransitions(userId, from, to, 1, finalAmount);
+    }
+
+    /**
+     * 记录同一用户的一批订单发生相同的状态变更（如批量超时取消），amount 为这批订单的金额合计
+     */
+    public void recordTransitions(String userId, Order.OrderStatus from, Order.OrderStatus to, int count, BigDecimal amount) {
+        if (from == to || count == 0) {
+            return;
+        }
+        ensureSummary(userId);
+        BigDecimal spentDelta = BigDecimal.ZERO;
+        if (countsAsSpent(from) && !countsAsSpent(to)) {
+            spentDelta = amount.negate();
+        } else if (!countsAsSpent(from) && countsAsSpent(to)) {
+            spentDelta = amount;
+        }
+        jdbcTemplate.update(
+                "UPDATE user_order_summaries SET total_spent = total_spent + ?, " +
+                column(from) + " = " + column(from) + " - ?, " +
+                column(to) + " = " + column(to) + " + ?, updated_at = NOW() WHERE user_id = ?",
+                spentDelta, count, count, userId);
+    }
+
+    public UserOrderSummaryDTO getSummary(String userId) {
+        return new UserOrderSummaryDTO(load(userId));
+    }
+
+    public BigDecimal getTotalSpent(String userId) {
+        return load(userId).getTotalSpent();
+    }
+
+    public long getOrderCount(String userId) {
+        return load(userId).getOrderCount();
+    }
+
+    private UserOrderSummary load(String userId) {
+        return summaryRepository.findById(userId).orElseGet(() -> {
+            ensureSummary(userId);
+            return summaryRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("用户订单汇总不存在: " + userId));
+        });
+    }
+
+    /**
+     * 汇总行不存在时由 orders 聚合回填；已存在则 INSERT IGNORE 不做任何修改
+     */
+    private void ensureSummary(String userId) {
+        if (initializedUsers.contains(userId)) {
+            return;
+        }
+        int inserted = jdbcTemplate.update(BACKFILL_SQL, userId, userId);
+        if (inserted > 0) {
+            log.info("回填用户订单汇总: userId={}", userId);
+        }
+        // 事务回滚时回填行也会回滚，提交后才记为已初始化
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    initializedUsers.add(userId);
+                }
+            });
+        } else {
+            initializedUsers.add(userId);
+        }
+    }
+
+    private static boolean countsAsSpent(Order.OrderStatus status) {
+        return status != Order.OrderStatus.CANCELLED && status != Order.OrderStatus.REFUNDED;
+    }
+
+    private static String column(Order.OrderStatus status) {
+        return status.name().toLowerCase() + "_count";
+    }
+}
@@ -0,0 +1,196 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.entity.Order;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 未支付订单超时取消
+ *
+ * 每个 PENDING 订单在内存分层时间轮中登记一个定时器（到期时间 = 创建时间 + 支付超时），
+ * 下单提交后登记，提交支付/取消后注销，启动时按主键分页从数据库重建，不做周期性全表扫描。
+ * 已提交支付（payment_status = PAYING）的订单由支付结果决定去向，不参与超时取消。
+ * 到期的订单按批次在一个事务中取消：锁定仍为 PENDING 的行、一条 UPDATE 改为 CANCELLED、
+ * 按用户汇总更新订单统计，提交后一次脚本调用释放这批订单的库存预占。
+ *
+ * 多实例部署时每个实例都持有全部定时器，条件更新（status = 'PENDING'）保证每个订单只被取消一次。
+ */
+@Service
+@Slf4j
+public class OrderTimeoutService {
+
+    private static final String CANCEL_REASON = "支付超时";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final InventoryService inventoryService;
+    private final OrderSummaryService orderSummaryService;
+    private final TimingWheel wheel;
+    private final long paymentTimeoutMillis;
+    private final int batchSize;
+    private final int rebuildPageSize;
+    private final long retryDelayMillis;
+
+    public OrderTimeoutService(JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               InventoryService inventoryService,
+                               OrderSummaryService orderSummaryService,
+                               @Value("${mall.order.payment-timeout-minutes:30}") long paymentTimeoutMinutes,
+                               @Value("${mall.order.timeout-tick-ms:1000}") long tickMillis,
+                               @Value("${mall.order.timeout-batch-size:500}") int batchSize,
+                               @Value("${mall.order.timeout-rebuild-page-size:10000}") int rebuildPageSize,
+                               @Value("${mall.order.timeout-retry-delay-ms:10000}") long retryDelayMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.inventoryService = inventoryService;
+        this.orderSummaryService = orderSummaryService;
+        this.wheel = new TimingWheel(tickMillis, System.currentTimeMillis());
+        this.paymentTimeoutMillis = paymentTimeoutMinutes * 60_000L;
+        this.batchSize = batchSize;
+        this.rebuildPageSize = rebuildPageSize;
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * 登记新订单的支付超时，事务提交后生效
+     */
+    public void schedule(Long orderId, LocalDateTime createdAt) {
+        long deadline = toMillis(createdAt) + paymentTimeoutMillis;
+        afterCommit(() -> wheel.schedule(orderId, deadline));
+    }
+
+    /**
+     * 订单已支付或已取消，事务提交后注销定时器
+     */
+    public void unschedule(Long orderId) {
+        afterCommit(() -> wheel.cancel(orderId));
+    }
+
+    /**
+     * 启动时从数据库重建全部未支付订单的定时器（按主键分页，走 status 索引）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            List<Object[]> page = jdbcTemplate.query(
+                    "SELECT id, created_at FROM orders WHERE status = 'PENDING' AND payment_status = 'UNPAID' AND id > ? ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new Object[] { rs.getLong(1), rs.getTimestamp(2) },
+                    lastId, rebuildPageSize);
+            for (Object[] row : page) {
+                lastId = (Long) row[0];
+                wheel.schedule(lastId, ((Timestamp) row[1]).getTime() + paymentTimeoutMillis);
+            }
+            total += page.size();
+            if (page.size() < rebuildPageSize) {
+                break;
+            }
+        }
+        log.info("重建订单超时时间轮: {} 笔未支付订单", total);
+    }
+
+    /**
+     * 推进时间轮，分批取消到期的订单
+     */
+    @Scheduled(fixedDelayString = "${mall.order.timeout-tick-ms:1000}")
+    public void expireOrders() {
+        List<Long> expired = wheel.advance(System.currentTimeMillis());
+        for (int from = 0; from < expired.size(); from += batchSize) {
+            List<Long> batch = expired.subList(from, Math.min(from + batchSize, expired.size()));
+            try {
+                Integer cancelled = transactionTemplate.execute(status -> cancelExpired(batch));
+                if (cancelled != null && cancelled > 0) {
+                    log.info("取消超时未支付订单: {} 笔", cancelled);
+                }
+            } catch (Exception e) {
+                // 整批稍后重试，避免定时器丢失
+                long retryAt = System.currentTimeMillis() + retryDelayMillis;
+                batch.forEach(orderId -> wheel.schedule(orderId, retryAt));
+                log.error("取消超时订单失败，{} 笔稍后重试", batch.size(), e);
+            }
+        }
+    }
+
+    public int getPendingTimers() {
+        return wheel.size();
+    }
+
+    private int cancelExpired(List<Long> orderIds) {
+        String placeholders = String.join(",", Collections.nCopies(orderIds.size(), "?"));
+        List<ExpiredOrder> orders = jdbcTemplate.query(
+                "SELECT id, user_id, order_number, final_amount FROM orders " +
+                "WHERE id IN (" + placeholders + ") AND status = 'PENDING' AND payment_status = 'UNPAID' FOR UPDATE",
+                (rs, rowNum) -> new ExpiredOrder(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getBigDecimal(4)),
+                orderIds.toArray());
+        if (orders.isEmpty()) {
+            return 0;
+        }
+
+        // 按用户合并汇总更新，须在订单状态落库之前
+        Map<String, List<ExpiredOrder>> byUser = new HashMap<>();
+        for (ExpiredOrder order : orders) {
+            byUser.computeIfAbsent(order.userId(), k -> new ArrayList<>()).add(order);
+        }
+        byUser.forEach((userId, userOrders) -> orderSummaryService.recordTransitions(userId,
+                Order.OrderStatus.PENDING, Order.OrderStatus.CANCELLED, userOrders.size(),
+                userOrders.stream().map(ExpiredOrder::finalAmount).reduce(BigDecimal.ZERO, BigDecimal::add)));
+
+        List<Object> args = new ArrayList<>(orders.size() + 2);
+        args.add(Timestamp.valueOf(LocalDateTime.now()));
+        args.add(CANCEL_REASON);
+        orders.forEach(order -> args.add(order.id()));
+        jdbcTemplate.update(
+                "UPDATE orders SET status = 'CANCELLED', cancelled_at = ?, cancel_reason = ? " +
+                "WHERE status = 'PENDING' AND id IN (" + String.join(",", Collections.nCopies(orders.size(), "?")) + ")",
+                args.toArray());
+
+        List<String> orderNumbers = orders.stream().map(ExpiredOrder::orderNumber).toList();
+        afterCommit(() -> {
+            try {
+                inventoryService.releaseAll(orderNumbers);
+            } catch (Exception e) {
+                // 未释放的预占会由库存预占的过期任务兜底释放
+                log.error("释放超时订单库存预占失败: {} 笔", orderNumbers.size(), e);
+            }
+        });
+        return orders.size();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private record ExpiredOrder(long id, String userId, String orderNumber, BigDecimal finalAmount) {}
+}
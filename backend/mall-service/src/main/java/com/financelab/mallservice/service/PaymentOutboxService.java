@@ -0,0 +1,393 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.dto.PaymentDebitDTO;
+import com.financelab.mallservice.entity.Order;
+import com.financelab.mallservice.entity.OrderItem;
+import com.financelab.mallservice.entity.PaymentOutbox;
+import com.financelab.mallservice.repository.OrderItemRepository;
+import com.financelab.mallservice.repository.OrderRepository;
+import com.financelab.mallservice.repository.PaymentOutboxRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestClient;
+
+import java.math.BigDecimal;
+import java.net.http.HttpClient;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 订单支付 Saga：本地 outbox + 异步批量扣款
+ *
+ * 支付请求在下单支付事务中写入 payment_outbox（与订单状态 PAYING 同时提交），结账路径不调用 bank-service。
+ * 中继任务按批领取到期的 outbox 行（FOR UPDATE SKIP LOCKED，并把下次投递时间推后一个租期），
+ * 调用 bank-service 批量扣款接口；每行带固定的幂等键，超时或重复投递不会重复扣款。
+ * 扣款结果在另一个事务中回写：成功的订单置为已支付，失败的订单取消并归还已确认的库存。
+ * 投递失败的行保持 PENDING，按指数退避重试；进程崩溃时租期到后由任一实例重新领取。
+ * 投递在虚拟线程上执行并限制同时在途的批次数，bank-service 变慢时不阻塞调度线程上的其他定时任务。
+ *
+ * 取消已支付订单时在同一事务中登记退款请求（幂等键 MALL-REFUND-订单号），由同一中继投递到退款接口，
+ * 退款成功后订单支付状态置为已退款；退款失败保留 FAILED 行并记录错误，待人工处理。
+ * bank-service 的扣款与退款接口为内部接口，请求携带 X-Internal-Token。
+ */
+@Service
+@Slf4j
+public class PaymentOutboxService {
+
+    private static final String CLAIM_SQL =
+            "SELECT id, order_id, user_id, amount, idempotency_key, order_number, attempts, type FROM payment_outbox " +
+            "WHERE status = 'PENDING' AND next_attempt_at <= ? ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    private final PaymentOutboxRepository outboxRepository;
+    private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final InventoryService inventoryService;
+    private final OrderSummaryService orderSummaryService;
+    private final SalesAnalyticsService salesAnalyticsService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RestClient restClient;
+    private final String debitUrl;
+    private final String refundUrl;
+    private final String internalToken;
+    private final int batchSize;
+    private final long leaseMillis;
+    private final long maxBackoffMillis;
+    private final Semaphore inFlight;
+    private final ExecutorService deliveryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public PaymentOutboxService(PaymentOutboxRepository outboxRepository,
+                                OrderRepository orderRepository,
+                                OrderItemRepository orderItemRepository,
+                                InventoryService inventoryService,
+                                OrderSummaryService orderSummaryService,
+                                SalesAnalyticsService salesAnalyticsService,
+                                JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${mall.payment.bank-url:http://localhost:8084}") String bankUrl,
+                                @Value("${mall.payment.internal-token}") String internalToken,
+                                @Value("${mall.payment.timeout-ms:5000}") long timeoutMillis,
+                                @Value("${mall.payment.batch-size:200}") int batchSize,
+                                @Value("${mall.payment.lease-ms:30000}") long leaseMillis,
+                                @Value("${mall.payment.max-backoff-ms:60000}") long maxBackoffMillis,
+                                @Value("${mall.payment.max-in-flight:4}") int maxInFlight) {
+        if (internalToken == null || internalToken.isBlank()) {
+            throw new IllegalStateException("未配置服务间调用凭证 mall.payment.internal-token（INTERNAL_API_TOKEN）");
+        }
+        this.outboxRepository = outboxRepository;
+        this.orderRepository = orderRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.inventoryService = inventoryService;
+        this.orderSummaryService = orderSummaryService;
+        this.salesAnalyticsService = salesAnalyticsService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.debitUrl = bankUrl + "/internal/bank/payments/debits/bulk";
+        this.refundUrl = bankUrl + "/internal/bank/payments/refunds/bulk";
+        this.internalToken = internalToken;
+        this.batchSize = batchSize;
+        this.leaseMillis = leaseMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.inFlight = new Semaphore(maxInFlight);
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeoutMillis))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(timeoutMillis));
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+    }
+
+    /**
+     * 登记订单的支付请求，须在订单置为 PAYING 的同一事务中调用
+     */
+    public void enqueue(Order order) {
+        save(order, PaymentOutbox.OutboxType.PAYMENT, paymentKey(order.getOrderNumber()));
+    }
+
+    /**
+     * 登记已支付订单的退款请求，须在取消订单的同一事务中调用
+     */
+    public void enqueueRefund(Order order) {
+        save(order, PaymentOutbox.OutboxType.REFUND, "MALL-REFUND-" + order.getOrderNumber());
+    }
+
+    private void save(Order order, PaymentOutbox.OutboxType type, String idempotencyKey) {
+        LocalDateTime now = LocalDateTime.now();
+        PaymentOutbox outbox = new PaymentOutbox();
+        outbox.setOrderId(order.getId());
+        outbox.setOrderNumber(order.getOrderNumber());
+        outbox.setUserId(order.getUserId());
+        outbox.setAmount(order.getFinalAmount());
+        outbox.setType(type);
+        outbox.setIdempotencyKey(idempotencyKey);
+        outbox.setStatus(PaymentOutbox.OutboxStatus.PENDING);
+        outbox.setAttempts(0);
+        outbox.setNextAttemptAt(now);
+        outbox.setCreatedAt(now);
+        outboxRepository.save(outbox);
+    }
+
+    /**
+     * 中继：循环领取到期的支付请求并提交投递，直到没有满批的待投递行或在途批次已满
+     */
+    @Scheduled(fixedDelayString = "${mall.payment.relay-interval-ms:200}")
+    public void relay() {
+        while (inFlight.tryAcquire()) {
+            List<Claimed> batch;
+            try {
+                batch = transactionTemplate.execute(status -> claim());
+            } catch (Exception e) {
+                inFlight.release();
+                log.error("领取支付请求失败", e);
+                return;
+            }
+            if (batch == null || batch.isEmpty()) {
+                inFlight.release();
+                return;
+            }
+            deliveryExecutor.submit(() -> {
+                try {
+                    deliver(batch);
+                } finally {
+                    inFlight.release();
+                }
+            });
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deliveryExecutor.shutdownNow();
+    }
+
+    private List<Claimed> claim() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Claimed> batch = jdbcTemplate.query(CLAIM_SQL,
+                (rs, rowNum) -> new Claimed(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getBigDecimal(4),
+                        rs.getString(5), rs.getString(6), rs.getInt(7) + 1,
+                        "REFUND".equals(rs.getString(8)) ? PaymentOutbox.OutboxType.REFUND : PaymentOutbox.OutboxType.PAYMENT),
+                Timestamp.valueOf(now), batchSize);
+        if (batch.isEmpty()) {
+            return batch;
+        }
+        // 租期内其他实例不会再领取这些行；结果未回写时租期到后重新投递
+        List<Object> args = new ArrayList<>(batch.size() + 1);
+        args.add(Timestamp.valueOf(now.plusNanos(leaseMillis * 1_000_000L)));
+        batch.forEach(c -> args.add(c.id()));
+        jdbcTemplate.update("UPDATE payment_outbox SET attempts = attempts + 1, next_attempt_at = ? WHERE id IN (" +
+                placeholders(batch.size()) + ")", args.toArray());
+        return batch;
+    }
+
+    private void deliver(List<Claimed> batch) {
+        List<Claimed> payments = new ArrayList<>(batch.size());
+        List<Claimed> refunds = new ArrayList<>();
+        for (Claimed claimed : batch) {
+            (claimed.type() == PaymentOutbox.OutboxType.REFUND ? refunds : payments).add(claimed);
+        }
+        if (!payments.isEmpty()) {
+            deliver(payments, debitUrl);
+        }
+        if (!refunds.isEmpty()) {
+            deliver(refunds, refundUrl);
+        }
+    }
+
+    private void deliver(List<Claimed> batch, String url) {
+        List<PaymentDebitDTO> requests = new ArrayList<>(batch.size());
+        for (Claimed claimed : batch) {
+            PaymentDebitDTO request = new PaymentDebitDTO();
+            request.setIdempotencyKey(claimed.idempotencyKey());
+            request.setUserId(claimed.userId());
+            request.setAmount(claimed.amount());
+            if (claimed.type() == PaymentOutbox.OutboxType.REFUND) {
+                request.setRefundOf(paymentKey(claimed.orderNumber()));
+                request.setDescription("商城订单退款: " + claimed.orderNumber());
+            } else {
+                request.setDescription("商城订单支付: " + claimed.orderNumber());
+            }
+            requests.add(request);
+        }
+
+        PaymentDebitDTO[] results;
+        try {
+            results = restClient.post().uri(url)
+                    .header("X-Internal-Token", internalToken)
+                    .body(Map.of("debits", requests))
+                    .retrieve()
+                    .body(PaymentDebitDTO[].class);
+        } catch (Exception e) {
+            log.warn("支付请求投递失败，{} 笔稍后重试: {}", batch.size(), e.getMessage());
+            scheduleRetry(batch, e.getMessage());
+            return;
+        }
+
+        Map<String, PaymentDebitDTO> byKey = new HashMap<>();
+        if (results != null) {
+            for (PaymentDebitDTO result : results) {
+                if (result != null && result.getStatus() != null) {
+                    byKey.put(result.getIdempotencyKey(), result);
+                }
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> applyResults(batch, byKey));
+        } catch (Exception e) {
+            // 扣款已在银行侧按幂等键固定，重新投递只会取回同一结果
+            log.error("回写支付结果失败，{} 笔稍后重试", batch.size(), e);
+            scheduleRetry(batch, e.getMessage());
+        }
+    }
+
+    private void applyResults(List<Claimed> batch, Map<String, PaymentDebitDTO> results) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Claimed> failed = new ArrayList<>();
+        List<Object[]> outboxUpdates = new ArrayList<>();
+        int paid = 0;
+
+        for (Claimed claimed : batch) {
+            PaymentDebitDTO result = results.get(claimed.idempotencyKey());
+            if (result == null) {
+                continue; // 未返回结果，租期到后重新投递
+            }
+            boolean success = "COMPLETED".equals(result.getStatus());
+            outboxUpdates.add(new Object[] { success ? PaymentOutbox.OutboxStatus.COMPLETED.name() : PaymentOutbox.OutboxStatus.FAILED.name(),
+                    result.getReferenceNumber(), result.getFailureReason(), Timestamp.valueOf(now), claimed.id() });
+            if (claimed.type() == PaymentOutbox.OutboxType.REFUND) {
+                markRefunded(claimed, result, success);
+            } else if (success) {
+                paid += markPaid(claimed, result, now);
+            } else {
+                failed.add(claimed);
+            }
+        }
+        int cancelled = markFailed(failed, results, now);
+        if (!outboxUpdates.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE payment_outbox SET status = ?, reference_number = ?, last_error = ?, " +
+                    "updated_at = ? WHERE id = ? AND status = 'PENDING'", outboxUpdates);
+        }
+        if (paid > 0 || cancelled > 0) {
+            log.info("回写支付结果: 成功 {} 笔, 失败取消 {} 笔", paid, cancelled);
+        }
+    }
+
+    private int markPaid(Claimed claimed, PaymentDebitDTO result, LocalDateTime now) {
+        Order order = orderRepository.findByIdForUpdate(claimed.orderId()).orElse(null);
+        if (order == null || order.getPaymentStatus() != Order.PaymentStatus.PAYING) {
+            return 0;
+        }
+        orderSummaryService.recordTransition(order.getUserId(), order.getStatus(), Order.OrderStatus.PAID, order.getFinalAmount());
+        order.setStatus(Order.OrderStatus.PAID);
+        order.setPaymentStatus(Order.PaymentStatus.PAID);
+        order.setPaidAt(now);
+        orderRepository.save(order);
+        salesAnalyticsService.recordPaid(order, now);
+        log.info("订单支付成功: orderNumber={}, referenceNumber={}", order.getOrderNumber(), result.getReferenceNumber());
+        return 1;
+    }
+
+    private void markRefunded(Claimed claimed, PaymentDebitDTO result, boolean success) {
+        if (!success) {
+            log.error("订单退款失败，需人工处理: orderNumber={}, reason={}", claimed.orderNumber(), result.getFailureReason());
+            return;
+        }
+        Order order = orderRepository.findByIdForUpdate(claimed.orderId()).orElse(null);
+        if (order == null || order.getPaymentStatus() != Order.PaymentStatus.REFUNDING) {
+            return;
+        }
+        order.setPaymentStatus(Order.PaymentStatus.REFUNDED);
+        orderRepository.save(order);
+        log.info("订单退款成功: orderNumber={}, referenceNumber={}", order.getOrderNumber(), result.getReferenceNumber());
+    }
+
+    /**
+     * 扣款失败的订单取消，支付时已确认的库存一次归还
+     */
+    private int markFailed(List<Claimed> failed, Map<String, PaymentDebitDTO> results, LocalDateTime now) {
+        if (failed.isEmpty()) {
+            return 0;
+        }
+        List<Order> orders = new ArrayList<>();
+        for (Claimed claimed : failed) {
+            orderRepository.findByIdForUpdate(claimed.orderId())
+                .filter(order -> order.getPaymentStatus() == Order.PaymentStatus.PAYING)
+                .ifPresent(orders::add);
+        }
+        if (orders.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (OrderItem item : orderItemRepository.findByOrderIdIn(orders.stream().map(Order::getId).toList())) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        inventoryService.restock(quantities);
+
+        Map<Long, String> reasons = new HashMap<>();
+        failed.forEach(c -> reasons.put(c.orderId(), results.get(c.idempotencyKey()).getFailureReason()));
+        for (Order order : orders) {
+            orderSummaryService.recordTransition(order.getUserId(), order.getStatus(), Order.OrderStatus.CANCELLED, order.getFinalAmount());
+            order.setStatus(Order.OrderStatus.CANCELLED);
+            order.setPaymentStatus(Order.PaymentStatus.FAILED);
+            order.setCancelledAt(now);
+            order.setCancelReason("支付失败: " + reasons.get(order.getId()));
+            orderRepository.save(order);
+            log.info("订单支付失败已取消: orderNumber={}, reason={}", order.getOrderNumber(), reasons.get(order.getId()));
+        }
+        return orders.size();
+    }
+
+    private void scheduleRetry(List<Claimed> batch, String error) {
+        List<Object[]> updates = new ArrayList<>(batch.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (Claimed claimed : batch) {
+            long backoff = Math.min(maxBackoffMillis, 1000L << Math.min(claimed.attempts(), 16));
+            updates.add(new Object[] { Timestamp.valueOf(now.plusNanos(backoff * 1_000_000L)),
+                    truncate(error), Timestamp.valueOf(now), claimed.id() });
+        }
+        try {
+            jdbcTemplate.batchUpdate("UPDATE payment_outbox SET next_attempt_at = ?, last_error = ?, updated_at = ? " +
+                    "WHERE id = ? AND status = 'PENDING'", updates);
+        } catch (Exception e) {
+            log.error("更新支付重试时间失败，租期到后重新投递", e);
+        }
+    }
+
+    private static String truncate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() > 255 ? error.substring(0, 255) : error;
+    }
+
+    private static String paymentKey(String orderNumber) {
+        return "MALL-PAY-" + orderNumber;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private record Claimed(long id, long orderId, String userId, BigDecimal amount, String idempotencyKey,
+                           String orderNumber, int attempts, PaymentOutbox.OutboxType type) {}
+}
@@ -0,0 +1,528 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.dto.ProductDTO;
+import com.financelab.mallservice.dto.ProductSearchResultDTO;
+import com.financelab.mallservice.entity.Product;
+import com.financelab.mallservice.event.ProductChangedEvent;
+import com.financelab.mallservice.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 商品目录内存缓存
+ *
+ * 全部商品以不可变的 ProductDTO 保存，按 id/编码的查找表直接原地更新；有序索引保存在一个不可变的 Snapshot 中：
+ * 按 id 排序的全量/分类数组、可售商品按价格排序的数组（价格以分为单位的 long 数组，二分查找定位区间）、
+ * 按销量与评分预排序的前 N 名。列表查询只读当前快照，无锁且结果总数准确。
+ *
+ * 本实例的库存/销量写入通过 ProductChangedEvent 标记脏商品，后台任务按 id 重新加载后
+ * 在当前快照上只修补变更的条目（有序数组按位置删除/插入后归并，不重新排序）并替换快照；
+ * 其他实例或直接改库的写入通过 updated_at 水位轮询发现。全文检索索引（ProductSearchService）随快照一同增量更新。
+ */
+@Service
+@Slf4j
+public class ProductCatalogService {
+
+    private static final Comparator<ProductDTO> BY_ID = Comparator.comparing(ProductDTO::getId);
+
+    private static final Comparator<ProductDTO> BY_PRICE =
+            Comparator.comparing(ProductDTO::getPrice).thenComparing(ProductDTO::getId);
+
+    private static final Comparator<ProductDTO> BY_SALES =
+            Comparator.comparing(ProductDTO::getSalesCount, Comparator.reverseOrder()).thenComparing(ProductDTO::getId);
+
+    private static final Comparator<ProductDTO> BY_RATING =
+            Comparator.comparing(ProductDTO::getRating, Comparator.reverseOrder()).thenComparing(ProductDTO::getId);
+
+    private final ProductRepository productRepository;
+    private final ProductSearchService productSearchService;
+    private final int topN;
+    private final long pollOverlapSeconds;
+
+    private final Set<Long> dirtyIds = ConcurrentHashMap.newKeySet();
+    private final Map<Long, ProductDTO> byId = new ConcurrentHashMap<>();
+    private final Map<String, ProductDTO> byCode = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot;
+    private volatile LocalDateTime watermark;
+
+    public ProductCatalogService(ProductRepository productRepository,
+                                 ProductSearchService productSearchService,
+                                 @Value("${mall.catalog.top-n:100}") int topN,
+                                 @Value("${mall.catalog.poll-overlap-seconds:2}") long pollOverlapSeconds) {
+        this.productRepository = productRepository;
+        this.productSearchService = productSearchService;
+        this.topN = topN;
+        this.pollOverlapSeconds = pollOverlapSeconds;
+    }
+
+    /**
+     * 按 id 查询，未命中时回源数据库并在下次刷新时纳入快照
+     */
+    public ProductDTO getProduct(Long productId) {
+        snapshot();
+        ProductDTO product = byId.get(productId);
+        if (product != null) {
+            return product;
+        }
+        return productRepository.findById(productId).map(p -> {
+            dirtyIds.add(p.getId());
+            return new ProductDTO(p);
+        }).orElse(null);
+    }
+
+    public ProductDTO getProductByCode(String productCode) {
+        snapshot();
+        ProductDTO product = byCode.get(productCode);
+        if (product != null) {
+            return product;
+        }
+        return productRepository.findByProductCode(productCode).map(p -> {
+            dirtyIds.add(p.getId());
+            return new ProductDTO(p);
+        }).orElse(null);
+    }
+
+    /**
+     * 全部商品（含不可售），按 id 排序分页
+     */
+    public Page<ProductDTO> getProducts(Pageable pageable) {
+        ProductDTO[] all = snapshot().all;
+        return page(all, 0, all.length, pageable);
+    }
+
+    /**
+     * 分类下全部商品（含不可售），按 id 排序分页
+     */
+    public Page<ProductDTO> getProductsByCategory(Product.ProductCategory category, Pageable pageable) {
+        ProductDTO[] items = snapshot().allByCategory.getOrDefault(category, new ProductDTO[0]);
+        return page(items, 0, items.length, pageable);
+    }
+
+    /**
+     * 可售商品按价格区间筛选，category 为空时不限分类；价格上下限为空时不限
+     */
+    public Page<ProductDTO> filterByPrice(Product.ProductCategory category, BigDecimal minPrice, BigDecimal maxPrice,
+                                          Pageable pageable) {
+        Snapshot current = snapshot();
+        PriceIndex index = category == null ? current.available : current.availableByCategory.get(category);
+        if (index == null) {
+            return new PageImpl<>(List.of(), pageable, 0);
+        }
+        long minCents = minPrice != null ? toCents(minPrice, RoundingMode.CEILING) : Long.MIN_VALUE;
+        long maxCents = maxPrice != null ? toCents(maxPrice, RoundingMode.FLOOR) : Long.MAX_VALUE;
+        if (minCents > maxCents) {
+            return new PageImpl<>(List.of(), pageable, 0);
+        }
+        int from = index.lowerBound(minCents);
+        int to = index.upperBound(maxCents);
+        return page(index.items, from, to, pageable);
+    }
+
+    /**
+     * 全文检索可售商品，检索索引随快照增量维护
+     */
+    public ProductSearchResultDTO search(String keyword, Product.ProductCategory category,
+                                         BigDecimal minPrice, BigDecimal maxPrice, int page, int size) {
+        snapshot();
+        return productSearchService.search(keyword, category, minPrice, maxPrice, page, size);
+    }
+
+    /**
+     * 销量前 N 的可售商品；超过预计算上限时返回空，由调用方回源数据库
+     */
+    public Optional<List<ProductDTO>> getTopSelling(int limit) {
+        return top(snapshot().topSelling, limit);
+    }
+
+    /**
+     * 评分前 N 的可售商品；超过预计算上限时返回空，由调用方回源数据库
+     */
+    public Optional<List<ProductDTO>> getTopRated(int limit) {
+        return top(snapshot().topRated, limit);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        snapshot();
+    }
+
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        dirtyIds.addAll(event.productIds());
+    }
+
+    /**
+     * 重新加载本实例写入的脏商品
+     */
+    @Scheduled(fixedDelayString = "${mall.catalog.refresh-interval-ms:200}")
+    public void refreshDirty() {
+        if (snapshot == null || dirtyIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(dirtyIds);
+        dirtyIds.removeAll(ids);
+        try {
+            List<Product> products = productRepository.findAllById(ids);
+            apply(ids, products);
+        } catch (Exception e) {
+            dirtyIds.addAll(ids);
+            log.error("刷新商品缓存失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按 updated_at/created_at 水位拉取其他实例或直接改库的变更
+     */
+    @Scheduled(fixedDelayString = "${mall.catalog.poll-interval-ms:5000}")
+    public void pollChanges() {
+        if (snapshot == null) {
+            return;
+        }
+        LocalDateTime since = watermark;
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            // 回退一段重叠时间，避免同一秒内提交的写入被水位跳过
+            List<Product> products = productRepository.findChangedSince(since.minusSeconds(pollOverlapSeconds));
+            if (!products.isEmpty()) {
+                apply(products.stream().map(Product::getId).toList(), products);
+            }
+            watermark = now;
+        } catch (Exception e) {
+            log.error("拉取商品变更失败: {}", e.getMessage());
+        }
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    LocalDateTime loadedAt = LocalDateTime.now();
+                    for (Product product : productRepository.findAll()) {
+                        ProductDTO dto = new ProductDTO(product);
+                        byId.put(dto.getId(), dto);
+                        byCode.put(dto.getProductCode(), dto);
+                    }
+                    current = Snapshot.build(byId.values(), topN);
+                    productSearchService.rebuild(byId.values());
+                    watermark = loadedAt;
+                    snapshot = current;
+                    log.info("商品目录缓存已加载: {} 个商品", byId.size());
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 修补变更的商品：查找表原地替换，有序索引在当前快照上删除旧条目、插入新条目；ids 中查不到的商品视为已删除
+     */
+    private synchronized void apply(Collection<Long> ids, List<Product> products) {
+        List<ProductDTO> removed = new ArrayList<>(ids.size());
+        List<ProductDTO> added = new ArrayList<>(products.size());
+        Set<Long> deletedIds = new HashSet<>(ids);
+        for (Product product : products) {
+            deletedIds.remove(product.getId());
+            ProductDTO dto = new ProductDTO(product);
+            ProductDTO old = byId.put(dto.getId(), dto);
+            if (old != null) {
+                removed.add(old);
+                byCode.remove(old.getProductCode(), old);
+            }
+            byCode.put(dto.getProductCode(), dto);
+            added.add(dto);
+        }
+        for (Long id : deletedIds) {
+            ProductDTO old = byId.remove(id);
+            if (old != null) {
+                removed.add(old);
+                byCode.remove(old.getProductCode(), old);
+            }
+        }
+        if (!removed.isEmpty() || !added.isEmpty()) {
+            snapshot = snapshot.patch(removed, added, topN);
+            productSearchService.update(deletedIds, added);
+        }
+    }
+
+    private Optional<List<ProductDTO>> top(List<ProductDTO> ranked, int limit) {
+        if (limit > topN) {
+            return Optional.empty();
+        }
+        return Optional.of(ranked.subList(0, Math.min(Math.max(limit, 0), ranked.size())));
+    }
+
+    private static Page<ProductDTO> page(ProductDTO[] items, int from, int to, Pageable pageable) {
+        int total = to - from;
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(Arrays.asList(items).subList(from, to));
+        }
+        long offset = Math.min(pageable.getOffset(), total);
+        int start = from + (int) offset;
+        int end = Math.min(start + pageable.getPageSize(), to);
+        return new PageImpl<>(Arrays.asList(items).subList(start, end), pageable, total);
+    }
+
+    private static long toCents(BigDecimal price, RoundingMode roundingMode) {
+        return price.setScale(2, roundingMode).unscaledValue().longValueExact();
+    }
+
+    private static boolean isAvailable(ProductDTO product) {
+        return product.getStatus() == Product.ProductStatus.AVAILABLE;
+    }
+
+    /**
+     * 在有序数组上删除 removed、插入 added 后归并，removed 中的对象须为数组中的原实例
+     */
+    private static ProductDTO[] merge(ProductDTO[] items, List<ProductDTO> removed, List<ProductDTO> added,
+                                      Comparator<ProductDTO> order) {
+        boolean[] skip = new boolean[items.length];
+        int skipped = 0;
+        for (ProductDTO old : removed) {
+            int index = Arrays.binarySearch(items, old, order);
+            if (index >= 0 && !skip[index]) {
+                skip[index] = true;
+                skipped++;
+            }
+        }
+        ProductDTO[] inserts = added.toArray(new ProductDTO[0]);
+        Arrays.sort(inserts, order);
+        ProductDTO[] merged = new ProductDTO[items.length - skipped + inserts.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < items.length || j < inserts.length) {
+            if (i < items.length && skip[i]) {
+                i++;
+            } else if (j >= inserts.length || (i < items.length && order.compare(items[i], inserts[j]) < 0)) {
+                merged[k++] = items[i++];
+            } else {
+                merged[k++] = inserts[j++];
+            }
+        }
+        return merged;
+    }
+
+    private static final class Snapshot {
+        private final ProductDTO[] all;
+        private final Map<Product.ProductCategory, ProductDTO[]> allByCategory;
+        private final PriceIndex available;
+        private final Map<Product.ProductCategory, PriceIndex> availableByCategory;
+        private final List<ProductDTO> topSelling;
+        private final List<ProductDTO> topRated;
+
+        private Snapshot(ProductDTO[] all, Map<Product.ProductCategory, ProductDTO[]> allByCategory,
+                         PriceIndex available, Map<Product.ProductCategory, PriceIndex> availableByCategory,
+                         List<ProductDTO> topSelling, List<ProductDTO> topRated) {
+            this.all = all;
+            this.allByCategory = allByCategory;
+            this.available = available;
+            this.availableByCategory = availableByCategory;
+            this.topSelling = topSelling;
+            this.topRated = topRated;
+        }
+
+        private static Snapshot build(Collection<ProductDTO> products, int topN) {
+            ProductDTO[] all = products.toArray(new ProductDTO[0]);
+            Arrays.sort(all, BY_ID);
+
+            Map<Product.ProductCategory, List<ProductDTO>> categoryLists = new EnumMap<>(Product.ProductCategory.class);
+            for (ProductDTO product : all) {
+                categoryLists.computeIfAbsent(product.getCategory(), c -> new ArrayList<>()).add(product);
+            }
+
+            Map<Product.ProductCategory, ProductDTO[]> allByCategory = new EnumMap<>(Product.ProductCategory.class);
+            Map<Product.ProductCategory, PriceIndex> availableByCategory = new EnumMap<>(Product.ProductCategory.class);
+            for (Map.Entry<Product.ProductCategory, List<ProductDTO>> entry : categoryLists.entrySet()) {
+                allByCategory.put(entry.getKey(), entry.getValue().toArray(new ProductDTO[0]));
+                availableByCategory.put(entry.getKey(), PriceIndex.EMPTY.patch(List.of(),
+                        entry.getValue().stream().filter(ProductCatalogService::isAvailable).toList()));
+            }
+            PriceIndex available = PriceIndex.EMPTY.patch(List.of(),
+                    Arrays.stream(all).filter(ProductCatalogService::isAvailable).toList());
+
+            return new Snapshot(all, allByCategory, available, availableByCategory,
+                    rank(available.items, BY_SALES, topN), rank(available.items, BY_RATING, topN));
+        }
+
+        /**
+         * 只修补受影响的数组与分类，未涉及的分类沿用原数组
+         */
+        private Snapshot patch(List<ProductDTO> removed, List<ProductDTO> added, int topN) {
+            List<ProductDTO> removedAvailable = removed.stream().filter(ProductCatalogService::isAvailable).toList();
+            List<ProductDTO> addedAvailable = added.stream().filter(ProductCatalogService::isAvailable).toList();
+
+            Map<Product.ProductCategory, ProductDTO[]> newAllByCategory = new EnumMap<>(allByCategory);
+            Map<Product.ProductCategory, PriceIndex> newAvailableByCategory = new EnumMap<>(availableByCategory);
+            Set<Product.ProductCategory> touched = EnumSet.noneOf(Product.ProductCategory.class);
+            removed.forEach(p -> touched.add(p.getCategory()));
+            added.forEach(p -> touched.add(p.getCategory()));
+            for (Product.ProductCategory category : touched) {
+                List<ProductDTO> categoryRemoved = removed.stream().filter(p -> p.getCategory() == category).toList();
+                List<ProductDTO> categoryAdded = added.stream().filter(p -> p.getCategory() == category).toList();
+                ProductDTO[] items = merge(allByCategory.getOrDefault(category, new ProductDTO[0]),
+                        categoryRemoved, categoryAdded, BY_ID);
+                PriceIndex index = availableByCategory.getOrDefault(category, PriceIndex.EMPTY).patch(
+                        categoryRemoved.stream().filter(ProductCatalogService::isAvailable).toList(),
+                        categoryAdded.stream().filter(ProductCatalogService::isAvailable).toList());
+                if (items.length == 0) {
+                    newAllByCategory.remove(category);
+                    newAvailableByCategory.remove(category);
+                } else {
+                    newAllByCategory.put(category, items);
+                    newAvailableByCategory.put(category, index);
+                }
+            }
+
+            PriceIndex newAvailable = available.patch(removedAvailable, addedAvailable);
+            return new Snapshot(merge(all, removed, added, BY_ID), newAllByCategory, newAvailable,
+                    newAvailableByCategory,
+                    patchTop(topSelling, removed, addedAvailable, newAvailable.items, BY_SALES, topN),
+                    patchTop(topRated, removed, addedAvailable, newAvailable.items, BY_RATING, topN));
+        }
+
+        /**
+         * 前 N 名上只替换变更的商品；原名单外的商品都排在原第 N 名之后，
+         * 修补后的第 N 名仍不低于原第 N 名时结果准确，否则从可售数组重新选取
+         */
+        private static List<ProductDTO> patchTop(List<ProductDTO> ranked, List<ProductDTO> removed,
+                                                 List<ProductDTO> addedAvailable, ProductDTO[] available,
+                                                 Comparator<ProductDTO> order, int topN) {
+            Set<Long> changedIds = new HashSet<>();
+            removed.forEach(p -> changedIds.add(p.getId()));
+            List<ProductDTO> candidates = new ArrayList<>(ranked.size() + addedAvailable.size());
+            for (ProductDTO product : ranked) {
+                if (!changedIds.contains(product.getId())) {
+                    candidates.add(product);
+                }
+            }
+            candidates.addAll(addedAvailable);
+            candidates.sort(order);
+            List<ProductDTO> patched = List.copyOf(candidates.subList(0, Math.min(topN, candidates.size())));
+
+            // 原名单不足 N 个时已包含全部可售商品，修补结果即为准确名单
+            if (ranked.size() < topN) {
+                return patched;
+            }
+            if (patched.size() == topN && order.compare(patched.get(topN - 1), ranked.get(topN - 1)) <= 0) {
+                return patched;
+            }
+            return rank(available, order, topN);
+        }
+
+        private static List<ProductDTO> rank(ProductDTO[] available, Comparator<ProductDTO> order, int topN) {
+            return Arrays.stream(available).sorted(order).limit(topN).toList();
+        }
+    }
+
+    /**
+     * 按价格排序的商品数组，cents 与 items 一一对应
+     */
+    private static final class PriceIndex {
+        private static final PriceIndex EMPTY = new PriceIndex(new ProductDTO[0], new long[0]);
+
+        private final ProductDTO[] items;
+        private final long[] cents;
+
+        private PriceIndex(ProductDTO[] items, long[] cents) {
+            this.items = items;
+            this.cents = cents;
+        }
+
+        /**
+         * 删除 removed、插入 added 后返回新索引，保留条目的价格不重新换算
+         */
+        private PriceIndex patch(List<ProductDTO> removed, List<ProductDTO> added) {
+            if (removed.isEmpty() && added.isEmpty()) {
+                return this;
+            }
+            boolean[] skip = new boolean[items.length];
+            int skipped = 0;
+            for (ProductDTO old : removed) {
+                int index = Arrays.binarySearch(items, old, BY_PRICE);
+                if (index >= 0 && !skip[index]) {
+                    skip[index] = true;
+                    skipped++;
+                }
+            }
+            ProductDTO[] inserts = added.toArray(new ProductDTO[0]);
+            Arrays.sort(inserts, BY_PRICE);
+            int size = items.length - skipped + inserts.length;
+            ProductDTO[] mergedItems = new ProductDTO[size];
+            long[] mergedCents = new long[size];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < items.length || j < inserts.length) {
+                if (i < items.length && skip[i]) {
+                    i++;
+                } else if (j >= inserts.length || (i < items.length && BY_PRICE.compare(items[i], inserts[j]) < 0)) {
+                    mergedCents[k] = cents[i];
+                    mergedItems[k++] = items[i++];
+                } else {
+                    mergedCents[k] = toCents(inserts[j].getPrice(), RoundingMode.HALF_UP);
+                    mergedItems[k++] = inserts[j++];
+                }
+            }
+            return new PriceIndex(mergedItems, mergedCents);
+        }
+
+        /**
+         * 第一个价格 >= value 的位置
+         */
+        private int lowerBound(long value) {
+            int lo = 0;
+            int hi = cents.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cents[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 第一个价格 > value 的位置
+         */
+        private int upperBound(long value) {
+            int lo = 0;
+            int hi = cents.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cents[mid] <= value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.dto.ProductDTO;
+import com.financelab.mallservice.dto.ProductSearchResultDTO;
+import com.financelab.mallservice.entity.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品全文检索（内存倒排索引）
+ *
+ * 分词：中日韩文字按二元组（bigram）切分并同时保留单字，单字只用于单字查询；
+ * 字母数字按连续片段切分并转小写。商品名、品牌、描述按 3:2:1 加权计入词频，按 BM25 打分。
+ * 查询词全部命中（AND）无结果时退化为任一命中（OR）。
+ *
+ * 文档以递增序号追加，倒排表天然按序号有序；更新商品时旧文档打删除标记并追加新文档，
+ * 删除标记超过存活文档的 1/4 时整体重建。索引由 ProductCatalogService 在快照变更时增量维护，
+ * 只有名称、品牌、描述、分类、价格、状态变化才重新分词，库存/销量变化只替换文档引用。
+ */
+@Service
+@Slf4j
+public class ProductSearchService {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int NAME_WEIGHT = 3;
+    private static final int BRAND_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    private static final int MIN_COMPACT_THRESHOLD = 1024;
+
+    private final long[] priceBucketCents;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 以下索引状态由 lock 保护
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    private ProductDTO[] docs = new ProductDTO[MIN_COMPACT_THRESHOLD];
+    private int[] docLengths = new int[MIN_COMPACT_THRESHOLD];
+    private String[][] docTerms = new String[MIN_COMPACT_THRESHOLD][];
+    private long[] docPriceCents = new long[MIN_COMPACT_THRESHOLD];
+    private int[] docCategories = new int[MIN_COMPACT_THRESHOLD];   // 分类序号，不可售为 -1
+    private int docCount;
+    private int liveDocs;
+    private int deadDocs;
+    private long totalLength;
+
+    public ProductSearchService(@Value("${mall.search.price-buckets:0,50,100,200,500,1000,2000,5000}") String priceBuckets) {
+        this.priceBucketCents = Arrays.stream(priceBuckets.split(","))
+                .map(String::trim)
+                .mapToLong(price -> toCents(new BigDecimal(price)))
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * 用全部商品重建索引
+     */
+    public void rebuild(Collection<ProductDTO> products) {
+        lock.writeLock().lock();
+        try {
+            clear(Math.max(MIN_COMPACT_THRESHOLD, products.size()));
+            for (ProductDTO product : products) {
+                add(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("商品检索索引已重建: 商品={}, 词项={}", products.size(), postings.size());
+    }
+
+    /**
+     * 增量更新：删除 removedIds，新增或替换 changed
+     */
+    public void update(Collection<Long> removedIds, Collection<ProductDTO> changed) {
+        lock.writeLock().lock();
+        try {
+            for (Long productId : removedIds) {
+                remove(productId);
+            }
+            for (ProductDTO product : changed) {
+                Integer ordinal = ordinals.get(product.getId());
+                if (ordinal != null && sameIndexedFields(docs[ordinal], product)) {
+                    docs[ordinal] = product;
+                    continue;
+                }
+                remove(product.getId());
+                add(product);
+            }
+            if (deadDocs > Math.max(MIN_COMPACT_THRESHOLD, liveDocs / 4)) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 检索可售商品，按相关度排序分页并统计分类、价格分面
+     *
+     * 分类分面不受分类条件限制、价格分面不受价格条件限制，便于前端展示可切换的筛选项。
+     */
+    public ProductSearchResultDTO search(String keyword, Product.ProductCategory category,
+                                         BigDecimal minPrice, BigDecimal maxPrice, int page, int size) {
+        long startNanos = System.nanoTime();
+        int pageIndex = Math.max(page, 0);
+        int pageSize = Math.max(size, 1);
+        long minCents = minPrice != null ? toCents(minPrice.setScale(2, RoundingMode.CEILING)) : Long.MIN_VALUE;
+        long maxCents = maxPrice != null ? toCents(maxPrice.setScale(2, RoundingMode.FLOOR)) : Long.MAX_VALUE;
+
+        ProductSearchResultDTO result = new ProductSearchResultDTO();
+        result.setKeyword(keyword);
+        result.setPage(pageIndex);
+        result.setSize(pageSize);
+
+        Map<Product.ProductCategory, Integer> categoryFacets = new EnumMap<>(Product.ProductCategory.class);
+        int[] priceCounts = new int[priceBucketCents.length];
+        List<ProductDTO> items = new ArrayList<>();
+        int totalHits = 0;
+
+        List<String> terms = queryTerms(keyword);
+        lock.readLock().lock();
+        try {
+            if (!terms.isEmpty() && liveDocs > 0) {
+                float[] scores = new float[docCount];
+                int[] matched = new int[docCount];
+                Candidates candidates = new Candidates();
+                int required = score(terms, scores, matched, candidates);
+
+                // 分页所需的前 k 名用小顶堆筛选，堆顶为当前第 k 名
+                int k = (int) Math.min((long) (pageIndex + 1) * pageSize, Integer.MAX_VALUE);
+                PriorityQueue<Integer> top = new PriorityQueue<>((a, b) -> compareHits(a, b, scores));
+                int categoryFilter = category != null ? category.ordinal() : -1;
+                int[] categoryCounts = new int[Product.ProductCategory.values().length];
+                for (int i = 0; i < candidates.size; i++) {
+                    int doc = candidates.docs[i];
+                    int docCategory = docCategories[doc];
+                    if (matched[doc] < required || docCategory < 0) {
+                        continue;
+                    }
+                    long cents = docPriceCents[doc];
+                    boolean inCategory = categoryFilter < 0 || docCategory == categoryFilter;
+                    boolean inPrice = cents >= minCents && cents <= maxCents;
+                    if (inPrice) {
+                        categoryCounts[docCategory]++;
+                    }
+                    if (inCategory) {
+                        int bucket = bucketOf(cents);
+                        if (bucket >= 0) {
+                            priceCounts[bucket]++;
+                        }
+                    }
+                    if (inCategory && inPrice) {
+                        totalHits++;
+                        if (top.size() < k) {
+                            top.offer(doc);
+                        } else if (compareHits(doc, top.peek(), scores) > 0) {
+                            top.poll();
+                            top.offer(doc);
+                        }
+                    }
+                }
+                for (Product.ProductCategory c : Product.ProductCategory.values()) {
+                    if (categoryCounts[c.ordinal()] > 0) {
+                        categoryFacets.put(c, categoryCounts[c.ordinal()]);
+                    }
+                }
+
+                int[] ranked = new int[top.size()];
+                for (int i = ranked.length - 1; i >= 0; i--) {
+                    ranked[i] = top.poll();
+                }
+                for (int i = pageIndex * pageSize; i < ranked.length; i++) {
+                    items.add(docs[ranked[i]]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<ProductSearchResultDTO.PriceBucket> priceFacets = new ArrayList<>(priceBucketCents.length);
+        for (int i = 0; i < priceBucketCents.length; i++) {
+            BigDecimal upper = i + 1 < priceBucketCents.length ? BigDecimal.valueOf(priceBucketCents[i + 1], 2) : null;
+            priceFacets.add(new ProductSearchResultDTO.PriceBucket(BigDecimal.valueOf(priceBucketCents[i], 2), upper, priceCounts[i]));
+        }
+
+        result.setTotalHits(totalHits);
+        result.setItems(items);
+        result.setCategoryFacets(categoryFacets);
+        result.setPriceFacets(priceFacets);
+        result.setTookMicros((System.nanoTime() - startNanos) / 1000);
+        return result;
+    }
+
+    /**
+     * 分词：中日韩文字切分为二元组（includeUnigrams 时同时输出单字），字母数字按片段切分
+     */
+    static List<String> tokenize(String text, boolean includeUnigrams) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int i = 0;
+        int length = lower.length();
+        while (i < length) {
+            int cp = lower.codePointAt(i);
+            if (isCjk(cp)) {
+                List<String> run = new ArrayList<>();
+                while (i < length && isCjk(cp = lower.codePointAt(i))) {
+                    run.add(new String(Character.toChars(cp)));
+                    i += Character.charCount(cp);
+                }
+                if (run.size() == 1 || includeUnigrams) {
+                    tokens.addAll(run);
+                }
+                for (int j = 0; j + 1 < run.size(); j++) {
+                    tokens.add(run.get(j) + run.get(j + 1));
+                }
+            } else if (Character.isLetterOrDigit(cp)) {
+                int start = i;
+                while (i < length && !isCjk(cp = lower.codePointAt(i)) && Character.isLetterOrDigit(cp)) {
+                    i += Character.charCount(cp);
+                }
+                tokens.add(lower.substring(start, i));
+            } else {
+                i += Character.charCount(cp);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 累加各查询词的 BM25 分数，返回文档需要命中的查询词个数（全部命中无结果时为 1）
+     */
+    private int score(List<String> terms, float[] scores, int[] matched, Candidates candidates) {
+        float avgLength = (float) totalLength / liveDocs;
+        int presentTerms = 0;
+        for (String term : terms) {
+            Postings list = postings.get(term);
+            if (list == null || list.df == 0) {
+                continue;
+            }
+            presentTerms++;
+            float idf = (float) Math.log(1 + (liveDocs - list.df + 0.5) / (list.df + 0.5));
+            for (int i = 0; i < list.size; i++) {
+                int doc = list.docs[i];
+                if (docs[doc] == null) {
+                    continue;
+                }
+                int tf = list.tfs[i];
+                float norm = K1 * (1 - B + B * docLengths[doc] / avgLength);
+                scores[doc] += idf * tf * (K1 + 1) / (tf + norm);
+                if (matched[doc]++ == 0) {
+                    candidates.add(doc);
+                }
+            }
+        }
+        if (presentTerms == terms.size()) {
+            for (int i = 0; i < candidates.size; i++) {
+                if (matched[candidates.docs[i]] == terms.size()) {
+                    return terms.size();
+                }
+            }
+        }
+        return 1;
+    }
+
+    private List<String> queryTerms(String keyword) {
+        return new ArrayList<>(new LinkedHashSet<>(tokenize(keyword, false)));
+    }
+
+    private void add(ProductDTO product) {
+        Map<String, Integer> termFreqs = new HashMap<>();
+        addField(termFreqs, product.getProductName(), NAME_WEIGHT);
+        addField(termFreqs, product.getBrand(), BRAND_WEIGHT);
+        addField(termFreqs, product.getDescription(), DESCRIPTION_WEIGHT);
+
+        int ordinal = docCount++;
+        ensureCapacity(docCount);
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : termFreqs.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> new Postings()).add(ordinal, entry.getValue());
+            length += entry.getValue();
+        }
+        docs[ordinal] = product;
+        docPriceCents[ordinal] = toCents(product.getPrice());
+        docCategories[ordinal] = product.getStatus() == Product.ProductStatus.AVAILABLE ? product.getCategory().ordinal() : -1;
+        docLengths[ordinal] = length;
+        docTerms[ordinal] = termFreqs.keySet().toArray(new String[0]);
+        ordinals.put(product.getId(), ordinal);
+        liveDocs++;
+        totalLength += length;
+    }
+
+    private void remove(Long productId) {
+        Integer ordinal = ordinals.remove(productId);
+        if (ordinal == null) {
+            return;
+        }
+        for (String term : docTerms[ordinal]) {
+            postings.get(term).df--;
+        }
+        docs[ordinal] = null;
+        docTerms[ordinal] = null;
+        docCategories[ordinal] = -1;
+        liveDocs--;
+        deadDocs++;
+        totalLength -= docLengths[ordinal];
+    }
+
+    private void compact() {
+        List<ProductDTO> live = new ArrayList<>(liveDocs);
+        for (int i = 0; i < docCount; i++) {
+            if (docs[i] != null) {
+                live.add(docs[i]);
+            }
+        }
+        clear(Math.max(MIN_COMPACT_THRESHOLD, live.size()));
+        for (ProductDTO product : live) {
+            add(product);
+        }
+        log.debug("商品检索索引已压缩: 商品={}", live.size());
+    }
+
+    private void clear(int capacity) {
+        postings.clear();
+        ordinals.clear();
+        docs = new ProductDTO[capacity];
+        docLengths = new int[capacity];
+        docTerms = new String[capacity][];
+        docPriceCents = new long[capacity];
+        docCategories = new int[capacity];
+        docCount = 0;
+        liveDocs = 0;
+        deadDocs = 0;
+        totalLength = 0;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > docs.length) {
+            int capacity = Math.max(required, docs.length * 2);
+            docs = Arrays.copyOf(docs, capacity);
+            docLengths = Arrays.copyOf(docLengths, capacity);
+            docTerms = Arrays.copyOf(docTerms, capacity);
+            docPriceCents = Arrays.copyOf(docPriceCents, capacity);
+            docCategories = Arrays.copyOf(docCategories, capacity);
+        }
+    }
+
+    private int compareHits(int a, int b, float[] scores) {
+        int byScore = Float.compare(scores[a], scores[b]);
+        if (byScore != 0) {
+            return byScore;
+        }
+        return Long.compare(docs[b].getId(), docs[a].getId()); // 同分时 id 小的排前
+    }
+
+    private int bucketOf(long cents) {
+        int index = Arrays.binarySearch(priceBucketCents, cents);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private static void addField(Map<String, Integer> termFreqs, String text, int weight) {
+        for (String token : tokenize(text, true)) {
+            termFreqs.merge(token, weight, Integer::sum);
+        }
+    }
+
+    private static boolean sameIndexedFields(ProductDTO a, ProductDTO b) {
+        return Objects.equals(a.getProductName(), b.getProductName())
+                && Objects.equals(a.getBrand(), b.getBrand())
+                && Objects.equals(a.getDescription(), b.getDescription())
+                && a.getCategory() == b.getCategory()
+                && a.getStatus() == b.getStatus()
+                && a.getPrice().compareTo(b.getPrice()) == 0;
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static long toCents(BigDecimal price) {
+        return price.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * 命中至少一个查询词的文档序号
+     */
+    private static final class Candidates {
+        private int[] docs = new int[64];
+        private int size;
+
+        private void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+
+    /**
+     * 单个词项的倒排表：文档序号与加权词频两个并行数组，df 为存活文档数
+     */
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int[] tfs = new int[4];
+        private int size;
+        private int df;
+
+        private void add(int doc, int tf) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                tfs = Arrays.copyOf(tfs, size * 2);
+            }
+            docs[size] = doc;
+            tfs[size] = tf;
+            size++;
+            df++;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.dto.ProductDTO;
+import com.financelab.mallservice.dto.RecommendationDTO;
+import com.financelab.mallservice.entity.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于共购的商品推荐
+ *
+ * “经常一起购买”：CoPurchaseMatrix 在内存中累计同一订单内商品的共购次数并预计算每个商品的前 K 个近邻，
+ * 下单事务提交后增量更新，启动时按主键分页从 orders/order_items 重建。订单在创建时即计入（不等待支付），
+ * 取消的订单不回退计数。
+ * “同班同学也买了”：内存中保存每个用户最近购买的商品，班级成员经 UserDirectoryClient 查询，
+ * 统计同学买过而本人没买过的商品。
+ *
+ * 读取只访问内存中预先算好的结果，不查询 orders。
+ */
+@Service
+@Slf4j
+public class RecommendationService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductCatalogService productCatalogService;
+    private final UserDirectoryClient userDirectoryClient;
+    private final CoPurchaseMatrix matrix;
+    private final int rebuildPageSize;
+    private final int maxUserHistory;
+    private final int historySeeds;
+    private final int maxLimit;
+
+    // 用户最近购买的商品 id（去重，按购买先后，最近的在末尾），数组写时复制
+    private final Map<String, int[]> userPurchases = new ConcurrentHashMap<>();
+
+    // 重建读取 id 不超过该值的订单，只有更新的订单由增量事件计入；确定之前到达的事件都由重建覆盖
+    private volatile long rebuildBoundary = Long.MAX_VALUE;
+
+    public RecommendationService(JdbcTemplate jdbcTemplate,
+                                 ProductCatalogService productCatalogService,
+                                 UserDirectoryClient userDirectoryClient,
+                                 @Value("${mall.recommendation.max-neighbors:64}") int maxNeighbors,
+                                 @Value("${mall.recommendation.top-k:20}") int topK,
+                                 @Value("${mall.recommendation.max-basket-size:50}") int maxBasketSize,
+                                 @Value("${mall.recommendation.rebuild-page-size:5000}") int rebuildPageSize,
+                                 @Value("${mall.recommendation.max-user-history:50}") int maxUserHistory,
+                                 @Value("${mall.recommendation.history-seeds:10}") int historySeeds,
+                                 @Value("${mall.recommendation.max-limit:50}") int maxLimit) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.productCatalogService = productCatalogService;
+        this.userDirectoryClient = userDirectoryClient;
+        this.matrix = new CoPurchaseMatrix(maxNeighbors, topK, maxBasketSize);
+        this.rebuildPageSize = rebuildPageSize;
+        this.maxUserHistory = maxUserHistory;
+        this.historySeeds = historySeeds;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * 记录新订单的商品，事务提交后计入
+     */
+    public void recordOrder(Long orderId, String userId, Collection<Long> productIds) {
+        int[] ids = productIds.stream().mapToInt(Long::intValue).distinct().toArray();
+        Runnable action = () -> {
+            if (orderId <= rebuildBoundary) {
+                return;
+            }
+            matrix.addBasket(ids);
+            appendPurchases(userId, ids);
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 启动时从数据库重建共购矩阵与用户购买记录（订单按主键分页，详情按订单 id 批量加载）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM orders", Long.class);
+        long boundary = maxId != null ? maxId : 0;
+        rebuildBoundary = boundary;
+
+        long lastId = 0;
+        int total = 0;
+        while (lastId < boundary) {
+            Map<Long, String> orderUsers = new LinkedHashMap<>();
+            jdbcTemplate.query("SELECT id, user_id FROM orders WHERE id > ? AND id <= ? ORDER BY id LIMIT ?",
+                    rs -> { orderUsers.put(rs.getLong(1), rs.getString(2)); },
+                    lastId, boundary, rebuildPageSize);
+            if (orderUsers.isEmpty()) {
+                break;
+            }
+            Map<Long, List<Long>> baskets = new HashMap<>();
+            String placeholders = String.join(",", Collections.nCopies(orderUsers.size(), "?"));
+            jdbcTemplate.query("SELECT order_id, product_id FROM order_items WHERE order_id IN (" + placeholders + ")",
+                    rs -> { baskets.computeIfAbsent(rs.getLong(1), k -> new ArrayList<>()).add(rs.getLong(2)); },
+                    orderUsers.keySet().toArray());
+            for (Map.Entry<Long, String> order : orderUsers.entrySet()) {
+                List<Long> basket = baskets.get(order.getKey());
+                if (basket != null) {
+                    int[] ids = basket.stream().mapToInt(Long::intValue).distinct().toArray();
+                    matrix.addBasket(ids);
+                    appendPurchases(order.getValue(), ids);
+                }
+                lastId = order.getKey();
+            }
+            total += orderUsers.size();
+        }
+        int refreshed = matrix.refresh();
+        log.info("重建商品共购矩阵: {} 笔订单, {} 个商品, {} 个共购条目", total, refreshed, matrix.entryCount());
+    }
+
+    /**
+     * 重算有变更商品的前 K 个近邻
+     */
+    @Scheduled(fixedDelayString = "${mall.recommendation.refresh-interval-ms:5000}")
+    public void refreshNeighbors() {
+        int refreshed = matrix.refresh();
+        if (refreshed > 0) {
+            log.debug("刷新商品共购近邻: {} 个商品", refreshed);
+        }
+    }
+
+    /**
+     * 与指定商品经常一起购买的商品
+     */
+    public List<ProductDTO> getBoughtTogether(Long productId, int limit) {
+        limit = clampLimit(limit);
+        int[] neighbors = matrix.topNeighbors(productId.intValue());
+        List<ProductDTO> result = new ArrayList<>(Math.min(limit, neighbors.length));
+        for (int neighbor : neighbors) {
+            if (result.size() >= limit) {
+                break;
+            }
+            addIfAvailable(result, neighbor);
+        }
+        return result;
+    }
+
+    /**
+     * 用户的个性化推荐：最近买过的商品的共购近邻 + 同班同学买过的商品
+     */
+    public RecommendationDTO getRecommendations(String userId, int limit) {
+        limit = clampLimit(limit);
+        int[] owned = userPurchases.getOrDefault(userId, new int[0]);
+        return new RecommendationDTO(userId, boughtTogetherFor(owned, limit), classmatesBought(userId, owned, limit));
+    }
+
+    private List<ProductDTO> boughtTogetherFor(int[] owned, int limit) {
+        // 越近购买的商品、越靠前的近邻权重越高
+        Map<Integer, Integer> scores = new HashMap<>();
+        int seeds = Math.min(historySeeds, owned.length);
+        for (int s = 0; s < seeds; s++) {
+            int[] neighbors = matrix.topNeighbors(owned[owned.length - 1 - s]);
+            for (int rank = 0; rank < neighbors.length; rank++) {
+                if (!contains(owned, neighbors[rank])) {
+                    scores.merge(neighbors[rank], (seeds - s) * (neighbors.length - rank), Integer::sum);
+                }
+            }
+        }
+        return rankProducts(scores, limit);
+    }
+
+    private List<ProductDTO> classmatesBought(String userId, int[] owned, int limit) {
+        List<String> classmates = getClassmates(userId);
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (String classmate : classmates) {
+            if (classmate.equals(userId)) {
+                continue;
+            }
+            for (int productId : userPurchases.getOrDefault(classmate, new int[0])) {
+                if (!contains(owned, productId)) {
+                    counts.merge(productId, 1, Integer::sum);
+                }
+            }
+        }
+        return rankProducts(counts, limit);
+    }
+
+    private List<ProductDTO> rankProducts(Map<Integer, Integer> scores, int limit) {
+        List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<Integer, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        List<ProductDTO> result = new ArrayList<>(limit);
+        for (Map.Entry<Integer, Integer> entry : ranked) {
+            if (result.size() >= limit) {
+                break;
+            }
+            addIfAvailable(result, entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * 客户端传入的条数限制在 1..max-limit
+     */
+    private int clampLimit(int limit) {
+        return Math.max(1, Math.min(limit, maxLimit));
+    }
+
+    private void addIfAvailable(List<ProductDTO> result, int productId) {
+        ProductDTO product = productCatalogService.getProduct((long) productId);
+        if (product != null && product.getStatus() == Product.ProductStatus.AVAILABLE) {
+            result.add(product);
+        }
+    }
+
+    private void appendPurchases(String userId, int[] productIds) {
+        userPurchases.compute(userId, (k, history) -> {
+            int[] current = history != null ? history : new int[0];
+            int[] merged = new int[current.length + productIds.length];
+            int n = 0;
+            for (int productId : current) {
+                if (!contains(productIds, productId)) {
+                    merged[n++] = productId;
+                }
+            }
+            for (int productId : productIds) {
+                merged[n++] = productId;
+            }
+            int from = Math.max(0, n - maxUserHistory);
+            return Arrays.copyOfRange(merged, from, n);
+        });
+    }
+
+    /**
+     * 查询用户所在班级的成员 id；user-service 不可用时返回空列表
+     */
+    private List<String> getClassmates(String userId) {
+        try {
+            Long classId = userDirectoryClient.getProfile(userId).classId();
+            return classId != null ? userDirectoryClient.getClassMembers(classId) : List.of();
+        } catch (Exception e) {
+            log.warn("查询班级成员失败: userId={}, error={}", userId, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
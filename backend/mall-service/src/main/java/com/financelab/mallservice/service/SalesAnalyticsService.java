@@ -0,0 +1,235 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.dto.SalesStatDTO;
+import com.financelab.mallservice.entity.Order;
+import com.financelab.mallservice.entity.Product;
+import com.financelab.mallservice.entity.SalesEvent;
+import com.financelab.mallservice.repository.SalesEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 商城销售统计
+ *
+ * 订单支付成功时在同一事务中写入一条 sales_events；汇总任务先不加锁读出一批待处理事件并查询用户所属学校/班级
+ * （不在持有行锁时访问 user-service），再在事务中领取这批事件（FOR UPDATE SKIP LOCKED），
+ * 按订单详情的商品分类、用户所属学校/班级归并为 日期 × 分类 × 学校 × 班级 的增量，
+ * 以 INSERT ... ON DUPLICATE KEY UPDATE 累加到 sales_rollups，并在同一事务中删除已汇总的事件，
+ * 每个事件恰好计入一次。统计接口只查询 sales_rollups，不访问 orders/order_items。
+ *
+ * 销售额为订单详情金额合计（不含税费与运费）；订单数按单元格计，一个订单含多个分类时在每个分类下各计一次。
+ * user-service 暂不可用时本批不领取，下次调度重试。
+ */
+@Service
+@Slf4j
+public class SalesAnalyticsService {
+
+    private static final String PEEK_SQL = "SELECT id, user_id FROM sales_events ORDER BY id LIMIT ?";
+
+    private static final String CLAIM_SQL =
+            "SELECT id, order_id, user_id, event_type, occurred_at FROM sales_events WHERE id IN (%s) FOR UPDATE SKIP LOCKED";
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO sales_rollups (sale_date, category, school_id, class_id, revenue, quantity, order_count, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE revenue = revenue + VALUES(revenue), " +
+            "quantity = quantity + VALUES(quantity), order_count = order_count + VALUES(order_count), updated_at = VALUES(updated_at)";
+
+    private final SalesEventRepository salesEventRepository;
+    private final UserDirectoryClient userDirectoryClient;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long retryDelayMillis;
+
+    // 汇总失败后暂停到该时刻，避免 user-service 不可用时每次调度都等待超时而占用调度线程
+    private long resumeAt;
+
+    public SalesAnalyticsService(SalesEventRepository salesEventRepository,
+                                 UserDirectoryClient userDirectoryClient,
+                                 JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${mall.analytics.rollup-batch-size:500}") int batchSize,
+                                 @Value("${mall.analytics.retry-delay-ms:10000}") long retryDelayMillis) {
+        this.salesEventRepository = salesEventRepository;
+        this.userDirectoryClient = userDirectoryClient;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * 记录订单支付成功，须在订单置为已支付的同一事务中调用
+     */
+    public void recordPaid(Order order, LocalDateTime paidAt) {
+        SalesEvent event = new SalesEvent();
+        event.setOrderId(order.getId());
+        event.setUserId(order.getUserId());
+        event.setEventType(SalesEvent.EventType.PAID);
+        event.setOccurredAt(paidAt);
+        salesEventRepository.save(event);
+    }
+
+    /**
+     * 记录已支付订单取消退款，须在取消订单的同一事务中调用；按取消当天冲减销售额
+     */
+    public void recordRefunded(Order order, LocalDateTime refundedAt) {
+        SalesEvent event = new SalesEvent();
+        event.setOrderId(order.getId());
+        event.setUserId(order.getUserId());
+        event.setEventType(SalesEvent.EventType.REFUNDED);
+        event.setOccurredAt(refundedAt);
+        salesEventRepository.save(event);
+    }
+
+    /**
+     * 汇总待处理的销售事件，直到没有满批的事件
+     */
+    @Scheduled(fixedDelayString = "${mall.analytics.rollup-interval-ms:1000}")
+    public void rollup() {
+        if (System.currentTimeMillis() < resumeAt) {
+            return;
+        }
+        try {
+            while (true) {
+                List<PendingEvent> pending = jdbcTemplate.query(PEEK_SQL,
+                        (rs, rowNum) -> new PendingEvent(rs.getLong(1), rs.getString(2)), batchSize);
+                if (pending.isEmpty()) {
+                    return;
+                }
+                Map<String, UserDirectoryClient.UserProfile> profiles = userDirectoryClient.getProfiles(
+                        pending.stream().map(PendingEvent::userId).distinct().toList());
+                List<Long> ids = pending.stream().map(PendingEvent::id).toList();
+                Integer consumed = transactionTemplate.execute(status -> rollupBatch(ids, profiles));
+                // 不足一批，或这批已被其他实例领取时结束本轮
+                if (pending.size() < batchSize || consumed == null || consumed == 0) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            resumeAt = System.currentTimeMillis() + retryDelayMillis;
+            log.error("汇总销售事件失败，{} 毫秒后重试", retryDelayMillis, e);
+        }
+    }
+
+    /**
+     * 按维度汇总销售额；schoolId/classId/category 为空时不过滤
+     */
+    public List<SalesStatDTO> getSales(LocalDate from, LocalDate to, Long schoolId, Long classId,
+                                       Product.ProductCategory category, GroupBy groupBy) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(groupBy.column)
+                .append(", SUM(revenue), SUM(quantity), SUM(order_count) FROM sales_rollups WHERE sale_date BETWEEN ? AND ?");
+        List<Object> args = new ArrayList<>();
+        args.add(Date.valueOf(from));
+        args.add(Date.valueOf(to));
+        if (schoolId != null) {
+            sql.append(" AND school_id = ?");
+            args.add(schoolId);
+        }
+        if (classId != null) {
+            sql.append(" AND class_id = ?");
+            args.add(classId);
+        }
+        if (category != null) {
+            sql.append(" AND category = ?");
+            args.add(category.name());
+        }
+        sql.append(" GROUP BY ").append(groupBy.column).append(" ORDER BY ").append(groupBy.column);
+        return jdbcTemplate.query(sql.toString(),
+                (rs, rowNum) -> new SalesStatDTO(rs.getString(1), rs.getBigDecimal(2), rs.getLong(3), rs.getLong(4)),
+                args.toArray());
+    }
+
+    private int rollupBatch(List<Long> ids, Map<String, UserDirectoryClient.UserProfile> profiles) {
+        List<ClaimedEvent> events = jdbcTemplate.query(
+                String.format(CLAIM_SQL, String.join(",", Collections.nCopies(ids.size(), "?"))),
+                (rs, rowNum) -> new ClaimedEvent(rs.getLong(1), rs.getLong(2), rs.getString(3),
+                        SalesEvent.EventType.valueOf(rs.getString(4)), rs.getTimestamp(5).toLocalDateTime().toLocalDate()),
+                ids.toArray());
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        // 每个订单按分类合计的数量与金额
+        Map<Long, List<CategoryLine>> lines = new HashMap<>();
+        List<Long> orderIds = events.stream().map(ClaimedEvent::orderId).distinct().toList();
+        jdbcTemplate.query("SELECT order_id, category, SUM(quantity), SUM(total_price) FROM order_items " +
+                        "WHERE order_id IN (" + String.join(",", Collections.nCopies(orderIds.size(), "?")) + ") " +
+                        "GROUP BY order_id, category",
+                rs -> {
+                    lines.computeIfAbsent(rs.getLong(1), k -> new ArrayList<>())
+                            .add(new CategoryLine(rs.getString(2), rs.getLong(3), rs.getBigDecimal(4)));
+                },
+                orderIds.toArray());
+
+        Map<Cell, Delta> deltas = new HashMap<>();
+        for (ClaimedEvent event : events) {
+            UserDirectoryClient.UserProfile profile = profiles.get(event.userId());
+            long schoolId = profile.schoolId() != null ? profile.schoolId() : 0;
+            long classId = profile.classId() != null ? profile.classId() : 0;
+            int sign = event.eventType() == SalesEvent.EventType.REFUNDED ? -1 : 1;
+            for (CategoryLine line : lines.getOrDefault(event.orderId(), List.of())) {
+                Delta delta = deltas.computeIfAbsent(new Cell(event.saleDate(), line.category(), schoolId, classId),
+                        k -> new Delta());
+                delta.revenue = delta.revenue.add(sign > 0 ? line.amount() : line.amount().negate());
+                delta.quantity += sign * line.quantity();
+                delta.orderCount += sign;
+            }
+        }
+
+        if (!deltas.isEmpty()) {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> upserts = new ArrayList<>(deltas.size());
+            deltas.forEach((cell, delta) -> upserts.add(new Object[] { Date.valueOf(cell.saleDate()), cell.category(),
+                    cell.schoolId(), cell.classId(), delta.revenue, delta.quantity, delta.orderCount, now }));
+            jdbcTemplate.batchUpdate(UPSERT_SQL, upserts);
+        }
+        jdbcTemplate.update("DELETE FROM sales_events WHERE id IN (" +
+                        String.join(",", Collections.nCopies(events.size(), "?")) + ")",
+                events.stream().map(ClaimedEvent::id).toArray());
+        log.debug("汇总销售事件: {} 条, {} 个单元格", events.size(), deltas.size());
+        return events.size();
+    }
+
+    public enum GroupBy {
+        DAY("sale_date"),
+        CATEGORY("category"),
+        SCHOOL("school_id"),
+        CLASS("class_id");
+
+        private final String column;
+
+        GroupBy(String column) {
+            this.column = column;
+        }
+    }
+
+    private record PendingEvent(long id, String userId) {}
+
+    private record ClaimedEvent(long id, long orderId, String userId, SalesEvent.EventType eventType, LocalDate saleDate) {}
+
+    private record CategoryLine(String category, long quantity, BigDecimal amount) {}
+
+    private record Cell(LocalDate saleDate, String category, long schoolId, long classId) {}
+
+    private static final class Delta {
+        private BigDecimal revenue = BigDecimal.ZERO;
+        private long quantity;
+        private long orderCount;
+    }
+}
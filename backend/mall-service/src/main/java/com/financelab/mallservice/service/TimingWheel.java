@@ -0,0 +1,158 @@
+package com.financelab.mallservice.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分层时间轮：按 ID 登记到期时间，推进时间后取出已到期的 ID
+ *
+ * 共 LEVELS 层，每层 64 个槽；第 L 层每槽跨度 64^L 个 tick。定时器按剩余 tick 数落在能容纳它的最低层，
+ * 高层槽在其时间段开始时整体下放（cascade）到低层，第 0 层的槽到点即到期。槽内是双向链表，
+ * 另有 ID 索引，因此登记与取消都是 O(1)；推进的开销只与经过的 tick 数和到期数量有关。
+ * 超出顶层范围的定时器暂放顶层，下放时按真实到期时间重新落槽。
+ *
+ * 线程安全：所有操作在同一把锁内完成。
+ */
+public final class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private final long tickMillis;
+    private final Node[][] slots = new Node[LEVELS][SLOTS];
+    private final Map<Long, Node> index = new HashMap<>();
+    private long currentTick;
+
+    public TimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis 必须大于 0");
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * 登记或改期；已到期的时间在下一个 tick 到期
+     */
+    public synchronized void schedule(long id, long deadlineMillis) {
+        Node node = index.get(id);
+        if (node != null) {
+            unlink(node);
+        } else {
+            node = new Node(id);
+            index.put(id, node);
+        }
+        node.tick = Math.max(ceilTick(deadlineMillis), currentTick + 1);
+        place(node);
+    }
+
+    /**
+     * 取消定时器
+     *
+     * @return 定时器不存在时返回 false
+     */
+    public synchronized boolean cancel(long id) {
+        Node node = index.remove(id);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * 推进到 nowMillis，返回期间到期的 ID（已从时间轮移除）
+     */
+    public synchronized List<Long> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        List<Long> expired = new ArrayList<>();
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK));
+            }
+            int slot = (int) (currentTick & SLOT_MASK);
+            Node node = slots[0][slot];
+            slots[0][slot] = null;
+            while (node != null) {
+                Node next = node.next;
+                index.remove(node.id);
+                expired.add(node.id);
+                node.prev = node.next = null;
+                node = next;
+            }
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    private void cascade(int level, int slot) {
+        Node node = slots[level][slot];
+        slots[level][slot] = null;
+        while (node != null) {
+            Node next = node.next;
+            node.prev = node.next = null;
+            place(node);
+            node = next;
+        }
+    }
+
+    private void place(Node node) {
+        // 超出顶层范围时按顶层最远的槽放置，下放时再按真实时间重新落槽
+        long tick = Math.min(node.tick, currentTick + MAX_SPAN - 1);
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        node.level = level;
+        node.slot = slot;
+        Node head = slots[level][slot];
+        node.next = head;
+        if (head != null) {
+            head.prev = node;
+        }
+        slots[level][slot] = node;
+    }
+
+    private void unlink(Node node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            slots[node.level][node.slot] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = node.next = null;
+    }
+
+    private long ceilTick(long millis) {
+        return Math.floorDiv(millis + tickMillis - 1, tickMillis);
+    }
+
+    private static final class Node {
+        private final long id;
+        private long tick;
+        private int level;
+        private int slot;
+        private Node prev;
+        private Node next;
+
+        private Node(long id) {
+            this.id = id;
+        }
+    }
+}
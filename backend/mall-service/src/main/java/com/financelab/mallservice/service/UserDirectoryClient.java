@@ -0,0 +1,146 @@
+package com.financelab.mallservice.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 查询 user-service 中用户所属的学校/班级与班级成员，结果按 TTL 缓存
+ *
+ * 调用 user-service 的内部接口（/internal/users，携带 X-Internal-Token）。
+ * 不存在的用户按“无学校/班级”缓存；请求失败（含凭证错误）直接抛出且不缓存，由调用方决定降级或重试。
+ */
+@Service
+@Slf4j
+public class UserDirectoryClient {
+
+    private static final int MAX_IDS_PER_REQUEST = 500;
+    private static final UserProfile NO_PROFILE = new UserProfile(null, null, null);
+
+    private final RestClient restClient;
+    private final String userServiceUrl;
+    private final String internalToken;
+    private final long cacheTtlMillis;
+
+    private final Map<String, CachedProfile> profiles = new ConcurrentHashMap<>();
+    private final Map<Long, CachedMembers> classMembers = new ConcurrentHashMap<>();
+
+    public UserDirectoryClient(@Value("${mall.user-directory.user-service-url:http://localhost:8081/user-service}") String userServiceUrl,
+                               @Value("${mall.user-directory.internal-token}") String internalToken,
+                               @Value("${mall.user-directory.timeout-ms:2000}") long timeoutMillis,
+                               @Value("${mall.user-directory.cache-ttl-seconds:300}") long cacheTtlSeconds) {
+        if (internalToken == null || internalToken.isBlank()) {
+            throw new IllegalStateException("未配置服务间调用凭证 mall.user-directory.internal-token（INTERNAL_API_TOKEN）");
+        }
+        this.userServiceUrl = userServiceUrl;
+        this.internalToken = internalToken;
+        this.cacheTtlMillis = cacheTtlSeconds * 1000;
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeoutMillis))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(timeoutMillis));
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+    }
+
+    /**
+     * 用户所属的学校与班级
+     */
+    public UserProfile getProfile(String userId) {
+        return getProfiles(List.of(userId)).get(userId);
+    }
+
+    /**
+     * 批量查询用户所属的学校与班级，缓存未命中的用户按批请求 user-service；结果包含每个传入的用户
+     */
+    public Map<String, UserProfile> getProfiles(Collection<String> userIds) {
+        long now = System.currentTimeMillis();
+        Map<String, UserProfile> result = new HashMap<>();
+        Map<Long, List<String>> missingKeys = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            CachedProfile cached = profiles.get(userId);
+            if (cached != null && cached.expiresAt() >= now) {
+                result.put(userId, cached.profile());
+                continue;
+            }
+            Long id = parseId(userId);
+            if (id == null) {
+                result.put(userId, NO_PROFILE);
+            } else {
+                missingKeys.computeIfAbsent(id, k -> new ArrayList<>()).add(userId);
+            }
+        }
+        List<Long> missing = new ArrayList<>(missingKeys.keySet());
+        for (int from = 0; from < missing.size(); from += MAX_IDS_PER_REQUEST) {
+            List<Long> chunk = missing.subList(from, Math.min(missing.size(), from + MAX_IDS_PER_REQUEST));
+            List<UserProfile> found = restClient.get()
+                    .uri(userServiceUrl + "/internal/users/profiles?ids={ids}",
+                            chunk.stream().map(String::valueOf).collect(Collectors.joining(",")))
+                    .header("X-Internal-Token", internalToken)
+                    .retrieve().body(new ParameterizedTypeReference<List<UserProfile>>() {});
+            Map<Long, UserProfile> byId = new HashMap<>();
+            if (found != null) {
+                for (UserProfile profile : found) {
+                    byId.put(profile.id(), profile);
+                }
+            }
+            for (Long id : chunk) {
+                UserProfile profile = byId.getOrDefault(id, NO_PROFILE);
+                for (String userId : missingKeys.get(id)) {
+                    profiles.put(userId, new CachedProfile(profile, now + cacheTtlMillis));
+                    result.put(userId, profile);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 班级全部成员的用户 id
+     */
+    public List<String> getClassMembers(Long classId) {
+        long now = System.currentTimeMillis();
+        CachedMembers cached = classMembers.get(classId);
+        if (cached != null && cached.expiresAt() >= now) {
+            return cached.memberIds();
+        }
+        List<UserProfile> users = restClient.get().uri(userServiceUrl + "/internal/users/class/{classId}", classId)
+                .header("X-Internal-Token", internalToken)
+                .retrieve().body(new ParameterizedTypeReference<List<UserProfile>>() {});
+        List<String> memberIds = users == null ? List.of()
+                : users.stream().map(u -> String.valueOf(u.id())).toList();
+        classMembers.put(classId, new CachedMembers(memberIds, now + cacheTtlMillis));
+        return memberIds;
+    }
+
+    private static Long parseId(String userId) {
+        try {
+            return userId != null ? Long.valueOf(userId) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record UserProfile(Long id, Long schoolId, Long classId) {}
+
+    private record CachedProfile(UserProfile profile, long expiresAt) {}
+
+    private record CachedMembers(List<String> memberIds, long expiresAt) {}
+}
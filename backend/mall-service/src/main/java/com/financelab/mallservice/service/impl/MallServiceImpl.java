@@ -3,14 +3,26 @@ package com.financelab.mallservice.service.impl;
 import com.financelab.mallservice.dto.*;
 import com.financelab.mallservice.entity.*;
 import com.financelab.mallservice.repository.*;
+import com.financelab.mallservice.service.CartStore;
+import com.financelab.mallservice.service.InventoryService;
 import com.financelab.mallservice.service.MallService;
+import com.financelab.mallservice.service.OrderNumberGenerator;
+import com.financelab.mallservice.service.OrderSummaryService;
+import com.financelab.mallservice.service.OrderTimeoutService;
+import com.financelab.mallservice.service.PaymentOutboxService;
+import com.financelab.mallservice.service.ProductCatalogService;
+import com.financelab.mallservice.service.RecommendationService;
+import com.financelab.mallservice.service.SalesAnalyticsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -24,145 +36,124 @@ import java.util.stream.Collectors;
 public class MallServiceImpl implements MallService {
     
     private final ProductRepository productRepository;
-    private final CartItemRepository cartItemRepository;
     private final OrderRepository orderRepository;
     private final OrderItemRepository orderItemRepository;
-    
-    // 商品管理方法
+    private final OrderItemBatchRepository orderItemBatchRepository;
+    private final InventoryService inventoryService;
+    private final ProductCatalogService productCatalogService;
+    private final CartStore cartStore;
+    private final OrderSummaryService orderSummaryService;
+    private final OrderTimeoutService orderTimeoutService;
+    private final PaymentOutboxService paymentOutboxService;
+    private final RecommendationService recommendationService;
+    private final SalesAnalyticsService salesAnalyticsService;
+    private final OrderNumberGenerator orderNumberGenerator;
+    
+    // 商品管理方法（读取走商品目录缓存，自定义排序时回源数据库）
     
     @Override
     public ProductDTO getProduct(Long productId) {
-        Optional<Product> product = productRepository.findById(productId);
-        return product.map(ProductDTO::new).orElse(null);
+        return productCatalogService.getProduct(productId);
     }
     
     @Override
     public ProductDTO getProductByCode(String productCode) {
-        Optional<Product> product = productRepository.findByProductCode(productCode);
-        return product.map(ProductDTO::new).orElse(null);
+        return productCatalogService.getProductByCode(productCode);
     }
     
     @Override
     public Page<ProductDTO> getProducts(Pageable pageable) {
+        if (pageable.getSort().isUnsorted()) {
+            return productCatalogService.getProducts(pageable);
+        }
         Page<Product> products = productRepository.findAll(pageable);
         return products.map(ProductDTO::new);
     }
     
     @Override
     public Page<ProductDTO> getProductsByCategory(Product.ProductCategory category, Pageable pageable) {
+        if (pageable.getSort().isUnsorted()) {
+            return productCatalogService.getProductsByCategory(category, pageable);
+        }
         Page<Product> products = productRepository.findByCategory(category, pageable);
         return products.map(ProductDTO::new);
     }
     
     @Override
     public List<ProductDTO> getTopSellingProducts(int limit) {
-        Pageable pageable = PageRequest.of(0, limit);
-        List<Product> products = productRepository.findTopSellingProducts(pageable);
-        return products.stream()
-                .map(ProductDTO::new)
-                .collect(Collectors.toList());
+        return productCatalogService.getTopSelling(limit).orElseGet(() ->
+                productRepository.findTopSellingProducts(PageRequest.of(0, limit)).stream()
+                        .map(ProductDTO::new)
+                        .collect(Collectors.toList()));
     }
     
     @Override
     public List<ProductDTO> getTopRatedProducts(int limit) {
-        Pageable pageable = PageRequest.of(0, limit);
-        List<Product> products = productRepository.findTopRatedProducts(pageable);
-        return products.stream()
-                .map(ProductDTO::new)
-                .collect(Collectors.toList());
+        return productCatalogService.getTopRated(limit).orElseGet(() ->
+                productRepository.findTopRatedProducts(PageRequest.of(0, limit)).stream()
+                        .map(ProductDTO::new)
+                        .collect(Collectors.toList()));
     }
     
     @Override
     public Page<ProductDTO> searchProducts(String keyword, Pageable pageable) {
-        Page<Product> products = productRepository.searchByKeyword(keyword, pageable);
-        return products.map(ProductDTO::new);
+        // 倒排索引检索，按相关度排序
+        ProductSearchResultDTO result = productCatalogService.search(
+            keyword, null, null, null, pageable.getPageNumber(), pageable.getPageSize());
+        return new PageImpl<>(result.getItems(), pageable, result.getTotalHits());
+    }
+    
+    @Override
+    public ProductSearchResultDTO searchProducts(String keyword, Product.ProductCategory category,
+                                                 BigDecimal minPrice, BigDecimal maxPrice, int page, int size) {
+        return productCatalogService.search(keyword, category, minPrice, maxPrice, page, size);
     }
     
     @Override
     public Page<ProductDTO> filterProducts(Product.ProductCategory category, BigDecimal minPrice, BigDecimal maxPrice, Pageable pageable) {
-        if (category == null) {
-            Page<Product> products = productRepository.findByPriceRange(minPrice, maxPrice, pageable);
-            return products.map(ProductDTO::new);
-        } else {
-            // 组合查询：类别 + 价格范围
-            List<Product> products = productRepository.findByCategory(category, pageable).getContent().stream()
-                .filter(p -> p.getPrice().compareTo(minPrice) >= 0 && p.getPrice().compareTo(maxPrice) <= 0)
-                .toList();
-            // 转换为 Page 对象
-            int start = (int) pageable.getOffset();
-            int end = Math.min(start + pageable.getPageSize(), products.size());
-            List<Product> pageContent = products.subList(start, end);
-            return new org.springframework.data.domain.PageImpl<>(
-                pageContent,
-                pageable,
-                products.size()
-            ).map(ProductDTO::new);
+        if (pageable.getSort().isUnsorted()) {
+            // 价格索引上二分定位区间，按价格升序分页
+            return productCatalogService.filterByPrice(category, minPrice, maxPrice, pageable);
         }
+        BigDecimal min = minPrice != null ? minPrice : BigDecimal.ZERO;
+        BigDecimal max = maxPrice != null ? maxPrice : new BigDecimal("99999999.99");
+        Page<Product> products = category == null
+            ? productRepository.findByPriceRange(min, max, pageable)
+            : productRepository.findByCategoryAndPriceRange(category, min, max, pageable);
+        return products.map(ProductDTO::new);
     }
     
-    // 购物车管理方法
+    // 购物车管理方法（购物车存于 Redis，由 CartStore 异步写回 cart_items）
     
     @Override
-    @Transactional
     public CartItemDTO addToCart(String userId, Long productId, Integer quantity) {
         if (quantity <= 0) {
             throw new RuntimeException("数量必须大于零");
         }
         
-        Optional<Product> productOpt = productRepository.findById(productId);
-        if (productOpt.isEmpty()) {
+        ProductDTO product = productCatalogService.getProduct(productId);
+        if (product == null) {
             throw new RuntimeException("商品不存在");
         }
         
-        Product product = productOpt.get();
         if (product.getStatus() != Product.ProductStatus.AVAILABLE) {
             throw new RuntimeException("商品不可购买");
         }
         
-        if (product.getStock() < quantity) {
-            throw new RuntimeException("库存不足");
-        }
-        
-        // 检查购物车是否已有该商品
-        Optional<CartItem> existingItem = cartItemRepository.findByUserIdAndProductId(userId, productId);
-        
-        CartItem cartItem;
-        if (existingItem.isPresent()) {
-            cartItem = existingItem.get();
-            int newQuantity = cartItem.getQuantity() + quantity;
-            if (newQuantity > product.getStock()) {
-                throw new RuntimeException("库存不足");
-            }
-            cartItem.setQuantity(newQuantity);
-            cartItem.setTotalPrice(cartItem.getUnitPrice().multiply(new BigDecimal(newQuantity)));
-            cartItem.setUpdatedAt(LocalDateTime.now());
-        } else {
-            cartItem = new CartItem();
-            cartItem.setUserId(userId);
-            cartItem.setProductId(productId);
-            cartItem.setProductName(product.getProductName());
-            cartItem.setUnitPrice(product.getPrice());
-            cartItem.setQuantity(quantity);
-            cartItem.setTotalPrice(product.getPrice().multiply(new BigDecimal(quantity)));
-            cartItem.setCreatedAt(LocalDateTime.now());
-        }
-        
-        CartItem savedItem = cartItemRepository.save(cartItem);
+        // 加购只按目录库存做上限校验，实际可售数量在下单预占时原子校验
+        CartItemDTO item = cartStore.add(userId, productId, product.getProductName(), product.getPrice(),
+            quantity, product.getStock());
         log.info("添加到购物车: userId={}, productId={}, quantity={}", userId, productId, quantity);
         
-        return new CartItemDTO(savedItem);
+        return item;
     }
     
     @Override
     public List<CartItemDTO> getCartItems(String userId) {
-        List<CartItem> items = cartItemRepository.findByUserId(userId);
-        return items.stream()
-                .map(CartItemDTO::new)
-                .collect(Collectors.toList());
+        return cartStore.getItems(userId);
     }
     
     @Override
-    @Transactional
     public CartItemDTO updateCartItem(String userId, Long productId, Integer quantity) {
         if (quantity < 0) {
             throw new RuntimeException("数量不能为负数");
@@ -173,55 +164,45 @@ public class MallServiceImpl implements MallService {
             return null;
         }
         
-        Optional<CartItem> itemOpt = cartItemRepository.findByUserIdAndProductId(userId, productId);
-        if (itemOpt.isEmpty()) {
-            throw new RuntimeException("购物车中没有该商品");
-        }
-        
-        CartItem item = itemOpt.get();
-        
-        // 检查库存
-        Optional<Product> productOpt = productRepository.findById(productId);
-        if (productOpt.isPresent()) {
-            Product product = productOpt.get();
-            if (quantity > product.getStock()) {
-                throw new RuntimeException("库存不足");
-            }
-        }
-        
-        item.setQuantity(quantity);
-        item.setTotalPrice(item.getUnitPrice().multiply(new BigDecimal(quantity)));
-        item.setUpdatedAt(LocalDateTime.now());
+        ProductDTO product = productCatalogService.getProduct(productId);
+        int maxQuantity = product != null ? product.getStock() : Integer.MAX_VALUE;
         
-        CartItem savedItem = cartItemRepository.save(item);
+        CartItemDTO item = cartStore.update(userId, productId, quantity, maxQuantity);
         log.info("更新购物车: userId={}, productId={}, quantity={}", userId, productId, quantity);
         
-        return new CartItemDTO(savedItem);
+        return item;
     }
     
     @Override
-    @Transactional
     public void removeCartItem(String userId, Long productId) {
-        cartItemRepository.deleteByUserIdAndProductId(userId, productId);
+        cartStore.remove(userId, productId);
         log.info("移除购物车商品: userId={}, productId={}", userId, productId);
     }
     
     @Override
-    @Transactional
     public void clearCart(String userId) {
-        cartItemRepository.deleteByUserId(userId);
+        cartStore.clear(userId);
         log.info("清空购物车: userId={}", userId);
     }
     
     @Override
     public BigDecimal getCartTotal(String userId) {
-        Optional<BigDecimal> total = cartItemRepository.getTotalAmountByUserId(userId);
-        return total.orElse(BigDecimal.ZERO);
+        return cartStore.getTotal(userId);
     }
     
     @Override
     public long getCartItemCount(String userId) {
-        return cartItemRepository.countByUserId(userId);
+        return cartStore.getCount(userId);
+    }
+    
+    @Override
+    public CartDTO getCart(String userId) {
+        List<CartItemDTO> items = cartStore.getItems(userId);
+        CartDTO cart = new CartDTO();
+        cart.setItems(items);
+        cart.setTotalAmount(items.stream().map(CartItemDTO::getTotalPrice).reduce(BigDecimal.ZERO, BigDecimal::add));
+        cart.setItemCount(items.size());
+        return cart;
     }
     
     // 订单管理方法
@@ -230,28 +211,45 @@ public class MallServiceImpl implements MallService {
     @Transactional
     public OrderDTO createOrder(String userId, OrderDTO orderDTO) {
         // 获取购物车商品
-        List<CartItem> cartItems = cartItemRepository.findByUserId(userId);
+        List<CartItemDTO> cartItems = cartStore.getItems(userId);
         if (cartItems.isEmpty()) {
             throw new RuntimeException("购物车为空");
         }
         
-        // 检查库存
-        for (CartItem item : cartItems) {
-            Optional<Product> productOpt = productRepository.findById(item.getProductId());
-            if (productOpt.isEmpty()) {
+        // 一次查询加载购物车中的全部商品
+        Map<Long, Product> products = productRepository.findAllById(
+                cartItems.stream().map(CartItemDTO::getProductId).distinct().toList()).stream()
+            .collect(Collectors.toMap(Product::getId, p -> p));
+        Map<Long, Integer> quantities = new HashMap<>();
+        Map<Long, Integer> dbStocks = new HashMap<>();
+        for (CartItemDTO item : cartItems) {
+            Product product = products.get(item.getProductId());
+            if (product == null) {
                 throw new RuntimeException("商品不存在: " + item.getProductName());
             }
-            Product product = productOpt.get();
-            if (product.getStock() < item.getQuantity()) {
-                throw new RuntimeException("商品库存不足: " + item.getProductName());
-            }
+            quantities.merge(product.getId(), item.getQuantity(), Integer::sum);
+            dbStocks.put(product.getId(), product.getStock());
         }
         
         // 生成订单号
-        String orderNumber = generateOrderNumber();
+        String orderNumber = orderNumberGenerator.nextOrderNumber();
+        
+        // 以订单号为预占ID原子预占库存，支付时确认，超时未支付自动释放
+        Long shortProductId = inventoryService.reserve(orderNumber, quantities, dbStocks);
+        if (shortProductId != null) {
+            throw new RuntimeException("商品库存不足: " + products.get(shortProductId).getProductName());
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    inventoryService.release(orderNumber);
+                }
+            }
+        });
         
         // 计算订单金额
-        BigDecimal totalAmount = getCartTotal(userId);
+        BigDecimal totalAmount = cartItems.stream().map(CartItemDTO::getTotalPrice).reduce(BigDecimal.ZERO, BigDecimal::add);
         BigDecimal discountAmount = BigDecimal.ZERO;
         BigDecimal taxAmount = totalAmount.multiply(new BigDecimal("0.08")).setScale(2, RoundingMode.HALF_UP);
         BigDecimal shippingAmount = totalAmount.compareTo(new BigDecimal("100")) >= 0 ? BigDecimal.ZERO : new BigDecimal("10.00");
@@ -275,40 +273,36 @@ public class MallServiceImpl implements MallService {
         order.setCreatedAt(LocalDateTime.now());
         order.setRemark(orderDTO.getRemark());
         
+        orderSummaryService.recordCreated(userId, order.getStatus(), finalAmount);
         Order savedOrder = orderRepository.save(order);
+        orderTimeoutService.schedule(savedOrder.getId(), savedOrder.getCreatedAt());
         
         // 创建订单详情
         List<OrderItem> orderItems = new ArrayList<>();
-        for (CartItem item : cartItems) {
-            Optional<Product> productOpt = productRepository.findById(item.getProductId());
-            if (productOpt.isPresent()) {
-                Product product = productOpt.get();
-                
-                OrderItem orderItem = new OrderItem();
-                orderItem.setOrderId(savedOrder.getId());
-                orderItem.setProductId(product.getId());
-                orderItem.setProductName(product.getProductName());
-                orderItem.setProductCode(product.getProductCode());
-                orderItem.setImageUrl(product.getImageUrl());
-                orderItem.setUnitPrice(item.getUnitPrice());
-                orderItem.setQuantity(item.getQuantity());
-                orderItem.setTotalPrice(item.getTotalPrice());
-                orderItem.setSpecifications(product.getSpecifications());
-                orderItem.setCategory(product.getCategory());
-                
-                orderItems.add(orderItem);
-                
-                // 更新库存
-                product.setStock(product.getStock() - item.getQuantity());
-                product.setSalesCount(product.getSalesCount() + item.getQuantity());
-                productRepository.save(product);
-            }
+        for (CartItemDTO item : cartItems) {
+            Product product = products.get(item.getProductId());
+            
+            OrderItem orderItem = new OrderItem();
+            orderItem.setOrderId(savedOrder.getId());
+            orderItem.setProductId(product.getId());
+            orderItem.setProductName(product.getProductName());
+            orderItem.setProductCode(product.getProductCode());
+            orderItem.setImageUrl(product.getImageUrl());
+            orderItem.setUnitPrice(item.getUnitPrice());
+            orderItem.setQuantity(item.getQuantity());
+            orderItem.setTotalPrice(item.getTotalPrice());
+            orderItem.setSpecifications(product.getSpecifications());
+            orderItem.setCategory(product.getCategory());
+            
+            orderItems.add(orderItem);
         }
         
-        orderItemRepository.saveAll(orderItems);
+        // 一次批量写入全部订单详情
+        orderItemBatchRepository.insertAll(orderItems);
+        recommendationService.recordOrder(savedOrder.getId(), userId, quantities.keySet());
         
-        // 清空购物车
-        cartItemRepository.deleteByUserId(userId);
+        // 移除已下单的购物车商品
+        cartStore.checkout(userId, cartItems);
         
         log.info("创建订单: userId={}, orderNumber={}, amount={}", userId, orderNumber, finalAmount);
         
@@ -354,51 +348,25 @@ public class MallServiceImpl implements MallService {
     
     @Override
     public List<OrderDTO> getUserOrders(String userId) {
-        List<Order> orders = orderRepository.findByUserId(userId);
-        return orders.stream()
-            .map(order -> {
-                OrderDTO orderDTO = new OrderDTO(order);
-                List<OrderItem> items = orderItemRepository.findByOrderId(order.getId());
-                orderDTO.setItems(items.stream()
-                    .map(OrderItemDTO::new)
-                    .collect(Collectors.toList()));
-                return orderDTO;
-            })
-            .collect(Collectors.toList());
+        return toOrderDTOs(orderRepository.findByUserId(userId));
     }
     
     @Override
     public Page<OrderDTO> getUserOrders(String userId, Pageable pageable) {
         Page<Order> orders = orderRepository.findByUserId(userId, pageable);
-        return orders.map(order -> {
-            OrderDTO orderDTO = new OrderDTO(order);
-            List<OrderItem> items = orderItemRepository.findByOrderId(order.getId());
-            orderDTO.setItems(items.stream()
-                .map(OrderItemDTO::new)
-                .collect(Collectors.toList()));
-            return orderDTO;
-        });
+        Map<Long, List<OrderItem>> items = loadItems(orders.getContent());
+        return orders.map(order -> toOrderDTO(order, items));
     }
     
     @Override
     public List<OrderDTO> getUserOrdersByStatus(String userId, Order.OrderStatus status) {
-        List<Order> orders = orderRepository.findByUserIdAndStatus(userId, status, Pageable.unpaged()).getContent();
-        return orders.stream()
-            .map(order -> {
-                OrderDTO orderDTO = new OrderDTO(order);
-                List<OrderItem> items = orderItemRepository.findByOrderId(order.getId());
-                orderDTO.setItems(items.stream()
-                    .map(OrderItemDTO::new)
-                    .collect(Collectors.toList()));
-                return orderDTO;
-            })
-            .collect(Collectors.toList());
+        return toOrderDTOs(orderRepository.findByUserIdAndStatus(userId, status, Pageable.unpaged()).getContent());
     }
     
     @Override
     @Transactional
     public OrderDTO payOrder(String userId, Long orderId, Order.PaymentMethod paymentMethod) {
-        Optional<Order> orderOpt = orderRepository.findById(orderId);
+        Optional<Order> orderOpt = orderRepository.findByIdForUpdate(orderId);
         if (orderOpt.isEmpty()) {
             throw new RuntimeException("订单不存在");
         }
@@ -408,20 +376,23 @@ public class MallServiceImpl implements MallService {
             throw new RuntimeException("无权操作该订单");
         }
         
-        if (order.getStatus() != Order.OrderStatus.PENDING) {
+        if (order.getStatus() != Order.OrderStatus.PENDING || order.getPaymentStatus() != Order.PaymentStatus.UNPAID) {
             throw new RuntimeException("订单状态不正确");
         }
         
-        // TODO: 调用银行服务进行实际支付
-        // 这里简化处理，假设支付成功
+        // 确认库存预占，扣减数据库库存
+        if (!inventoryService.confirm(order.getOrderNumber())) {
+            throw new RuntimeException("订单已超时，库存已释放");
+        }
         
-        order.setStatus(Order.OrderStatus.PAID);
+        // 支付请求写入 outbox，由中继异步向银行服务扣款，结果回写订单状态（失败时取消订单并归还库存）
+        orderTimeoutService.unschedule(orderId);
         order.setPaymentMethod(paymentMethod);
-        order.setPaymentStatus(Order.PaymentStatus.PAID);
-        order.setPaidAt(LocalDateTime.now());
+        order.setPaymentStatus(Order.PaymentStatus.PAYING);
         
         Order savedOrder = orderRepository.save(order);
-        log.info("订单支付成功: orderId={}, orderNumber={}, amount={}", orderId, order.getOrderNumber(), order.getFinalAmount());
+        paymentOutboxService.enqueue(savedOrder);
+        log.info("订单已提交支付: orderId={}, orderNumber={}, amount={}", orderId, order.getOrderNumber(), order.getFinalAmount());
         
         OrderDTO orderDTO = new OrderDTO(savedOrder);
         List<OrderItem> items = orderItemRepository.findByOrderId(orderId);
@@ -435,7 +406,7 @@ public class MallServiceImpl implements MallService {
     @Override
     @Transactional
     public OrderDTO cancelOrder(String userId, Long orderId, String reason) {
-        Optional<Order> orderOpt = orderRepository.findById(orderId);
+        Optional<Order> orderOpt = orderRepository.findByIdForUpdate(orderId);
         if (orderOpt.isEmpty()) {
             throw new RuntimeException("订单不存在");
         }
@@ -449,24 +420,31 @@ public class MallServiceImpl implements MallService {
             throw new RuntimeException("订单状态不允许取消");
         }
         
-        // 如果已支付，需要退款
+        if (order.getPaymentStatus() == Order.PaymentStatus.PAYING) {
+            throw new RuntimeException("订单支付处理中，暂不能取消");
+        }
+        
+        // 已支付订单在同一事务中登记退款（由支付中继投递到银行），并冲减销售统计
         if (order.getStatus() == Order.OrderStatus.PAID) {
-            // TODO: 调用银行服务进行退款
-            // 这里简化处理
+            order.setPaymentStatus(Order.PaymentStatus.REFUNDING);
+            paymentOutboxService.enqueueRefund(order);
+            salesAnalyticsService.recordRefunded(order, LocalDateTime.now());
         }
         
-        // 恢复库存
+        // 恢复库存：未支付订单释放预占，已支付订单归还数据库库存
         List<OrderItem> items = orderItemRepository.findByOrderId(orderId);
-        for (OrderItem item : items) {
-            Optional<Product> productOpt = productRepository.findById(item.getProductId());
-            if (productOpt.isPresent()) {
-                Product product = productOpt.get();
-                product.setStock(product.getStock() + item.getQuantity());
-                product.setSalesCount(Math.max(0, product.getSalesCount() - item.getQuantity()));
-                productRepository.save(product);
+        if (order.getStatus() == Order.OrderStatus.PENDING) {
+            inventoryService.release(order.getOrderNumber());
+        } else {
+            Map<Long, Integer> quantities = new TreeMap<>();
+            for (OrderItem item : items) {
+                quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
             }
+            inventoryService.restock(quantities);
         }
         
+        orderSummaryService.recordTransition(userId, order.getStatus(), Order.OrderStatus.CANCELLED, order.getFinalAmount());
+        orderTimeoutService.unschedule(orderId);
         order.setStatus(Order.OrderStatus.CANCELLED);
         order.setCancelledAt(LocalDateTime.now());
         order.setCancelReason(reason);
@@ -486,18 +464,45 @@ public class MallServiceImpl implements MallService {
     
     @Override
     public BigDecimal getTotalSpent(String userId) {
-        Optional<BigDecimal> total = orderRepository.getTotalSpentByUserId(userId);
-        return total.orElse(BigDecimal.ZERO);
+        return orderSummaryService.getTotalSpent(userId);
     }
     
     @Override
     public long getOrderCount(String userId) {
-        return orderRepository.countByUserId(userId);
+        return orderSummaryService.getOrderCount(userId);
+    }
+    
+    @Override
+    public UserOrderSummaryDTO getOrderSummary(String userId) {
+        return orderSummaryService.getSummary(userId);
     }
     
     // 辅助方法
     
-    private String generateOrderNumber() {
-        return "ORD" + System.currentTimeMillis() + String.format("%04d", (int)(Math.random() * 10000));
+    /**
+     * 一次 IN 查询加载一页订单的全部详情，避免逐单查询
+     */
+    private Map<Long, List<OrderItem>> loadItems(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return Map.of();
+        }
+        List<Long> orderIds = orders.stream().map(Order::getId).toList();
+        return orderItemRepository.findByOrderIdIn(orderIds).stream()
+            .collect(Collectors.groupingBy(OrderItem::getOrderId));
+    }
+    
+    private List<OrderDTO> toOrderDTOs(List<Order> orders) {
+        Map<Long, List<OrderItem>> items = loadItems(orders);
+        return orders.stream()
+            .map(order -> toOrderDTO(order, items))
+            .collect(Collectors.toList());
+    }
+    
+    private OrderDTO toOrderDTO(Order order, Map<Long, List<OrderItem>> items) {
+        OrderDTO orderDTO = new OrderDTO(order);
+        orderDTO.setItems(items.getOrDefault(order.getId(), List.of()).stream()
+            .map(OrderItemDTO::new)
+            .collect(Collectors.toList()));
+        return orderDTO;
     }
 }
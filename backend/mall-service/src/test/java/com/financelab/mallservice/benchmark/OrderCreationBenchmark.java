@@ -0,0 +1,193 @@
+package com.financelab.mallservice.benchmark;
+
+import com.financelab.mallservice.dto.OrderDTO;
+import com.financelab.mallservice.entity.Order;
+import com.financelab.mallservice.entity.OrderItem;
+import com.financelab.mallservice.entity.Product;
+import com.financelab.mallservice.repository.CartItemRepository;
+import com.financelab.mallservice.repository.OrderItemRepository;
+import com.financelab.mallservice.repository.OrderRepository;
+import com.financelab.mallservice.repository.ProductRepository;
+import com.financelab.mallservice.service.CartStore;
+import com.financelab.mallservice.service.InventoryService;
+import com.financelab.mallservice.service.MallService;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 下单流程基准测试：对比逐条访问的旧流程与批量流水线的 SQL 语句数与耗时
+ *
+ * 不随应用发布，也不在常规构建中运行；需连接专用的基准库手动执行：
+ * mvn test -pl mall-service -am -Dtest=OrderCreationBenchmark -Dsurefire.failIfNoSpecifiedTests=false -Dmall.benchmark=true
+ * 商品数与次数可用 -Dmall.benchmark.items、-Dmall.benchmark.iterations 调整。
+ * 两条流程都在回滚的事务中执行，不留下订单与库存变化；语句数取 MySQL 全局
+ * Com_select/insert/update/delete 的增量，应在无其他负载的库上运行。
+ * 逐条流程保留旧实现的逐条 save，作为对照基线。
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "mall.benchmark", matches = "true")
+@Slf4j
+class OrderCreationBenchmark {
+
+    private static final String BENCHMARK_USER = "benchmark-order-user";
+
+    private final int itemCount = Integer.getInteger("mall.benchmark.items", 30);
+    private final int iterations = Integer.getInteger("mall.benchmark.iterations", 20);
+
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+    @Autowired
+    private CartItemRepository cartItemRepository;
+    @Autowired
+    private MallService mallService;
+    @Autowired
+    private InventoryService inventoryService;
+    @Autowired
+    private CartStore cartStore;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void compareOrderCreation() {
+        List<Product> products = productRepository.findAll().stream()
+                .filter(p -> p.getStatus() == Product.ProductStatus.AVAILABLE && p.getStock() > 0)
+                .limit(itemCount)
+                .toList();
+        if (products.isEmpty()) {
+            log.warn("下单基准测试跳过：没有可售商品");
+            return;
+        }
+
+        cartStore.clear(BENCHMARK_USER);
+        for (Product product : products) {
+            cartStore.add(BENCHMARK_USER, product.getId(), product.getProductName(), product.getPrice(), 1, Integer.MAX_VALUE);
+        }
+        OrderDTO contact = new OrderDTO();
+        contact.setShippingAddress("基准测试地址");
+        contact.setContactPhone("13800000000");
+        contact.setContactName("基准测试");
+        contact.setPaymentMethod(Order.PaymentMethod.BANK_CARD);
+
+        try {
+            // 预热
+            measure(ids -> legacyCreateOrder(ids), products, 3);
+            measure(ids -> pipelineCreateOrder(contact), products, 3);
+
+            Result legacy = measure(ids -> legacyCreateOrder(ids), products, iterations);
+            Result pipeline = measure(ids -> pipelineCreateOrder(contact), products, iterations);
+
+            log.info("下单基准测试（{} 件商品，{} 次）", products.size(), iterations);
+            log.info("  逐条流程: 每单 SQL 语句 {} 条, 平均 {} ms, p50 {} ms", legacy.statements, legacy.avgMillis, legacy.p50Millis);
+            log.info("  批量流水线: 每单 SQL 语句 {} 条, 平均 {} ms, p50 {} ms", pipeline.statements, pipeline.avgMillis, pipeline.p50Millis);
+        } finally {
+            cartStore.clear(BENCHMARK_USER);
+        }
+    }
+
+    /**
+     * 旧流程：逐个 findById、SUM 查询合计、逐条保存订单详情、逐个保存商品扣减库存
+     */
+    private void legacyCreateOrder(List<Long> productIds) {
+        List<Product> loaded = new ArrayList<>();
+        for (Long productId : productIds) {
+            productRepository.findById(productId).ifPresent(loaded::add);
+        }
+        cartItemRepository.getTotalAmountByUserId(BENCHMARK_USER);
+
+        BigDecimal total = loaded.stream().map(Product::getPrice).reduce(BigDecimal.ZERO, BigDecimal::add);
+        Order order = new Order();
+        order.setUserId(BENCHMARK_USER);
+        order.setOrderNumber("BENCH" + System.nanoTime());
+        order.setStatus(Order.OrderStatus.PENDING);
+        order.setTotalAmount(total);
+        order.setDiscountAmount(BigDecimal.ZERO);
+        order.setTaxAmount(BigDecimal.ZERO);
+        order.setShippingAmount(BigDecimal.ZERO);
+        order.setFinalAmount(total);
+        order.setShippingAddress("基准测试地址");
+        order.setContactPhone("13800000000");
+        order.setContactName("基准测试");
+        order.setPaymentMethod(Order.PaymentMethod.BANK_CARD);
+        order.setPaymentStatus(Order.PaymentStatus.UNPAID);
+        order.setCreatedAt(LocalDateTime.now());
+        Order saved = orderRepository.save(order);
+
+        for (Product product : loaded) {
+            OrderItem item = new OrderItem();
+            item.setOrderId(saved.getId());
+            item.setProductId(product.getId());
+            item.setProductName(product.getProductName());
+            item.setProductCode(product.getProductCode());
+            item.setImageUrl(product.getImageUrl());
+            item.setUnitPrice(product.getPrice());
+            item.setQuantity(1);
+            item.setTotalPrice(product.getPrice());
+            item.setSpecifications(product.getSpecifications());
+            item.setCategory(product.getCategory());
+            orderItemRepository.save(item);
+
+            product.setStock(product.getStock() - 1);
+            product.setSalesCount(product.getSalesCount() + 1);
+            productRepository.save(product);
+        }
+        entityManager.flush();
+    }
+
+    /**
+     * 新流程：下单（批量加载、内存合计、批量写详情）并确认库存（一条多行条件 UPDATE）
+     */
+    private void pipelineCreateOrder(OrderDTO contact) {
+        OrderDTO order = mallService.createOrder(BENCHMARK_USER, contact);
+        inventoryService.confirm(order.getOrderNumber());
+    }
+
+    private Result measure(Consumer<List<Long>> flow, List<Product> products, int runs) {
+        List<Long> productIds = products.stream().map(Product::getId).toList();
+        long[] nanos = new long[runs];
+        long statements = 0;
+        for (int i = 0; i < runs; i++) {
+            entityManager.clear();
+            long before = statementCount();
+            long start = System.nanoTime();
+            transactionTemplate.executeWithoutResult(status -> {
+                flow.accept(productIds);
+                status.setRollbackOnly();
+            });
+            nanos[i] = System.nanoTime() - start;
+            statements += statementCount() - before - 1; // 扣除读取计数本身的查询
+        }
+        Arrays.sort(nanos);
+        long totalNanos = Arrays.stream(nanos).sum();
+        return new Result(statements / runs, totalNanos / runs / 1_000_000.0, nanos[runs / 2] / 1_000_000.0);
+    }
+
+    private long statementCount() {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT SUM(VARIABLE_VALUE) FROM performance_schema.global_status " +
+                "WHERE VARIABLE_NAME IN ('Com_select', 'Com_insert', 'Com_update', 'Com_delete')", Long.class);
+        return count != null ? count : 0;
+    }
+
+    private record Result(long statements, double avgMillis, double p50Millis) {}
+}
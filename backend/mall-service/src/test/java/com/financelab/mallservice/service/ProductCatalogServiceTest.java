@@ -0,0 +1,89 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.dto.ProductDTO;
+import com.financelab.mallservice.entity.Product;
+import com.financelab.mallservice.event.ProductChangedEvent;
+import com.financelab.mallservice.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品目录在快照上修补变更后，各索引与全量重建的结果一致
+ */
+class ProductCatalogServiceTest {
+
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final List<Product> products = new ArrayList<>();
+    private ProductCatalogService catalog;
+
+    @BeforeEach
+    void load() {
+        for (long id = 1; id <= 6; id++) {
+            products.add(product(id, Product.ProductCategory.BOOKS, "10.00", (int) id * 10));
+        }
+        when(productRepository.findAll()).thenReturn(products);
+        catalog = new ProductCatalogService(productRepository, mock(ProductSearchService.class), 3, 2);
+        catalog.warmUp();
+    }
+
+    @Test
+    void patchedTopSellingRefillsFromOutsideTheOldTop() {
+        assertThat(ids(catalog.getTopSelling(3).orElseThrow())).containsExactly(6L, 5L, 4L);
+
+        // 原第一名下架，名单外的第 4 名应补入
+        Product discontinued = product(6L, Product.ProductCategory.BOOKS, "10.00", 60);
+        discontinued.setStatus(Product.ProductStatus.DISCONTINUED);
+        change(discontinued);
+
+        assertThat(ids(catalog.getTopSelling(3).orElseThrow())).containsExactly(5L, 4L, 3L);
+        assertThat(catalog.getTopSelling(4)).isEmpty();
+    }
+
+    @Test
+    void patchedIndexesMoveChangedProducts() {
+        change(product(2L, Product.ProductCategory.TOYS, "99.00", 20));
+
+        assertThat(ids(catalog.getProductsByCategory(Product.ProductCategory.BOOKS, PageRequest.of(0, 10)).getContent()))
+                .containsExactly(1L, 3L, 4L, 5L, 6L);
+        assertThat(ids(catalog.filterByPrice(null, new BigDecimal("50"), null, PageRequest.of(0, 10)).getContent()))
+                .containsExactly(2L);
+        assertThat(ids(catalog.getProducts(PageRequest.of(0, 10)).getContent()))
+                .containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        assertThat(catalog.getProduct(2L).getCategory()).isEqualTo(Product.ProductCategory.TOYS);
+    }
+
+    private void change(Product product) {
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(product));
+        catalog.onProductChanged(new ProductChangedEvent(List.of(product.getId())));
+        catalog.refreshDirty();
+    }
+
+    private static List<Long> ids(List<ProductDTO> products) {
+        return products.stream().map(ProductDTO::getId).toList();
+    }
+
+    private static Product product(long id, Product.ProductCategory category, String price, int salesCount) {
+        Product product = new Product();
+        product.setId(id);
+        product.setProductCode("P" + id);
+        product.setProductName("商品" + id);
+        product.setCategory(category);
+        product.setPrice(new BigDecimal(price));
+        product.setStock(100);
+        product.setStatus(Product.ProductStatus.AVAILABLE);
+        product.setSalesCount(salesCount);
+        product.setRating(5);
+        product.setReviewCount(0);
+        return product;
+    }
+}
@@ -0,0 +1,117 @@
+package com.financelab.mallservice.service;
+
+import com.financelab.mallservice.dto.ProductDTO;
+import com.financelab.mallservice.dto.RecommendationDTO;
+import com.financelab.mallservice.entity.Product;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * “同班同学也买了”经 user-service 内部接口解析班级成员
+ *
+ * 用本地 HTTP 服务模拟 user-service 的 /internal/users 接口（校验 X-Internal-Token），
+ * UserDirectoryClient 与 RecommendationService 均为真实实现。
+ */
+class RecommendationServiceTest {
+
+    private static final String TOKEN = "test-internal-token";
+
+    private HttpServer userService;
+
+    @BeforeEach
+    void startUserService() throws IOException {
+        userService = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        userService.createContext("/user-service/internal/users/profiles", exchange -> {
+            // 用户 1、2 在 7 班，用户 3 在 8 班
+            String ids = exchange.getRequestURI().getQuery().replace("ids=", "");
+            StringBuilder body = new StringBuilder("[");
+            for (String id : ids.split(",")) {
+                if (body.length() > 1) {
+                    body.append(',');
+                }
+                body.append("{\"id\":").append(id).append(",\"schoolId\":1,\"classId\":")
+                        .append(id.equals("3") ? 8 : 7).append('}');
+            }
+            respond(exchange, body.append(']').toString());
+        });
+        userService.createContext("/user-service/internal/users/class/7", exchange ->
+                respond(exchange, "[{\"id\":1,\"schoolId\":1,\"classId\":7},{\"id\":2,\"schoolId\":1,\"classId\":7}]"));
+        userService.start();
+    }
+
+    @AfterEach
+    void stopUserService() {
+        userService.stop(0);
+    }
+
+    @Test
+    void recommendsWhatClassmatesBought() {
+        RecommendationService service = newService(TOKEN);
+        service.recordOrder(1L, "2", List.of(10L, 11L));
+        service.recordOrder(2L, "3", List.of(20L));
+        service.recordOrder(3L, "1", List.of(11L));
+
+        RecommendationDTO recommendations = service.getRecommendations("1", 5);
+
+        // 同班的用户 2 买过 10、11，本人已买 11；8 班用户 3 的 20 不计入
+        assertThat(recommendations.getClassmatesBought()).extracting(ProductDTO::getId).containsExactly(10L);
+    }
+
+    @Test
+    void wrongTokenLeavesClassmatesEmpty() {
+        RecommendationService service = newService("wrong-token");
+        service.recordOrder(1L, "2", List.of(10L));
+
+        assertThat(service.getRecommendations("1", 5).getClassmatesBought()).isEmpty();
+    }
+
+    private RecommendationService newService(String token) {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(eq("SELECT MAX(id) FROM orders"), eq(Long.class))).thenReturn(0L);
+        ProductCatalogService catalog = mock(ProductCatalogService.class);
+        when(catalog.getProduct(anyLong())).thenAnswer(invocation -> {
+            Product product = new Product();
+            product.setId(invocation.getArgument(0));
+            product.setStatus(Product.ProductStatus.AVAILABLE);
+            return new ProductDTO(product);
+        });
+        UserDirectoryClient directory = new UserDirectoryClient(
+                "http://127.0.0.1:" + userService.getAddress().getPort() + "/user-service", token, 2000, 300);
+
+        RecommendationService service = new RecommendationService(jdbcTemplate, catalog, directory,
+                64, 20, 50, 5000, 50, 10, 50);
+        service.rebuild();
+        return service;
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        if (!TOKEN.equals(exchange.getRequestHeaders().getFirst("X-Internal-Token"))) {
+            exchange.sendResponseHeaders(403, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -1,16 +1,29 @@
 package com.financelab.realestateservice.controller;
 
 import com.financelab.realestateservice.dto.CityDTO;
+import com.financelab.realestateservice.dto.MarketIndexPointDTO;
+import com.financelab.realestateservice.dto.PropertyBidResultDTO;
 import com.financelab.realestateservice.dto.PropertyDTO;
+import com.financelab.realestateservice.dto.PropertyLedgerEntryDTO;
+import com.financelab.realestateservice.dto.PropertyPageDTO;
 import com.financelab.realestateservice.dto.PropertyTransactionDTO;
+import com.financelab.realestateservice.entity.MarketIndexPoint;
+import com.financelab.realestateservice.service.MarketIndexService;
+import com.financelab.realestateservice.service.PropertyBiddingService;
+import com.financelab.realestateservice.service.PropertySearchIndex;
 import com.financelab.realestateservice.service.RealEstateService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/real-estate")
@@ -20,6 +33,12 @@ public class RealEstateController {
     @Autowired
     private RealEstateService realEstateService;
     
+    @Autowired
+    private MarketIndexService marketIndexService;
+
+    @Autowired
+    private PropertyBiddingService biddingService;
+    
     // 城市相关接口
     @GetMapping("/cities")
     public ResponseEntity<List<CityDTO>> getAllCities() {
@@ -56,6 +75,53 @@ public class RealEstateController {
         }
     }
     
+    // 市场指数接口
+    @GetMapping("/market-index/cities/{cityId}")
+    public ResponseEntity<List<MarketIndexPointDTO>> getCityMarketIndex(
+            @PathVariable Long cityId,
+            @RequestParam(defaultValue = "DAY") MarketIndexPoint.Resolution resolution,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        try {
+            LocalDateTime end = to != null ? to : LocalDateTime.now();
+            LocalDateTime start = from != null ? from : end.minusDays(30);
+            return ResponseEntity.ok(marketIndexService.getSeries(MarketIndexPoint.Scope.CITY, String.valueOf(cityId),
+                    resolution, start, end));
+        } catch (Exception e) {
+            log.error("获取城市市场指数失败，城市ID: {}", cityId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    @GetMapping("/market-index/regions/{region}")
+    public ResponseEntity<List<MarketIndexPointDTO>> getRegionMarketIndex(
+            @PathVariable String region,
+            @RequestParam(defaultValue = "DAY") MarketIndexPoint.Resolution resolution,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        try {
+            LocalDateTime end = to != null ? to : LocalDateTime.now();
+            LocalDateTime start = from != null ? from : end.minusDays(30);
+            return ResponseEntity.ok(marketIndexService.getSeries(MarketIndexPoint.Scope.REGION, region,
+                    resolution, start, end));
+        } catch (Exception e) {
+            log.error("获取区域市场指数失败，区域: {}", region, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    @GetMapping("/market-index/latest")
+    public ResponseEntity<List<MarketIndexPointDTO>> getLatestMarketIndex(
+            @RequestParam(defaultValue = "CITY") MarketIndexPoint.Scope scope,
+            @RequestParam(defaultValue = "HOUR") MarketIndexPoint.Resolution resolution) {
+        try {
+            return ResponseEntity.ok(marketIndexService.getLatest(scope, resolution));
+        } catch (Exception e) {
+            log.error("获取最新市场指数失败", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
     // 房产相关接口
     @GetMapping("/properties")
     public ResponseEntity<List<PropertyDTO>> getAllProperties() {
@@ -90,6 +156,72 @@ public class RealEstateController {
         }
     }
     
+    @GetMapping("/properties/for-sale/city/{cityId}")
+    public ResponseEntity<PropertyPageDTO> getPropertiesForSaleByCity(
+            @PathVariable Long cityId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ResponseEntity.ok(realEstateService.getPropertiesForSaleByCity(cityId, cursor, size));
+        } catch (RuntimeException e) {
+            log.warn("获取城市在售房产失败: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/properties/for-sale/price-range")
+    public ResponseEntity<PropertyPageDTO> getPropertiesForSaleByPriceRange(
+            @RequestParam BigDecimal minPrice,
+            @RequestParam BigDecimal maxPrice,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ResponseEntity.ok(realEstateService.getPropertiesForSaleByPriceRange(minPrice, maxPrice, cursor, size));
+        } catch (RuntimeException e) {
+            log.warn("按价格区间获取在售房产失败: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/properties/for-sale/by-price")
+    public ResponseEntity<PropertyPageDTO> getPropertiesForSaleByPrice(
+            @RequestParam(defaultValue = "false") boolean descending,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ResponseEntity.ok(realEstateService.getPropertiesForSaleByPrice(descending, cursor, size));
+        } catch (RuntimeException e) {
+            log.warn("按价格排序获取在售房产失败: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/properties/search")
+    public ResponseEntity<PropertyPageDTO> searchProperties(
+            @RequestParam(required = false) Long cityId,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) Boolean forSale,
+            @RequestParam(required = false) Boolean rented,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) BigDecimal minArea,
+            @RequestParam(required = false) BigDecimal maxArea,
+            @RequestParam(defaultValue = "ID") PropertySearchIndex.Sort sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            PropertySearchIndex.Query query = new PropertySearchIndex.Query(cityId, type, forSale, rented,
+                    toCents(minPrice), toCents(maxPrice), toCents(minArea), toCents(maxArea), sort, cursor, size);
+            return ResponseEntity.ok(realEstateService.searchProperties(query));
+        } catch (RuntimeException e) {
+            log.warn("检索房产失败: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("检索房产失败", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
     @GetMapping("/properties/{propertyId}")
     public ResponseEntity<PropertyDTO> getPropertyById(@PathVariable Long propertyId) {
         try {
@@ -132,6 +264,27 @@ public class RealEstateController {
         }
     }
     
+    /**
+     * 竞价购买：窗口期内的出价一起结算，返回本轮结果
+     */
+    @PostMapping("/properties/{propertyId}/bids")
+    public CompletableFuture<ResponseEntity<PropertyBidResultDTO>> placeBid(
+            @PathVariable Long propertyId,
+            @RequestParam String userId,
+            @RequestParam BigDecimal offerPrice) {
+        try {
+            return biddingService.placeBid(userId, propertyId, offerPrice)
+                    .thenApply(result -> {
+                        if (result.getStatus() == PropertyBidResultDTO.BidStatus.WON) {
+                            log.info("用户 {} 竞价购得房产 {}，价格：{}", userId, propertyId, offerPrice);
+                        }
+                        return ResponseEntity.ok(result);
+                    });
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(null));
+        }
+    }
+    
     @PostMapping("/properties/{propertyId}/sell")
     public ResponseEntity<PropertyTransactionDTO> sellProperty(
             @PathVariable Long propertyId,
@@ -304,4 +457,23 @@ public class RealEstateController {
             return ResponseEntity.internalServerError().build();
         }
     }
-}
\ No newline at end of file
+    
+    @GetMapping("/user/{userId}/ledger")
+    public ResponseEntity<List<PropertyLedgerEntryDTO>> getUserLedger(
+            @PathVariable String userId,
+            @RequestParam(required = false) String period) {
+        try {
+            String month = period != null ? YearMonth.parse(period).toString() : YearMonth.now().toString();
+            return ResponseEntity.ok(realEstateService.getUserLedger(userId, month));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("获取用户房产收支台账失败，用户ID: {}", userId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    private Long toCents(BigDecimal value) {
+        return value != null ? PropertySearchIndex.toCents(value) : null;
+    }
+}
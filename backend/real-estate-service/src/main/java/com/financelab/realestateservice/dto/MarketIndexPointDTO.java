@@ -0,0 +1,22 @@
+package com.financelab.realestateservice.dto;
+
+import com.financelab.realestateservice.entity.MarketIndexPoint;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+public class MarketIndexPointDTO {
+    private MarketIndexPoint.Scope scope;
+    private String scopeKey;
+    private MarketIndexPoint.Resolution resolution;
+    private LocalDateTime bucketStart;
+    private BigDecimal openPricePerSqm;
+    private BigDecimal highPricePerSqm;
+    private BigDecimal lowPricePerSqm;
+    private BigDecimal closePricePerSqm;
+    private BigDecimal changeRate; // 相对上一个桶收盘值的涨跌幅（%）
+    private Integer volume;
+    private BigDecimal turnover;
+    private Integer propertyCount;
+}
@@ -0,0 +1,22 @@
+package com.financelab.realestateservice.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * bank-service 批量扣款 / 入账接口的请求/结果行
+ */
+@Data
+public class PaymentDebitDTO {
+    
+    private String idempotencyKey;
+    private String userId;
+    private BigDecimal amount;
+    private String description;
+    private String accountNumber;
+    private String status;          // COMPLETED / FAILED
+    private String referenceNumber;
+    private String failureReason;
+    private String counterparty;    // 对方账户
+}
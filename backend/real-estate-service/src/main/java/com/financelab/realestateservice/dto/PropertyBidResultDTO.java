@@ -0,0 +1,22 @@
+package com.financelab.realestateservice.dto;
+
+import lombok.Data;
+import java.math.BigDecimal;
+
+@Data
+public class PropertyBidResultDTO {
+    private Long propertyId;
+    private String userId;
+    private BigDecimal offerPrice;
+    private BidStatus status;
+    private BigDecimal winningPrice; // 本轮成交价，无人成交时为空
+    private Integer bidCount; // 本轮出价人数
+    private String message;
+    private PropertyTransactionDTO transaction; // 仅中标者返回成交记录
+    
+    public enum BidStatus {
+        WON,        // 中标并已成交
+        OUTBID,     // 本轮有更高（或更早的同价）出价
+        REJECTED    // 出价无效或房产已不可购买
+    }
+}
@@ -0,0 +1,21 @@
+package com.financelab.realestateservice.dto;
+
+import com.financelab.realestateservice.entity.PropertyLedgerEntry;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+public class PropertyLedgerEntryDTO {
+    private Long id;
+    private String period;
+    private String userId;
+    private PropertyLedgerEntry.EntryType entryType;
+    private BigDecimal amount;
+    private Long propertyId;
+    private Long sourceId;
+    private PropertyLedgerEntry.SettlementStatus settlementStatus;
+    private String referenceNumber;
+    private String failureReason;
+    private LocalDateTime createdAt;
+}
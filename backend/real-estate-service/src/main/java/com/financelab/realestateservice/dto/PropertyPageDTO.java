@@ -0,0 +1,16 @@
+package com.financelab.realestateservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PropertyPageDTO {
+    private List<PropertyDTO> items;
+    private String nextCursor; // 下一页游标，没有下一页时为空
+    private Long total; // 满足条件的房产总数
+}
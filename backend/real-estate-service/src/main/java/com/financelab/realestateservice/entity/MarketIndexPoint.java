@@ -0,0 +1,71 @@
+package com.financelab.realestateservice.entity;
+
+import lombok.Data;
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "market_index_points", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_market_index_bucket", columnNames = {"scope", "scope_key", "resolution", "bucket_start"})
+}, indexes = {
+    @Index(name = "idx_resolution_bucket", columnList = "resolution, bucket_start")
+})
+@Data
+public class MarketIndexPoint {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false, length = 10)
+    @Enumerated(EnumType.STRING)
+    private Scope scope;
+    
+    @Column(name = "scope_key", nullable = false, length = 100)
+    private String scopeKey; // 城市ID或区域名称
+    
+    @Column(nullable = false, length = 10)
+    @Enumerated(EnumType.STRING)
+    private Resolution resolution;
+    
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart; // 时间桶起点（整点 / 当日零点 / 周一零点）
+    
+    @Column(name = "open_price_per_sqm", nullable = false, precision = 15, scale = 2)
+    private BigDecimal openPricePerSqm; // 桶内首个样本的每平米价格中位数
+    
+    @Column(name = "high_price_per_sqm", nullable = false, precision = 15, scale = 2)
+    private BigDecimal highPricePerSqm;
+    
+    @Column(name = "low_price_per_sqm", nullable = false, precision = 15, scale = 2)
+    private BigDecimal lowPricePerSqm;
+    
+    @Column(name = "close_price_per_sqm", nullable = false, precision = 15, scale = 2)
+    private BigDecimal closePricePerSqm; // 桶内最新样本的每平米价格中位数
+    
+    @Column(name = "prev_close_price_per_sqm", precision = 15, scale = 2)
+    private BigDecimal prevClosePricePerSqm; // 上一个桶的收盘值，用于计算涨跌幅
+    
+    @Column(nullable = false)
+    private Integer volume; // 成交笔数（买入与卖出）
+    
+    @Column(nullable = false, precision = 18, scale = 2)
+    private BigDecimal turnover; // 成交金额
+    
+    @Column(name = "property_count", nullable = false)
+    private Integer propertyCount; // 最新样本的房产数（系统在售房产）
+    
+    @Column(name = "sample_count", nullable = false)
+    private Integer sampleCount; // 桶内样本数
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    
+    public enum Scope {
+        CITY, REGION
+    }
+    
+    public enum Resolution {
+        HOUR, DAY, WEEK
+    }
+}
@@ -0,0 +1,17 @@
+package com.financelab.realestateservice.entity;
+
+import lombok.Data;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "market_index_state")
+@Data
+public class MarketIndexState {
+    @Id
+    @Column(length = 50)
+    private String name;
+    
+    @Column(name = "last_sampled_at")
+    private LocalDateTime lastSampledAt; // 最近一次记录样本的时间，也是下一次成交量统计区间的起点
+}
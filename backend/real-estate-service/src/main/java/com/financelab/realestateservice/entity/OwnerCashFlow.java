@@ -0,0 +1,33 @@
+package com.financelab.realestateservice.entity;
+
+import lombok.Data;
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "owner_cash_flows")
+@Data
+public class OwnerCashFlow {
+    @Id
+    @Column(name = "owner_id", length = 100)
+    private String ownerId;
+    
+    @Column(name = "monthly_income", nullable = false, precision = 15, scale = 2)
+    private BigDecimal monthlyIncome; // 已出租房产的月租金合计
+    
+    @Column(name = "monthly_expenses", nullable = false, precision = 15, scale = 2)
+    private BigDecimal monthlyExpenses; // 持有房产的月维护费与房产税合计
+    
+    @Column(name = "owned_properties", nullable = false)
+    private Integer ownedProperties;
+    
+    @Column(name = "rented_properties", nullable = false)
+    private Integer rentedProperties;
+    
+    @Column(name = "expenses_posted_through", length = 7)
+    private String expensesPostedThrough; // 已入账支出的最后月份（yyyy-MM）
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
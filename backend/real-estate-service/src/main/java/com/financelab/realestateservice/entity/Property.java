@@ -6,7 +6,7 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "properties")
+@Table(name = "properties", indexes = @Index(name = "idx_updated_at", columnList = "updated_at"))
 @Data
 public class Property {
     @Id
@@ -0,0 +1,71 @@
+package com.financelab.realestateservice.entity;
+
+import lombok.Data;
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "property_ledger_entries", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_ledger_posting", columnNames = {"period", "entry_type", "user_id", "source_id"})
+}, indexes = {
+    @Index(name = "idx_ledger_user_period", columnList = "user_id, period"),
+    @Index(name = "idx_ledger_settlement", columnList = "settlement_status, next_settlement_at"),
+    @Index(name = "idx_ledger_source", columnList = "source_id, period")
+})
+@Data
+public class PropertyLedgerEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false, length = 7)
+    private String period; // 入账月份（yyyy-MM）
+    
+    @Column(name = "user_id", nullable = false, length = 100)
+    private String userId;
+    
+    @Column(name = "entry_type", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private EntryType entryType;
+    
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal amount; // 收入为正，支出为负
+    
+    @Column(name = "property_id")
+    private Long propertyId;
+    
+    @Column(name = "source_id", nullable = false)
+    private Long sourceId; // 租金为租约（租赁交易）ID，持有支出为 0
+    
+    @Column(name = "settlement_status", length = 20)
+    @Enumerated(EnumType.STRING)
+    private SettlementStatus settlementStatus; // 银行结算状态，为空的旧记录未结算
+    
+    @Column(name = "settlement_attempts")
+    private Integer settlementAttempts;
+    
+    @Column(name = "next_settlement_at")
+    private LocalDateTime nextSettlementAt;
+    
+    @Column(name = "reference_number", length = 50)
+    private String referenceNumber; // 银行交易流水号
+    
+    @Column(name = "failure_reason")
+    private String failureReason;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    public enum EntryType {
+        RENT_INCOME,      // 业主租金收入
+        RENT_PAYMENT,     // 租客租金支出
+        HOLDING_EXPENSE   // 业主维护费与房产税
+    }
+    
+    public enum SettlementStatus {
+        PENDING,          // 待结算（或等待重试）
+        COMPLETED,        // 已扣款 / 入账
+        FAILED            // 扣款 / 入账失败
+    }
+}
@@ -6,7 +6,10 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "property_transactions")
+@Table(name = "property_transactions", indexes = {
+    @Index(name = "idx_active_leases", columnList = "rental_ended_at, type, id"),
+    @Index(name = "idx_lease_expiry", columnList = "rental_ended_at, rental_end_date")
+})
 @Data
 public class PropertyTransaction {
     @Id
@@ -44,6 +47,12 @@ public class PropertyTransaction {
     @Column(name = "rental_end_date")
     private LocalDateTime rentalEndDate;
     
+    @Column(name = "rental_ended_at")
+    private LocalDateTime rentalEndedAt; // 租约实际结束时间（到期或取消），为空表示租约生效中
+    
+    @Column(name = "rent_posted_through", length = 7)
+    private String rentPostedThrough; // 已入账租金的最后月份（yyyy-MM）
+    
     @Column(name = "transaction_date", nullable = false)
     private LocalDateTime transactionDate;
     
@@ -0,0 +1,8 @@
+package com.financelab.realestateservice.event;
+
+import java.util.Collection;
+
+/**
+ * 房产数据变更事件（价格、归属、挂牌、出租状态写入后发布，提交后生效）
+ */
+public record PropertyChangedEvent(Collection<Long> propertyIds) {}
@@ -0,0 +1,13 @@
+package com.financelab.realestateservice.repository;
+
+import com.financelab.realestateservice.entity.PropertyLedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PropertyLedgerEntryRepository extends JpaRepository<PropertyLedgerEntry, Long> {
+    
+    List<PropertyLedgerEntry> findByUserIdAndPeriodOrderByIdAsc(String userId, String period);
+}
@@ -20,6 +20,9 @@ public interface PropertyPriceHistoryRepository extends JpaRepository<PropertyPr
     @Query("SELECT pph FROM PropertyPriceHistory pph WHERE pph.property.id = :propertyId ORDER BY pph.priceDate DESC LIMIT 30")
     List<PropertyPriceHistory> findRecentPriceHistory(@Param("propertyId") Long propertyId);
     
-    @Query("SELECT pph FROM PropertyPriceHistory pph WHERE pph.priceDate = (SELECT MAX(pph2.priceDate) FROM PropertyPriceHistory pph2 WHERE pph2.property.id = pph.property.id)")
+    // 先按 (property_id, price_date) 索引分组取每处房产的最新时间，再连接回历史表，避免逐行执行相关子查询
+    @Query(value = "SELECT h.* FROM property_price_history h JOIN (SELECT property_id, MAX(price_date) AS price_date " +
+            "FROM property_price_history GROUP BY property_id) l ON h.property_id = l.property_id AND h.price_date = l.price_date",
+            nativeQuery = true)
     List<PropertyPriceHistory> findLatestPricesForAllProperties();
 }
\ No newline at end of file
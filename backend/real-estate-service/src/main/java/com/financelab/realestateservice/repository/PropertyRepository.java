@@ -2,10 +2,14 @@ package com.financelab.realestateservice.repository;
 
 import com.financelab.realestateservice.entity.Property;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,17 +24,56 @@ public interface PropertyRepository extends JpaRepository<Property, Long> {
     
     List<Property> findByOwnerId(String ownerId);
     
-    List<Property> findByIsForSaleTrueAndCityId(Long cityId);
-    
-    @Query("SELECT p FROM Property p WHERE p.isForSale = true AND p.currentPrice BETWEEN :minPrice AND :maxPrice")
-    List<Property> findPropertiesByPriceRange(@Param("minPrice") Double minPrice, @Param("maxPrice") Double maxPrice);
-    
     @Query("SELECT p FROM Property p WHERE p.ownerId = :ownerId AND p.isRented = false")
     List<Property> findAvailablePropertiesForRentByOwner(@Param("ownerId") String ownerId);
     
-    @Query("SELECT p FROM Property p WHERE p.isForSale = true ORDER BY p.currentPrice ASC")
-    List<Property> findPropertiesByPriceAsc();
+    @Query("SELECT p FROM Property p JOIN FETCH p.city WHERE p.id IN :ids")
+    List<Property> findAllWithCityByIdIn(@Param("ids") Collection<Long> ids);
+    
+    @Query("SELECT p FROM Property p JOIN FETCH p.city WHERE p.id = :id")
+    Optional<Property> findWithCityById(@Param("id") Long id);
+    
+    // 以下条件更新在房产状态仍满足前提时才生效，返回 0 表示被并发操作抢先
+    // 购买同时要求成交价不低于当前挂牌价，避免与重估调价并发时以旧价成交
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Property p SET p.ownerId = :buyerId, p.isForSale = false, p.purchasePrice = :price, p.updatedAt = :now " +
+           "WHERE p.id = :id AND p.ownerId IS NULL AND p.isForSale = true AND p.currentPrice <= :price")
+    int claimForPurchase(@Param("id") Long id, @Param("buyerId") String buyerId, @Param("price") BigDecimal price,
+                         @Param("now") LocalDateTime now);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Property p SET p.ownerId = NULL, p.isForSale = false, p.updatedAt = :now " +
+           "WHERE p.id = :id AND p.ownerId = :sellerId AND p.isRented = false")
+    int releaseForSale(@Param("id") Long id, @Param("sellerId") String sellerId, @Param("now") LocalDateTime now);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Property p SET p.isRented = true, p.updatedAt = :now " +
+           "WHERE p.id = :id AND p.ownerId IS NOT NULL AND p.isRented = false")
+    int claimForRent(@Param("id") Long id, @Param("now") LocalDateTime now);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Property p SET p.isRented = false, p.updatedAt = :now " +
+           "WHERE p.id = :id AND p.ownerId = :ownerId AND p.isRented = true")
+    int releaseRental(@Param("id") Long id, @Param("ownerId") String ownerId, @Param("now") LocalDateTime now);
+    
+    // 以下业主操作只更新各自改动的列，不会覆盖到期任务清除的出租状态或并发购买写入的业主
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Property p SET p.upgradeLevel = p.upgradeLevel + 1, p.currentPrice = p.currentPrice * 1.1bd, p.updatedAt = :now " +
+           "WHERE p.id = :id AND p.ownerId = :ownerId AND p.upgradeLevel < p.maxUpgradeLevel")
+    int upgrade(@Param("id") Long id, @Param("ownerId") String ownerId, @Param("now") LocalDateTime now);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Property p SET p.conditionRating = p.conditionRating + 1, p.updatedAt = :now " +
+           "WHERE p.id = :id AND p.ownerId = :ownerId AND p.conditionRating < 10")
+    int repair(@Param("id") Long id, @Param("ownerId") String ownerId, @Param("now") LocalDateTime now);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Property p SET p.isForSale = true, p.currentPrice = :price, p.updatedAt = :now " +
+           "WHERE p.id = :id AND p.ownerId = :ownerId AND p.isRented = false")
+    int listForSale(@Param("id") Long id, @Param("ownerId") String ownerId, @Param("price") BigDecimal price,
+                    @Param("now") LocalDateTime now);
     
-    @Query("SELECT p FROM Property p WHERE p.isForSale = true ORDER BY p.currentPrice DESC")
-    List<Property> findPropertiesByPriceDesc();
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Property p SET p.isForSale = false, p.updatedAt = :now WHERE p.id = :id AND p.ownerId = :ownerId")
+    int removeFromSale(@Param("id") Long id, @Param("ownerId") String ownerId, @Param("now") LocalDateTime now);
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.financelab.realestateservice.repository;
 
 import com.financelab.realestateservice.entity.PropertyTransaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -24,6 +25,10 @@ public interface PropertyTransactionRepository extends JpaRepository<PropertyTra
     @Query("SELECT pt FROM PropertyTransaction pt WHERE pt.transactionDate BETWEEN :startDate AND :endDate AND pt.status = 'COMPLETED'")
     List<PropertyTransaction> findCompletedTransactionsInPeriod(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
     
-    @Query("SELECT pt FROM PropertyTransaction pt WHERE pt.type = 'RENT' AND pt.rentalEndDate < :currentDate AND pt.status = 'COMPLETED'")
+    @Query("SELECT pt FROM PropertyTransaction pt WHERE pt.type = 'RENT' AND pt.rentalEndDate < :currentDate AND pt.status = 'COMPLETED' AND pt.rentalEndedAt IS NULL")
     List<PropertyTransaction> findExpiredRentals(@Param("currentDate") LocalDateTime currentDate);
+    
+    @Modifying
+    @Query("UPDATE PropertyTransaction pt SET pt.rentalEndedAt = :endedAt WHERE pt.property.id = :propertyId AND pt.type = 'RENT' AND pt.status = 'COMPLETED' AND pt.rentalEndedAt IS NULL")
+    int endActiveLease(@Param("propertyId") Long propertyId, @Param("endedAt") LocalDateTime endedAt);
 }
\ No newline at end of file
@@ -0,0 +1,259 @@
+package com.financelab.realestateservice.service;
+
+import com.financelab.realestateservice.dto.PaymentDebitDTO;
+import com.financelab.realestateservice.entity.PropertyLedgerEntry.EntryType;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestClient;
+
+import java.math.BigDecimal;
+import java.net.http.HttpClient;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 台账结算：把租金与持有支出记到银行账户
+ *
+ * 台账行即 outbox：入账任务写入时为 PENDING，本任务按批领取到期的行（FOR UPDATE SKIP LOCKED，
+ * 并把下次结算时间推后一个租期），支出（租客租金、业主持有支出）调用 bank-service 批量扣款接口，
+ * 业主租金收入调用批量入账接口；幂等键为 RE-LEDGER-台账ID，超时或重复投递不会重复记账。
+ * 业主的租金收入只在对应租客的扣款成功后才领取，租客扣款失败时收入一并记为失败。
+ * 投递失败的行保持 PENDING，按指数退避重试；进程崩溃时租期到后由任一实例重新领取。
+ */
+@Service
+@Slf4j
+public class LedgerSettlementService {
+
+    private static final String COUNTERPARTY = "REAL_ESTATE";
+
+    private static final String CLAIM_SQL =
+            "SELECT e.id, e.user_id, e.entry_type, e.amount, e.period, e.property_id, e.source_id, e.settlement_attempts " +
+            "FROM property_ledger_entries e WHERE e.settlement_status = 'PENDING' AND e.next_settlement_at <= ? " +
+            "AND (e.entry_type <> 'RENT_INCOME' OR EXISTS (SELECT 1 FROM property_ledger_entries r " +
+            "WHERE r.source_id = e.source_id AND r.period = e.period AND r.entry_type = 'RENT_PAYMENT' " +
+            "AND r.settlement_status = 'COMPLETED')) ORDER BY e.id LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    private static final String COMPLETE_SQL =
+            "UPDATE property_ledger_entries SET settlement_status = ?, reference_number = ?, failure_reason = ? " +
+            "WHERE id = ? AND settlement_status = 'PENDING'";
+
+    private static final String FAIL_INCOME_SQL =
+            "UPDATE property_ledger_entries SET settlement_status = 'FAILED', failure_reason = ? " +
+            "WHERE source_id = ? AND period = ? AND entry_type = 'RENT_INCOME' AND settlement_status = 'PENDING'";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${real-estate.settlement.bank-url:http://localhost:8084}")
+    private String bankUrl;
+
+    @Value("${real-estate.settlement.internal-token}")
+    private String internalToken;
+
+    @Value("${real-estate.settlement.timeout-ms:5000}")
+    private long timeoutMillis;
+
+    @Value("${real-estate.settlement.batch-size:200}")
+    private int batchSize;
+
+    @Value("${real-estate.settlement.lease-ms:30000}")
+    private long leaseMillis;
+
+    @Value("${real-estate.settlement.max-backoff-ms:60000}")
+    private long maxBackoffMillis;
+
+    private RestClient restClient;
+
+    @PostConstruct
+    public void init() {
+        if (internalToken == null || internalToken.isBlank()) {
+            throw new IllegalStateException("未配置服务间调用凭证 real-estate.settlement.internal-token（INTERNAL_API_TOKEN）");
+        }
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeoutMillis))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(timeoutMillis));
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+    }
+
+    /**
+     * 循环领取到期的台账行并结算，直到没有满批的待结算行
+     */
+    @Scheduled(fixedDelayString = "${real-estate.settlement.relay-interval-ms:1000}")
+    public void settle() {
+        try {
+            List<Claimed> batch;
+            do {
+                batch = transactionTemplate.execute(status -> claim());
+                if (batch == null || batch.isEmpty()) {
+                    return;
+                }
+                deliver(batch);
+            } while (batch.size() >= batchSize);
+        } catch (Exception e) {
+            log.error("台账结算失败", e);
+        }
+    }
+
+    private List<Claimed> claim() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Claimed> batch = jdbcTemplate.query(CLAIM_SQL,
+                (rs, rowNum) -> new Claimed(rs.getLong(1), rs.getString(2), EntryType.valueOf(rs.getString(3)),
+                        rs.getBigDecimal(4), rs.getString(5), (Long) rs.getObject(6), rs.getLong(7), rs.getInt(8) + 1),
+                Timestamp.valueOf(now), batchSize);
+        if (batch.isEmpty()) {
+            return batch;
+        }
+        // 租期内其他实例不会再领取这些行；结果未回写时租期到后重新投递
+        List<Object> args = new ArrayList<>(batch.size() + 1);
+        args.add(Timestamp.valueOf(now.plusNanos(leaseMillis * 1_000_000L)));
+        batch.forEach(c -> args.add(c.id()));
+        jdbcTemplate.update("UPDATE property_ledger_entries SET settlement_attempts = settlement_attempts + 1, " +
+                "next_settlement_at = ? WHERE id IN (" + placeholders(batch.size()) + ")", args.toArray());
+        return batch;
+    }
+
+    private void deliver(List<Claimed> batch) {
+        List<Claimed> debits = new ArrayList<>(batch.size());
+        List<Claimed> credits = new ArrayList<>();
+        for (Claimed claimed : batch) {
+            (claimed.type() == EntryType.RENT_INCOME ? credits : debits).add(claimed);
+        }
+        if (!debits.isEmpty()) {
+            deliver(debits, bankUrl + "/internal/bank/payments/debits/bulk");
+        }
+        if (!credits.isEmpty()) {
+            deliver(credits, bankUrl + "/internal/bank/payments/credits/bulk");
+        }
+    }
+
+    private void deliver(List<Claimed> batch, String url) {
+        List<PaymentDebitDTO> requests = new ArrayList<>(batch.size());
+        for (Claimed claimed : batch) {
+            PaymentDebitDTO request = new PaymentDebitDTO();
+            request.setIdempotencyKey(idempotencyKey(claimed.id()));
+            request.setUserId(claimed.userId());
+            request.setAmount(claimed.amount().abs());
+            request.setCounterparty(COUNTERPARTY);
+            request.setDescription(description(claimed));
+            requests.add(request);
+        }
+
+        PaymentDebitDTO[] results;
+        try {
+            results = restClient.post().uri(url)
+                    .header("X-Internal-Token", internalToken)
+                    .body(Map.of("debits", requests))
+                    .retrieve()
+                    .body(PaymentDebitDTO[].class);
+        } catch (Exception e) {
+            log.warn("台账结算投递失败，{} 笔稍后重试: {}", batch.size(), e.getMessage());
+            scheduleRetry(batch, e.getMessage());
+            return;
+        }
+
+        Map<String, PaymentDebitDTO> byKey = new HashMap<>();
+        if (results != null) {
+            for (PaymentDebitDTO result : results) {
+                if (result != null && result.getStatus() != null) {
+                    byKey.put(result.getIdempotencyKey(), result);
+                }
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> applyResults(batch, byKey));
+        } catch (Exception e) {
+            // 记账已在银行侧按幂等键固定，重新投递只会取回同一结果
+            log.error("回写台账结算结果失败，{} 笔稍后重试", batch.size(), e);
+            scheduleRetry(batch, e.getMessage());
+        }
+    }
+
+    private void applyResults(List<Claimed> batch, Map<String, PaymentDebitDTO> results) {
+        List<Object[]> updates = new ArrayList<>(batch.size());
+        List<Object[]> failedIncomes = new ArrayList<>();
+        int completed = 0;
+        for (Claimed claimed : batch) {
+            PaymentDebitDTO result = results.get(idempotencyKey(claimed.id()));
+            if (result == null) {
+                continue; // 未返回结果，租期到后重新投递
+            }
+            boolean success = "COMPLETED".equals(result.getStatus());
+            updates.add(new Object[] { success ? "COMPLETED" : "FAILED", result.getReferenceNumber(),
+                    truncate(result.getFailureReason()), claimed.id() });
+            if (success) {
+                completed++;
+            } else if (claimed.type() == EntryType.RENT_PAYMENT) {
+                failedIncomes.add(new Object[] { truncate("租客租金扣款失败: " + result.getFailureReason()),
+                        claimed.sourceId(), claimed.period() });
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(COMPLETE_SQL, updates);
+        }
+        if (!failedIncomes.isEmpty()) {
+            jdbcTemplate.batchUpdate(FAIL_INCOME_SQL, failedIncomes);
+        }
+        if (!updates.isEmpty()) {
+            log.info("台账结算: 成功 {} 笔, 失败 {} 笔", completed, updates.size() - completed);
+        }
+    }
+
+    private void scheduleRetry(List<Claimed> batch, String error) {
+        List<Object[]> updates = new ArrayList<>(batch.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (Claimed claimed : batch) {
+            long backoff = Math.min(maxBackoffMillis, 1000L << Math.min(claimed.attempts(), 16));
+            updates.add(new Object[] { Timestamp.valueOf(now.plusNanos(backoff * 1_000_000L)), truncate(error), claimed.id() });
+        }
+        try {
+            jdbcTemplate.batchUpdate("UPDATE property_ledger_entries SET next_settlement_at = ?, failure_reason = ? " +
+                    "WHERE id = ? AND settlement_status = 'PENDING'", updates);
+        } catch (Exception e) {
+            log.error("更新台账结算重试时间失败，租期到后重新投递", e);
+        }
+    }
+
+    private static String description(Claimed claimed) {
+        return switch (claimed.type()) {
+            case RENT_INCOME -> "房产租金收入: " + claimed.period() + " 房产 " + claimed.propertyId();
+            case RENT_PAYMENT -> "房产租金支出: " + claimed.period() + " 房产 " + claimed.propertyId();
+            case HOLDING_EXPENSE -> "房产维护费与房产税: " + claimed.period();
+        };
+    }
+
+    private static String idempotencyKey(long entryId) {
+        return "RE-LEDGER-" + entryId;
+    }
+
+    private static String truncate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() > 255 ? error.substring(0, 255) : error;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private record Claimed(long id, String userId, EntryType type, BigDecimal amount, String period,
+                           Long propertyId, long sourceId, int attempts) {}
+}
@@ -0,0 +1,302 @@
+package com.financelab.realestateservice.service;
+
+import com.financelab.realestateservice.dto.MarketIndexPointDTO;
+import com.financelab.realestateservice.entity.MarketIndexPoint.Resolution;
+import com.financelab.realestateservice.entity.MarketIndexPoint.Scope;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 城市 / 区域房产市场指数
+ *
+ * 每次重估后由 PropertyRevaluationEngine 传入各城市、各区域的样本（每平米价格中位数、房产数），
+ * 本服务补上样本区间内的成交笔数与金额，同时累加到小时、日、周三个分辨率的时间桶：
+ * 每个桶一行，INSERT ... ON DUPLICATE KEY UPDATE 维护开、高、低、收与成交量，写入量与房产数无关。
+ * 涨跌幅相对上一个桶的收盘值，上一个桶的收盘值在桶创建时写入。
+ *
+ * 价格只取系统在售（未被持有）房产的重估价：用户持有的房产不参与市场重估，其价格是买入价与装修调整，
+ * 不反映行情，因此不计入中位数与房产数；成交量与成交金额统计全部买入 / 卖出交易。
+ *
+ * 多实例各自运行重估时，记录样本在 market_index_state 行锁下串行执行：成交量区间从库中记录的上次采样时间开始，
+ * 区间互不重叠；距上次采样不足 min-sample-interval-ms 的样本（另一实例刚记录过）直接跳过，不重复累加成交量与样本数。
+ *
+ * 保留期：小时桶与日桶按配置天数定期清理，周桶保留期为 0 时永久保留。
+ * 走势查询只读取 market_index_points，不扫描逐房产的价格历史。
+ */
+@Service
+@Slf4j
+public class MarketIndexService {
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO market_index_points (scope, scope_key, resolution, bucket_start, open_price_per_sqm, " +
+            "high_price_per_sqm, low_price_per_sqm, close_price_per_sqm, prev_close_price_per_sqm, volume, turnover, " +
+            "property_count, sample_count, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 1, ?) " +
+            "ON DUPLICATE KEY UPDATE high_price_per_sqm = GREATEST(high_price_per_sqm, VALUES(high_price_per_sqm)), " +
+            "low_price_per_sqm = LEAST(low_price_per_sqm, VALUES(low_price_per_sqm)), " +
+            "close_price_per_sqm = VALUES(close_price_per_sqm), volume = volume + VALUES(volume), " +
+            "turnover = turnover + VALUES(turnover), property_count = VALUES(property_count), " +
+            "sample_count = sample_count + 1, updated_at = VALUES(updated_at)";
+
+    private static final String SELECT_COLUMNS =
+            "SELECT scope, scope_key, resolution, bucket_start, open_price_per_sqm, high_price_per_sqm, low_price_per_sqm, " +
+            "close_price_per_sqm, prev_close_price_per_sqm, volume, turnover, property_count FROM market_index_points ";
+
+    // 样本区间内各城市的买入 / 卖出成交
+    private static final String VOLUME_SQL =
+            "SELECT p.city_id, COUNT(*), SUM(t.transaction_price) FROM property_transactions t " +
+            "JOIN properties p ON p.id = t.property_id " +
+            "WHERE t.transaction_date >= ? AND t.transaction_date < ? AND t.type IN ('PURCHASE', 'SALE') " +
+            "AND t.status = 'COMPLETED' GROUP BY p.city_id";
+
+    /**
+     * 一次重估的指数样本；城市样本的 key 为城市ID，并带上所属区域用于汇总区域成交量
+     */
+    public record Sample(Scope scope, String key, String region, long medianCentsPerSqm, int propertyCount) {}
+
+    private record SeriesKey(Scope scope, String key, Resolution resolution) {}
+
+    private record LatestBucket(LocalDateTime bucketStart, BigDecimal close, BigDecimal prevClose) {}
+
+    private static final String STATE_NAME = "market_index";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${real-estate.market-index.hour-retention-days:7}")
+    private int hourRetentionDays;
+
+    @Value("${real-estate.market-index.day-retention-days:730}")
+    private int dayRetentionDays;
+
+    @Value("${real-estate.market-index.week-retention-days:0}")
+    private int weekRetentionDays;
+
+    @Value("${real-estate.market-index.purge-batch-size:5000}")
+    private int purgeBatchSize;
+
+    @Value("${real-estate.market-index.min-sample-interval-ms:1800000}")
+    private long minSampleIntervalMillis;
+
+    // 每条序列最新的桶，用于确定新桶的上一收盘值
+    private final Map<SeriesKey, LatestBucket> latest = new ConcurrentHashMap<>();
+    // 本实例最近一次记录样本的时间；与库中记录不同说明其他实例写过指数，需重新加载最新桶
+    private LocalDateTime lastRecordedAt;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        loadLatest();
+        log.info("市场指数已加载: {} 条序列", latest.size());
+    }
+
+    private void loadLatest() {
+        latest.clear();
+        jdbcTemplate.query("SELECT m.scope, m.scope_key, m.resolution, m.bucket_start, m.close_price_per_sqm, " +
+                        "m.prev_close_price_per_sqm FROM market_index_points m JOIN (SELECT scope, scope_key, resolution, " +
+                        "MAX(bucket_start) AS bucket_start FROM market_index_points GROUP BY scope, scope_key, resolution) l " +
+                        "ON m.scope = l.scope AND m.scope_key = l.scope_key AND m.resolution = l.resolution " +
+                        "AND m.bucket_start = l.bucket_start",
+                rs -> {
+                    latest.put(new SeriesKey(Scope.valueOf(rs.getString(1)), rs.getString(2), Resolution.valueOf(rs.getString(3))),
+                            new LatestBucket(rs.getTimestamp(4).toLocalDateTime(), rs.getBigDecimal(5), rs.getBigDecimal(6)));
+                });
+    }
+
+    /**
+     * 记录一次重估的指数样本
+     */
+    public synchronized void record(LocalDateTime sampledAt, List<Sample> samples) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        // DATETIME 不保存小数秒，按秒截断后与库中记录可直接比较
+        LocalDateTime sampled = sampledAt.truncatedTo(ChronoUnit.SECONDS);
+        Map<SeriesKey, LatestBucket> updated = transactionTemplate.execute(status -> recordLocked(sampled, samples));
+        if (updated != null) {
+            latest.putAll(updated);
+            lastRecordedAt = sampled;
+            log.debug("记录市场指数样本: {} 条序列", samples.size());
+        }
+    }
+
+    /**
+     * 在 market_index_state 行锁下记录样本
+     *
+     * @return 写入后各序列的最新桶；其他实例刚记录过样本时返回 null
+     */
+    private Map<SeriesKey, LatestBucket> recordLocked(LocalDateTime sampledAt, List<Sample> samples) {
+        jdbcTemplate.update("INSERT IGNORE INTO market_index_state (name, last_sampled_at) VALUES (?, NULL)", STATE_NAME);
+        Timestamp lastTs = jdbcTemplate.queryForObject(
+                "SELECT last_sampled_at FROM market_index_state WHERE name = ? FOR UPDATE", Timestamp.class, STATE_NAME);
+        LocalDateTime last = lastTs != null ? lastTs.toLocalDateTime() : null;
+        if (last != null && last.plusNanos(minSampleIntervalMillis * 1_000_000L).isAfter(sampledAt)) {
+            log.info("其他实例已于 {} 记录市场指数样本，跳过本次样本", last);
+            return null;
+        }
+        if (last != null && !last.equals(lastRecordedAt)) {
+            loadLatest();
+        }
+
+        LocalDateTime since = last != null ? last : truncate(sampledAt, Resolution.HOUR);
+        Map<String, long[]> volumes = new HashMap<>();
+        Map<String, BigDecimal> turnovers = new HashMap<>();
+        Map<String, String> regionOfCity = new HashMap<>();
+        for (Sample sample : samples) {
+            if (sample.scope() == Scope.CITY) {
+                regionOfCity.put(sample.key(), sample.region());
+            }
+        }
+        jdbcTemplate.query(VOLUME_SQL, rs -> {
+            String cityKey = rs.getString(1);
+            long count = rs.getLong(2);
+            BigDecimal amount = rs.getBigDecimal(3);
+            accumulate(volumes, turnovers, Scope.CITY + ":" + cityKey, count, amount);
+            String region = regionOfCity.get(cityKey);
+            if (region != null) {
+                accumulate(volumes, turnovers, Scope.REGION + ":" + region, count, amount);
+            }
+        }, Timestamp.valueOf(since), Timestamp.valueOf(sampledAt));
+
+        Timestamp now = Timestamp.valueOf(sampledAt);
+        List<Object[]> upserts = new ArrayList<>(samples.size() * Resolution.values().length);
+        Map<SeriesKey, LatestBucket> updated = new HashMap<>();
+        for (Sample sample : samples) {
+            BigDecimal price = BigDecimal.valueOf(sample.medianCentsPerSqm(), 2);
+            String volumeKey = sample.scope() + ":" + sample.key();
+            long volume = volumes.getOrDefault(volumeKey, new long[1])[0];
+            BigDecimal turnover = turnovers.getOrDefault(volumeKey, BigDecimal.ZERO);
+            for (Resolution resolution : Resolution.values()) {
+                LocalDateTime bucket = truncate(sampledAt, resolution);
+                SeriesKey key = new SeriesKey(sample.scope(), sample.key(), resolution);
+                LatestBucket previous = latest.get(key);
+                BigDecimal prevClose = previous == null ? null
+                        : previous.bucketStart().equals(bucket) ? previous.prevClose() : previous.close();
+                upserts.add(new Object[] { sample.scope().name(), sample.key(), resolution.name(), Timestamp.valueOf(bucket),
+                        price, price, price, price, prevClose, volume, turnover, sample.propertyCount(), now });
+                updated.put(key, new LatestBucket(bucket, price, prevClose));
+            }
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, upserts);
+        jdbcTemplate.update("UPDATE market_index_state SET last_sampled_at = ? WHERE name = ?", now, STATE_NAME);
+        return updated;
+    }
+
+    /**
+     * 查询一条指数序列在时间范围内的走势（按时间升序）
+     */
+    public List<MarketIndexPointDTO> getSeries(Scope scope, String key, Resolution resolution,
+                                               LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.query(SELECT_COLUMNS +
+                        "WHERE scope = ? AND scope_key = ? AND resolution = ? AND bucket_start BETWEEN ? AND ? ORDER BY bucket_start",
+                (rs, rowNum) -> toDTO(rs),
+                scope.name(), key, resolution.name(), Timestamp.valueOf(truncate(from, resolution)), Timestamp.valueOf(to));
+    }
+
+    /**
+     * 各城市 / 区域最新一个桶的指数
+     */
+    public List<MarketIndexPointDTO> getLatest(Scope scope, Resolution resolution) {
+        LocalDateTime bucket = latest.entrySet().stream()
+                .filter(e -> e.getKey().scope() == scope && e.getKey().resolution() == resolution)
+                .map(e -> e.getValue().bucketStart())
+                .max(LocalDateTime::compareTo)
+                .orElse(null);
+        if (bucket == null) {
+            return List.of();
+        }
+        return jdbcTemplate.query(SELECT_COLUMNS + "WHERE scope = ? AND resolution = ? AND bucket_start = ? ORDER BY scope_key",
+                (rs, rowNum) -> toDTO(rs), scope.name(), resolution.name(), Timestamp.valueOf(bucket));
+    }
+
+    /**
+     * 按保留期清理过期的小时 / 日 / 周桶
+     */
+    @Scheduled(cron = "${real-estate.market-index.purge-cron:0 30 3 * * *}")
+    public void purgeExpired() {
+        purge(Resolution.HOUR, hourRetentionDays);
+        purge(Resolution.DAY, dayRetentionDays);
+        purge(Resolution.WEEK, weekRetentionDays);
+    }
+
+    private void purge(Resolution resolution, int retentionDays) {
+        if (retentionDays <= 0) {
+            return;
+        }
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays));
+        try {
+            int deleted;
+            int total = 0;
+            do {
+                deleted = jdbcTemplate.update("DELETE FROM market_index_points WHERE resolution = ? AND bucket_start < ? LIMIT ?",
+                        resolution.name(), cutoff, purgeBatchSize);
+                total += deleted;
+            } while (deleted >= purgeBatchSize);
+            if (total > 0) {
+                log.info("清理过期市场指数: 分辨率 {}, {} 条", resolution, total);
+            }
+        } catch (Exception e) {
+            log.error("清理过期市场指数失败: 分辨率 {}", resolution, e);
+        }
+    }
+
+    private static void accumulate(Map<String, long[]> volumes, Map<String, BigDecimal> turnovers,
+                                   String key, long count, BigDecimal amount) {
+        volumes.computeIfAbsent(key, k -> new long[1])[0] += count;
+        turnovers.merge(key, amount != null ? amount : BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private static LocalDateTime truncate(LocalDateTime time, Resolution resolution) {
+        return switch (resolution) {
+            case HOUR -> time.truncatedTo(ChronoUnit.HOURS);
+            case DAY -> time.truncatedTo(ChronoUnit.DAYS);
+            case WEEK -> time.truncatedTo(ChronoUnit.DAYS).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        };
+    }
+
+    private static MarketIndexPointDTO toDTO(ResultSet rs) throws SQLException {
+        MarketIndexPointDTO dto = new MarketIndexPointDTO();
+        dto.setScope(Scope.valueOf(rs.getString(1)));
+        dto.setScopeKey(rs.getString(2));
+        dto.setResolution(Resolution.valueOf(rs.getString(3)));
+        dto.setBucketStart(rs.getTimestamp(4).toLocalDateTime());
+        dto.setOpenPricePerSqm(rs.getBigDecimal(5));
+        dto.setHighPricePerSqm(rs.getBigDecimal(6));
+        dto.setLowPricePerSqm(rs.getBigDecimal(7));
+        dto.setClosePricePerSqm(rs.getBigDecimal(8));
+        BigDecimal prevClose = rs.getBigDecimal(9);
+        if (prevClose != null && prevClose.signum() > 0) {
+            dto.setChangeRate(dto.getClosePricePerSqm().subtract(prevClose)
+                    .divide(prevClose, 6, RoundingMode.HALF_UP)
+                    .multiply(BigDecimal.valueOf(100))
+                    .setScale(4, RoundingMode.HALF_UP));
+        }
+        dto.setVolume(rs.getInt(10));
+        dto.setTurnover(rs.getBigDecimal(11));
+        dto.setPropertyCount(rs.getInt(12));
+        return dto;
+    }
+}
@@ -0,0 +1,138 @@
+package com.financelab.realestateservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 业主月度现金流汇总
+ *
+ * owner_cash_flows 每个业主一行：已出租房产的月租金合计、持有房产的月维护费与房产税合计。
+ * 买入、卖出、出租、退租、租约到期时在同一事务中按增量更新（INSERT ... ON DUPLICATE KEY UPDATE），
+ * 月收入 / 月支出查询只读一行，不再加载业主的全部房产。
+ * 汇总表为空而已有业主持有房产时（新部署或升级），启动时从 properties 整体重建一次；
+ * 多实例同时启动时以 MySQL 命名锁串行化，取得锁后再检查一次，只有一个实例执行重建。
+ */
+@Service
+@Slf4j
+public class OwnerCashFlowService {
+
+    private static final String DELTA_SQL =
+            "INSERT INTO owner_cash_flows (owner_id, monthly_income, monthly_expenses, owned_properties, rented_properties, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE monthly_income = monthly_income + VALUES(monthly_income), " +
+            "monthly_expenses = monthly_expenses + VALUES(monthly_expenses), " +
+            "owned_properties = owned_properties + VALUES(owned_properties), " +
+            "rented_properties = rented_properties + VALUES(rented_properties), updated_at = VALUES(updated_at)";
+
+    private static final String REBUILD_SQL =
+            "INSERT INTO owner_cash_flows (owner_id, monthly_income, monthly_expenses, owned_properties, rented_properties, updated_at) " +
+            "SELECT owner_id, SUM(CASE WHEN is_rented THEN COALESCE(rental_income, 0) ELSE 0 END), " +
+            "SUM(COALESCE(maintenance_cost, 0) + COALESCE(property_tax, 0)), COUNT(*), " +
+            "SUM(CASE WHEN is_rented THEN 1 ELSE 0 END), ? FROM properties WHERE owner_id IS NOT NULL GROUP BY owner_id " +
+            "ON DUPLICATE KEY UPDATE monthly_income = VALUES(monthly_income), monthly_expenses = VALUES(monthly_expenses), " +
+            "owned_properties = VALUES(owned_properties), rented_properties = VALUES(rented_properties), updated_at = VALUES(updated_at)";
+
+    private static final String REBUILD_LOCK = "owner_cash_flows_rebuild";
+
+    private static final int REBUILD_LOCK_TIMEOUT_SECONDS = 60;
+
+    /**
+     * 一个业主的现金流增量
+     */
+    public record Delta(String ownerId, BigDecimal income, BigDecimal expenses, int owned, int rented) {}
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        // 命名锁属于连接，加锁、检查、重建与释放须在同一连接上执行（自动提交，释放锁前重建已提交）
+        Integer owners = jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (PreparedStatement lock = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+                lock.setString(1, REBUILD_LOCK);
+                lock.setInt(2, REBUILD_LOCK_TIMEOUT_SECONDS);
+                try (ResultSet rs = lock.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) != 1) {
+                        log.warn("未取得业主现金流汇总重建锁，跳过重建");
+                        return 0;
+                    }
+                }
+            }
+            try {
+                try (PreparedStatement check = connection.prepareStatement("SELECT 1 FROM owner_cash_flows LIMIT 1");
+                     ResultSet rs = check.executeQuery()) {
+                    if (rs.next()) {
+                        return 0;
+                    }
+                }
+                try (PreparedStatement rebuild = connection.prepareStatement(REBUILD_SQL)) {
+                    rebuild.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+                    return rebuild.executeUpdate();
+                }
+            } finally {
+                try (PreparedStatement release = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    release.setString(1, REBUILD_LOCK);
+                    release.execute();
+                }
+            }
+        });
+        if (owners != null && owners > 0) {
+            log.info("重建业主现金流汇总: {} 位业主", owners);
+        }
+    }
+
+    /**
+     * 累加现金流增量，须在变更房产的同一事务中调用
+     */
+    public void apply(Delta... deltas) {
+        apply(List.of(deltas));
+    }
+
+    public void apply(List<Delta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        for (Delta delta : deltas) {
+            args.add(new Object[] { delta.ownerId(), delta.income(), delta.expenses(), delta.owned(), delta.rented(), now });
+        }
+        jdbcTemplate.batchUpdate(DELTA_SQL, args);
+    }
+
+    public BigDecimal getMonthlyIncome(String ownerId) {
+        return queryAmount("SELECT monthly_income FROM owner_cash_flows WHERE owner_id = ?", ownerId);
+    }
+
+    public BigDecimal getMonthlyExpenses(String ownerId) {
+        return queryAmount("SELECT monthly_expenses FROM owner_cash_flows WHERE owner_id = ?", ownerId);
+    }
+
+    private BigDecimal queryAmount(String sql, String ownerId) {
+        List<BigDecimal> amounts = jdbcTemplate.queryForList(sql, BigDecimal.class, ownerId);
+        return amounts.isEmpty() ? BigDecimal.ZERO : amounts.get(0);
+    }
+
+    /**
+     * 持有一处房产的月支出（维护费 + 房产税）
+     */
+    public static BigDecimal holdingExpense(BigDecimal maintenanceCost, BigDecimal propertyTax) {
+        return orZero(maintenanceCost).add(orZero(propertyTax));
+    }
+
+    public static BigDecimal orZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,210 @@
+package com.financelab.realestateservice.service;
+
+import com.financelab.realestateservice.dto.PropertyBidResultDTO;
+import com.financelab.realestateservice.dto.PropertyBidResultDTO.BidStatus;
+import com.financelab.realestateservice.dto.PropertyTransactionDTO;
+import com.financelab.realestateservice.entity.Property;
+import com.financelab.realestateservice.repository.PropertyRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 系统房产竞价购买
+ *
+ * 同一房产的出价在内存中按轮次收集：首个出价开启一轮，窗口期内到达的出价都进入该轮，
+ * 窗口结束后一次结算：出价不低于挂牌价的按金额从高到低、同价先到先得取第一名，
+ * 以一次条件购买（与直接购买相同的 UPDATE ... WHERE owner_id IS NULL AND is_for_sale）成交，
+ * 其余出价在同一时刻得到落选结果。窗口期内的并发出价不会互相争抢数据库行锁。
+ *
+ * 轮次为单实例视图，多实例部署时各实例各自结算，最终由条件更新保证只有一个实例成交。
+ * 出价接口异步返回，结果在本轮结算后给出。
+ */
+@Service
+@Slf4j
+public class PropertyBiddingService {
+
+    @Autowired
+    private RealEstateService realEstateService;
+
+    @Autowired
+    private PropertyRepository propertyRepository;
+
+    @Value("${real-estate.bidding.window-ms:300}")
+    private long windowMillis;
+
+    @Value("${real-estate.bidding.max-bids-per-round:5000}")
+    private int maxBidsPerRound;
+
+    private final Map<Long, Round> rounds = new ConcurrentHashMap<>();
+    private final ExecutorService settleExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 出价，结果在本轮结算后完成
+     */
+    public CompletableFuture<PropertyBidResultDTO> placeBid(String userId, Long propertyId, BigDecimal offerPrice) {
+        if (offerPrice == null || offerPrice.signum() <= 0) {
+            throw new RuntimeException("出价必须大于零");
+        }
+        Bid bid = new Bid(userId, offerPrice.setScale(2, RoundingMode.HALF_UP), sequence.incrementAndGet(),
+                new CompletableFuture<>());
+        while (true) {
+            Round round = rounds.computeIfAbsent(propertyId, this::openRound);
+            switch (round.add(bid, maxBidsPerRound)) {
+                case ADDED:
+                    return bid.result();
+                case DUPLICATE:
+                    throw new RuntimeException("本轮已出价，请等待结果");
+                case FULL:
+                    throw new RuntimeException("本轮出价人数已满，请稍后重试");
+                default:
+                    // 该轮刚关闭，进入下一轮
+                    rounds.remove(propertyId, round);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Map.Entry<Long, Round> entry : rounds.entrySet()) {
+            for (Bid bid : entry.getValue().close()) {
+                bid.result().complete(result(entry.getKey(), bid, BidStatus.REJECTED, null, 0, "服务正在停止，请重新出价"));
+            }
+        }
+        settleExecutor.shutdown();
+    }
+
+    private Round openRound(Long propertyId) {
+        Round round = new Round();
+        CompletableFuture.delayedExecutor(windowMillis, TimeUnit.MILLISECONDS, settleExecutor)
+                .execute(() -> settle(propertyId, round));
+        return round;
+    }
+
+    private void settle(Long propertyId, Round round) {
+        List<Bid> bids = round.close();
+        rounds.remove(propertyId, round);
+        if (bids.isEmpty()) {
+            return;
+        }
+        try {
+            Property property = propertyRepository.findById(propertyId).orElse(null);
+            String unavailable = property == null ? "房产不存在"
+                    : !property.getIsForSale() ? "该房产不在售"
+                    : property.getOwnerId() != null ? "该房产已被购买"
+                    : null;
+            if (unavailable != null) {
+                completeAll(propertyId, bids, BidStatus.REJECTED, null, unavailable);
+                return;
+            }
+
+            BigDecimal listPrice = property.getCurrentPrice();
+            Bid winner = bids.stream()
+                    .filter(bid -> bid.offer().compareTo(listPrice) >= 0)
+                    .min(Comparator.comparing(Bid::offer).reversed().thenComparingLong(Bid::sequence))
+                    .orElse(null);
+            if (winner == null) {
+                completeAll(propertyId, bids, BidStatus.REJECTED, null, "出价低于挂牌价 " + listPrice);
+                return;
+            }
+
+            PropertyTransactionDTO transaction;
+            try {
+                transaction = realEstateService.purchaseProperty(winner.userId(), propertyId, winner.offer());
+            } catch (RuntimeException e) {
+                completeAll(propertyId, bids, BidStatus.REJECTED, null, e.getMessage());
+                return;
+            }
+
+            for (Bid bid : bids) {
+                if (bid == winner) {
+                    PropertyBidResultDTO won = result(propertyId, bid, BidStatus.WON, winner.offer(), bids.size(), "竞价成功");
+                    won.setTransaction(transaction);
+                    bid.result().complete(won);
+                } else if (bid.offer().compareTo(listPrice) < 0) {
+                    bid.result().complete(result(propertyId, bid, BidStatus.REJECTED, winner.offer(), bids.size(),
+                            "出价低于挂牌价 " + listPrice));
+                } else {
+                    bid.result().complete(result(propertyId, bid, BidStatus.OUTBID, winner.offer(), bids.size(),
+                            "本轮有更高出价"));
+                }
+            }
+            log.info("房产竞价成交: 房产 {}, 出价 {} 人, 中标用户 {}, 成交价 {}", propertyId, bids.size(),
+                    winner.userId(), winner.offer());
+        } catch (Exception e) {
+            log.error("房产竞价结算失败: 房产 {}", propertyId, e);
+            completeAll(propertyId, bids, BidStatus.REJECTED, null, "竞价结算失败，请重试");
+        }
+    }
+
+    private void completeAll(Long propertyId, List<Bid> bids, BidStatus status, BigDecimal winningPrice, String message) {
+        for (Bid bid : bids) {
+            bid.result().complete(result(propertyId, bid, status, winningPrice, bids.size(), message));
+        }
+    }
+
+    private static PropertyBidResultDTO result(Long propertyId, Bid bid, BidStatus status, BigDecimal winningPrice,
+                                               int bidCount, String message) {
+        PropertyBidResultDTO dto = new PropertyBidResultDTO();
+        dto.setPropertyId(propertyId);
+        dto.setUserId(bid.userId());
+        dto.setOfferPrice(bid.offer());
+        dto.setStatus(status);
+        dto.setWinningPrice(winningPrice);
+        dto.setBidCount(bidCount);
+        dto.setMessage(message);
+        return dto;
+    }
+
+    private record Bid(String userId, BigDecimal offer, long sequence, CompletableFuture<PropertyBidResultDTO> result) {}
+
+    private enum AddResult {
+        ADDED, DUPLICATE, FULL, CLOSED
+    }
+
+    /**
+     * 一个房产的一轮出价
+     */
+    private static final class Round {
+        private final List<Bid> bids = new ArrayList<>();
+        private final Set<String> bidders = new HashSet<>();
+        private boolean closed;
+
+        private synchronized AddResult add(Bid bid, int maxBids) {
+            if (closed) {
+                return AddResult.CLOSED;
+            }
+            if (bids.size() >= maxBids) {
+                return AddResult.FULL;
+            }
+            if (!bidders.add(bid.userId())) {
+                return AddResult.DUPLICATE;
+            }
+            bids.add(bid);
+            return AddResult.ADDED;
+        }
+
+        private synchronized List<Bid> close() {
+            closed = true;
+            return new ArrayList<>(bids);
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.financelab.realestateservice.service;
+
+import com.financelab.realestateservice.entity.MarketIndexPoint.Scope;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.IntStream;
+
+/**
+ * 系统房产批量重估
+ *
+ * 一条连接查询按主键分页加载全部系统所有（owner_id 为空）的房产及其城市参数，按列存入基本类型数组
+ * （价格以分为单位的 long），房产特性因子在加载时一次算出；随后按城市分区并行计算新价格，
+ * 每个分区使用独立的随机数序列。结果分块持久化：每块一个事务，一条多行 UPDATE ... JOIN 写回价格、
+ * 一次批量 INSERT 写价格历史，多块并发写入。
+ *
+ * 每块写入前以 FOR UPDATE 锁定仍为系统所有的房产，重估期间被用户买走的房产不会被覆盖价格。
+ *
+ * 写入后按已分区的新价格算出各城市、各区域的每平米价格中位数，交给 MarketIndexService 记录市场指数。
+ * 指数样本即本次重估的系统在售房产；用户持有的房产不参与重估，价格不随行情变化，不计入样本。
+ */
+@Service
+@Slf4j
+public class PropertyRevaluationEngine {
+
+    private static final String LOAD_SQL =
+            "SELECT p.id, p.city_id, p.current_price, p.purchase_price, p.condition_rating, p.upgrade_level, " +
+            "p.construction_year, c.growth_rate, c.price_volatility, p.total_area, c.region " +
+            "FROM properties p JOIN cities c ON c.id = p.city_id " +
+            "WHERE p.owner_id IS NULL AND p.id > ? ORDER BY p.id LIMIT ?";
+
+    // 多行条件更新：派生表逐行给出 (房产ID, 新价格)
+    private static final String UPDATE_SQL_PREFIX =
+            "UPDATE properties p JOIN (";
+    private static final String UPDATE_SQL_SUFFIX =
+            ") d ON p.id = d.id SET p.current_price = d.price, p.updated_at = ? WHERE p.owner_id IS NULL";
+
+    private static final String HISTORY_INSERT_SQL =
+            "INSERT INTO property_price_history (property_id, price_date, market_price, price_change, price_change_rate, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final double HOURS_PER_YEAR = 365 * 24;
+
+    private static final int COMPUTE_PARTITION_SIZE = 1 << 16;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MarketIndexService marketIndexService;
+
+    @Value("${real-estate.revaluation.load-page-size:50000}")
+    private int loadPageSize;
+
+    @Value("${real-estate.revaluation.write-chunk-size:1000}")
+    private int writeChunkSize;
+
+    @Value("${real-estate.revaluation.write-concurrency:4}")
+    private int writeConcurrency;
+
+    /**
+     * 重估全部系统所有的房产
+     *
+     * @return 写回价格的房产数
+     */
+    public int revalueAll() {
+        long start = System.currentTimeMillis();
+        Columns columns = load();
+        long loaded = System.currentTimeMillis();
+        if (columns.size == 0) {
+            return 0;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        CityPartitions partitions = partitionByCity(columns);
+        long[] newCents = new long[columns.size];
+        compute(columns, partitions, newCents, System.nanoTime());
+        long computed = System.currentTimeMillis();
+
+        int updated = persist(columns, newCents, now);
+        try {
+            marketIndexService.record(now, marketSamples(columns, partitions, newCents));
+        } catch (Exception e) {
+            log.error("记录市场指数失败", e);
+        }
+        log.info("房产重估完成: {} 处, 加载 {} ms, 计算 {} ms, 写入 {} ms", updated,
+                loaded - start, computed - loaded, System.currentTimeMillis() - computed);
+        return updated;
+    }
+
+    private Columns load() {
+        Columns columns = new Columns();
+        int currentYear = LocalDateTime.now().getYear();
+        long lastId = 0;
+        while (true) {
+            int before = columns.size;
+            long[] last = { lastId };
+            jdbcTemplate.query(LOAD_SQL, rs -> {
+                long cityId = rs.getLong(2);
+                int conditionRating = rs.getInt(5);
+                boolean hasCondition = !rs.wasNull();
+                int upgradeLevel = rs.getInt(6);
+                int constructionYear = rs.getInt(7);
+                boolean hasYear = !rs.wasNull();
+
+                // 与逐条计算时相同的房产特性因子：状况、装修等级、房龄
+                double factor = upgradeLevel / 100.0;
+                if (hasCondition) {
+                    factor += (conditionRating - 5) / 100.0;
+                }
+                if (hasYear) {
+                    factor += Math.max(0, 30 - (currentYear - constructionYear)) / 1000.0;
+                }
+
+                last[0] = rs.getLong(1);
+                columns.add(last[0], columns.cityIndex(cityId, rs.getDouble(8), rs.getDouble(9), rs.getString(11)),
+                        toCents(rs.getBigDecimal(3)), toCents(rs.getBigDecimal(4)), toCents(rs.getBigDecimal(10)), factor);
+            }, lastId, loadPageSize);
+            lastId = last[0];
+            if (columns.size - before < loadPageSize) {
+                break;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * 计数排序：按城市把房产下标分区
+     */
+    private static CityPartitions partitionByCity(Columns columns) {
+        int cities = columns.cityCount;
+        int n = columns.size;
+        int[] partitionStart = new int[cities + 1];
+        for (int i = 0; i < n; i++) {
+            partitionStart[columns.cityIndexes[i] + 1]++;
+        }
+        for (int c = 0; c < cities; c++) {
+            partitionStart[c + 1] += partitionStart[c];
+        }
+        int[] order = new int[n];
+        int[] fill = Arrays.copyOf(partitionStart, cities);
+        for (int i = 0; i < n; i++) {
+            order[fill[columns.cityIndexes[i]]++] = i;
+        }
+        return new CityPartitions(order, partitionStart);
+    }
+
+    /**
+     * 按城市分区并行计算新价格（分）：当前价 × (小时增长率 + 波动 + 特性因子)，不低于购买价的 80%
+     */
+    private static void compute(Columns columns, CityPartitions cityPartitions, long[] newCents, long seed) {
+        int cities = columns.cityCount;
+        int[] order = cityPartitions.order();
+        int[] partitionStart = cityPartitions.start();
+
+        double[] hourlyGrowth = new double[cities];
+        for (int c = 0; c < cities; c++) {
+            hourlyGrowth[c] = columns.cityGrowthRates[c] / HOURS_PER_YEAR;
+        }
+
+        // 大城市再切成定长子分区，避免单个城市拖慢并行计算；每个子分区使用独立的随机数序列
+        List<int[]> partitions = new ArrayList<>();
+        for (int c = 0; c < cities; c++) {
+            for (int from = partitionStart[c]; from < partitionStart[c + 1]; from += COMPUTE_PARTITION_SIZE) {
+                partitions.add(new int[] { c, from, Math.min(from + COMPUTE_PARTITION_SIZE, partitionStart[c + 1]) });
+            }
+        }
+
+        partitions.parallelStream().forEach(partition -> {
+            int c = partition[0];
+            SplittableRandom random = new SplittableRandom(seed ^ (columns.cityIds[c] * 0x9E3779B97F4A7C15L) ^ partition[1]);
+            double growth = hourlyGrowth[c];
+            double volatility = columns.cityVolatilities[c];
+            for (int k = partition[1]; k < partition[2]; k++) {
+                int i = order[k];
+                long current = columns.currentCents[i];
+                double rate = growth + volatility * random.nextGaussian() * 0.1 + columns.factors[i];
+                long price = current + Math.round(current * rate);
+                long minPrice = Math.round(columns.purchaseCents[i] * 0.8);
+                newCents[i] = Math.max(price, minPrice);
+            }
+        });
+    }
+
+    /**
+     * 各城市、各区域的每平米价格中位数（分）；写入失败的块按计算出的新价格计入，下次重估即与库中一致
+     */
+    private static List<MarketIndexService.Sample> marketSamples(Columns columns, CityPartitions partitions, long[] newCents) {
+        int cities = columns.cityCount;
+        long[][] perSqm = new long[cities][];
+        IntStream.range(0, cities).parallel().forEach(c -> {
+            int from = partitions.start()[c];
+            int to = partitions.start()[c + 1];
+            long[] values = new long[to - from];
+            int n = 0;
+            for (int k = from; k < to; k++) {
+                int i = partitions.order()[k];
+                if (columns.areaCenti[i] > 0) {
+                    values[n++] = newCents[i] * 100 / columns.areaCenti[i];
+                }
+            }
+            values = Arrays.copyOf(values, n);
+            Arrays.sort(values);
+            perSqm[c] = values;
+        });
+
+        List<MarketIndexService.Sample> samples = new ArrayList<>(cities);
+        Map<String, List<long[]>> regions = new HashMap<>();
+        for (int c = 0; c < cities; c++) {
+            if (perSqm[c].length == 0) {
+                continue;
+            }
+            String region = columns.cityRegions[c];
+            samples.add(new MarketIndexService.Sample(Scope.CITY, String.valueOf(columns.cityIds[c]), region,
+                    median(perSqm[c]), perSqm[c].length));
+            regions.computeIfAbsent(region, k -> new ArrayList<>()).add(perSqm[c]);
+        }
+        regions.forEach((region, cityValues) -> {
+            long[] values = new long[cityValues.stream().mapToInt(v -> v.length).sum()];
+            int n = 0;
+            for (long[] v : cityValues) {
+                System.arraycopy(v, 0, values, n, v.length);
+                n += v.length;
+            }
+            Arrays.parallelSort(values);
+            samples.add(new MarketIndexService.Sample(Scope.REGION, region, region, median(values), values.length));
+        });
+        return samples;
+    }
+
+    private static long median(long[] sorted) {
+        int mid = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+
+    private int persist(Columns columns, long[] newCents, LocalDateTime now) {
+        Semaphore permits = new Semaphore(writeConcurrency);
+        List<Future<Integer>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int from = 0; from < columns.size; from += writeChunkSize) {
+                int chunkFrom = from;
+                int chunkTo = Math.min(from + writeChunkSize, columns.size);
+                permits.acquireUninterruptibly();
+                results.add(executor.submit(() -> {
+                    try {
+                        return transactionTemplate.execute(status -> writeChunk(columns, newCents, chunkFrom, chunkTo, now));
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        int updated = 0;
+        int failedChunks = 0;
+        for (Future<Integer> result : results) {
+            try {
+                Integer count = result.get();
+                updated += count != null ? count : 0;
+            } catch (Exception e) {
+                failedChunks++;
+                log.error("写入房产重估结果失败", e);
+            }
+        }
+        if (failedChunks > 0) {
+            log.warn("房产重估有 {} 块写入失败，这些房产保持原价至下次重估", failedChunks);
+        }
+        return updated;
+    }
+
+    private int writeChunk(Columns columns, long[] newCents, int from, int to, LocalDateTime now) {
+        // 锁定仍为系统所有的房产，重估期间被用户买走的房产既不改价也不写历史
+        List<Object> chunkIds = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            chunkIds.add(columns.ids[i]);
+        }
+        Set<Long> systemOwned = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM properties WHERE owner_id IS NULL AND id IN (" +
+                String.join(",", Collections.nCopies(chunkIds.size(), "?")) + ") FOR UPDATE",
+                Long.class, chunkIds.toArray()));
+        if (systemOwned.isEmpty()) {
+            return 0;
+        }
+
+        Timestamp nowTs = Timestamp.valueOf(now);
+        StringBuilder sql = new StringBuilder(UPDATE_SQL_PREFIX);
+        List<Object> args = new ArrayList<>(systemOwned.size() * 2 + 1);
+        List<Object[]> history = new ArrayList<>(systemOwned.size());
+        for (int i = from; i < to; i++) {
+            if (!systemOwned.contains(columns.ids[i])) {
+                continue;
+            }
+            sql.append(args.isEmpty() ? "SELECT ? AS id, ? AS price" : " UNION ALL SELECT ?, ?");
+            BigDecimal newPrice = fromCents(newCents[i]);
+            args.add(columns.ids[i]);
+            args.add(newPrice);
+
+            long oldCents = columns.currentCents[i];
+            long changeCents = newCents[i] - oldCents;
+            BigDecimal changeRate = oldCents > 0
+                    ? BigDecimal.valueOf(changeCents * 100.0 / oldCents).setScale(4, RoundingMode.HALF_UP)
+                    : null;
+            history.add(new Object[] { columns.ids[i], nowTs, newPrice, fromCents(changeCents), changeRate, nowTs });
+        }
+        sql.append(UPDATE_SQL_SUFFIX);
+        args.add(nowTs);
+
+        jdbcTemplate.update(sql.toString(), args.toArray());
+        jdbcTemplate.batchUpdate(HISTORY_INSERT_SQL, history);
+        return history.size();
+    }
+
+    private static long toCents(BigDecimal value) {
+        if (value == null) {
+            return 0;
+        }
+        return value.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /**
+     * 按城市分区后的房产下标：order[start[c], start[c + 1]) 为第 c 个城市的房产
+     */
+    private record CityPartitions(int[] order, int[] start) {}
+
+    /**
+     * 列式存放的待重估房产与城市参数
+     */
+    private static final class Columns {
+        private long[] ids = new long[1024];
+        private int[] cityIndexes = new int[1024];
+        private long[] currentCents = new long[1024];
+        private long[] purchaseCents = new long[1024];
+        private long[] areaCenti = new long[1024];
+        private double[] factors = new double[1024];
+        private int size;
+
+        private final Map<Long, Integer> cityIndexById = new HashMap<>();
+        private long[] cityIds = new long[16];
+        private double[] cityGrowthRates = new double[16];
+        private double[] cityVolatilities = new double[16];
+        private String[] cityRegions = new String[16];
+        private int cityCount;
+
+        private int cityIndex(long cityId, double growthRate, double volatility, String region) {
+            Integer index = cityIndexById.get(cityId);
+            if (index != null) {
+                return index;
+            }
+            if (cityCount == cityIds.length) {
+                cityIds = Arrays.copyOf(cityIds, cityCount * 2);
+                cityGrowthRates = Arrays.copyOf(cityGrowthRates, cityCount * 2);
+                cityVolatilities = Arrays.copyOf(cityVolatilities, cityCount * 2);
+                cityRegions = Arrays.copyOf(cityRegions, cityCount * 2);
+            }
+            cityIds[cityCount] = cityId;
+            cityGrowthRates[cityCount] = growthRate;
+            cityVolatilities[cityCount] = volatility;
+            cityRegions[cityCount] = region;
+            cityIndexById.put(cityId, cityCount);
+            return cityCount++;
+        }
+
+        private void add(long id, int cityIndex, long current, long purchase, long area, double factor) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                cityIndexes = Arrays.copyOf(cityIndexes, capacity);
+                currentCents = Arrays.copyOf(currentCents, capacity);
+                purchaseCents = Arrays.copyOf(purchaseCents, capacity);
+                areaCenti = Arrays.copyOf(areaCenti, capacity);
+                factors = Arrays.copyOf(factors, capacity);
+            }
+            ids[size] = id;
+            cityIndexes[size] = cityIndex;
+            currentCents[size] = current;
+            purchaseCents[size] = purchase;
+            areaCenti[size] = area;
+            factors[size] = factor;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,846 @@
+package com.financelab.realestateservice.service;
+
+import com.financelab.realestateservice.event.PropertyChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 房产检索索引（内存列存 + 位图）
+ *
+ * 全部房产的检索字段按列保存在不可变快照中，行序号按房产 id 升序：
+ * 城市、类型、在售、出租状态各建一组位图（long[]），多条件筛选为位图按字求与；
+ * 价格、面积各有一个按 (值, id) 排序的序号数组，范围条件二分查找定位区间。
+ * 分页使用游标（上一页最后一条的排序值与 id），翻页代价与页码无关。
+ * 检索只返回一页房产 id，由调用方按 id 批量加载详情。
+ *
+ * 本实例的写入通过 PropertyChangedEvent（提交后）标记脏房产，后台任务按 id 重新加载后在当前快照上修补：
+ * 已有房产原位改写列值与位图，新房产按 id 递增追加到末尾，删除的房产只从全集位图中去掉；
+ * 排序数组只删除/插入变更的行后归并，不重新排序，未改动的位图与数组由新旧快照共享。
+ * 新房产 id 小于已有最大 id、或已删除行过多时整体重新加载。
+ * 其他实例或批量改价通过 updated_at 水位轮询发现，变更过多（如整点重估）时同样整体重新加载。
+ */
+@Service
+@Slf4j
+public class PropertySearchIndex {
+
+    // 已删除行超过总行数的该比例时整体重新加载，回收行序号
+    private static final int MAX_DELETED_RATIO = 4;
+
+    private static final String LOAD_SQL =
+            "SELECT id, city_id, type, current_price, total_area, is_for_sale, is_rented FROM properties " +
+            "WHERE id > ? ORDER BY id LIMIT ?";
+
+    public enum Sort {
+        ID, PRICE_ASC, PRICE_DESC, AREA_ASC, AREA_DESC
+    }
+
+    /**
+     * 检索条件；为空的条件不过滤。价格以分、面积以 0.01 平方米为单位，区间两端均包含
+     */
+    public record Query(Long cityId, String type, Boolean forSale, Boolean rented,
+                        Long minPriceCents, Long maxPriceCents, Long minAreaCenti, Long maxAreaCenti,
+                        Sort sort, String cursor, int size) {}
+
+    /**
+     * 一页检索结果：房产 id（按排序顺序）、下一页游标（没有下一页时为 null）、满足条件的总数
+     */
+    public record Page(long[] ids, String nextCursor, long total) {}
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${real-estate.search.load-page-size:50000}")
+    private int loadPageSize;
+
+    @Value("${real-estate.search.poll-overlap-seconds:2}")
+    private long pollOverlapSeconds;
+
+    @Value("${real-estate.search.full-reload-threshold:10000}")
+    private int fullReloadThreshold;
+
+    @Value("${real-estate.search.max-page-size:100}")
+    private int maxPageSize;
+
+    private final Set<Long> dirtyIds = ConcurrentHashMap.newKeySet();
+    private volatile Snapshot snapshot;
+    private volatile LocalDateTime watermark;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        reloadAll();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPropertyChanged(PropertyChangedEvent event) {
+        dirtyIds.addAll(event.propertyIds());
+    }
+
+    /**
+     * 重新加载本实例写入的脏房产
+     */
+    @Scheduled(fixedDelayString = "${real-estate.search.refresh-interval-ms:500}")
+    public void refreshDirty() {
+        if (snapshot == null || dirtyIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(dirtyIds);
+        dirtyIds.removeAll(ids);
+        try {
+            apply(ids);
+        } catch (Exception e) {
+            dirtyIds.addAll(ids);
+            log.error("刷新房产检索索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按 updated_at 水位拉取其他实例、批量改价或直接改库的变更
+     */
+    @Scheduled(fixedDelayString = "${real-estate.search.poll-interval-ms:5000}")
+    public void pollChanges() {
+        if (snapshot == null) {
+            return;
+        }
+        LocalDateTime since = watermark;
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            // 回退一段重叠时间，避免同一秒内提交的写入被水位跳过
+            List<Long> ids = jdbcTemplate.queryForList(
+                    "SELECT id FROM properties WHERE updated_at >= ? LIMIT ?", Long.class,
+                    Timestamp.valueOf(since.minusSeconds(pollOverlapSeconds)), fullReloadThreshold + 1);
+            if (ids.size() > fullReloadThreshold) {
+                reloadAll();
+                return;
+            }
+            if (!ids.isEmpty()) {
+                apply(ids);
+            }
+            watermark = now;
+        } catch (Exception e) {
+            log.error("拉取房产变更失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 检索一页房产 id
+     */
+    public Page search(Query query) {
+        Snapshot s = snapshot;
+        if (s == null) {
+            throw new RuntimeException("房产检索索引尚未加载");
+        }
+        int size = Math.min(Math.max(query.size(), 1), maxPageSize);
+        try {
+            return s.search(query, size);
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+
+    private synchronized void reloadAll() {
+        long start = System.currentTimeMillis();
+        LocalDateTime loadedAt = LocalDateTime.now();
+        Rows rows = new Rows(1024);
+        long lastId = 0;
+        while (true) {
+            int before = rows.size;
+            long[] last = { lastId };
+            jdbcTemplate.query(LOAD_SQL, rs -> {
+                last[0] = rs.getLong(1);
+                rows.add(rs);
+            }, lastId, loadPageSize);
+            lastId = last[0];
+            if (rows.size - before < loadPageSize) {
+                break;
+            }
+        }
+        snapshot = new Snapshot(rows);
+        watermark = loadedAt;
+        log.info("房产检索索引已加载: {} 处房产, {} ms", rows.size, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 在当前快照上修补变更房产；ids 中查不到的房产视为已删除，无法原位修补时整体重新加载
+     */
+    private synchronized void apply(Collection<Long> ids) {
+        Rows changed = new Rows(ids.size());
+        List<Object> args = new ArrayList<>(ids);
+        jdbcTemplate.query("SELECT id, city_id, type, current_price, total_area, is_for_sale, is_rented FROM properties " +
+                        "WHERE id IN (" + String.join(",", Collections.nCopies(args.size(), "?")) + ")",
+                rs -> { changed.add(rs); }, args.toArray());
+        Set<Long> removed = new HashSet<>(ids);
+        for (int i = 0; i < changed.size; i++) {
+            removed.remove(changed.ids[i]);
+        }
+        Snapshot patched = snapshot.patch(changed, removed);
+        if (patched != null) {
+            snapshot = patched;
+        } else {
+            reloadAll();
+        }
+    }
+
+    /**
+     * 金额或面积转换为索引使用的整数单位（0.01）
+     */
+    public static long toCents(BigDecimal value) {
+        return value == null ? 0 : value.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * 可变列存，用于加载与合并；行按 id 升序
+     */
+    private static final class Rows {
+        private long[] ids;
+        private long[] cityIds;
+        private String[] types;
+        private long[] priceCents;
+        private long[] areaCenti;
+        private boolean[] forSale;
+        private boolean[] rented;
+        private int size;
+
+        private Rows(int capacity) {
+            capacity = Math.max(capacity, 16);
+            ids = new long[capacity];
+            cityIds = new long[capacity];
+            types = new String[capacity];
+            priceCents = new long[capacity];
+            areaCenti = new long[capacity];
+            forSale = new boolean[capacity];
+            rented = new boolean[capacity];
+        }
+
+        private void add(ResultSet rs) throws SQLException {
+            add(rs.getLong(1), rs.getLong(2), rs.getString(3), toCents(rs.getBigDecimal(4)),
+                    toCents(rs.getBigDecimal(5)), rs.getBoolean(6), rs.getBoolean(7));
+        }
+
+        private void add(long id, long cityId, String type, long price, long area, boolean isForSale, boolean isRented) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                cityIds = Arrays.copyOf(cityIds, capacity);
+                types = Arrays.copyOf(types, capacity);
+                priceCents = Arrays.copyOf(priceCents, capacity);
+                areaCenti = Arrays.copyOf(areaCenti, capacity);
+                forSale = Arrays.copyOf(forSale, capacity);
+                rented = Arrays.copyOf(rented, capacity);
+            }
+            ids[size] = id;
+            cityIds[size] = cityId;
+            types[size] = type;
+            priceCents[size] = price;
+            areaCenti[size] = area;
+            forSale[size] = isForSale;
+            rented[size] = isRented;
+            size++;
+        }
+
+        private void copyRow(Rows from, int i) {
+            add(from.ids[i], from.cityIds[i], from.types[i], from.priceCents[i], from.areaCenti[i],
+                    from.forSale[i], from.rented[i]);
+        }
+
+        /**
+         * 复制出一份可写的列存，容量至少为 capacity
+         */
+        private Rows copy(int capacity) {
+            Rows copy = new Rows(0);
+            capacity = Math.max(capacity, 16);
+            copy.ids = Arrays.copyOf(ids, capacity);
+            copy.cityIds = Arrays.copyOf(cityIds, capacity);
+            copy.types = Arrays.copyOf(types, capacity);
+            copy.priceCents = Arrays.copyOf(priceCents, capacity);
+            copy.areaCenti = Arrays.copyOf(areaCenti, capacity);
+            copy.forSale = Arrays.copyOf(forSale, capacity);
+            copy.rented = Arrays.copyOf(rented, capacity);
+            copy.size = size;
+            return copy;
+        }
+
+        /**
+         * 用 from 的第 j 行覆盖第 i 行（i 等于 size 时追加）
+         */
+        private void set(int i, Rows from, int j) {
+            ids[i] = from.ids[j];
+            cityIds[i] = from.cityIds[j];
+            types[i] = from.types[j];
+            priceCents[i] = from.priceCents[j];
+            areaCenti[i] = from.areaCenti[j];
+            forSale[i] = from.forSale[j];
+            rented[i] = from.rented[j];
+            size = Math.max(size, i + 1);
+        }
+    }
+
+    /**
+     * 不可变检索快照
+     */
+    private static final class Snapshot {
+        private final Rows rows;
+        private final int n;
+        private final int words;
+        private final long[] all;
+        private final Map<Long, long[]> byCity;
+        private final Map<String, long[]> byType;
+        private final long[] forSale;
+        private final long[] rented;
+        private final int[] byPrice;
+        private final long[] sortedPrices;
+        private final int[] byArea;
+        private final long[] sortedAreas;
+        private final int deleted;
+
+        private Snapshot(Rows rows, long[] all, Map<Long, long[]> byCity, Map<String, long[]> byType,
+                         long[] forSale, long[] rented, int[] byPrice, long[] sortedPrices,
+                         int[] byArea, long[] sortedAreas, int deleted) {
+            this.rows = rows;
+            this.n = rows.size;
+            this.words = (n + 63) >>> 6;
+            this.all = all;
+            this.byCity = byCity;
+            this.byType = byType;
+            this.forSale = forSale;
+            this.rented = rented;
+            this.byPrice = byPrice;
+            this.sortedPrices = sortedPrices;
+            this.byArea = byArea;
+            this.sortedAreas = sortedAreas;
+            this.deleted = deleted;
+        }
+
+        private Snapshot(Rows rows) {
+            this.rows = rows;
+            this.n = rows.size;
+            this.words = (n + 63) >>> 6;
+            this.deleted = 0;
+            this.byCity = new HashMap<>();
+            this.byType = new HashMap<>();
+            this.all = new long[words];
+            this.forSale = new long[words];
+            this.rented = new long[words];
+            for (int i = 0; i < n; i++) {
+                long bit = 1L << i;
+                int w = i >>> 6;
+                all[w] |= bit;
+                byCity.computeIfAbsent(rows.cityIds[i], k -> new long[words])[w] |= bit;
+                byType.computeIfAbsent(rows.types[i], k -> new long[words])[w] |= bit;
+                if (rows.forSale[i]) {
+                    forSale[w] |= bit;
+                }
+                if (rows.rented[i]) {
+                    rented[w] |= bit;
+                }
+            }
+            this.byPrice = sortedOrdinals(rows.priceCents, n);
+            this.sortedPrices = gather(rows.priceCents, byPrice);
+            this.byArea = sortedOrdinals(rows.areaCenti, n);
+            this.sortedAreas = gather(rows.areaCenti, byArea);
+        }
+
+        /**
+         * 修补出新快照；新房产 id 不大于已有最大 id（会移动行序号）或已删除行过多时返回 null
+         */
+        private Snapshot patch(Rows changed, Set<Long> removed) {
+            Integer[] order = new Integer[changed.size];
+            for (int k = 0; k < order.length; k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(changed.ids[a], changed.ids[b]));
+
+            // 变更行对应的行序号：已有房产沿用原序号，新房产依次追加
+            int[] ordinals = new int[changed.size];
+            long lastId = n > 0 ? rows.ids[n - 1] : Long.MIN_VALUE;
+            int newN = n;
+            for (int c : order) {
+                int i = Arrays.binarySearch(rows.ids, 0, n, changed.ids[c]);
+                if (i < 0) {
+                    if (changed.ids[c] <= lastId) {
+                        return null;
+                    }
+                    i = newN++;
+                    lastId = changed.ids[c];
+                }
+                ordinals[c] = i;
+            }
+
+            int newWords = (newN + 63) >>> 6;
+            Rows next = rows.copy(newN);
+            long[] newAll = Arrays.copyOf(all, newWords);
+            long[] newForSale = Arrays.copyOf(forSale, newWords);
+            long[] newRented = Arrays.copyOf(rented, newWords);
+            Map<Long, long[]> newByCity = new HashMap<>(byCity);
+            Map<String, long[]> newByType = new HashMap<>(byType);
+            Set<Long> copiedCities = new HashSet<>();
+            Set<String> copiedTypes = new HashSet<>();
+            if (newWords != words) {
+                newByCity.replaceAll((k, v) -> Arrays.copyOf(v, newWords));
+                newByType.replaceAll((k, v) -> Arrays.copyOf(v, newWords));
+                copiedCities.addAll(newByCity.keySet());
+                copiedTypes.addAll(newByType.keySet());
+            }
+
+            int newDeleted = deleted;
+            for (Long id : removed) {
+                int i = Arrays.binarySearch(rows.ids, 0, n, id);
+                if (i >= 0 && (newAll[i >>> 6] & (1L << i)) != 0) {
+                    newAll[i >>> 6] &= ~(1L << i);
+                    newDeleted++;
+                }
+            }
+
+            List<Integer> pricesMoved = new ArrayList<>();
+            List<Integer> areasMoved = new ArrayList<>();
+            for (int c = 0; c < changed.size; c++) {
+                int i = ordinals[c];
+                int w = i >>> 6;
+                long bit = 1L << i;
+                if (i < n) {
+                    if ((all[w] & bit) == 0) {
+                        newDeleted--;
+                    }
+                    writable(newByCity, copiedCities, rows.cityIds[i], newWords)[w] &= ~bit;
+                    writable(newByType, copiedTypes, rows.types[i], newWords)[w] &= ~bit;
+                    newForSale[w] &= ~bit;
+                    newRented[w] &= ~bit;
+                }
+                if (i >= n || rows.priceCents[i] != changed.priceCents[c]) {
+                    pricesMoved.add(c);
+                }
+                if (i >= n || rows.areaCenti[i] != changed.areaCenti[c]) {
+                    areasMoved.add(c);
+                }
+                next.set(i, changed, c);
+                newAll[w] |= bit;
+                writable(newByCity, copiedCities, changed.cityIds[c], newWords)[w] |= bit;
+                writable(newByType, copiedTypes, changed.types[c], newWords)[w] |= bit;
+                if (changed.forSale[c]) {
+                    newForSale[w] |= bit;
+                }
+                if (changed.rented[c]) {
+                    newRented[w] |= bit;
+                }
+            }
+            if (newDeleted * MAX_DELETED_RATIO > newN) {
+                return null;
+            }
+
+            int[] newByPrice = byPrice;
+            long[] newSortedPrices = sortedPrices;
+            if (!pricesMoved.isEmpty()) {
+                long[][] patched = patchSorted(byPrice, sortedPrices, pricesMoved, ordinals, rows.priceCents,
+                        changed.priceCents);
+                newByPrice = toOrdinals(patched[0]);
+                newSortedPrices = patched[1];
+            }
+            int[] newByArea = byArea;
+            long[] newSortedAreas = sortedAreas;
+            if (!areasMoved.isEmpty()) {
+                long[][] patched = patchSorted(byArea, sortedAreas, areasMoved, ordinals, rows.areaCenti,
+                        changed.areaCenti);
+                newByArea = toOrdinals(patched[0]);
+                newSortedAreas = patched[1];
+            }
+            return new Snapshot(next, newAll, newByCity, newByType, newForSale, newRented,
+                    newByPrice, newSortedPrices, newByArea, newSortedAreas, newDeleted);
+        }
+
+        /**
+         * 在按 (值, 行序号) 排序的数组上删除 moved 行的旧位置、按新值插入后归并，
+         * 返回 {行序号, 值} 两个数组
+         */
+        private long[][] patchSorted(int[] order, long[] sorted, List<Integer> moved, int[] ordinals,
+                                     long[] oldValues, long[] newValues) {
+            boolean[] skip = new boolean[order.length];
+            int skipped = 0;
+            long[] inserts = new long[moved.size() * 2];
+            Integer[] insertOrder = new Integer[moved.size()];
+            for (int k = 0; k < moved.size(); k++) {
+                int c = moved.get(k);
+                int i = ordinals[c];
+                if (i < n) {
+                    int pos = locate(order, sorted, oldValues[i], i);
+                    skip[pos] = true;
+                    skipped++;
+                }
+                inserts[2 * k] = newValues[c];
+                inserts[2 * k + 1] = i;
+                insertOrder[k] = k;
+            }
+            Arrays.sort(insertOrder, (a, b) -> compareKey(inserts[2 * a], inserts[2 * a + 1],
+                    inserts[2 * b], inserts[2 * b + 1]));
+
+            int size = order.length - skipped + moved.size();
+            long[] mergedOrder = new long[size];
+            long[] mergedValues = new long[size];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < order.length || j < insertOrder.length) {
+                if (i < order.length && skip[i]) {
+                    i++;
+                } else if (j == insertOrder.length || (i < order.length && compareKey(sorted[i], order[i],
+                        inserts[2 * insertOrder[j]], inserts[2 * insertOrder[j] + 1]) < 0)) {
+                    mergedOrder[k] = order[i];
+                    mergedValues[k++] = sorted[i++];
+                } else {
+                    int in = insertOrder[j++];
+                    mergedOrder[k] = inserts[2 * in + 1];
+                    mergedValues[k++] = inserts[2 * in];
+                }
+            }
+            return new long[][] { mergedOrder, mergedValues };
+        }
+
+        /**
+         * 排序数组中 (value, ordinal) 所在的位置
+         */
+        private static int locate(int[] order, long[] sorted, long value, int ordinal) {
+            int lo = 0;
+            int hi = order.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareKey(sorted[mid], order[mid], value, ordinal) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private static int compareKey(long value, long ordinal, long otherValue, long otherOrdinal) {
+            return value != otherValue ? Long.compare(value, otherValue) : Long.compare(ordinal, otherOrdinal);
+        }
+
+        private static int[] toOrdinals(long[] values) {
+            int[] ordinals = new int[values.length];
+            for (int k = 0; k < values.length; k++) {
+                ordinals[k] = (int) values[k];
+            }
+            return ordinals;
+        }
+
+        /**
+         * 取出可改写的位图：与旧快照共享的位图先复制一份，不存在时新建
+         */
+        private static <K> long[] writable(Map<K, long[]> bitmaps, Set<K> copied, K key, int words) {
+            if (copied.add(key)) {
+                long[] bitmap = bitmaps.get(key);
+                bitmaps.put(key, bitmap != null ? bitmap.clone() : new long[words]);
+            }
+            return bitmaps.get(key);
+        }
+
+        private Page search(Query q, int size) {
+            long[] filter = filter(q);
+            long minPrice = q.minPriceCents() != null ? q.minPriceCents() : Long.MIN_VALUE;
+            long maxPrice = q.maxPriceCents() != null ? q.maxPriceCents() : Long.MAX_VALUE;
+            long minArea = q.minAreaCenti() != null ? q.minAreaCenti() : Long.MIN_VALUE;
+            long maxArea = q.maxAreaCenti() != null ? q.maxAreaCenti() : Long.MAX_VALUE;
+            if (filter == null || minPrice > maxPrice || minArea > maxArea) {
+                return new Page(new long[0], null, 0);
+            }
+            int priceLo = lowerBound(sortedPrices, minPrice);
+            int priceHi = upperBound(sortedPrices, maxPrice);
+            int areaLo = lowerBound(sortedAreas, minArea);
+            int areaHi = upperBound(sortedAreas, maxArea);
+            Sort sort = q.sort() != null ? q.sort() : Sort.ID;
+
+            int[] hits = new int[size + 1];
+            int count;
+            switch (sort) {
+                case PRICE_ASC, PRICE_DESC -> count = scanSorted(byPrice, sortedPrices, priceLo, priceHi,
+                        sort == Sort.PRICE_DESC, q.cursor(), filter, rows.areaCenti, minArea, maxArea, hits);
+                case AREA_ASC, AREA_DESC -> count = scanSorted(byArea, sortedAreas, areaLo, areaHi,
+                        sort == Sort.AREA_DESC, q.cursor(), filter, rows.priceCents, minPrice, maxPrice, hits);
+                default -> count = scanById(q.cursor(), filter, minPrice, maxPrice, minArea, maxArea, hits);
+            }
+
+            int pageSize = Math.min(count, size);
+            long[] ids = new long[pageSize];
+            for (int i = 0; i < pageSize; i++) {
+                ids[i] = rows.ids[hits[i]];
+            }
+            String nextCursor = count > size ? cursorOf(sort, hits[size - 1]) : null;
+            long total = count(filter, minPrice, maxPrice, minArea, maxArea, priceLo, priceHi, areaLo, areaHi);
+            return new Page(ids, nextCursor, total);
+        }
+
+        /**
+         * 离散条件的位图求与；条件值不存在时返回 null（无结果）
+         */
+        private long[] filter(Query q) {
+            List<long[]> and = new ArrayList<>(4);
+            if (q.cityId() != null) {
+                long[] bitmap = byCity.get(q.cityId());
+                if (bitmap == null) {
+                    return null;
+                }
+                and.add(bitmap);
+            }
+            if (q.type() != null) {
+                long[] bitmap = byType.get(q.type());
+                if (bitmap == null) {
+                    return null;
+                }
+                and.add(bitmap);
+            }
+            long[] result = all.clone();
+            for (long[] bitmap : and) {
+                for (int w = 0; w < words; w++) {
+                    result[w] &= bitmap[w];
+                }
+            }
+            if (q.forSale() != null) {
+                applyFlag(result, forSale, q.forSale());
+            }
+            if (q.rented() != null) {
+                applyFlag(result, rented, q.rented());
+            }
+            return result;
+        }
+
+        private void applyFlag(long[] result, long[] flag, boolean expected) {
+            for (int w = 0; w < words; w++) {
+                result[w] &= expected ? flag[w] : ~flag[w];
+            }
+        }
+
+        /**
+         * 按 id 顺序：从游标之后的行序号开始遍历位图
+         */
+        private int scanById(String cursor, long[] filter, long minPrice, long maxPrice, long minArea, long maxArea, int[] hits) {
+            int start = 0;
+            if (cursor != null) {
+                long afterId = Long.parseLong(cursor);
+                start = Arrays.binarySearch(rows.ids, 0, n, afterId);
+                start = start >= 0 ? start + 1 : -start - 1;
+            }
+            int count = 0;
+            for (int i = nextSetBit(filter, start); i >= 0 && count < hits.length; i = nextSetBit(filter, i + 1)) {
+                long price = rows.priceCents[i];
+                long area = rows.areaCenti[i];
+                if (price >= minPrice && price <= maxPrice && area >= minArea && area <= maxArea) {
+                    hits[count++] = i;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 按排序数组遍历 [lo, hi) 区间（降序时倒序），跳过游标之前的部分，检查位图与另一维的范围
+         */
+        private int scanSorted(int[] order, long[] sorted, int lo, int hi, boolean descending, String cursor,
+                               long[] filter, long[] otherColumn, long otherMin, long otherMax, int[] hits) {
+            if (cursor != null) {
+                int sep = cursor.indexOf(':');
+                long value = Long.parseLong(cursor.substring(0, sep));
+                long afterId = Long.parseLong(cursor.substring(sep + 1));
+                if (descending) {
+                    hi = Math.min(hi, position(order, sorted, value, afterId, false));
+                } else {
+                    lo = Math.max(lo, position(order, sorted, value, afterId, true));
+                }
+            }
+            int count = 0;
+            for (int k = 0; k < hi - lo && count < hits.length; k++) {
+                int i = order[descending ? hi - 1 - k : lo + k];
+                if ((filter[i >>> 6] & (1L << i)) != 0) {
+                    long other = otherColumn[i];
+                    if (other >= otherMin && other <= otherMax) {
+                        hits[count++] = i;
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 排序数组中第一个 (值, id) 大于（after 为 false 时为不小于）(value, id) 的位置
+         */
+        private int position(int[] order, long[] sorted, long value, long id, boolean after) {
+            int lo = 0;
+            int hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                long v = sorted[mid];
+                long midId = rows.ids[order[mid]];
+                if (v < value || (v == value && (after ? midId <= id : midId < id))) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private String cursorOf(Sort sort, int ordinal) {
+            long id = rows.ids[ordinal];
+            return switch (sort) {
+                case PRICE_ASC, PRICE_DESC -> rows.priceCents[ordinal] + ":" + id;
+                case AREA_ASC, AREA_DESC -> rows.areaCenti[ordinal] + ":" + id;
+                default -> Long.toString(id);
+            };
+        }
+
+        /**
+         * 满足条件的总数：无范围条件时为位图基数，否则遍历位图与范围区间中较小的一方
+         */
+        private long count(long[] filter, long minPrice, long maxPrice, long minArea, long maxArea,
+                           int priceLo, int priceHi, int areaLo, int areaHi) {
+            boolean priceRange = priceHi - priceLo < n;
+            boolean areaRange = areaHi - areaLo < n;
+            long cardinality = 0;
+            for (long word : filter) {
+                cardinality += Long.bitCount(word);
+            }
+            if (!priceRange && !areaRange) {
+                return cardinality;
+            }
+            int priceWidth = priceHi - priceLo;
+            int areaWidth = areaHi - areaLo;
+            long total = 0;
+            if (Math.min(priceWidth, areaWidth) < cardinality) {
+                boolean usePrice = priceWidth <= areaWidth;
+                int[] order = usePrice ? byPrice : byArea;
+                int lo = usePrice ? priceLo : areaLo;
+                int hi = usePrice ? priceHi : areaHi;
+                long[] other = usePrice ? rows.areaCenti : rows.priceCents;
+                long otherMin = usePrice ? minArea : minPrice;
+                long otherMax = usePrice ? maxArea : maxPrice;
+                for (int k = lo; k < hi; k++) {
+                    int i = order[k];
+                    if ((filter[i >>> 6] & (1L << i)) != 0 && other[i] >= otherMin && other[i] <= otherMax) {
+                        total++;
+                    }
+                }
+            } else {
+                for (int i = nextSetBit(filter, 0); i >= 0; i = nextSetBit(filter, i + 1)) {
+                    long price = rows.priceCents[i];
+                    long area = rows.areaCenti[i];
+                    if (price >= minPrice && price <= maxPrice && area >= minArea && area <= maxArea) {
+                        total++;
+                    }
+                }
+            }
+            return total;
+        }
+
+        private int nextSetBit(long[] bitmap, int from) {
+            int w = from >>> 6;
+            if (w >= words) {
+                return -1;
+            }
+            long word = bitmap[w] & (-1L << from);
+            while (true) {
+                if (word != 0) {
+                    return (w << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++w == words) {
+                    return -1;
+                }
+                word = bitmap[w];
+            }
+        }
+
+        /**
+         * 行序号按 (值, 行序号) 排序；行序号即 id 顺序，同值按 id 升序
+         */
+        private static int[] sortedOrdinals(long[] values, int n) {
+            int bits = 32 - Integer.numberOfLeadingZeros(Math.max(n, 1));
+            long max = 0;
+            for (int i = 0; i < n; i++) {
+                max = Math.max(max, values[i]);
+            }
+            boolean packable = max < (1L << (62 - bits));
+            for (int i = 0; i < n && packable; i++) {
+                packable = values[i] >= 0;
+            }
+            int[] order = new int[n];
+            if (packable) {
+                // 值与行序号打包进一个 long 后并行排序，避免装箱
+                long[] keys = new long[n];
+                for (int i = 0; i < n; i++) {
+                    keys[i] = (values[i] << bits) | i;
+                }
+                Arrays.parallelSort(keys);
+                long mask = (1L << bits) - 1;
+                for (int i = 0; i < n; i++) {
+                    order[i] = (int) (keys[i] & mask);
+                }
+            } else {
+                Integer[] boxed = new Integer[n];
+                for (int i = 0; i < n; i++) {
+                    boxed[i] = i;
+                }
+                Arrays.sort(boxed, (a, b) -> values[a] != values[b] ? Long.compare(values[a], values[b]) : Integer.compare(a, b));
+                for (int i = 0; i < n; i++) {
+                    order[i] = boxed[i];
+                }
+            }
+            return order;
+        }
+
+        private static long[] gather(long[] values, int[] order) {
+            long[] sorted = new long[order.length];
+            for (int k = 0; k < order.length; k++) {
+                sorted[k] = values[order[k]];
+            }
+            return sorted;
+        }
+
+        private static int lowerBound(long[] sorted, long value) {
+            int lo = 0;
+            int hi = sorted.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sorted[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private static int upperBound(long[] sorted, long value) {
+            int lo = 0;
+            int hi = sorted.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sorted[mid] <= value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.financelab.realestateservice.service;
 import com.financelab.realestateservice.dto.PropertyDTO;
 import com.financelab.realestateservice.dto.PropertyTransactionDTO;
 import com.financelab.realestateservice.dto.CityDTO;
+import com.financelab.realestateservice.dto.PropertyPageDTO;
+import com.financelab.realestateservice.dto.PropertyLedgerEntryDTO;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -20,6 +22,10 @@ public interface RealEstateService {
     List<PropertyDTO> getPropertiesForSale();
     List<PropertyDTO> getUserProperties(String userId);
     PropertyDTO getPropertyById(Long propertyId);
+    PropertyPageDTO searchProperties(PropertySearchIndex.Query query);
+    PropertyPageDTO getPropertiesForSaleByCity(Long cityId, String cursor, int size);
+    PropertyPageDTO getPropertiesForSaleByPriceRange(BigDecimal minPrice, BigDecimal maxPrice, String cursor, int size);
+    PropertyPageDTO getPropertiesForSaleByPrice(boolean descending, String cursor, int size);
     
     // 房产交易
     PropertyTransactionDTO purchaseProperty(String userId, Long propertyId, BigDecimal purchasePrice);
@@ -41,4 +47,5 @@ public interface RealEstateService {
     BigDecimal calculateUserNetWorth(String userId);
     BigDecimal calculateUserMonthlyIncome(String userId);
     BigDecimal calculateUserMonthlyExpenses(String userId);
+    List<PropertyLedgerEntryDTO> getUserLedger(String userId, String period);
 }
\ No newline at end of file
@@ -0,0 +1,273 @@
+package com.financelab.realestateservice.service;
+
+import com.financelab.realestateservice.entity.PropertyLedgerEntry.EntryType;
+import com.financelab.realestateservice.event.PropertyChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 租约生命周期与月度现金流入账
+ *
+ * 租约即 type = 'RENT' 的交易，rental_ended_at 为空表示生效中。
+ * 到期任务按批领取已过 rental_end_date 的生效租约（FOR UPDATE SKIP LOCKED），在一个事务中
+ * 结束租约、释放房产出租状态并扣减业主的月租金汇总。
+ *
+ * 入账任务每天运行，补记尚未入账的部分：租金在次月按上月实际租住天数折算入账（月中起租、到期或退租的租约
+ * 只计租住的天数），按主键分页遍历与上月有交集的租约，为业主记租金收入、为租客记租金支出；
+ * 按业主分页遍历 owner_cash_flows，记一笔当月的维护费与房产税。每页一个事务，台账以
+ * (月份, 类型, 用户, 来源) 唯一键 INSERT IGNORE 写入，并在租约 / 汇总行上记下已入账月份，
+ * 重复运行或多实例并发都不会重复入账。
+ *
+ * 台账行写入时为待结算状态，由 LedgerSettlementService 投递到 bank-service 记到用户的银行账户。
+ */
+@Service
+@Slf4j
+public class RentalLifecycleService {
+
+    // 租约是否仍占用房产：房产处于出租状态且之后没有新的租约（升级前退租的旧租约没有结束时间）
+    private static final String CURRENT_LEASE_CONDITION =
+            "p.is_rented = TRUE AND NOT EXISTS (SELECT 1 FROM property_transactions n " +
+            "WHERE n.property_id = t.property_id AND n.type = 'RENT' AND n.id > t.id)";
+
+    private static final String CLAIM_EXPIRED_SQL =
+            "SELECT t.id, t.property_id, t.seller_id, p.rental_income, " + CURRENT_LEASE_CONDITION + " FROM property_transactions t " +
+            "JOIN properties p ON p.id = t.property_id " +
+            "WHERE t.rental_ended_at IS NULL AND t.type = 'RENT' AND t.status = 'COMPLETED' AND t.rental_end_date < ? " +
+            "ORDER BY t.rental_end_date LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    // 与入账月份有交集的租约（已结束的租约按实际结束时间计，rental_ended_at 不晚于 rental_end_date）
+    private static final String PERIOD_LEASES_SQL =
+            "SELECT t.id, t.property_id, t.buyer_id, t.seller_id, p.rental_income, " +
+            "COALESCE(t.rental_start_date, t.transaction_date), COALESCE(t.rental_ended_at, t.rental_end_date) " +
+            "FROM property_transactions t JOIN properties p ON p.id = t.property_id " +
+            "WHERE t.type = 'RENT' AND t.status = 'COMPLETED' AND t.id > ? " +
+            "AND COALESCE(t.rental_start_date, t.transaction_date) < ? AND t.rental_end_date > ? " +
+            "AND (t.rent_posted_through IS NULL OR t.rent_posted_through < ?) " +
+            "AND (t.rental_ended_at IS NOT NULL OR " + CURRENT_LEASE_CONDITION + ") ORDER BY t.id LIMIT ?";
+
+    private static final String UNPOSTED_EXPENSES_SQL =
+            "SELECT owner_id, monthly_expenses FROM owner_cash_flows WHERE owner_id > ? AND monthly_expenses > 0 " +
+            "AND (expenses_posted_through IS NULL OR expenses_posted_through < ?) ORDER BY owner_id LIMIT ?";
+
+    private static final String LEDGER_INSERT_SQL =
+            "INSERT IGNORE INTO property_ledger_entries (period, user_id, entry_type, amount, property_id, source_id, created_at, " +
+            "settlement_status, settlement_attempts, next_settlement_at) VALUES (?, ?, ?, ?, ?, ?, ?, 'PENDING', 0, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private OwnerCashFlowService ownerCashFlowService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${real-estate.rental.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 结束已到期的租约，直到没有满批的到期租约
+     */
+    @Scheduled(fixedDelayString = "${real-estate.rental.expire-interval-ms:60000}")
+    public void expireRentals() {
+        try {
+            int total = 0;
+            Integer expired;
+            do {
+                expired = transactionTemplate.execute(status -> expireBatch());
+                total += expired != null ? expired : 0;
+            } while (expired != null && expired >= batchSize);
+            if (total > 0) {
+                log.info("租约到期处理完成: {} 份", total);
+            }
+        } catch (Exception e) {
+            log.error("处理到期租约失败", e);
+        }
+    }
+
+    /**
+     * 补记上月的租金与当月的持有支出
+     */
+    @Scheduled(cron = "${real-estate.rental.posting-cron:0 0 1 * * *}")
+    public void postMonthlyCashFlows() {
+        YearMonth rentPeriod = YearMonth.now().minusMonths(1);
+        String expensePeriod = YearMonth.now().toString();
+        try {
+            int leases = postRents(rentPeriod);
+            int owners = postHoldingExpenses(expensePeriod);
+            if (leases > 0 || owners > 0) {
+                log.info("月度现金流入账完成: 租金月份 {}, 租约 {} 份, 支出月份 {}, 业主支出 {} 笔",
+                        rentPeriod, leases, expensePeriod, owners);
+            }
+        } catch (Exception e) {
+            log.error("月度现金流入账失败: 租金月份 {}, 支出月份 {}", rentPeriod, expensePeriod, e);
+        }
+    }
+
+    /**
+     * 按租约在入账月份内的租住天数折算月租金：起租当天计入，结束当天不计
+     */
+    static BigDecimal proratedRent(BigDecimal monthlyRent, YearMonth period, LocalDateTime start, LocalDateTime end) {
+        LocalDate monthStart = period.atDay(1);
+        LocalDate nextMonthStart = period.plusMonths(1).atDay(1);
+        LocalDate from = start.toLocalDate().isAfter(monthStart) ? start.toLocalDate() : monthStart;
+        LocalDate to = end.toLocalDate().isBefore(nextMonthStart) ? end.toLocalDate() : nextMonthStart;
+        long days = ChronoUnit.DAYS.between(from, to);
+        if (days <= 0) {
+            return BigDecimal.ZERO;
+        }
+        if (days >= period.lengthOfMonth()) {
+            return monthlyRent;
+        }
+        return monthlyRent.multiply(BigDecimal.valueOf(days))
+                .divide(BigDecimal.valueOf(period.lengthOfMonth()), 2, RoundingMode.HALF_UP);
+    }
+
+    private int expireBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> leases = jdbcTemplate.query(CLAIM_EXPIRED_SQL,
+                (rs, rowNum) -> new Object[] { rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getBigDecimal(4), rs.getBoolean(5) },
+                Timestamp.valueOf(now), batchSize);
+        if (leases.isEmpty()) {
+            return 0;
+        }
+
+        List<Object> leaseIds = new ArrayList<>(leases.size());
+        List<Long> propertyIds = new ArrayList<>(leases.size());
+        Map<String, BigDecimal> incomeLost = new HashMap<>();
+        Map<String, Integer> rentedLost = new HashMap<>();
+        for (Object[] lease : leases) {
+            leaseIds.add(lease[0]);
+            if (!(Boolean) lease[4]) {
+                continue;
+            }
+            propertyIds.add((Long) lease[1]);
+            String ownerId = (String) lease[2];
+            if (ownerId != null) {
+                incomeLost.merge(ownerId, OwnerCashFlowService.orZero((BigDecimal) lease[3]), BigDecimal::add);
+                rentedLost.merge(ownerId, 1, Integer::sum);
+            }
+        }
+
+        jdbcTemplate.update("UPDATE property_transactions SET rental_ended_at = rental_end_date WHERE id IN (" +
+                String.join(",", Collections.nCopies(leaseIds.size(), "?")) + ")", leaseIds.toArray());
+        if (propertyIds.isEmpty()) {
+            return leases.size();
+        }
+        List<Object> args = new ArrayList<>(propertyIds.size() + 1);
+        args.add(Timestamp.valueOf(now));
+        args.addAll(propertyIds);
+        jdbcTemplate.update("UPDATE properties SET is_rented = FALSE, updated_at = ? WHERE id IN (" +
+                String.join(",", Collections.nCopies(propertyIds.size(), "?")) + ")", args.toArray());
+
+        List<OwnerCashFlowService.Delta> deltas = new ArrayList<>(incomeLost.size());
+        incomeLost.forEach((ownerId, income) -> deltas.add(new OwnerCashFlowService.Delta(ownerId, income.negate(),
+                BigDecimal.ZERO, 0, -rentedLost.get(ownerId))));
+        ownerCashFlowService.apply(deltas);
+        eventPublisher.publishEvent(new PropertyChangedEvent(propertyIds));
+        return leases.size();
+    }
+
+    private int postRents(YearMonth rentPeriod) {
+        String period = rentPeriod.toString();
+        Timestamp periodStart = Timestamp.valueOf(rentPeriod.atDay(1).atStartOfDay());
+        Timestamp periodEnd = Timestamp.valueOf(rentPeriod.plusMonths(1).atDay(1).atStartOfDay());
+        int total = 0;
+        long lastId = 0;
+        while (true) {
+            long afterId = lastId;
+            List<Object[]> leases = jdbcTemplate.query(PERIOD_LEASES_SQL,
+                    (rs, rowNum) -> new Object[] { rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getString(4),
+                            proratedRent(OwnerCashFlowService.orZero(rs.getBigDecimal(5)), rentPeriod,
+                                    rs.getTimestamp(6).toLocalDateTime(), rs.getTimestamp(7).toLocalDateTime()) },
+                    afterId, periodEnd, periodStart, period, batchSize);
+            if (leases.isEmpty()) {
+                break;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                List<Object[]> entries = new ArrayList<>(leases.size() * 2);
+                List<Object> leaseIds = new ArrayList<>(leases.size() + 1);
+                leaseIds.add(period);
+                for (Object[] lease : leases) {
+                    BigDecimal rent = (BigDecimal) lease[4];
+                    leaseIds.add(lease[0]);
+                    if (rent.signum() == 0) {
+                        continue;
+                    }
+                    if (lease[3] != null) {
+                        entries.add(new Object[] { period, lease[3], EntryType.RENT_INCOME.name(), rent, lease[1], lease[0], now, now });
+                    }
+                    entries.add(new Object[] { period, lease[2], EntryType.RENT_PAYMENT.name(), rent.negate(), lease[1], lease[0], now, now });
+                }
+                if (!entries.isEmpty()) {
+                    jdbcTemplate.batchUpdate(LEDGER_INSERT_SQL, entries);
+                }
+                jdbcTemplate.update("UPDATE property_transactions SET rent_posted_through = ? WHERE id IN (" +
+                        String.join(",", Collections.nCopies(leases.size(), "?")) + ")", leaseIds.toArray());
+            });
+            total += leases.size();
+            lastId = (Long) leases.get(leases.size() - 1)[0];
+            if (leases.size() < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private int postHoldingExpenses(String period) {
+        int total = 0;
+        String lastOwnerId = "";
+        while (true) {
+            String afterOwnerId = lastOwnerId;
+            List<Object[]> owners = jdbcTemplate.query(UNPOSTED_EXPENSES_SQL,
+                    (rs, rowNum) -> new Object[] { rs.getString(1), rs.getBigDecimal(2) },
+                    afterOwnerId, period, batchSize);
+            if (owners.isEmpty()) {
+                break;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                List<Object[]> entries = new ArrayList<>(owners.size());
+                List<Object> ownerIds = new ArrayList<>(owners.size() + 1);
+                ownerIds.add(period);
+                for (Object[] owner : owners) {
+                    ownerIds.add(owner[0]);
+                    entries.add(new Object[] { period, owner[0], EntryType.HOLDING_EXPENSE.name(),
+                            ((BigDecimal) owner[1]).negate(), null, 0L, now, now });
+                }
+                jdbcTemplate.batchUpdate(LEDGER_INSERT_SQL, entries);
+                jdbcTemplate.update("UPDATE owner_cash_flows SET expenses_posted_through = ? WHERE owner_id IN (" +
+                        String.join(",", Collections.nCopies(owners.size(), "?")) + ")", ownerIds.toArray());
+            });
+            total += owners.size();
+            lastOwnerId = (String) owners.get(owners.size() - 1)[0];
+            if (owners.size() < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+}
@@ -1,26 +1,39 @@
 package com.financelab.realestateservice.service.impl;
 
+import com.financelab.common.event.AssetChangePublisher;
 import com.financelab.realestateservice.dto.CityDTO;
 import com.financelab.realestateservice.dto.PropertyDTO;
+import com.financelab.realestateservice.dto.PropertyLedgerEntryDTO;
+import com.financelab.realestateservice.dto.PropertyPageDTO;
 import com.financelab.realestateservice.dto.PropertyTransactionDTO;
 import com.financelab.realestateservice.entity.City;
 import com.financelab.realestateservice.entity.Property;
+import com.financelab.realestateservice.entity.PropertyLedgerEntry;
 import com.financelab.realestateservice.entity.PropertyPriceHistory;
 import com.financelab.realestateservice.entity.PropertyTransaction;
+import com.financelab.realestateservice.event.PropertyChangedEvent;
 import com.financelab.realestateservice.repository.CityRepository;
+import com.financelab.realestateservice.repository.PropertyLedgerEntryRepository;
 import com.financelab.realestateservice.repository.PropertyPriceHistoryRepository;
 import com.financelab.realestateservice.repository.PropertyRepository;
 import com.financelab.realestateservice.repository.PropertyTransactionRepository;
+import com.financelab.realestateservice.service.OwnerCashFlowService;
+import com.financelab.realestateservice.service.PropertySearchIndex;
 import com.financelab.realestateservice.service.RealEstateService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -39,6 +52,21 @@ public class RealEstateServiceImpl implements RealEstateService {
     @Autowired
     private PropertyPriceHistoryRepository priceHistoryRepository;
     
+    @Autowired
+    private AssetChangePublisher assetChangePublisher;
+    
+    @Autowired
+    private PropertySearchIndex propertySearchIndex;
+    
+    @Autowired
+    private OwnerCashFlowService ownerCashFlowService;
+    
+    @Autowired
+    private PropertyLedgerEntryRepository ledgerEntryRepository;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
     @Override
     public List<CityDTO> getAllCities() {
         return cityRepository.findAll().stream()
@@ -95,6 +123,41 @@ public class RealEstateServiceImpl implements RealEstateService {
         return convertToPropertyDTO(property);
     }
     
+    @Override
+    public PropertyPageDTO searchProperties(PropertySearchIndex.Query query) {
+        PropertySearchIndex.Page page = propertySearchIndex.search(query);
+        List<Long> ids = Arrays.stream(page.ids()).boxed().collect(Collectors.toList());
+        Map<Long, Property> properties = propertyRepository.findAllWithCityByIdIn(ids).stream()
+                .collect(Collectors.toMap(Property::getId, Function.identity()));
+        // 按索引给出的顺序返回；索引刷新前已删除的房产跳过
+        List<PropertyDTO> items = ids.stream()
+                .map(properties::get)
+                .filter(Objects::nonNull)
+                .map(this::convertToPropertyDTO)
+                .collect(Collectors.toList());
+        return new PropertyPageDTO(items, page.nextCursor(), page.total());
+    }
+    
+    @Override
+    public PropertyPageDTO getPropertiesForSaleByCity(Long cityId, String cursor, int size) {
+        return searchProperties(new PropertySearchIndex.Query(cityId, null, true, null,
+                null, null, null, null, PropertySearchIndex.Sort.ID, cursor, size));
+    }
+    
+    @Override
+    public PropertyPageDTO getPropertiesForSaleByPriceRange(BigDecimal minPrice, BigDecimal maxPrice, String cursor, int size) {
+        return searchProperties(new PropertySearchIndex.Query(null, null, true, null,
+                PropertySearchIndex.toCents(minPrice), PropertySearchIndex.toCents(maxPrice), null, null,
+                PropertySearchIndex.Sort.PRICE_ASC, cursor, size));
+    }
+    
+    @Override
+    public PropertyPageDTO getPropertiesForSaleByPrice(boolean descending, String cursor, int size) {
+        return searchProperties(new PropertySearchIndex.Query(null, null, true, null,
+                null, null, null, null,
+                descending ? PropertySearchIndex.Sort.PRICE_DESC : PropertySearchIndex.Sort.PRICE_ASC, cursor, size));
+    }
+    
     @Override
     @Transactional
     public PropertyTransactionDTO purchaseProperty(String userId, Long propertyId, BigDecimal purchasePrice) {
@@ -109,6 +172,17 @@ public class RealEstateServiceImpl implements RealEstateService {
             throw new RuntimeException("该房产已被购买");
         }
         
+        // 与竞价相同的底价：成交价不得低于挂牌价
+        if (purchasePrice == null || purchasePrice.compareTo(property.getCurrentPrice()) < 0) {
+            throw new RuntimeException("出价低于挂牌价 " + property.getCurrentPrice());
+        }
+        
+        // 条件更新：房产仍为系统所有、在售且挂牌价未涨过成交价时才成交，同时购买的请求只有一个成功
+        if (propertyRepository.claimForPurchase(propertyId, userId, purchasePrice, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("该房产已被购买或挂牌价已变化，请刷新后重试");
+        }
+        property = reloadProperty(propertyId);
+        
         // 创建交易记录
         PropertyTransaction transaction = new PropertyTransaction();
         transaction.setProperty(property);
@@ -121,11 +195,10 @@ public class RealEstateServiceImpl implements RealEstateService {
         transaction.setTransactionDate(LocalDateTime.now());
         transaction.setStatus("COMPLETED");
         
-        // 更新房产信息
-        property.setOwnerId(userId);
-        property.setIsForSale(false);
-        property.setPurchasePrice(purchasePrice);
-        propertyRepository.save(property);
+        eventPublisher.publishEvent(new PropertyChangedEvent(List.of(propertyId)));
+        ownerCashFlowService.apply(new OwnerCashFlowService.Delta(userId, BigDecimal.ZERO,
+                OwnerCashFlowService.holdingExpense(property.getMaintenanceCost(), property.getPropertyTax()), 1, 0));
+        assetChangePublisher.publish(userId);
         
         PropertyTransaction savedTransaction = transactionRepository.save(transaction);
         return convertToTransactionDTO(savedTransaction);
@@ -145,6 +218,11 @@ public class RealEstateServiceImpl implements RealEstateService {
             throw new RuntimeException("该房产已出租，无法出售");
         }
         
+        if (propertyRepository.releaseForSale(propertyId, userId, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("房产状态已变化，请刷新后重试");
+        }
+        property = reloadProperty(propertyId);
+        
         // 创建交易记录
         PropertyTransaction transaction = new PropertyTransaction();
         transaction.setProperty(property);
@@ -157,10 +235,10 @@ public class RealEstateServiceImpl implements RealEstateService {
         transaction.setTransactionDate(LocalDateTime.now());
         transaction.setStatus("COMPLETED");
         
-        // 更新房产信息
-        property.setOwnerId(null);
-        property.setIsForSale(false);
-        propertyRepository.save(property);
+        eventPublisher.publishEvent(new PropertyChangedEvent(List.of(propertyId)));
+        ownerCashFlowService.apply(new OwnerCashFlowService.Delta(userId, BigDecimal.ZERO,
+                OwnerCashFlowService.holdingExpense(property.getMaintenanceCost(), property.getPropertyTax()).negate(), -1, 0));
+        assetChangePublisher.publish(userId);
         
         PropertyTransaction savedTransaction = transactionRepository.save(transaction);
         return convertToTransactionDTO(savedTransaction);
@@ -184,6 +262,11 @@ public class RealEstateServiceImpl implements RealEstateService {
             throw new RuntimeException("租赁时长必须在1-36个月之间");
         }
         
+        if (propertyRepository.claimForRent(propertyId, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("该房产已出租");
+        }
+        property = reloadProperty(propertyId);
+        
         // 创建租赁交易记录
         PropertyTransaction transaction = new PropertyTransaction();
         transaction.setProperty(property);
@@ -199,9 +282,9 @@ public class RealEstateServiceImpl implements RealEstateService {
         transaction.setTransactionDate(LocalDateTime.now());
         transaction.setStatus("COMPLETED");
         
-        // 更新房产信息
-        property.setIsRented(true);
-        propertyRepository.save(property);
+        eventPublisher.publishEvent(new PropertyChangedEvent(List.of(propertyId)));
+        ownerCashFlowService.apply(new OwnerCashFlowService.Delta(property.getOwnerId(),
+                OwnerCashFlowService.orZero(property.getRentalIncome()), BigDecimal.ZERO, 0, 1));
         
         PropertyTransaction savedTransaction = transactionRepository.save(transaction);
         return convertToTransactionDTO(savedTransaction);
@@ -221,9 +304,16 @@ public class RealEstateServiceImpl implements RealEstateService {
             throw new RuntimeException("您不是该房产的业主");
         }
         
-        // 更新房产信息
-        property.setIsRented(false);
-        propertyRepository.save(property);
+        if (propertyRepository.releaseRental(propertyId, userId, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("该房产未出租");
+        }
+        property = reloadProperty(propertyId);
+        eventPublisher.publishEvent(new PropertyChangedEvent(List.of(propertyId)));
+        // 租约可能刚被到期任务结束，此时汇总已扣减过
+        if (transactionRepository.endActiveLease(propertyId, LocalDateTime.now()) > 0) {
+            ownerCashFlowService.apply(new OwnerCashFlowService.Delta(userId,
+                    OwnerCashFlowService.orZero(property.getRentalIncome()).negate(), BigDecimal.ZERO, 0, -1));
+        }
         
         // 创建取消租赁记录
         PropertyTransaction transaction = new PropertyTransaction();
@@ -255,11 +345,13 @@ public class RealEstateServiceImpl implements RealEstateService {
             throw new RuntimeException("已达到最大装修等级");
         }
         
-        // 升级房产
-        property.setUpgradeLevel(property.getUpgradeLevel() + 1);
-        property.setCurrentPrice(property.getCurrentPrice().multiply(BigDecimal.valueOf(1.1))); // 价格提升10%
-        
-        Property savedProperty = propertyRepository.save(property);
+        // 升级房产，价格提升10%
+        if (propertyRepository.upgrade(propertyId, userId, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("房产状态已变化，请刷新后重试");
+        }
+        Property savedProperty = reloadProperty(propertyId);
+        eventPublisher.publishEvent(new PropertyChangedEvent(List.of(propertyId)));
+        assetChangePublisher.publish(userId);
         return convertToPropertyDTO(savedProperty);
     }
     
@@ -278,9 +370,10 @@ public class RealEstateServiceImpl implements RealEstateService {
         }
         
         // 修复房产
-        property.setConditionRating(Math.min(10, property.getConditionRating() + 1));
-        
-        Property savedProperty = propertyRepository.save(property);
+        if (propertyRepository.repair(propertyId, userId, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("房产状态已变化，请刷新后重试");
+        }
+        Property savedProperty = reloadProperty(propertyId);
         return convertToPropertyDTO(savedProperty);
     }
     
@@ -299,10 +392,11 @@ public class RealEstateServiceImpl implements RealEstateService {
         }
         
         // 挂牌出售
-        property.setIsForSale(true);
-        property.setCurrentPrice(price);
-        
-        Property savedProperty = propertyRepository.save(property);
+        if (propertyRepository.listForSale(propertyId, userId, price, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("该房产已出租或已易主，无法出售");
+        }
+        Property savedProperty = reloadProperty(propertyId);
+        eventPublisher.publishEvent(new PropertyChangedEvent(List.of(propertyId)));
         return convertToPropertyDTO(savedProperty);
     }
     
@@ -317,9 +411,11 @@ public class RealEstateServiceImpl implements RealEstateService {
         }
         
         // 取消挂牌
-        property.setIsForSale(false);
-        
-        Property savedProperty = propertyRepository.save(property);
+        if (propertyRepository.removeFromSale(propertyId, userId, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("您不是该房产的业主");
+        }
+        Property savedProperty = reloadProperty(propertyId);
+        eventPublisher.publishEvent(new PropertyChangedEvent(List.of(propertyId)));
         return convertToPropertyDTO(savedProperty);
     }
     
@@ -347,19 +443,25 @@ public class RealEstateServiceImpl implements RealEstateService {
     
     @Override
     public BigDecimal calculateUserMonthlyIncome(String userId) {
-        List<Property> userProperties = propertyRepository.findByOwnerId(userId);
-        return userProperties.stream()
-                .filter(Property::getIsRented)
-                .map(Property::getRentalIncome)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return ownerCashFlowService.getMonthlyIncome(userId);
     }
     
     @Override
     public BigDecimal calculateUserMonthlyExpenses(String userId) {
-        List<Property> userProperties = propertyRepository.findByOwnerId(userId);
-        return userProperties.stream()
-                .map(property -> property.getMaintenanceCost().add(property.getPropertyTax()))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return ownerCashFlowService.getMonthlyExpenses(userId);
+    }
+    
+    @Override
+    public List<PropertyLedgerEntryDTO> getUserLedger(String userId, String period) {
+        return ledgerEntryRepository.findByUserIdAndPeriodOrderByIdAsc(userId, period).stream()
+                .map(this::convertToLedgerEntryDTO)
+                .collect(Collectors.toList());
+    }
+    
+    // 辅助方法：条件更新后重新加载房产（条件更新会清空持久化上下文）
+    private Property reloadProperty(Long propertyId) {
+        return propertyRepository.findWithCityById(propertyId)
+                .orElseThrow(() -> new RuntimeException("房产不存在"));
     }
     
     // 辅助方法：计算交易费用（价格的1%）
@@ -433,6 +535,22 @@ public class RealEstateServiceImpl implements RealEstateService {
         return dto;
     }
     
+    private PropertyLedgerEntryDTO convertToLedgerEntryDTO(PropertyLedgerEntry entry) {
+        PropertyLedgerEntryDTO dto = new PropertyLedgerEntryDTO();
+        dto.setId(entry.getId());
+        dto.setPeriod(entry.getPeriod());
+        dto.setUserId(entry.getUserId());
+        dto.setEntryType(entry.getEntryType());
+        dto.setAmount(entry.getAmount());
+        dto.setPropertyId(entry.getPropertyId());
+        dto.setSourceId(entry.getSourceId());
+        dto.setSettlementStatus(entry.getSettlementStatus());
+        dto.setReferenceNumber(entry.getReferenceNumber());
+        dto.setFailureReason(entry.getFailureReason());
+        dto.setCreatedAt(entry.getCreatedAt());
+        return dto;
+    }
+    
     private PropertyTransactionDTO convertToTransactionDTO(PropertyTransaction transaction) {
         PropertyTransactionDTO dto = new PropertyTransactionDTO();
         dto.setId(transaction.getId());
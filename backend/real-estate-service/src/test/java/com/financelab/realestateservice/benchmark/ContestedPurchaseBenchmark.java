@@ -0,0 +1,171 @@
+package com.financelab.realestateservice.benchmark;
+
+import com.financelab.realestateservice.dto.PropertyBidResultDTO;
+import com.financelab.realestateservice.entity.Property;
+import com.financelab.realestateservice.event.PropertyChangedEvent;
+import com.financelab.realestateservice.repository.PropertyRepository;
+import com.financelab.realestateservice.service.PropertyBiddingService;
+import com.financelab.realestateservice.service.RealEstateService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 抢购基准测试：同一处系统在售房产被大量买家同时购买
+ *
+ * 不随应用发布，也不在常规构建中运行；需连接专用的测试库手动执行：
+ * mvn test -pl real-estate-service -am -Dtest=ContestedPurchaseBenchmark -Dsurefire.failIfNoSpecifiedTests=false -Dreal-estate.benchmark=true
+ * 买家数与房产可用 -Dreal-estate.benchmark.buyers、-Dreal-estate.benchmark.property-id 指定。
+ * 依次测量三种流程的成交数与单次请求耗时：
+ * 旧流程（读出实体、检查、整体保存并提交，统计认为自己买到的请求数，超过 1 即为丢失更新）、
+ * 条件购买（purchaseProperty）、竞价（PropertyBiddingService，同一轮一起结算）。
+ * 每种流程结束后恢复房产为系统在售，并删除基准测试买家的交易、现金流与台账记录，
+ * 买家会发布资产变动事件，不可在与线上共用 Redis 的环境运行，以免污染排行榜。
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "real-estate.benchmark", matches = "true")
+@Slf4j
+class ContestedPurchaseBenchmark {
+
+    private static final String BUYER_PREFIX = "benchmark-buyer-";
+
+    @Autowired
+    private RealEstateService realEstateService;
+
+    @Autowired
+    private PropertyBiddingService biddingService;
+
+    @Autowired
+    private PropertyRepository propertyRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final int buyers = Integer.getInteger("real-estate.benchmark.buyers", 1000);
+    private final Long propertyId = Long.getLong("real-estate.benchmark.property-id");
+
+    @Test
+    void compareContestedPurchase() throws Exception {
+        Long targetId = propertyId != null ? propertyId : jdbcTemplate.queryForList(
+                "SELECT id FROM properties WHERE owner_id IS NULL AND is_for_sale = TRUE ORDER BY id LIMIT 1", Long.class)
+                .stream().findFirst().orElse(null);
+        Property property = targetId != null ? propertyRepository.findById(targetId).orElse(null) : null;
+        if (property == null || property.getOwnerId() != null || !property.getIsForSale()) {
+            log.warn("抢购基准测试跳过：没有系统在售房产");
+            return;
+        }
+        BigDecimal listPrice = property.getCurrentPrice();
+        BigDecimal originalPurchasePrice = property.getPurchasePrice();
+
+        try {
+            Result legacy = measure(i -> legacyPurchase(targetId, BUYER_PREFIX + i, listPrice));
+            restore(targetId, originalPurchasePrice);
+
+            Result conditional = measure(i -> {
+                try {
+                    realEstateService.purchaseProperty(BUYER_PREFIX + i, targetId, listPrice);
+                    return true;
+                } catch (RuntimeException e) {
+                    return false;
+                }
+            });
+            restore(targetId, originalPurchasePrice);
+
+            // 出价各不相同，最高价应当中标
+            Result bidding = measure(i -> biddingService
+                    .placeBid(BUYER_PREFIX + i, targetId, listPrice.add(BigDecimal.valueOf(i)))
+                    .join().getStatus() == PropertyBidResultDTO.BidStatus.WON);
+
+            log.info("抢购基准测试（房产 {}，{} 个并发买家）", targetId, buyers);
+            log.info("  旧流程: 成交 {} 笔, 总耗时 {} ms, p50 {} ms, p99 {} ms", legacy.winners, legacy.totalMillis, legacy.p50Millis, legacy.p99Millis);
+            log.info("  条件购买: 成交 {} 笔, 总耗时 {} ms, p50 {} ms, p99 {} ms", conditional.winners, conditional.totalMillis, conditional.p50Millis, conditional.p99Millis);
+            log.info("  竞价: 成交 {} 笔, 总耗时 {} ms, p50 {} ms, p99 {} ms", bidding.winners, bidding.totalMillis, bidding.p50Millis, bidding.p99Millis);
+        } finally {
+            restore(targetId, originalPurchasePrice);
+        }
+    }
+
+    /**
+     * 旧流程：读出实体检查是否可购，再整体保存并提交；并发请求可能都通过检查，后提交的覆盖先提交的
+     */
+    private boolean legacyPurchase(Long targetId, String buyerId, BigDecimal price) {
+        Boolean bought = transactionTemplate.execute(status -> {
+            Property property = propertyRepository.findById(targetId).orElse(null);
+            if (property == null || property.getOwnerId() != null || !property.getIsForSale()) {
+                return false;
+            }
+            property.setOwnerId(buyerId);
+            property.setIsForSale(false);
+            property.setPurchasePrice(price);
+            propertyRepository.saveAndFlush(property);
+            return true;
+        });
+        return Boolean.TRUE.equals(bought);
+    }
+
+    private Result measure(Attempt attempt) throws Exception {
+        long[] nanos = new long[buyers];
+        AtomicInteger winners = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(buyers);
+            for (int i = 0; i < buyers; i++) {
+                int buyer = i;
+                futures.add(executor.submit(() -> {
+                    long begin = System.nanoTime();
+                    if (attempt.run(buyer)) {
+                        winners.incrementAndGet();
+                    }
+                    nanos[buyer] = System.nanoTime() - begin;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        long totalNanos = System.nanoTime() - start;
+        Arrays.sort(nanos);
+        return new Result(winners.get(), totalNanos / 1_000_000.0,
+                nanos[buyers / 2] / 1_000_000.0, nanos[Math.min(buyers - 1, buyers * 99 / 100)] / 1_000_000.0);
+    }
+
+    private void restore(Long targetId, BigDecimal purchasePrice) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE properties SET owner_id = NULL, is_for_sale = TRUE, is_rented = FALSE, " +
+                    "purchase_price = ?, updated_at = ? WHERE id = ?", purchasePrice, Timestamp.valueOf(LocalDateTime.now()), targetId);
+            jdbcTemplate.update("DELETE FROM property_transactions WHERE property_id = ? AND buyer_id LIKE ?", targetId, BUYER_PREFIX + "%");
+            jdbcTemplate.update("DELETE FROM owner_cash_flows WHERE owner_id LIKE ?", BUYER_PREFIX + "%");
+            jdbcTemplate.update("DELETE FROM property_ledger_entries WHERE user_id LIKE ?", BUYER_PREFIX + "%");
+            eventPublisher.publishEvent(new PropertyChangedEvent(List.of(targetId)));
+        });
+    }
+
+    @FunctionalInterface
+    private interface Attempt {
+        boolean run(int buyer);
+    }
+
+    private record Result(int winners, double totalMillis, double p50Millis, double p99Millis) {}
+}
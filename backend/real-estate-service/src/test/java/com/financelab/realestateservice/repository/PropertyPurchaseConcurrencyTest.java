@@ -0,0 +1,120 @@
+package com.financelab.realestateservice.repository;
+
+import com.financelab.realestateservice.entity.City;
+import com.financelab.realestateservice.entity.Property;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 同一处系统在售房产被并发购买时，条件更新只让一个买家成交，且成交价不得低于挂牌价
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PropertyPurchaseConcurrencyTest {
+
+    private static final int BUYERS = 64;
+    private static final BigDecimal LIST_PRICE = new BigDecimal("1000000.00");
+
+    @Autowired
+    private PropertyRepository propertyRepository;
+
+    @Autowired
+    private CityRepository cityRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Long propertyId;
+
+    @BeforeEach
+    void listProperty() {
+        propertyRepository.deleteAll();
+        cityRepository.deleteAll();
+
+        City city = new City();
+        city.setName("测试城市");
+        city.setRegion("测试");
+        city.setBasePricePerSqm(new BigDecimal("10000"));
+        city.setPriceVolatility(new BigDecimal("0.05"));
+        city.setGrowthRate(new BigDecimal("0.03"));
+        city = cityRepository.save(city);
+
+        Property property = new Property();
+        property.setName("测试房产");
+        property.setCity(city);
+        property.setType("RESIDENTIAL");
+        property.setLocation("测试路 1 号");
+        property.setTotalArea(new BigDecimal("100"));
+        property.setUsableArea(new BigDecimal("90"));
+        property.setPurchasePrice(LIST_PRICE);
+        property.setCurrentPrice(LIST_PRICE);
+        property.setIsForSale(true);
+        propertyId = propertyRepository.save(property).getId();
+    }
+
+    @Test
+    void concurrentPurchasesHaveExactlyOneWinner() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> attempts = new ArrayList<>(BUYERS);
+        try (ExecutorService executor = Executors.newFixedThreadPool(BUYERS)) {
+            for (int i = 0; i < BUYERS; i++) {
+                String buyerId = "buyer-" + i;
+                attempts.add(executor.submit(() -> {
+                    start.await();
+                    return transactionTemplate.execute(status ->
+                            propertyRepository.claimForPurchase(propertyId, buyerId, LIST_PRICE, LocalDateTime.now()));
+                }));
+            }
+            start.countDown();
+
+            List<String> winners = new ArrayList<>();
+            for (int i = 0; i < BUYERS; i++) {
+                if (attempts.get(i).get() == 1) {
+                    winners.add("buyer-" + i);
+                }
+            }
+
+            assertThat(winners).hasSize(1);
+            Property property = propertyRepository.findById(propertyId).orElseThrow();
+            assertThat(property.getOwnerId()).isEqualTo(winners.get(0));
+            assertThat(property.getIsForSale()).isFalse();
+        }
+    }
+
+    @Test
+    void purchaseBelowListPriceIsRejected() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Integer updated = transactionTemplate.execute(status -> propertyRepository.claimForPurchase(propertyId,
+                "buyer-low", LIST_PRICE.subtract(BigDecimal.ONE), LocalDateTime.now()));
+
+        assertThat(updated).isZero();
+        assertThat(propertyRepository.findById(propertyId).orElseThrow().getOwnerId()).isNull();
+    }
+
+    @Configuration
+    @EntityScan(basePackageClasses = Property.class)
+    @EnableJpaRepositories(basePackageClasses = PropertyRepository.class)
+    static class JpaConfig {
+    }
+}
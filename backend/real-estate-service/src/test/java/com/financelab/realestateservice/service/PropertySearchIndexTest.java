@@ -0,0 +1,174 @@
+package com.financelab.realestateservice.service;
+
+import com.financelab.realestateservice.event.PropertyChangedEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 增量修补后的检索结果与按同一数据全量加载的索引一致
+ */
+class PropertySearchIndexTest {
+
+    private static final String[] TYPES = { "APARTMENT", "HOUSE", "VILLA" };
+
+    private final TreeMap<Long, Row> table = new TreeMap<>();
+    private final Random random = new Random(42);
+
+    @Test
+    void patchedIndexMatchesFullReload() {
+        for (long id = 1; id <= 500; id++) {
+            table.put(id, randomRow(id));
+        }
+        PropertySearchIndex index = newIndex();
+
+        long nextId = 501;
+        for (int round = 0; round < 30; round++) {
+            List<Long> changed = new ArrayList<>();
+            List<Long> ids = new ArrayList<>(table.keySet());
+            for (int k = 0; k < 20; k++) {
+                long id = ids.get(random.nextInt(ids.size()));
+                Row row = table.get(id);
+                switch (random.nextInt(4)) {
+                    case 0 -> row.price = BigDecimal.valueOf(random.nextInt(2000) * 1000L);
+                    case 1 -> row.forSale = !row.forSale;
+                    case 2 -> row.cityId = 1 + random.nextInt(5);
+                    default -> row.area = BigDecimal.valueOf(random.nextInt(300));
+                }
+                changed.add(id);
+            }
+            for (int k = 0; k < 3; k++) {
+                table.put(nextId, randomRow(nextId));
+                changed.add(nextId++);
+            }
+            long deleted = ids.get(random.nextInt(ids.size()));
+            table.remove(deleted);
+            changed.add(deleted);
+
+            index.onPropertyChanged(new PropertyChangedEvent(changed));
+            index.refreshDirty();
+            assertSameResults(index, newIndex());
+        }
+    }
+
+    @Test
+    void outOfOrderInsertFallsBackToReload() {
+        for (long id = 1; id <= 100; id += 2) {
+            table.put(id, randomRow(id));
+        }
+        PropertySearchIndex index = newIndex();
+
+        table.put(50L, randomRow(50L));
+        index.onPropertyChanged(new PropertyChangedEvent(List.of(50L)));
+        index.refreshDirty();
+
+        assertSameResults(index, newIndex());
+    }
+
+    private void assertSameResults(PropertySearchIndex patched, PropertySearchIndex reloaded) {
+        for (PropertySearchIndex.Sort sort : PropertySearchIndex.Sort.values()) {
+            for (Long cityId : Arrays.asList(null, 1L, 3L)) {
+                for (Boolean forSale : Arrays.asList(null, true, false)) {
+                    PropertySearchIndex.Query query = new PropertySearchIndex.Query(cityId, null, forSale, null,
+                            100_000_00L, 1_500_000_00L, null, null, sort, null, 37);
+                    assertThat(collect(patched, query)).isEqualTo(collect(reloaded, query));
+                    assertThat(patched.search(query).total()).isEqualTo(reloaded.search(query).total());
+                }
+            }
+        }
+    }
+
+    /**
+     * 沿游标翻完所有页
+     */
+    private static List<Long> collect(PropertySearchIndex index, PropertySearchIndex.Query first) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            PropertySearchIndex.Page page = index.search(new PropertySearchIndex.Query(first.cityId(), first.type(),
+                    first.forSale(), first.rented(), first.minPriceCents(), first.maxPriceCents(),
+                    first.minAreaCenti(), first.maxAreaCenti(), first.sort(), cursor, first.size()));
+            Arrays.stream(page.ids()).forEach(ids::add);
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private PropertySearchIndex newIndex() {
+        PropertySearchIndex index = new PropertySearchIndex();
+        ReflectionTestUtils.setField(index, "jdbcTemplate", new TableJdbcTemplate());
+        ReflectionTestUtils.setField(index, "loadPageSize", 128);
+        ReflectionTestUtils.setField(index, "maxPageSize", 100);
+        index.warmUp();
+        return index;
+    }
+
+    private Row randomRow(long id) {
+        Row row = new Row();
+        row.cityId = 1 + random.nextInt(5);
+        row.type = TYPES[random.nextInt(TYPES.length)];
+        row.price = BigDecimal.valueOf(random.nextInt(2000) * 1000L);
+        row.area = BigDecimal.valueOf(random.nextInt(300));
+        row.forSale = random.nextBoolean();
+        row.rented = random.nextBoolean();
+        return row;
+    }
+
+    private static final class Row {
+        private long cityId;
+        private String type;
+        private BigDecimal price;
+        private BigDecimal area;
+        private boolean forSale;
+        private boolean rented;
+    }
+
+    /**
+     * 以内存表代替 properties 表，支持索引使用的分页加载与按 id 查询
+     */
+    private final class TableJdbcTemplate extends JdbcTemplate {
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            try {
+                if (sql.contains("WHERE id > ?")) {
+                    int limit = (Integer) args[1];
+                    for (Map.Entry<Long, Row> entry : table.tailMap((Long) args[0], false).entrySet()) {
+                        if (limit-- == 0) {
+                            break;
+                        }
+                        rch.processRow(resultSet(entry.getKey(), entry.getValue()));
+                    }
+                } else {
+                    for (Object arg : args) {
+                        Row row = table.get((Long) arg);
+                        if (row != null) {
+                            rch.processRow(resultSet((Long) arg, row));
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private ResultSet resultSet(long id, Row row) {
+            Object[] columns = { id, row.cityId, row.type, row.price, row.area, row.forSale, row.rented };
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+                    (proxy, method, methodArgs) -> columns[(Integer) methodArgs[0] - 1]);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.financelab.realestateservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 月租金按入账月份内的租住天数折算
+ */
+class RentalLifecycleServiceTest {
+
+    private static final BigDecimal RENT = new BigDecimal("3000.00");
+    private static final YearMonth JUNE = YearMonth.of(2026, 6);
+
+    @Test
+    void fullMonthIsNotProrated() {
+        assertThat(RentalLifecycleService.proratedRent(RENT, JUNE,
+                LocalDateTime.of(2026, 5, 10, 9, 0), LocalDateTime.of(2026, 8, 10, 9, 0))).isEqualByComparingTo(RENT);
+    }
+
+    @Test
+    void leaseStartingMidMonthPaysFromStartDay() {
+        // 6 月 21 日起租，计 21 日至 30 日共 10 天
+        assertThat(RentalLifecycleService.proratedRent(RENT, JUNE,
+                LocalDateTime.of(2026, 6, 21, 15, 30), LocalDateTime.of(2026, 9, 21, 15, 30)))
+                .isEqualByComparingTo("1000.00");
+    }
+
+    @Test
+    void leaseEndingMidMonthPaysUntilEndDay() {
+        // 6 月 16 日结束，计 1 日至 15 日共 15 天
+        assertThat(RentalLifecycleService.proratedRent(RENT, JUNE,
+                LocalDateTime.of(2026, 3, 16, 8, 0), LocalDateTime.of(2026, 6, 16, 8, 0)))
+                .isEqualByComparingTo("1500.00");
+    }
+
+    @Test
+    void leaseOutsideMonthPaysNothing() {
+        assertThat(RentalLifecycleService.proratedRent(RENT, JUNE,
+                LocalDateTime.of(2026, 7, 1, 0, 0), LocalDateTime.of(2026, 8, 1, 0, 0))).isZero();
+    }
+}
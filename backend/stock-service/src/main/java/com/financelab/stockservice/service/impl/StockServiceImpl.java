@@ -1,5 +1,6 @@
 package com.financelab.stockservice.service.impl;
 
+import com.financelab.common.event.AssetChangePublisher;
 import com.financelab.stockservice.dto.StockQuoteDTO;
 import com.financelab.stockservice.dto.TradeRequestDTO;
 import com.financelab.stockservice.dto.TradeResultDTO;
@@ -40,6 +41,9 @@ public class StockServiceImpl implements StockService {
     @Autowired
     private StockPriceHistoryRepository priceHistoryRepository;
     
+    @Autowired
+    private AssetChangePublisher assetChangePublisher;
+    
     @Override
     public StockQuoteDTO getStockQuote(String stockCode) {
         Optional<Stock> stockOpt = stockRepository.findByCode(stockCode);
@@ -126,6 +130,7 @@ public class StockServiceImpl implements StockService {
             // 更新用户持仓
             updateUserPosition(tradeRequest.getUserId(), stock, tradeRequest.getTradeType(), 
                               tradeRequest.getQuantity(), tradePrice);
+            assetChangePublisher.publish(tradeRequest.getUserId());
             
             log.info("用户 {} 成功{}股票 {} {}股，价格: {}", 
                     tradeRequest.getUserId(), 
@@ -34,6 +34,8 @@ public class SecurityConfig {
             .authorizeHttpRequests(authz -> authz
                 .requestMatchers("/api/users/register", "/api/users/login").permitAll()
                 .requestMatchers("/api/users/validate-token").permitAll()
+                // 服务间接口由 InternalUserController 校验 X-Internal-Token
+                .requestMatchers("/internal/**").permitAll()
                 .requestMatchers("/api/users/**").authenticated()
                 .anyRequest().authenticated()
             );
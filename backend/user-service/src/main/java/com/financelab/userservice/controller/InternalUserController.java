@@ -0,0 +1,70 @@
+package com.financelab.userservice.controller;
+
+import com.financelab.userservice.dto.UserDirectoryDTO;
+import com.financelab.userservice.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * 服务间调用接口：用户所属学校/班级与班级成员
+ *
+ * 网关拒绝转发 internal 内部路径；调用方须在 X-Internal-Token 中携带 internal-api.token。
+ */
+@RestController
+@RequestMapping("/internal/users")
+@Slf4j
+public class InternalUserController {
+
+    private static final int MAX_IDS = 1000;
+
+    private final UserService userService;
+    private final byte[] internalToken;
+
+    public InternalUserController(UserService userService,
+                                  @Value("${internal-api.token}") String internalToken) {
+        if (internalToken == null || internalToken.isBlank()) {
+            throw new IllegalStateException("未配置服务间调用凭证 internal-api.token（INTERNAL_API_TOKEN）");
+        }
+        this.userService = userService;
+        this.internalToken = internalToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 批量查询用户归属，不存在的用户不出现在结果中
+     */
+    @GetMapping("/profiles")
+    public ResponseEntity<List<UserDirectoryDTO>> getProfiles(
+            @RequestHeader(value = "X-Internal-Token", required = false) String token,
+            @RequestParam List<Long> ids) {
+        if (!authorized(token)) {
+            log.warn("拒绝未授权的用户归属查询");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (ids.size() > MAX_IDS) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(userService.getUsersByIds(ids).stream().map(UserDirectoryDTO::new).toList());
+    }
+
+    @GetMapping("/class/{classId}")
+    public ResponseEntity<List<UserDirectoryDTO>> getClassMembers(
+            @RequestHeader(value = "X-Internal-Token", required = false) String token,
+            @PathVariable Long classId) {
+        if (!authorized(token)) {
+            log.warn("拒绝未授权的班级成员查询");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(userService.getUsersByClassId(classId).stream().map(UserDirectoryDTO::new).toList());
+    }
+
+    private boolean authorized(String token) {
+        return token != null && MessageDigest.isEqual(internalToken, token.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,9 +1,14 @@
 package com.financelab.userservice.controller;
 
+import com.financelab.userservice.dto.LeaderboardEntryDTO;
 import com.financelab.userservice.dto.LoginRequest;
+import com.financelab.userservice.dto.NetWorthDTO;
 import com.financelab.userservice.dto.RegisterRequest;
 import com.financelab.userservice.dto.UpdateUserRequest;
+import com.financelab.userservice.dto.UserRankDTO;
 import com.financelab.userservice.entity.User;
+import com.financelab.userservice.service.LeaderboardService;
+import com.financelab.userservice.service.NetWorthService;
 import com.financelab.userservice.service.UserService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -22,6 +27,8 @@ import java.util.Map;
 public class UserController {
     
     private final UserService userService;
+    private final NetWorthService netWorthService;
+    private final LeaderboardService leaderboardService;
     
     @PostMapping("/register")
     public ResponseEntity<?> register(@Valid @RequestBody RegisterRequest request) {
@@ -61,6 +68,18 @@ public class UserController {
                 .orElse(ResponseEntity.notFound().build());
     }
     
+    @GetMapping("/{id}/net-worth")
+    public ResponseEntity<?> getNetWorth(@PathVariable Long id) {
+        try {
+            NetWorthDTO netWorth = netWorthService.getNetWorth(id);
+            return ResponseEntity.ok(netWorth);
+        } catch (RuntimeException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+    
     @GetMapping("/username/{username}")
     public ResponseEntity<?> getUserByUsername(@PathVariable String username) {
         return userService.getUserByUsername(username)
@@ -113,11 +132,30 @@ public class UserController {
     }
     
     @GetMapping("/top-users")
-    public ResponseEntity<List<User>> getTopUsers(@RequestParam(defaultValue = "10000") Double minAssets) {
-        List<User> users = userService.getTopUsersByAssets(minAssets);
+    public ResponseEntity<List<User>> getTopUsers(@RequestParam(defaultValue = "10000") Double minAssets,
+                                                  @RequestParam(required = false) User.UserRole role,
+                                                  @RequestParam(defaultValue = "100") int limit) {
+        List<User> users = userService.getTopUsersByAssets(minAssets, role, limit);
         return ResponseEntity.ok(users);
     }
     
+    @GetMapping("/leaderboard")
+    public ResponseEntity<List<LeaderboardEntryDTO>> getLeaderboard(
+            @RequestParam(required = false) Long schoolId,
+            @RequestParam(required = false) Long classId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        List<LeaderboardEntryDTO> entries = leaderboardService.getPage(schoolId, classId, page, size);
+        return ResponseEntity.ok(entries);
+    }
+    
+    @GetMapping("/{id}/rank")
+    public ResponseEntity<UserRankDTO> getUserRank(@PathVariable Long id) {
+        return userService.getUserById(id)
+                .map(user -> ResponseEntity.ok(leaderboardService.getRank(user)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
     @GetMapping("/stats/active-count")
     public ResponseEntity<Map<String, Long>> getActiveUserCount() {
         Long count = userService.getActiveUserCount();
@@ -0,0 +1,23 @@
+package com.financelab.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LeaderboardEntryDTO {
+    
+    private Integer rank;
+    
+    private Long userId;
+    
+    private String username;
+    
+    private String nickname;
+    
+    private BigDecimal totalAssets;
+}
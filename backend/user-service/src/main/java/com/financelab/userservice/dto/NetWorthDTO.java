@@ -0,0 +1,31 @@
+package com.financelab.userservice.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+public class NetWorthDTO {
+    
+    private Long userId;
+    
+    private BigDecimal cashBalance;
+    
+    private BigDecimal bankAssets;
+    
+    private BigDecimal stockAssets;
+    
+    private BigDecimal realEstateAssets;
+    
+    private BigDecimal mallSpent;        // 累计消费，仅展示，不计入总资产
+    
+    private BigDecimal totalAssets;
+    
+    private boolean complete;            // 所有下游服务均在超时前返回
+    
+    private List<String> unavailableSources;
+    
+    private LocalDateTime calculatedAt;
+}
@@ -0,0 +1,25 @@
+package com.financelab.userservice.dto;
+
+import com.financelab.userservice.entity.User;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 服务间查询用的用户归属信息（学校与班级），不含个人资料
+ */
+@Data
+@NoArgsConstructor
+public class UserDirectoryDTO {
+    
+    private Long id;
+    
+    private Long schoolId;
+    
+    private Long classId;
+    
+    public UserDirectoryDTO(User user) {
+        this.id = user.getId();
+        this.schoolId = user.getSchoolId();
+        this.classId = user.getClassId();
+    }
+}
@@ -0,0 +1,19 @@
+package com.financelab.userservice.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class UserRankDTO {
+    
+    private Long userId;
+    
+    private BigDecimal totalAssets;
+    
+    private Integer globalRank;
+    
+    private Integer schoolRank;
+    
+    private Integer classRank;
+}
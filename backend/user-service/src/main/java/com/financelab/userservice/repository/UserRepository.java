@@ -1,11 +1,15 @@
 package com.financelab.userservice.repository;
 
 import com.financelab.userservice.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 
@@ -37,4 +41,13 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     @Query("SELECT u FROM User u WHERE u.totalAssets >= :minAssets ORDER BY u.totalAssets DESC")
     List<User> findTopUsersByAssets(@Param("minAssets") Double minAssets);
+    
+    @Query("SELECT u FROM User u WHERE u.totalAssets >= :minAssets AND (:role IS NULL OR u.role = :role) ORDER BY u.totalAssets DESC")
+    List<User> findTopUsersByAssets(@Param("minAssets") BigDecimal minAssets, @Param("role") User.UserRole role,
+                                    Pageable pageable);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.totalAssets = :totalAssets WHERE u.id = :id")
+    int updateTotalAssets(@Param("id") Long id, @Param("totalAssets") BigDecimal totalAssets);
 }
\ No newline at end of file
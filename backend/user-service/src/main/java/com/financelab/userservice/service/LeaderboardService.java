@@ -0,0 +1,241 @@
+package com.financelab.userservice.service;
+
+import com.financelab.userservice.dto.LeaderboardEntryDTO;
+import com.financelab.userservice.dto.UserRankDTO;
+import com.financelab.userservice.entity.User;
+import com.financelab.userservice.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.client.protocol.ScoredEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 财富排行榜：按全站、学校、班级分别维护 Redis 有序集合（成员为用户ID，分数为以分计的总资产）
+ *
+ * 资产变动时只更新该用户所在的几个集合（O(log n)），排名查询 O(log n)，取前 k 名 O(log n + k)。
+ * 在事务中调用的更新、移动、移除在事务提交后才写入 Redis，回滚不会留下排行榜分数。
+ * 分数取整到分，2^53 分以内在 double 中精确表示，读出时换算回元不会出现浮点尾差。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LeaderboardService {
+
+    // 分数单位改为分后换用新键，旧的以元计分的集合不再读取，启动时按新键重建
+    private static final String GLOBAL_KEY = "leaderboard:cents:global";
+    private static final String SCHOOL_KEY = "leaderboard:cents:school:";
+    private static final String CLASS_KEY = "leaderboard:cents:class:";
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private final RedissonClient redissonClient;
+    private final UserRepository userRepository;
+
+    @Value("${leaderboard.max-page-size:100}")
+    private int maxPageSize;
+
+    /**
+     * 启动时若排行榜为空，则从 users 表全量构建一次
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (board(GLOBAL_KEY).isExists()) {
+            return;
+        }
+        int page = 0;
+        long total = 0;
+        Page<User> users;
+        do {
+            users = userRepository.findAll(PageRequest.of(page++, REBUILD_PAGE_SIZE, Sort.by("id")));
+            RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+            for (User user : users) {
+                if (isRanked(user)) {
+                    for (String key : keysOf(user.getSchoolId(), user.getClassId())) {
+                        batch.getScoredSortedSet(key, StringCodec.INSTANCE)
+                                .addAsync(score(user.getTotalAssets()), String.valueOf(user.getId()));
+                    }
+                    total++;
+                }
+            }
+            batch.execute();
+        } while (users.hasNext());
+        log.info("排行榜构建完成: 用户数={}", total);
+    }
+
+    /**
+     * 更新用户在所属排行榜中的资产
+     */
+    public void update(User user, BigDecimal totalAssets) {
+        if (!isRanked(user)) {
+            remove(user.getId(), user.getSchoolId(), user.getClassId());
+            return;
+        }
+        String member = String.valueOf(user.getId());
+        List<String> keys = keysOf(user.getSchoolId(), user.getClassId());
+        double score = score(totalAssets);
+        afterCommit(() -> {
+            RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+            for (String key : keys) {
+                batch.getScoredSortedSet(key, StringCodec.INSTANCE).addAsync(score, member);
+            }
+            batch.execute();
+        });
+    }
+
+    /**
+     * 用户转学/转班时从原排行榜移除并加入新排行榜
+     */
+    public void move(User user, Long oldSchoolId, Long oldClassId) {
+        remove(user.getId(), oldSchoolId, oldClassId);
+        update(user, user.getTotalAssets());
+    }
+
+    /**
+     * 从所属排行榜中移除用户
+     */
+    public void remove(Long userId, Long schoolId, Long classId) {
+        String member = String.valueOf(userId);
+        List<String> keys = keysOf(schoolId, classId);
+        afterCommit(() -> {
+            RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+            for (String key : keys) {
+                batch.getScoredSortedSet(key, StringCodec.INSTANCE).removeAsync(member);
+            }
+            batch.execute();
+        });
+    }
+
+    /**
+     * 分页读取排行榜；classId 优先于 schoolId，二者都为空时为全站排行
+     *
+     * @param page 页码，从0开始
+     */
+    public List<LeaderboardEntryDTO> getPage(Long schoolId, Long classId, int page, int size) {
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        int start = Math.max(0, page) * pageSize;
+        Collection<ScoredEntry<String>> entries = board(keyOf(schoolId, classId))
+                .entryRangeReversed(start, start + pageSize - 1);
+
+        List<Long> ids = entries.stream().map(e -> Long.valueOf(e.getValue())).toList();
+        Map<Long, User> users = userRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<LeaderboardEntryDTO> result = new ArrayList<>(entries.size());
+        int rank = start;
+        for (ScoredEntry<String> entry : entries) {
+            rank++;
+            User user = users.get(Long.valueOf(entry.getValue()));
+            result.add(new LeaderboardEntryDTO(rank, Long.valueOf(entry.getValue()),
+                    user != null ? user.getUsername() : null,
+                    user != null ? user.getNickname() : null,
+                    toAssets(entry.getScore())));
+        }
+        return result;
+    }
+
+    /**
+     * 查询用户在全站、学校、班级中的排名（从1开始，未上榜为 null）
+     */
+    public UserRankDTO getRank(User user) {
+        String member = String.valueOf(user.getId());
+        UserRankDTO rank = new UserRankDTO();
+        rank.setUserId(user.getId());
+        Double score = board(GLOBAL_KEY).getScore(member);
+        rank.setTotalAssets(score != null ? toAssets(score) : user.getTotalAssets());
+        rank.setGlobalRank(toRank(board(GLOBAL_KEY).revRank(member)));
+        if (user.getSchoolId() != null) {
+            rank.setSchoolRank(toRank(board(SCHOOL_KEY + user.getSchoolId()).revRank(member)));
+        }
+        if (user.getClassId() != null) {
+            rank.setClassRank(toRank(board(CLASS_KEY + user.getClassId()).revRank(member)));
+        }
+        return rank;
+    }
+
+    /**
+     * 全站资产不低于 minAssets 的前 limit 名用户ID，按资产降序
+     */
+    public List<Long> getTopUserIds(double minAssets, int limit) {
+        return board(GLOBAL_KEY)
+                .valueRangeReversed(score(BigDecimal.valueOf(minAssets)), true, Double.POSITIVE_INFINITY, true, 0, Math.min(limit, maxPageSize))
+                .stream()
+                .map(Long::valueOf)
+                .toList();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private RScoredSortedSet<String> board(String key) {
+        return redissonClient.getScoredSortedSet(key, StringCodec.INSTANCE);
+    }
+
+    private static boolean isRanked(User user) {
+        return user.getRole() == User.UserRole.STUDENT && !Boolean.FALSE.equals(user.getIsActive());
+    }
+
+    private static List<String> keysOf(Long schoolId, Long classId) {
+        List<String> keys = new ArrayList<>(3);
+        keys.add(GLOBAL_KEY);
+        if (schoolId != null) {
+            keys.add(SCHOOL_KEY + schoolId);
+        }
+        if (classId != null) {
+            keys.add(CLASS_KEY + classId);
+        }
+        return keys;
+    }
+
+    private static String keyOf(Long schoolId, Long classId) {
+        if (classId != null) {
+            return CLASS_KEY + classId;
+        }
+        if (schoolId != null) {
+            return SCHOOL_KEY + schoolId;
+        }
+        return GLOBAL_KEY;
+    }
+
+    private static double score(BigDecimal totalAssets) {
+        return totalAssets != null ? totalAssets.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact() : 0L;
+    }
+
+    private static BigDecimal toAssets(Double score) {
+        return BigDecimal.valueOf(Math.round(score), 2);
+    }
+
+    private static Integer toRank(Integer zeroBasedRank) {
+        return zeroBasedRank != null ? zeroBasedRank + 1 : null;
+    }
+}
@@ -0,0 +1,227 @@
+package com.financelab.userservice.service;
+
+import com.financelab.common.event.AssetChangePublisher;
+import com.financelab.userservice.dto.NetWorthDTO;
+import com.financelab.userservice.entity.User;
+import com.financelab.userservice.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+
+import java.math.BigDecimal;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户净资产聚合
+ *
+ * 并发请求银行、股票、房产、商城服务（每个调用一个虚拟线程），单个服务超时或失败时返回部分结果。
+ * 完整结果按用户缓存，其他服务在资产变动后通过 {@link AssetChangePublisher} 发布用户ID即可使缓存失效；
+ * 缓存 TTL 作为未接入事件的变动的兜底。收到事件后还会在后台重新聚合该用户资产，增量更新排行榜。
+ *
+ * 缓存项带失效代数：失效时代数加一（留下空的占位项），聚合结束时只有代数未变才写入缓存、回写总资产与排行榜，
+ * 聚合期间到达的失效不会被旧结果覆盖。
+ */
+@Service
+@Slf4j
+public class NetWorthService {
+
+    private final UserRepository userRepository;
+    private final RedissonClient redissonClient;
+    private final LeaderboardService leaderboardService;
+    private final RestClient restClient;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Long, CachedNetWorth> cache = new ConcurrentHashMap<>();
+    private final Set<Long> pendingRefresh = ConcurrentHashMap.newKeySet();
+
+    private final String bankUrl;
+    private final String stockUrl;
+    private final String realEstateUrl;
+    private final String mallUrl;
+    private final long timeoutMillis;
+    private final long cacheTtlMillis;
+
+    public NetWorthService(UserRepository userRepository,
+                           RedissonClient redissonClient,
+                           LeaderboardService leaderboardService,
+                           @Value("${net-worth.bank-url:http://localhost:8084}") String bankUrl,
+                           @Value("${net-worth.stock-url:http://localhost:8082}") String stockUrl,
+                           @Value("${net-worth.real-estate-url:http://localhost:8083}") String realEstateUrl,
+                           @Value("${net-worth.mall-url:http://localhost:8086}") String mallUrl,
+                           @Value("${net-worth.timeout-ms:800}") long timeoutMillis,
+                           @Value("${net-worth.cache-ttl-seconds:60}") long cacheTtlSeconds) {
+        this.userRepository = userRepository;
+        this.redissonClient = redissonClient;
+        this.leaderboardService = leaderboardService;
+        this.bankUrl = bankUrl;
+        this.stockUrl = stockUrl;
+        this.realEstateUrl = realEstateUrl;
+        this.mallUrl = mallUrl;
+        this.timeoutMillis = timeoutMillis;
+        this.cacheTtlMillis = TimeUnit.SECONDS.toMillis(cacheTtlSeconds);
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeoutMillis))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(timeoutMillis));
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        redissonClient.getTopic(AssetChangePublisher.ASSET_CHANGED_TOPIC, StringCodec.INSTANCE)
+                .addListener(String.class, (channel, userId) -> onAssetChanged(userId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 获取用户净资产，缓存命中时不访问下游服务
+     */
+    public NetWorthDTO getNetWorth(Long userId) {
+        CachedNetWorth cached = cache.get(userId);
+        if (cached != null && cached.netWorth != null && cached.expiresAt > System.currentTimeMillis()) {
+            return cached.netWorth;
+        }
+        long generation = cached != null ? cached.generation : 0;
+
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("用户不存在"));
+        String id = String.valueOf(userId);
+
+        long startTime = System.nanoTime();
+        Future<BigDecimal> bank = executor.submit(() -> fetch(bankUrl + "/api/bank/accounts/total-assets", id, true));
+        Future<BigDecimal> stock = executor.submit(() -> fetch(stockUrl + "/api/stocks/assets/" + id, id, false));
+        Future<BigDecimal> realEstate = executor.submit(() -> fetch(realEstateUrl + "/api/real-estate/user/" + id + "/net-worth", id, false));
+        Future<BigDecimal> mall = executor.submit(() -> fetch(mallUrl + "/api/mall/stats/total-spent", id, true));
+
+        // 所有调用共享同一截止时间，总耗时取决于最慢的服务而不是各服务之和
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<String> unavailable = new ArrayList<>();
+        NetWorthDTO netWorth = new NetWorthDTO();
+        netWorth.setUserId(userId);
+        netWorth.setCashBalance(user.getCashBalance() != null ? user.getCashBalance() : BigDecimal.ZERO);
+        netWorth.setBankAssets(await(bank, deadline, "bank", unavailable));
+        netWorth.setStockAssets(await(stock, deadline, "stock", unavailable));
+        netWorth.setRealEstateAssets(await(realEstate, deadline, "real-estate", unavailable));
+        netWorth.setMallSpent(await(mall, deadline, "mall", unavailable));
+        netWorth.setTotalAssets(netWorth.getCashBalance()
+                .add(netWorth.getBankAssets())
+                .add(netWorth.getStockAssets())
+                .add(netWorth.getRealEstateAssets()));
+        netWorth.setComplete(unavailable.isEmpty());
+        netWorth.setUnavailableSources(unavailable);
+        netWorth.setCalculatedAt(LocalDateTime.now());
+
+        if (!netWorth.isComplete()) {
+            log.warn("净资产聚合部分服务不可用: userId={}, unavailable={}", userId, unavailable);
+        } else if (!cacheIfCurrent(userId, generation, netWorth)) {
+            log.debug("聚合期间资产已变动，不缓存本次结果: userId={}", userId);
+        } else {
+            // 只缓存并回写完整结果，部分结果下次请求时重试
+            if (user.getTotalAssets() == null || user.getTotalAssets().compareTo(netWorth.getTotalAssets()) != 0) {
+                userRepository.updateTotalAssets(userId, netWorth.getTotalAssets());
+            }
+            leaderboardService.update(user, netWorth.getTotalAssets());
+        }
+        log.debug("净资产聚合完成: userId={}, 耗时={}ms", userId,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        return netWorth;
+    }
+
+    /**
+     * 使用户的净资产缓存失效
+     */
+    public void invalidate(String userId) {
+        try {
+            cache.compute(Long.valueOf(userId),
+                    (id, current) -> new CachedNetWorth(null, 0, (current != null ? current.generation : 0) + 1));
+        } catch (NumberFormatException e) {
+            log.warn("忽略无效的资产变动事件: userId={}", userId);
+        }
+    }
+
+    /**
+     * 聚合开始后缓存项未失效时写入结果；与 invalidate 在同一个键上串行执行
+     */
+    private boolean cacheIfCurrent(Long userId, long generation, NetWorthDTO netWorth) {
+        boolean[] cached = new boolean[1];
+        cache.compute(userId, (id, current) -> {
+            if ((current != null ? current.generation : 0) != generation) {
+                return current;
+            }
+            cached[0] = true;
+            return new CachedNetWorth(netWorth, System.currentTimeMillis() + cacheTtlMillis, generation);
+        });
+        return cached[0];
+    }
+
+    /**
+     * 资产变动事件：使缓存失效并在后台重新聚合；同一用户已排队时合并为一次
+     */
+    private void onAssetChanged(String userId) {
+        invalidate(userId);
+        Long id;
+        try {
+            id = Long.valueOf(userId);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (pendingRefresh.add(id)) {
+            executor.submit(() -> {
+                // 先出队再聚合，聚合期间到达的新事件会重新排队
+                pendingRefresh.remove(id);
+                try {
+                    getNetWorth(id);
+                } catch (Exception e) {
+                    log.warn("刷新用户净资产失败: userId={}, error={}", id, e.getMessage());
+                }
+            });
+        }
+    }
+
+    private BigDecimal fetch(String url, String userId, boolean userHeader) {
+        RestClient.RequestHeadersSpec<?> request = restClient.get().uri(url);
+        if (userHeader) {
+            request = request.header("X-User-Id", userId);
+        }
+        BigDecimal value = request.retrieve().body(BigDecimal.class);
+        return value != null ? value : BigDecimal.ZERO;
+    }
+
+    private BigDecimal await(Future<BigDecimal> future, long deadline, String source, List<String> unavailable) {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            return future.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.debug("获取{}资产失败: {}", source, e.getMessage());
+        }
+        future.cancel(true);
+        unavailable.add(source);
+        return BigDecimal.ZERO;
+    }
+
+    private record CachedNetWorth(NetWorthDTO netWorth, long expiresAt, long generation) {}
+}
@@ -5,6 +5,7 @@ import com.financelab.userservice.dto.RegisterRequest;
 import com.financelab.userservice.dto.UpdateUserRequest;
 import com.financelab.userservice.entity.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,7 +31,12 @@ public interface UserService {
     
     List<User> getUsersByClassId(Long classId);
     
-    List<User> getTopUsersByAssets(Double minAssets);
+    List<User> getUsersByIds(Collection<Long> ids);
+    
+    /**
+     * 资产不低于 minAssets 的前 limit 名用户，按资产降序；role 为空时不限角色
+     */
+    List<User> getTopUsersByAssets(Double minAssets, User.UserRole role, int limit);
     
     User updateUserAssets(Long userId, Double amount);
     
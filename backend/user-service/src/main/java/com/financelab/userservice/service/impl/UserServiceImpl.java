@@ -5,17 +5,24 @@ import com.financelab.userservice.dto.RegisterRequest;
 import com.financelab.userservice.dto.UpdateUserRequest;
 import com.financelab.userservice.entity.User;
 import com.financelab.userservice.repository.UserRepository;
+import com.financelab.userservice.service.LeaderboardService;
 import com.financelab.userservice.service.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -25,6 +32,9 @@ public class UserServiceImpl implements UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtTokenProvider jwtTokenProvider;
+    private final LeaderboardService leaderboardService;
+    
+    private static final int TOP_USERS_LIMIT = 100;
     
     @Override
     @Transactional
@@ -53,6 +63,7 @@ public class UserServiceImpl implements UserService {
         user.setIsActive(true);
         
         User savedUser = userRepository.save(user);
+        leaderboardService.update(savedUser, savedUser.getTotalAssets());
         log.info("用户注册成功: {}", savedUser.getUsername());
         return savedUser;
     }
@@ -118,6 +129,8 @@ public class UserServiceImpl implements UserService {
         if (request.getAvatar() != null) {
             user.setAvatar(request.getAvatar());
         }
+        Long oldSchoolId = user.getSchoolId();
+        Long oldClassId = user.getClassId();
         if (request.getSchoolId() != null) {
             user.setSchoolId(request.getSchoolId());
         }
@@ -125,7 +138,12 @@ public class UserServiceImpl implements UserService {
             user.setClassId(request.getClassId());
         }
         
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        if (!Objects.equals(oldSchoolId, savedUser.getSchoolId())
+                || !Objects.equals(oldClassId, savedUser.getClassId())) {
+            leaderboardService.move(savedUser, oldSchoolId, oldClassId);
+        }
+        return savedUser;
     }
     
     @Override
@@ -136,6 +154,7 @@ public class UserServiceImpl implements UserService {
         
         user.setIsActive(false);
         userRepository.save(user);
+        leaderboardService.remove(user.getId(), user.getSchoolId(), user.getClassId());
         log.info("用户已禁用: {}", user.getUsername());
     }
     
@@ -155,8 +174,22 @@ public class UserServiceImpl implements UserService {
     }
     
     @Override
-    public List<User> getTopUsersByAssets(Double minAssets) {
-        return userRepository.findTopUsersByAssets(minAssets);
+    public List<User> getUsersByIds(Collection<Long> ids) {
+        return userRepository.findAllById(ids);
+    }
+    
+    @Override
+    public List<User> getTopUsersByAssets(Double minAssets, User.UserRole role, int limit) {
+        int size = Math.max(1, Math.min(limit, TOP_USERS_LIMIT));
+        if (role != User.UserRole.STUDENT) {
+            // 排行榜只收录在用的学生，其他角色或不限角色时按资产查库
+            return userRepository.findTopUsersByAssets(BigDecimal.valueOf(minAssets), role, PageRequest.of(0, size));
+        }
+        // 从排行榜取有序的前若干名，再按ID批量加载并保持排名顺序
+        List<Long> ids = leaderboardService.getTopUserIds(minAssets, size);
+        Map<Long, User> users = userRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        return ids.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList());
     }
     
     @Override
@@ -173,7 +206,9 @@ public class UserServiceImpl implements UserService {
             user.setCashBalance(user.getCashBalance().add(BigDecimal.valueOf(amount)));
         }
         
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        leaderboardService.update(savedUser, newAssets);
+        return savedUser;
     }
     
     @Override
@@ -66,12 +66,13 @@ CREATE TABLE IF NOT EXISTS loans (
     INDEX idx_user_id (user_id),
     INDEX idx_status (status),
     INDEX idx_loan_type (loan_type),
-    INDEX idx_created_at (created_at)
+    INDEX idx_created_at (created_at),
+    INDEX idx_status_next_payment (status, next_payment_date)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
--- 交易记录表
+-- 交易记录表（按月范围分区，主键需包含分区列）
 CREATE TABLE IF NOT EXISTS transactions (
-    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    id BIGINT AUTO_INCREMENT,
     from_account_number VARCHAR(20) NOT NULL,
     to_account_number VARCHAR(20),
     type VARCHAR(30) NOT NULL,
@@ -83,13 +84,29 @@ CREATE TABLE IF NOT EXISTS transactions (
     reference_number VARCHAR(50),
     status VARCHAR(20) NOT NULL,
     failure_reason TEXT,
-    INDEX idx_from_account (from_account_number),
-    INDEX idx_to_account (to_account_number),
+    PRIMARY KEY (id, transaction_time),
+    INDEX idx_from_account_time (from_account_number, transaction_time, id),
+    INDEX idx_to_account_time (to_account_number, transaction_time, id),
     INDEX idx_type (type),
     INDEX idx_transaction_time (transaction_time),
     INDEX idx_status (status),
     INDEX idx_reference_number (reference_number)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+PARTITION BY RANGE COLUMNS (transaction_time) (
+    PARTITION p202601 VALUES LESS THAN ('2026-02-01'),
+    PARTITION p202602 VALUES LESS THAN ('2026-03-01'),
+    PARTITION p202603 VALUES LESS THAN ('2026-04-01'),
+    PARTITION p202604 VALUES LESS THAN ('2026-05-01'),
+    PARTITION p202605 VALUES LESS THAN ('2026-06-01'),
+    PARTITION p202606 VALUES LESS THAN ('2026-07-01'),
+    PARTITION p202607 VALUES LESS THAN ('2026-08-01'),
+    PARTITION p202608 VALUES LESS THAN ('2026-09-01'),
+    PARTITION p202609 VALUES LESS THAN ('2026-10-01'),
+    PARTITION p202610 VALUES LESS THAN ('2026-11-01'),
+    PARTITION p202611 VALUES LESS THAN ('2026-12-01'),
+    PARTITION p202612 VALUES LESS THAN ('2027-01-01'),
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
 
 -- 信用卡表
 CREATE TABLE IF NOT EXISTS credit_cards (
@@ -109,13 +126,38 @@ CREATE TABLE IF NOT EXISTS credit_cards (
     payment_due_date DATE NOT NULL,
     current_balance DECIMAL(15, 2) NOT NULL,
     minimum_payment DECIMAL(15, 2) NOT NULL,
+    statement_balance DECIMAL(15, 2),
+    cycle_payments DECIMAL(15, 2),
+    is_late BOOLEAN,
     status VARCHAR(20) NOT NULL,
     created_at DATETIME NOT NULL,
     updated_at DATETIME,
     INDEX idx_user_id (user_id),
     INDEX idx_card_number (card_number),
     INDEX idx_status (status),
-    INDEX idx_payment_due_date (payment_due_date)
+    INDEX idx_payment_due_date (payment_due_date),
+    INDEX idx_status_cycle_end (status, billing_cycle_end)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 信用卡账单表
+CREATE TABLE IF NOT EXISTS credit_card_statements (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    card_id BIGINT NOT NULL,
+    card_number VARCHAR(20) NOT NULL,
+    user_id VARCHAR(50) NOT NULL,
+    cycle_start DATE NOT NULL,
+    cycle_end DATE NOT NULL,
+    due_date DATE NOT NULL,
+    statement_balance DECIMAL(15, 2) NOT NULL,
+    minimum_payment DECIMAL(15, 2) NOT NULL,
+    interest_charged DECIMAL(15, 2) NOT NULL,
+    late_fee DECIMAL(15, 2) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    created_at DATETIME NOT NULL,
+    updated_at DATETIME,
+    UNIQUE KEY uk_card_cycle (card_id, cycle_end),
+    INDEX idx_card_number_cycle (card_number, cycle_end),
+    INDEX idx_status_due_date (status, due_date)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- 理财产品表
@@ -132,6 +174,8 @@ CREATE TABLE IF NOT EXISTS investment_products (
     early_withdrawal_penalty DECIMAL(6, 4) NOT NULL,
     description TEXT NOT NULL,
     status VARCHAR(20) NOT NULL,
+    net_asset_value DECIMAL(12, 6),
+    nav_date DATE,
     created_at DATETIME NOT NULL,
     updated_at DATETIME,
     INDEX idx_product_code (product_code),
@@ -160,7 +204,33 @@ CREATE TABLE IF NOT EXISTS user_investments (
     INDEX idx_status (status),
     INDEX idx_purchase_date (purchase_date),
     INDEX idx_maturity_date (maturity_date),
-    INDEX idx_user_product (user_id, product_id)
+    INDEX idx_user_product (user_id, product_id),
+    INDEX idx_product_status (product_id, status),
+    INDEX idx_status_maturity (status, maturity_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 商城支付扣款与退款表（幂等键唯一，重复投递返回首次处理结果；type 为空的旧记录为扣款）
+CREATE TABLE IF NOT EXISTS payment_debits (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    idempotency_key VARCHAR(64) NOT NULL,
+    user_id VARCHAR(50) NOT NULL,
+    account_number VARCHAR(20),
+    amount DECIMAL(15, 2) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    type VARCHAR(20),
+    refund_of VARCHAR(64),
+    reference_number VARCHAR(50),
+    failure_reason VARCHAR(255),
+    created_at DATETIME NOT NULL,
+    completed_at DATETIME,
+    UNIQUE KEY uk_idempotency_key (idempotency_key),
+    INDEX idx_user_id (user_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 号段序列表（账户号、卡号、交易流水号按块预留）
+CREATE TABLE IF NOT EXISTS id_sequences (
+    name VARCHAR(50) PRIMARY KEY,
+    next_value BIGINT NOT NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- 创建视图：用户账户概览
@@ -300,6 +370,40 @@ END$$
 
 DELIMITER ;
 
+-- 创建存储过程：为交易表追加下一个月分区（从 pmax 中拆分）
+DELIMITER $$
+
+CREATE PROCEDURE sp_add_next_transaction_partition()
+BEGIN
+    DECLARE v_last_bound DATE;
+    DECLARE v_next_bound DATE;
+    DECLARE v_partition_name VARCHAR(20);
+
+    SELECT MAX(STR_TO_DATE(TRIM(BOTH '''' FROM partition_description), '%Y-%m-%d'))
+    INTO v_last_bound
+    FROM information_schema.partitions
+    WHERE table_schema = DATABASE()
+      AND table_name = 'transactions'
+      AND partition_name <> 'pmax';
+
+    SET v_next_bound = DATE_ADD(v_last_bound, INTERVAL 1 MONTH);
+    SET v_partition_name = CONCAT('p', DATE_FORMAT(v_last_bound, '%Y%m'));
+
+    SET @ddl = CONCAT('ALTER TABLE transactions REORGANIZE PARTITION pmax INTO (',
+                      'PARTITION ', v_partition_name, ' VALUES LESS THAN (''', v_next_bound, '''), ',
+                      'PARTITION pmax VALUES LESS THAN (MAXVALUE))');
+    PREPARE stmt FROM @ddl;
+    EXECUTE stmt;
+    DEALLOCATE PREPARE stmt;
+END$$
+
+DELIMITER ;
+
+-- 每月自动追加交易表分区（需开启 event_scheduler）
+CREATE EVENT IF NOT EXISTS ev_add_transaction_partition
+ON SCHEDULE EVERY 1 MONTH STARTS '2026-12-15 03:00:00'
+DO CALL sp_add_next_transaction_partition();
+
 -- 创建触发器：在创建账户时自动初始化信用评分
 DELIMITER $$
 
@@ -33,7 +33,9 @@ CREATE TABLE IF NOT EXISTS products (
     INDEX idx_status (status),
     INDEX idx_price (price),
     INDEX idx_sales_count (sales_count),
-    INDEX idx_rating (rating)
+    INDEX idx_rating (rating),
+    INDEX idx_updated_at (updated_at),
+    INDEX idx_created_at (created_at)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- 购物车表
@@ -100,6 +102,125 @@ CREATE TABLE IF NOT EXISTS order_items (
     INDEX idx_category (category)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- 秒杀活动表
+CREATE TABLE IF NOT EXISTS flash_sales (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    product_id BIGINT NOT NULL,
+    sale_price DECIMAL(10, 2) NOT NULL,
+    total_quantity INT NOT NULL,
+    sold_quantity INT NOT NULL DEFAULT 0,
+    start_time DATETIME NOT NULL,
+    end_time DATETIME NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    created_at DATETIME NOT NULL,
+    updated_at DATETIME,
+    INDEX idx_status_start_time (status, start_time),
+    INDEX idx_product_id (product_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 支付请求 outbox 表（与订单状态同事务写入，由中继异步投递到银行服务批量扣款 / 退款接口）
+CREATE TABLE IF NOT EXISTS payment_outbox (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    order_id BIGINT NOT NULL,
+    order_number VARCHAR(50) NOT NULL,
+    user_id VARCHAR(50) NOT NULL,
+    amount DECIMAL(15, 2) NOT NULL,
+    idempotency_key VARCHAR(64) NOT NULL,
+    type VARCHAR(20),
+    status VARCHAR(20) NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at DATETIME NOT NULL,
+    reference_number VARCHAR(50),
+    last_error VARCHAR(255),
+    created_at DATETIME NOT NULL,
+    updated_at DATETIME,
+    UNIQUE KEY uk_idempotency_key (idempotency_key),
+    INDEX idx_status_next_attempt (status, next_attempt_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 用户订单汇总表（下单与订单状态变更时增量维护，个人中心与统计接口只读一行）
+CREATE TABLE IF NOT EXISTS user_order_summaries (
+    user_id VARCHAR(50) PRIMARY KEY,
+    order_count BIGINT NOT NULL DEFAULT 0,
+    total_spent DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    pending_count BIGINT NOT NULL DEFAULT 0,
+    paid_count BIGINT NOT NULL DEFAULT 0,
+    processing_count BIGINT NOT NULL DEFAULT 0,
+    shipped_count BIGINT NOT NULL DEFAULT 0,
+    delivered_count BIGINT NOT NULL DEFAULT 0,
+    completed_count BIGINT NOT NULL DEFAULT 0,
+    cancelled_count BIGINT NOT NULL DEFAULT 0,
+    refunded_count BIGINT NOT NULL DEFAULT 0,
+    updated_at DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 由已有订单回填汇总（已存在的行保持不变）
+INSERT IGNORE INTO user_order_summaries (user_id, order_count, total_spent, pending_count, paid_count,
+    processing_count, shipped_count, delivered_count, completed_count, cancelled_count, refunded_count, updated_at)
+SELECT
+    user_id,
+    COUNT(*),
+    SUM(CASE WHEN status != 'CANCELLED' AND status != 'REFUNDED' THEN final_amount ELSE 0 END),
+    SUM(status = 'PENDING'),
+    SUM(status = 'PAID'),
+    SUM(status = 'PROCESSING'),
+    SUM(status = 'SHIPPED'),
+    SUM(status = 'DELIVERED'),
+    SUM(status = 'COMPLETED'),
+    SUM(status = 'CANCELLED'),
+    SUM(status = 'REFUNDED'),
+    NOW()
+FROM orders
+GROUP BY user_id;
+
+-- 销售事件表（订单支付成功时与订单状态同事务写入，汇总任务消费后删除）
+CREATE TABLE IF NOT EXISTS sales_events (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    order_id BIGINT NOT NULL,
+    user_id VARCHAR(50) NOT NULL,
+    event_type VARCHAR(20) NOT NULL,
+    occurred_at DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 销售汇总表（日期 × 商品分类 × 学校 × 班级，0 表示未归属），统计接口只查询此表
+CREATE TABLE IF NOT EXISTS sales_rollups (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    sale_date DATE NOT NULL,
+    category VARCHAR(20) NOT NULL,
+    school_id BIGINT NOT NULL DEFAULT 0,
+    class_id BIGINT NOT NULL DEFAULT 0,
+    revenue DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    quantity BIGINT NOT NULL DEFAULT 0,
+    order_count BIGINT NOT NULL DEFAULT 0,
+    updated_at DATETIME NOT NULL,
+    UNIQUE KEY uk_rollup_cell (sale_date, category, school_id, class_id),
+    INDEX idx_school_class_date (school_id, class_id, sale_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 订单号号段，各实例按块预留后在内存中分配
+CREATE TABLE IF NOT EXISTS id_sequences (
+    name VARCHAR(50) PRIMARY KEY,
+    next_value BIGINT NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 一次性数据迁移的执行记录，保证迁移脚本重复执行时不会重复写入
+CREATE TABLE IF NOT EXISTS data_migrations (
+    name VARCHAR(100) PRIMARY KEY,
+    applied_at DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 为已支付的历史订单生成销售事件，由汇总任务计入 sales_rollups；
+-- 先占用迁移记录，只有首次占用成功时才写入事件（与汇总任务是否已运行无关，重复执行不会重复计入）
+START TRANSACTION;
+INSERT IGNORE INTO data_migrations (name, applied_at) VALUES ('sales_events_backfill', NOW());
+SET @sales_backfill = ROW_COUNT();
+INSERT INTO sales_events (order_id, user_id, event_type, occurred_at)
+SELECT id, user_id, 'PAID', COALESCE(paid_at, created_at)
+FROM orders
+WHERE payment_status = 'PAID'
+  AND @sales_backfill = 1;
+COMMIT;
+
 -- 创建视图：商品销量统计
 CREATE OR REPLACE VIEW v_product_sales_stats AS
 SELECT
@@ -177,38 +298,10 @@ END$$
 
 DELIMITER ;
 
--- 创建触发器：订单创建后自动扣减库存
-DELIMITER $$
-
-CREATE TRIGGER tr_decrease_stock_after_order
-AFTER INSERT ON order_items
-FOR EACH ROW
-BEGIN
-    UPDATE products
-    SET stock = stock - NEW.quantity,
-        sales_count = sales_count + NEW.quantity
-    WHERE id = NEW.product_id;
-END$$
-
-DELIMITER ;
-
--- 创建触发器：订单取消后恢复库存
-DELIMITER $$
-
-CREATE TRIGGER tr_restore_stock_on_cancel
-AFTER UPDATE ON orders
-FOR EACH ROW
-BEGIN
-    IF NEW.status = 'CANCELLED' AND OLD.status != 'CANCELLED' THEN
-        UPDATE products p
-        INNER JOIN order_items oi ON p.id = oi.product_id
-        SET p.stock = p.stock + oi.quantity,
-            p.sales_count = GREATEST(0, p.sales_count - oi.quantity)
-        WHERE oi.order_id = NEW.id;
-    END IF;
-END$$
-
-DELIMITER ;
+-- 库存扣减与恢复由应用层库存预占完成（支付确认时扣减 stock，已支付订单取消时恢复），
+-- 不再通过触发器修改库存，否则会重复扣减/恢复
+DROP TRIGGER IF EXISTS tr_decrease_stock_after_order;
+DROP TRIGGER IF EXISTS tr_restore_stock_on_cancel;
 
 -- 插入初始数据示例（可选）
 
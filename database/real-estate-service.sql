@@ -51,7 +51,8 @@ CREATE TABLE properties (
     INDEX idx_is_for_sale (is_for_sale),
     INDEX idx_owner_id (owner_id),
     INDEX idx_current_price (current_price),
-    INDEX idx_city_for_sale (city_id, is_for_sale)
+    INDEX idx_city_for_sale (city_id, is_for_sale),
+    INDEX idx_updated_at (updated_at)
 );
 
 -- 房产价格历史表
@@ -82,6 +83,8 @@ CREATE TABLE property_transactions (
     rental_duration INT,
     rental_start_date DATETIME,
     rental_end_date DATETIME,
+    rental_ended_at DATETIME,
+    rent_posted_through CHAR(7),
     transaction_date DATETIME NOT NULL,
     status ENUM('PENDING', 'COMPLETED', 'CANCELLED') NOT NULL,
     created_at DATETIME NOT NULL,
@@ -91,7 +94,68 @@ CREATE TABLE property_transactions (
     INDEX idx_property_id (property_id),
     INDEX idx_transaction_date (transaction_date DESC),
     INDEX idx_user_transactions (buyer_id, transaction_date DESC),
-    INDEX idx_type_status (type, status)
+    INDEX idx_type_status (type, status),
+    INDEX idx_active_leases (rental_ended_at, type, id),
+    INDEX idx_lease_expiry (rental_ended_at, rental_end_date)
+);
+
+-- 业主月度现金流汇总表
+CREATE TABLE owner_cash_flows (
+    owner_id VARCHAR(100) PRIMARY KEY,
+    monthly_income DECIMAL(15,2) NOT NULL,
+    monthly_expenses DECIMAL(15,2) NOT NULL,
+    owned_properties INT NOT NULL,
+    rented_properties INT NOT NULL,
+    expenses_posted_through CHAR(7),
+    updated_at DATETIME NOT NULL
+);
+
+-- 房产收支台账表（租金收入、租金支出、持有支出，按月入账，经 bank-service 结算到银行账户）
+CREATE TABLE property_ledger_entries (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    period CHAR(7) NOT NULL,
+    user_id VARCHAR(100) NOT NULL,
+    entry_type VARCHAR(20) NOT NULL,
+    amount DECIMAL(15,2) NOT NULL,
+    property_id BIGINT,
+    source_id BIGINT NOT NULL,
+    created_at DATETIME NOT NULL,
+    settlement_status VARCHAR(20),
+    settlement_attempts INT,
+    next_settlement_at DATETIME,
+    reference_number VARCHAR(50),
+    failure_reason VARCHAR(255),
+    UNIQUE KEY uk_ledger_posting (period, entry_type, user_id, source_id),
+    INDEX idx_ledger_user_period (user_id, period),
+    INDEX idx_ledger_settlement (settlement_status, next_settlement_at),
+    INDEX idx_ledger_source (source_id, period)
+);
+
+-- 市场指数表（城市 / 区域，小时 / 日 / 周时间桶）
+CREATE TABLE market_index_points (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    scope VARCHAR(10) NOT NULL,
+    scope_key VARCHAR(100) NOT NULL,
+    resolution VARCHAR(10) NOT NULL,
+    bucket_start DATETIME NOT NULL,
+    open_price_per_sqm DECIMAL(15,2) NOT NULL,
+    high_price_per_sqm DECIMAL(15,2) NOT NULL,
+    low_price_per_sqm DECIMAL(15,2) NOT NULL,
+    close_price_per_sqm DECIMAL(15,2) NOT NULL,
+    prev_close_price_per_sqm DECIMAL(15,2),
+    volume INT NOT NULL,
+    turnover DECIMAL(18,2) NOT NULL,
+    property_count INT NOT NULL,
+    sample_count INT NOT NULL,
+    updated_at DATETIME NOT NULL,
+    UNIQUE KEY uk_market_index_bucket (scope, scope_key, resolution, bucket_start),
+    INDEX idx_resolution_bucket (resolution, bucket_start)
+);
+
+-- 市场指数采样状态（多实例记录样本时的行锁与成交量统计区间起点）
+CREATE TABLE market_index_state (
+    name VARCHAR(50) PRIMARY KEY,
+    last_sampled_at DATETIME
 );
 
 -- 创建存储过程：计算城市平均房价
@@ -212,6 +276,20 @@ SELECT
 FROM properties p
 WHERE RAND() < 0.3; -- 为30%的房产创建历史价格记录
 
+-- 升级已有数据：结束已退租房产的租约（退租前不记录结束时间），重建业主现金流汇总
+UPDATE property_transactions t JOIN properties p ON p.id = t.property_id
+SET t.rental_ended_at = LEAST(t.rental_end_date, NOW())
+WHERE t.type = 'RENT' AND t.rental_ended_at IS NULL AND p.is_rented = FALSE;
+
+INSERT INTO owner_cash_flows (owner_id, monthly_income, monthly_expenses, owned_properties, rented_properties, updated_at)
+SELECT owner_id,
+       SUM(CASE WHEN is_rented THEN COALESCE(rental_income, 0) ELSE 0 END),
+       SUM(COALESCE(maintenance_cost, 0) + COALESCE(property_tax, 0)),
+       COUNT(*),
+       SUM(CASE WHEN is_rented THEN 1 ELSE 0 END),
+       NOW()
+FROM properties WHERE owner_id IS NOT NULL GROUP BY owner_id;
+
 -- 创建索引优化查询性能
 CREATE INDEX idx_cities_growth_region ON cities(growth_rate DESC, region);
 CREATE INDEX idx_properties_price_city ON properties(current_price DESC, city_id);